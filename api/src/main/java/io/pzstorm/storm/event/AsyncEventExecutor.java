@@ -0,0 +1,125 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.pzstorm.storm.logging.StormLogger;
+
+/**
+ * This class invokes {@link ExecutionMode#ASYNC} handler methods on a fixed pool of daemon worker
+ * threads. Events waiting to be handled are stored in a bounded queue shared by all asynchronous
+ * handler methods. The number of worker threads and queue capacity can be configured with
+ * {@code storm.event.workers} and {@code storm.event.queue} system properties respectively.
+ */
+final class AsyncEventExecutor {
+
+	static final String WORKERS_PROPERTY = "storm.event.workers";
+	static final String QUEUE_PROPERTY = "storm.event.queue";
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	AsyncEventExecutor(int workers, int capacity) {
+
+		ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("Storm-Event-Worker-%d").setDaemon(true).build();
+
+		executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(capacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+		// workers have to be running for blocking overflow policy to work
+		executor.prestartAllCoreThreads();
+	}
+
+	/**
+	 * Create executor with number of workers and queue capacity read from system properties.
+	 */
+	static AsyncEventExecutor create() {
+
+		int workers = Integer.getInteger(WORKERS_PROPERTY,
+				Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+		return new AsyncEventExecutor(workers, Integer.getInteger(QUEUE_PROPERTY, 1024));
+	}
+
+	/**
+	 * Queue given event to be handled by an event worker without waiting for it to be handled.
+	 * If the queue is full the given overflow policy decides how the event is handled.
+	 *
+	 * @param invoker handler method invoker that accepts the event.
+	 * @param event {@link ZomboidEvent} to handle.
+	 * @param overflow policy to apply when the queue is full.
+	 */
+	void execute(Consumer<ZomboidEvent> invoker, ZomboidEvent event, OverflowPolicy overflow) {
+
+		Runnable task = () -> {
+			try {
+				invoker.accept(event);
+			}
+			catch (RuntimeException e) {
+				StormLogger.error("Asynchronous handler failed to handle event " + event.getName(), e);
+			}
+		};
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e)
+		{
+			switch (overflow)
+			{
+				case CALLER_RUNS:
+					// handler failures are logged the same way as when the event is queued
+					task.run();
+					break;
+				case BLOCK:
+					try {
+						executor.getQueue().put(task);
+					}
+					catch (InterruptedException ie)
+					{
+						droppedEvents.incrementAndGet();
+						Thread.currentThread().interrupt();
+					}
+					break;
+				case DROP:
+					droppedEvents.incrementAndGet();
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of events currently waiting in queue to be handled.
+	 */
+	int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the total number of events that were discarded because the queue was full.
+	 */
+	long getDroppedEventCount() {
+		return droppedEvents.get();
+	}
+}
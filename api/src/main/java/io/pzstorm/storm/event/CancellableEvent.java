@@ -0,0 +1,47 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+/**
+ * This class represents a {@link ZomboidEvent} that can be cancelled by subscribed methods.
+ * Once a subscribed method cancels the event, dispatching stops and methods with lower
+ * {@link EventPriority} are not invoked. Hooks that dispatch cancellable events can
+ * also skip the game code that triggered the event when it is cancelled.
+ * <p>
+ * Note that methods with {@link ExecutionMode#ASYNC} mode are invoked after the event has been
+ * dispatched so they cannot cancel it, and methods with {@link ExecutionMode#PARALLEL} mode
+ * are always invoked together with other parallel methods of the same priority. When a parallel
+ * method cancels the event, the remaining methods in its group still run, but methods after the
+ * group are not invoked.
+ * </p>
+ */
+public interface CancellableEvent extends ZomboidEvent {
+
+	/**
+	 * Returns {@code true} if this event was cancelled by a subscribed method.
+	 */
+	boolean isCancelled();
+
+	/**
+	 * Set the cancelled state of this event.
+	 *
+	 * @param cancelled {@code true} to stop dispatching this event.
+	 */
+	void setCancelled(boolean cancelled);
+}
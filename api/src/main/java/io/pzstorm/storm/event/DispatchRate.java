@@ -0,0 +1,117 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class represents how often a subscribed method should receive events it subscribes to. It is
+ * declared with {@link SubscribeEvent#interval()}, {@link SubscribeEvent#period()} and
+ * {@link SubscribeEvent#sampleRate()} and an event has to satisfy all of them to be delivered.
+ * Methods that are not due to receive an event are skipped by {@link StormEventDispatcher}
+ * without being invoked.
+ */
+public final class DispatchRate {
+
+	/**
+	 * Rate of methods that receive every event they subscribe to.
+	 */
+	public static final DispatchRate EVERY_EVENT = new DispatchRate(1, 0, 1);
+
+	/**
+	 * Number of events that have to be dispatched for the method to be invoked once.
+	 */
+	final int interval;
+
+	/**
+	 * Minimum number of nanoseconds that have to pass between two invocations of the method.
+	 */
+	final long periodNanos;
+
+	/**
+	 * Probability that the method is invoked with an event that is due.
+	 */
+	final double sampleRate;
+
+	private DispatchRate(int interval, long periodNanos, double sampleRate) {
+
+		this.interval = interval;
+		this.periodNanos = periodNanos;
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Returns dispatch rate with given values.
+	 *
+	 * @param interval value of {@link SubscribeEvent#interval()}.
+	 * @param period value of {@link SubscribeEvent#period()}.
+	 * @param sampleRate value of {@link SubscribeEvent#sampleRate()}.
+	 *
+	 * @throws IllegalArgumentException if interval is not positive, period is negative
+	 * 		or sample rate is not greater than zero and less than or equal to one.
+	 */
+	public static DispatchRate of(int interval, long period, double sampleRate) {
+
+		if (interval < 1) {
+			throw new IllegalArgumentException("Dispatch interval has to be positive but was " + interval);
+		}
+		if (period < 0) {
+			throw new IllegalArgumentException("Dispatch period cannot be negative but was " + period);
+		}
+		if (!(sampleRate > 0 && sampleRate <= 1)) {
+			throw new IllegalArgumentException("Dispatch sample rate has to be in range (0, 1] but was " + sampleRate);
+		}
+		if (interval == 1 && period == 0 && sampleRate == 1) {
+			return EVERY_EVENT;
+		}
+		return new DispatchRate(interval, TimeUnit.MILLISECONDS.toNanos(period), sampleRate);
+	}
+
+	/**
+	 * Returns {@code true} if methods with this rate receive every event they subscribe to.
+	 */
+	public boolean isEveryEvent() {
+		return this == EVERY_EVENT;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof DispatchRate)) {
+			return false;
+		}
+		DispatchRate rate = (DispatchRate) obj;
+		return interval == rate.interval && periodNanos == rate.periodNanos && sampleRate == rate.sampleRate;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(interval, periodNanos, sampleRate);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DispatchRate{interval=%d, period=%dms, sampleRate=%s}",
+				interval, TimeUnit.NANOSECONDS.toMillis(periodNanos), sampleRate);
+	}
+}
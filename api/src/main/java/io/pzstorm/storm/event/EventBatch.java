@@ -0,0 +1,164 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * This class represents a batch of events of the same type collected between two dispatches of a flush
+ * event. Subscribing to a batch instead of individual events lets handlers process high-frequency events,
+ * such as zombie updates, once per tick in a tight loop instead of paying for a handler call per event.
+ * To subscribe to a batch declare {@code EventBatch} with the batched event type as method parameter:
+ * <br><br><pre>
+ *     &#64;SubscribeEvent
+ *     public void handleZombieUpdates(EventBatch&lt;OnZombieUpdateEvent&gt; batch) {
+ *         for (OnZombieUpdateEvent event : batch) {
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ * By default the batch is delivered when {@code OnTickEvent} is dispatched. Use {@link SubscribeEvent#flushOn()}
+ * to deliver the batch on a different event, for example {@code OnPostRenderEvent} for draw events that fire
+ * once per frame. Each subscribed method has its own batch which is reused between deliveries, so the batch
+ * is only valid while the subscribed method is executing and should never be stored.
+ *
+ * @param <T> type of batched events.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class EventBatch<T extends ZomboidEvent> implements Iterable<T> {
+
+	/**
+	 * Events delivered by the current flush. Only accessed while holding the lock on this batch.
+	 */
+	private Object[] events;
+	private int size;
+
+	/**
+	 * Events collected since the last flush. Only accessed while holding the lock on {@link #pendingLock}.
+	 */
+	private Object[] pending;
+	private int pendingSize;
+
+	private final Object pendingLock = new Object();
+
+	EventBatch(int capacity) {
+
+		this.events = new Object[capacity];
+		this.pending = new Object[capacity];
+	}
+
+	/**
+	 * Returns the number of events in this batch.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns {@code true} if this batch contains no events.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns event at given position in this batch. Events are ordered in the order they were dispatched.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for batch of size " + size);
+		}
+		return (T) events[index];
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+
+		return new Iterator<T>() {
+
+			private int cursor;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < size;
+			}
+
+			@Override
+			public T next() {
+
+				if (cursor >= size) {
+					throw new NoSuchElementException();
+				}
+				return get(cursor++);
+			}
+		};
+	}
+
+	/**
+	 * Add given event to the end of pending events that will be delivered by the next flush. The
+	 * underlying buffer grows when it is full and is never shrunk, so it only grows until it fits
+	 * the largest batch. Adding events never waits for a flush that is delivering the batch.
+	 */
+	void add(ZomboidEvent event) {
+
+		synchronized (pendingLock)
+		{
+			if (pendingSize == pending.length) {
+				pending = Arrays.copyOf(pending, Math.max(16, pendingSize * 2));
+			}
+			pending[pendingSize++] = event;
+		}
+	}
+
+	/**
+	 * Deliver pending events to the given invoker if there are any and clear them afterwards. Pending
+	 * events are swapped with the empty buffer of delivered events while holding the pending lock,
+	 * and the invoker is called after the lock is released, so events dispatched while the batch is
+	 * being delivered are added to the next batch. Concurrent flushes are delivered one at a time.
+	 */
+	synchronized void flush(Consumer<EventBatch<T>> invoker) {
+
+		synchronized (pendingLock)
+		{
+			if (pendingSize == 0) {
+				return;
+			}
+			Object[] delivered = pending;
+			pending = events;
+			events = delivered;
+			size = pendingSize;
+			pendingSize = 0;
+		}
+		try {
+			invoker.accept(this);
+		}
+		finally
+		{
+			Arrays.fill(events, 0, size, null);
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * This class represents a group of event handler methods registered by a single {@code ZomboidMod}.
+ * Groups allow all handler methods registered by a mod to be enabled, disabled or unregistered at once.
+ * Methods in a disabled group are excluded from dispatching, so they do not add any cost to
+ * dispatching events until the group is enabled again.
+ *
+ * @see StormEventDispatcher#getHandlerGroup(io.pzstorm.storm.mod.ZomboidMod)
+ */
+public final class EventHandlerGroup {
+
+	private final String name;
+	private final Set<EventSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Enabled state of this group. Note that this field is only modified while holding a lock
+	 * on dispatch registry.
+	 *
+	 * @see StormEventDispatcher#setHandlerGroupEnabled(EventHandlerGroup, boolean)
+	 */
+	volatile boolean enabled = true;
+
+	EventHandlerGroup(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of this group.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns {@code true} if handler methods in this group are invoked when events are dispatched.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enable or disable all handler methods in this group. Dispatch call sites of all affected
+	 * events are relinked before this method returns, which means that handler methods
+	 * in a disabled group will not be invoked by any subsequently dispatched event.
+	 *
+	 * @param enabled {@code true} to enable handler methods in this group.
+	 */
+	public void setEnabled(boolean enabled) {
+		StormEventDispatcher.setHandlerGroupEnabled(this, enabled);
+	}
+
+	/**
+	 * Unregister all handler methods in this group.
+	 *
+	 * @see EventSubscription#unregister()
+	 */
+	public void unregister() {
+
+		for (EventSubscription subscription : ImmutableList.copyOf(subscriptions)) {
+			subscription.unregister();
+		}
+	}
+
+	void addSubscription(EventSubscription subscription) {
+		subscriptions.add(subscription);
+	}
+
+	void removeSubscription(EventSubscription subscription) {
+		subscriptions.remove(subscription);
+	}
+
+	@Override
+	public String toString() {
+		return "EventHandlerGroup{" + name + '}';
+	}
+}
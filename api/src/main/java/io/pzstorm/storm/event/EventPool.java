@@ -0,0 +1,84 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * This class holds thread-local instances of a {@link PooledEvent} type. Instances are acquired before
+ * they are reset and dispatched, and released once dispatching completes. When the thread-local instance
+ * is already acquired a new instance is returned, which is simply discarded when it is released.
+ *
+ * @param <T> type of pooled event.
+ */
+final class EventPool<T extends ZomboidEvent> {
+
+	private final Constructor<T> constructor;
+	private final ThreadLocal<PooledInstance<T>> instances;
+
+	EventPool(Class<T> eventClass) throws NoSuchMethodException {
+
+		this.constructor = eventClass.getConstructor();
+		this.instances = ThreadLocal.withInitial(() -> new PooledInstance<>(newInstance()));
+	}
+
+	/**
+	 * Returns event instance that is not used by current thread.
+	 */
+	T acquire() {
+
+		PooledInstance<T> instance = instances.get();
+		if (instance.acquired) {
+			return newInstance();
+		}
+		instance.acquired = true;
+		return instance.event;
+	}
+
+	/**
+	 * Return given event instance to the pool so that it can be acquired again.
+	 */
+	void release(ZomboidEvent event) {
+
+		PooledInstance<T> instance = instances.get();
+		if (instance.event == event) {
+			instance.acquired = false;
+		}
+	}
+
+	private T newInstance() {
+
+		try {
+			return constructor.newInstance();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to create pooled event instance", e);
+		}
+	}
+
+	private static class PooledInstance<T> {
+
+		private final T event;
+		private boolean acquired;
+
+		private PooledInstance(T event) {
+			this.event = event;
+		}
+	}
+}
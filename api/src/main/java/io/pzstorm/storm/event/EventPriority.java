@@ -0,0 +1,38 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+/**
+ * Defines the order in which {@link SubscribeEvent} methods subscribed to the same event are invoked.
+ * Methods with higher priority are invoked first, and methods with the same priority are invoked in
+ * the order in which they were registered. Set the priority of a subscribed method with
+ * {@link SubscribeEvent#priority()}.
+ * <p>
+ * Priorities are most useful with {@link CancellableEvent} types, where a method with higher priority
+ * can cancel the event to prevent it from reaching methods with lower priority.
+ * </p>
+ */
+public enum EventPriority {
+
+	HIGHEST,
+	HIGH,
+	NORMAL,
+	LOW,
+	LOWEST
+}
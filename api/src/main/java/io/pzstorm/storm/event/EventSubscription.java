@@ -0,0 +1,116 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This class represents a handle to event handler methods registered with {@link StormEventDispatcher}.
+ * Registering an event handler returns a subscription that can be used to unregister all handler
+ * methods registered with the handler. Unregistered methods are removed from dispatch registry and
+ * will no longer be invoked when events are dispatched.
+ */
+public final class EventSubscription {
+
+	private static final EventSubscription[] NO_SUBSCRIPTIONS = new EventSubscription[0];
+
+	/**
+	 * Group this subscription belongs to or {@code null} if the subscription does not belong to a group.
+	 */
+	private final @Nullable EventHandlerGroup group;
+
+	/**
+	 * Action that removes subscribed handler methods from dispatch registry.
+	 */
+	private final Runnable unregisterAction;
+
+	/**
+	 * Subscriptions represented by this subscription if it was created with {@link #of(EventSubscription...)}.
+	 */
+	private final EventSubscription[] subscriptions;
+
+	private final AtomicBoolean registered = new AtomicBoolean(true);
+
+	EventSubscription(@Nullable EventHandlerGroup group, Runnable unregisterAction) {
+
+		this.group = group;
+		this.unregisterAction = unregisterAction;
+		this.subscriptions = NO_SUBSCRIPTIONS;
+
+		if (group != null) {
+			group.addSubscription(this);
+		}
+	}
+
+	private EventSubscription(EventSubscription[] subscriptions) {
+
+		this.group = null;
+		this.unregisterAction = () -> {
+			for (EventSubscription subscription : subscriptions) {
+				subscription.unregister();
+			}
+		};
+		this.subscriptions = subscriptions;
+	}
+
+	/**
+	 * Create a subscription that represents all given subscriptions.
+	 * Unregistering the created subscription unregisters all given subscriptions.
+	 *
+	 * @param subscriptions subscriptions to represent.
+	 */
+	public static EventSubscription of(EventSubscription... subscriptions) {
+		return new EventSubscription(subscriptions.clone());
+	}
+
+	/**
+	 * Unregister all handler methods represented by this subscription. This method has no effect
+	 * if the subscription has already been unregistered. Note that events that are being dispatched
+	 * while this method is called can still be delivered to unregistered methods.
+	 */
+	public void unregister() {
+
+		if (registered.compareAndSet(true, false))
+		{
+			if (group != null) {
+				group.removeSubscription(this);
+			}
+			unregisterAction.run();
+		}
+	}
+
+	/**
+	 * Returns {@code true} if any handler method represented by this subscription is registered.
+	 */
+	public boolean isRegistered() {
+
+		if (subscriptions.length == 0) {
+			return registered.get();
+		}
+		for (EventSubscription subscription : subscriptions)
+		{
+			if (subscription.isRegistered()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
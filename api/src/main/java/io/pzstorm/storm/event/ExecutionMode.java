@@ -0,0 +1,63 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+/**
+ * Defines on which thread {@link SubscribeEvent} methods are invoked when an event is dispatched.
+ * Set the execution mode of a subscribed method with {@link SubscribeEvent#mode()}.
+ */
+public enum ExecutionMode {
+
+	/**
+	 * Method is invoked on the thread that dispatched the event before dispatching returns.
+	 * This is the default execution mode and the only mode that is safe to use when the
+	 * method interacts with game state.
+	 */
+	SYNC,
+
+	/**
+	 * Method is invoked on a {@link java.util.concurrent.ForkJoinPool ForkJoinPool} thread concurrently
+	 * with other parallel methods subscribed to the same event. Dispatching thread waits for all parallel
+	 * methods to complete before continuing, so this mode is suitable for expensive handlers of events that
+	 * many mods subscribe to. Parallel methods are invoked together in the position of the first parallel
+	 * method in registration order, while other methods are still invoked in registration order.
+	 * <p>
+	 * Methods should only use this mode when they are safe to run concurrently with each other, which means
+	 * that they should treat the event as read-only and not modify shared state without synchronization.
+	 * </p><p>
+	 * A parallel method can cancel a {@link CancellableEvent}, but the other parallel methods in its group
+	 * are already running and still complete. Cancelled state is checked once all of them complete, and
+	 * methods invoked after the group are skipped when any of them cancelled the event.
+	 * </p>
+	 */
+	PARALLEL,
+
+	/**
+	 * Method is invoked on a Storm event worker thread at some point after the event was
+	 * dispatched. Dispatching thread does not wait for the method to complete, which makes
+	 * this mode suitable for handlers that perform I/O or other expensive work that should
+	 * not stall the game loop. Methods using this mode should treat the event as read-only
+	 * and not interact with game state as it is not thread-safe.
+	 * <p>
+	 * Events are queued in a bounded queue shared by all asynchronous methods. What happens when
+	 * the queue is full is decided by {@link SubscribeEvent#overflow()} policy of the method.
+	 * </p>
+	 */
+	ASYNC
+}
@@ -0,0 +1,44 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This class represents events that can be told apart by a single value, such as the module name of a
+ * command or the code of a pressed key. Handler methods can subscribe to events with a specific key by
+ * declaring it with {@link SubscribeEvent#key()}, in which case they are only invoked for events with
+ * matching key. Matching handler methods are found with a hash lookup so handler methods that subscribe
+ * to other keys do not add any cost to dispatching.
+ * <p>
+ * Handler methods with a matching key are invoked before handler methods with the same priority that
+ * do not declare a key. Both are invoked in registration order, and handler methods with different
+ * priority are invoked in order of priority regardless of their key.
+ * </p><p>
+ * Keys declared in annotations are converted to the return type of {@link #getKey()} declared by the
+ * subscribed event class, which can be {@code String}, {@code Integer} or an {@code enum} type.
+ * </p>
+ */
+public interface KeyedEvent extends ZomboidEvent {
+
+	/**
+	 * Returns the key of this event used to find subscribed handler methods.
+	 */
+	@Nullable Object getKey();
+}
@@ -18,9 +18,9 @@
 
 package io.pzstorm.storm.event;
 
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import org.jetbrains.annotations.Unmodifiable;
 
@@ -32,21 +32,130 @@ import zombie.Lua.Event;
  * internally to catch <i>most</i>  triggered Lua events, after which they are used to
  * dispatched {@link LuaEvent} instances. For performance and usability reasons it is
  * recommended to subscribe to specific {@link LuaEvent LuaEvents} rather then this event.
+ * <p>
+ * Because Lua events are triggered very frequently this is a {@link PooledEvent}, which
+ * means that handlers should not keep references to the event or its arguments list
+ * after they return.
+ * </p><p>
+ * Cancelling this event prevents the Lua event from being triggered, which means that
+ * neither Lua callbacks nor {@link LuaEvent} handlers will receive it. This is the only way
+ * to cancel a Lua event, as {@link LuaEvent} classes are not cancellable. Handler methods that
+ * need to cancel a specific Lua event should subscribe to this event with a higher
+ * {@link EventPriority} than {@link EventPriority#NORMAL} and check the name of {@link #luaEvent}.
+ * </p>
  */
+@PooledEvent
 @SuppressWarnings("WeakerAccess")
-public class OnTriggerLuaEvent implements ZomboidEvent {
+public class OnTriggerLuaEvent implements CancellableEvent {
 
-	public final Event luaEvent;
+	public Event luaEvent;
 	public final @Unmodifiable List<Object> args;
 
+	private final Arguments arguments = new Arguments();
+
+	/**
+	 * Arrays reused to hold arguments of events reset with a fixed number of arguments, indexed by the
+	 * number of arguments they hold. Hooks use these to dispatch Lua events triggered with up to two
+	 * arguments without allocating an array of arguments.
+	 */
+	private final Object[][] argumentArrays = { new Object[0], new Object[1], new Object[2] };
+
+	private boolean cancelled;
+
 	public OnTriggerLuaEvent(Event luaEvent, Object... args) {
 
 		this.luaEvent = luaEvent;
-		this.args = Collections.unmodifiableList(Arrays.asList(args));
+		this.args = arguments;
+		arguments.values = args;
+	}
+
+	public OnTriggerLuaEvent(Event luaEvent) {
+
+		this();
+		reset(luaEvent);
+	}
+
+	public OnTriggerLuaEvent(Event luaEvent, Object arg) {
+
+		this();
+		reset(luaEvent, arg);
+	}
+
+	public OnTriggerLuaEvent(Event luaEvent, Object arg1, Object arg2) {
+
+		this();
+		reset(luaEvent, arg1, arg2);
+	}
+
+	public OnTriggerLuaEvent() {
+		this(null, new Object[0]);
+	}
+
+	public void reset(Event luaEvent, Object... args) {
+
+		this.luaEvent = luaEvent;
+		arguments.values = args;
+		cancelled = false;
+	}
+
+	public void reset(Event luaEvent) {
+		reset(luaEvent, argumentArrays[0]);
+	}
+
+	public void reset(Event luaEvent, Object arg) {
+
+		Object[] args = argumentArrays[1];
+		args[0] = arg;
+		reset(luaEvent, args);
+	}
+
+	public void reset(Event luaEvent, Object arg1, Object arg2) {
+
+		Object[] args = argumentArrays[2];
+		args[0] = arg1;
+		args[1] = arg2;
+		reset(luaEvent, args);
+	}
+
+	/**
+	 * Returns the array of arguments the Lua event was triggered with. This is an internal method
+	 * <b>only</b> used to construct {@link LuaEvent} instances without copying the arguments.
+	 * The returned array must not be modified or referenced after the event was handled.
+	 */
+	public Object[] getArgumentArray() {
+		return arguments.values;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public void setCancelled(boolean cancelled) {
+		this.cancelled = cancelled;
 	}
 
 	@Override
 	public String getName() {
 		return "onTriggerLuaEvent";
 	}
+
+	/**
+	 * Unmodifiable list view of Lua event arguments array.
+	 */
+	private static class Arguments extends AbstractList<Object> implements RandomAccess {
+
+		private Object[] values;
+
+		@Override
+		public Object get(int index) {
+			return values[index];
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+	}
 }
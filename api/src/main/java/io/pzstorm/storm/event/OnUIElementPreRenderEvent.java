@@ -21,19 +21,29 @@ package io.pzstorm.storm.event;
 import zombie.ui.UIElement;
 
 /**
- * This event fires when an {@link UIElement} is being pre-rendered.
+ * This event fires when an {@link UIElement} is being pre-rendered. Because this event fires
+ * for every rendered UI element each frame it is a {@link PooledEvent}, which means that
+ * handlers should not keep references to the event after they return.
  *
  * @see UIElement#render()
  */
+@PooledEvent
 @SuppressWarnings({ "WeakerAccess", "unused" })
 public class OnUIElementPreRenderEvent implements ZomboidEvent {
 
-	public final UIElement element;
+	public UIElement element;
 
 	public OnUIElementPreRenderEvent(UIElement element) {
 		this.element = element;
 	}
 
+	public OnUIElementPreRenderEvent() {
+	}
+
+	public void reset(UIElement element) {
+		this.element = element;
+	}
+
 	@Override
 	public String getName() {
 		return "onUIElementPreRender";
@@ -0,0 +1,44 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+/**
+ * Defines what happens when an event is dispatched to an {@link ExecutionMode#ASYNC} method
+ * while the event worker queue is full. Set the overflow policy of a subscribed method
+ * with {@link SubscribeEvent#overflow()}.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Invoke the method on the thread that dispatched the event. This slows down the dispatching
+	 * thread until event workers catch up without ever losing events and is the default policy.
+	 */
+	CALLER_RUNS,
+
+	/**
+	 * Block the thread that dispatched the event until there is space in the queue.
+	 */
+	BLOCK,
+
+	/**
+	 * Discard the event without invoking the method. The number of discarded events
+	 * can be read with {@link StormEventDispatcher#getDroppedAsyncEventCount()}.
+	 */
+	DROP
+}
@@ -0,0 +1,48 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation indicates that instances of the annotated {@link ZomboidEvent} are reused instead of
+ * being created for every dispatch. Each thread that dispatches the event from a {@code StormHook} keeps
+ * one instance of the event which is reset with new values before each dispatch, so dispatching pooled
+ * events does not allocate memory. When the event is dispatched again while the thread is still dispatching
+ * it, for example when a handler method indirectly triggers the same event, a new instance is created instead.
+ * <p>
+ * Annotated events have to declare a {@code public} constructor without parameters used to create pooled
+ * instances, and a {@code public void reset} method for each event constructor used by hooks that takes
+ * the same parameters and assigns them to the event instance.
+ * </p><p>
+ * Because pooled instances are modified after dispatching completes, handler methods should <b>never</b>
+ * keep references to pooled events after they return. For the same reason methods subscribed to pooled
+ * events cannot be {@link ExecutionMode#ASYNC} or subscribe to an {@link EventBatch}. Such methods
+ * subscribed to a supertype of a pooled event, for example {@link ZomboidEvent}, are registered
+ * but never receive instances of the pooled event.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PooledEvent {
+
+}
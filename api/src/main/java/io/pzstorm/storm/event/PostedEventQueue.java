@@ -0,0 +1,145 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This class is an unbounded lock-free queue of events posted to be dispatched on the game thread.
+ * Any number of threads can offer events to the queue, but only the game thread polls events from it.
+ * Producers contend on a single atomic exchange of the queue tail, and count offered events in a
+ * {@link LongAdder} whose cells are spread across threads. Polling does not perform any atomic
+ * operation and only writes a counter that is read by {@link #size()}, so posting events never
+ * blocks the game thread and polling never slows down producers.
+ * <p>
+ * The maximum amount of time spent dispatching posted events every frame can be configured
+ * with {@code storm.event.postBudget} system property in microseconds.
+ * </p>
+ */
+final class PostedEventQueue {
+
+	static final String BUDGET_PROPERTY = "storm.event.postBudget";
+
+	/**
+	 * Node that was polled last. Only accessed by the consumer thread.
+	 */
+	private Node head = new Node(null);
+	private final AtomicReference<Node> tail = new AtomicReference<>(head);
+
+	/**
+	 * Number of events offered to this queue.
+	 */
+	private final LongAdder offered = new LongAdder();
+
+	/**
+	 * Number of events polled from this queue. Only written by the consumer thread.
+	 */
+	private volatile long polled;
+
+	private final long budgetNanos;
+
+	PostedEventQueue(long budgetNanos) {
+		this.budgetNanos = budgetNanos;
+	}
+
+	/**
+	 * Create queue with frame budget read from system properties.
+	 */
+	static PostedEventQueue create() {
+		return new PostedEventQueue(Long.getLong(BUDGET_PROPERTY, 2000L) * 1000L);
+	}
+
+	/**
+	 * Add given event to the tail of this queue. This method can be called from any thread.
+	 */
+	void offer(ZomboidEvent event) {
+
+		Node node = new Node(event);
+		offered.increment();
+		// linking the previous tail publishes the node to the consumer
+		tail.getAndSet(node).next = node;
+	}
+
+	/**
+	 * Remove and return the event at the head of this queue. This method must only be called
+	 * by the consumer thread. Events that are being offered concurrently may not be visible yet.
+	 *
+	 * @return event at the head of the queue or {@code null} if the queue is empty.
+	 */
+	@Nullable ZomboidEvent poll() {
+
+		Node next = head.next;
+		if (next == null) {
+			return null;
+		}
+		ZomboidEvent event = next.event;
+		next.event = null;
+		head = next;
+		polled++;
+		return event;
+	}
+
+	/**
+	 * Poll events from this queue and pass them to given consumer until the queue is empty
+	 * or the frame budget is exhausted. At least one event is consumed if the queue is not
+	 * empty, so posted events are always making progress. Events remaining in queue are
+	 * consumed the next time this method is called.
+	 *
+	 * @return number of consumed events.
+	 */
+	int drain(Consumer<ZomboidEvent> consumer) {
+
+		long deadline = System.nanoTime() + budgetNanos;
+		int consumed = 0;
+		ZomboidEvent event;
+		while ((event = poll()) != null)
+		{
+			consumer.accept(event);
+			consumed++;
+			if (System.nanoTime() - deadline >= 0) {
+				break;
+			}
+		}
+		return consumed;
+	}
+
+	/**
+	 * Returns the number of events waiting in this queue.
+	 */
+	int size() {
+
+		// events are counted as offered before they can be polled
+		long polled = this.polled;
+		return (int) (offered.sum() - polled);
+	}
+
+	private static class Node {
+
+		private volatile @Nullable Node next;
+		private @Nullable ZomboidEvent event;
+
+		private Node(@Nullable ZomboidEvent event) {
+			this.event = event;
+		}
+	}
+}
@@ -18,23 +18,36 @@
 
 package io.pzstorm.storm.event;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.lang.reflect.ParameterizedType;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.InsnList;
-import org.objectweb.asm.tree.LabelNode;
-import org.objectweb.asm.tree.MethodInsnNode;
-
-import com.google.common.collect.Sets;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
 
 import io.pzstorm.storm.logging.StormLogger;
+import io.pzstorm.storm.mod.ZomboidMod;
 
 /**
  * This class is responsible for registering event handlers and dispatching {@link ZomboidEvent} instances.
@@ -62,6 +75,42 @@ import io.pzstorm.storm.logging.StormLogger;
  * Do not mix static and instance subscribed methods. A registered handler has to have all
  * subscribed methods declared as either static or instance methods depending on the method used
  * to register the handler.
+ * <p>
+ * Subscriptions are polymorphic, which means that methods subscribed to a supertype of an event
+ * will receive all events that extend or implement that supertype. For example a method subscribed
+ * to {@code LuaEvent} will receive all Lua events, and a method subscribed to {@link ZomboidEvent}
+ * will receive every dispatched event.
+ * </p><p>
+ * Subscribed methods are invoked on the thread that dispatched the event unless they declare
+ * {@link ExecutionMode#ASYNC} mode, in which case the event is queued to be handled by a Storm
+ * event worker thread. Use {@link #getAsyncQueueDepth()} to monitor how many events are waiting
+ * to be handled by event workers. Methods that declare {@link ExecutionMode#PARALLEL} mode are invoked
+ * concurrently with other parallel methods subscribed to the same event, and dispatching returns
+ * only after all of them complete.
+ * </p><p>
+ * Methods that subscribe to an {@link EventBatch} receive all events of the batched type collected
+ * since the last batch delivery, once per event declared by {@link SubscribeEvent#flushOn()}.
+ * </p><p>
+ * Methods that subscribe to a {@link KeyedEvent} can declare a {@link SubscribeEvent#key()},
+ * in which case they are only invoked for dispatched events with matching key.
+ * </p><p>
+ * Methods subscribed to the same event are invoked in order of their {@link SubscribeEvent#priority()}
+ * and then in the order in which they were registered. When a method cancels a {@link CancellableEvent}
+ * dispatching stops and the remaining methods are not invoked.
+ * </p><p>
+ * Methods that declare a {@link DispatchRate} with {@link SubscribeEvent#interval()}, {@link SubscribeEvent#period()}
+ * or {@link SubscribeEvent#sampleRate()} keep their own schedule and are kept out of the dispatch targets of
+ * events they are not due to receive, so they cost nothing while they are idle. The schedule counts all events
+ * the method receives, including events of different classes that extend the class the method subscribes to.
+ * </p><p>
+ * Threads other than the game thread can {@link #post(ZomboidEvent)} events to be dispatched on the game
+ * thread at the start of the next game logic update, without blocking and without locking. Posted events
+ * are dispatched only by the game client, because Storm launches only the client.
+ * </p><p>
+ * Event handlers compiled with {@code SubscribeEventProcessor} on the annotation processor path
+ * have their subscribed methods validated at compile time and are registered with generated
+ * registration classes. Handlers without a generated registration class are registered with reflection.
+ * </p>
  */
 @SuppressWarnings({ "unused", "WeakerAccess" })
 public class StormEventDispatcher {
@@ -71,8 +120,185 @@ public class StormEventDispatcher {
 	 * These methods are then invoked when dispatching matching events. Event registration happens
 	 * on-demand which means that registry will only contain an event entry if at least one registered
 	 * handler contains at least one method that subscribe to that event.
+	 * <p>
+	 * Handler methods are stored in concurrent sets so that unregistering a handler method does not
+	 * require searching or copying handler methods subscribed to the same event. Note that the
+	 * registry is only modified while holding a lock on the registry.
+	 * </p>
+	 */
+	private static final Map<Class<? extends ZomboidEvent>, Set<EventHandlerMethod>> DISPATCH_REGISTRY =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Cache that maps concrete event classes to dispatch targets of all handler methods subscribed to that
+	 * class or any of its supertypes, in registration order. Entries are computed the first time an event
+	 * class is dispatched and invalidated when a handler method subscribes to the event class or its supertype.
+	 * Arrays in this cache are never modified once they are published, which means that dispatching
+	 * events does not require locking and is safe to do from any thread.
+	 */
+	private static final Map<Class<?>, DispatchTarget[]> DISPATCH_CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Cache that maps event classes to whether handler methods other than bridge methods receive them.
+	 * Entries are invalidated together with entries of {@link #DISPATCH_CACHE}.
+	 *
+	 * @see #hasSubscribedMethods(Class)
+	 */
+	private static final Map<Class<?>, Boolean> SUBSCRIBED_CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Dispatch call sites linked by {@link #bootstrapDispatch(MethodHandles.Lookup, String, MethodType, Class)}
+	 * mapped to the class of event they dispatch. Every hook site has its own call site, and all call sites
+	 * for an event class are relinked whenever a handler method subscribes to that event class or its supertype.
+	 * Note that linking and relinking call sites is always done while holding a lock on dispatch registry.
+	 */
+	private static final Map<Class<?>, List<DispatchCallSite>> DISPATCH_CALL_SITES = new ConcurrentHashMap<>();
+
+	/**
+	 * Pools of reusable event instances mapped to {@link PooledEvent} classes.
+	 */
+	private static final Map<Class<?>, EventPool<?>> EVENT_POOLS = new HashMap<>();
+
+	/**
+	 * Handler groups mapped to mods that registered handler methods in them.
+	 */
+	private static final Map<ZomboidMod, EventHandlerGroup> HANDLER_GROUPS = new ConcurrentHashMap<>();
+
+	/**
+	 * Group that handler methods registered on current thread are added to, set
+	 * while a mod is registering its event handlers.
+	 *
+	 * @see #registerModEventHandlers(ZomboidMod)
+	 */
+	private static final ThreadLocal<EventHandlerGroup> REGISTERING_GROUP = new ThreadLocal<>();
+
+	/**
+	 * Clocks that count events received by scheduled handler methods without a key, mapped to the event
+	 * class the methods subscribe to. Methods subscribed to the same class share a clock, so counting
+	 * an event costs the same no matter how many scheduled methods receive it.
+	 */
+	private static final Map<Class<?>, ScheduleClock> SCHEDULE_CLOCKS = new ConcurrentHashMap<>();
+
+	/**
+	 * Recorders that receive every dispatched event before any handler method.
+	 *
+	 * @see #subscribeEventRecorder(Consumer)
+	 */
+	private static final List<Consumer<ZomboidEvent>> EVENT_RECORDERS = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Events posted from any thread that are waiting to be dispatched on the game thread.
+	 */
+	private static final PostedEventQueue POSTED_EVENTS = PostedEventQueue.create();
+
+	/**
+	 * Used to mark the order in which handler methods were registered.
+	 */
+	private static final AtomicInteger REGISTERED_HANDLER_METHODS = new AtomicInteger();
+
+	/**
+	 * Incremented every time the set of enabled handler methods in dispatch registry changes.
+	 *
+	 * @see #getRegistryVersion()
+	 */
+	private static final AtomicInteger REGISTRY_VERSION = new AtomicInteger();
+
+	/**
+	 * Suffix of registration classes generated by {@code SubscribeEventProcessor} for event handler classes.
+	 */
+	public static final String GENERATED_REGISTRATION_SUFFIX = "_EventRegistration";
+
+	private static final DispatchTarget[] NO_DISPATCH_TARGETS = new DispatchTarget[0];
+
+	/**
+	 * Order in which handler methods are invoked, which is by priority and then by registration order.
+	 */
+	private static final Comparator<EventHandlerMethod> INVOCATION_ORDER =
+			Comparator.<EventHandlerMethod, EventPriority>comparing(m -> m.priority).thenComparingInt(m -> m.order);
+
+	/**
+	 * Maximum number of handler methods that will be chained into a single method handle. Call sites
+	 * for events with more subscribers invoke the handler methods in a loop instead, as deeper method
+	 * handle trees are no longer inlined by the JIT compiler and would only add overhead.
+	 */
+	private static final int MAX_CHAINED_HANDLERS = 8;
+
+	/**
+	 * Bootstrap method used by dispatch call sites created with {@link #callDispatchEvent(List)}.
+	 */
+	private static final Handle DISPATCH_BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC,
+			"io/pzstorm/storm/event/StormEventDispatcher", "bootstrapDispatch",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;" +
+					"Ljava/lang/invoke/MethodType;Ljava/lang/Class;)Ljava/lang/invoke/CallSite;", false
+	);
+
+	/**
+	 * Bootstrap method used by guarded dispatch call sites created with {@link #callDispatchEvent(List, Handle)}.
+	 */
+	private static final Handle GUARDED_DISPATCH_BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC,
+			"io/pzstorm/storm/event/StormEventDispatcher", "bootstrapDispatch",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;" +
+					"Ljava/lang/Class;Ljava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;", false
+	);
+
+	/**
+	 * Represents {@link #dispatchEvent(ZomboidEvent)} method.
+	 */
+	private static final MethodHandle DISPATCH_EVENT;
+
+	/**
+	 * Represents {@link #dispatchEvent(DispatchTarget[], ZomboidEvent)} method.
+	 */
+	private static final MethodHandle DISPATCH_EVENT_TO_HANDLERS;
+
+	/**
+	 * Represents {@link #dispatchCancellableEvent(DispatchTarget[], ZomboidEvent)} method.
 	 */
-	private static final Map<Class<? extends ZomboidEvent>, Set<EventHandlerMethod>> DISPATCH_REGISTRY = new HashMap<>();
+	private static final MethodHandle DISPATCH_CANCELLABLE_EVENT_TO_HANDLERS;
+
+	/**
+	 * Represents {@link DispatchTarget#invoke(ZomboidEvent)} method.
+	 */
+	private static final MethodHandle INVOKE_DISPATCH_TARGET;
+
+	/**
+	 * Represents {@link CancellableEvent#isCancelled()} method adapted to {@code (ZomboidEvent)boolean} type.
+	 */
+	private static final MethodHandle IS_EVENT_CANCELLED;
+
+	/**
+	 * Represents {@link EventPool#acquire()} method.
+	 */
+	private static final MethodHandle ACQUIRE_POOLED_EVENT;
+
+	/**
+	 * Represents {@link EventPool#release(ZomboidEvent)} method.
+	 */
+	private static final MethodHandle RELEASE_POOLED_EVENT;
+
+	static
+	{
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			DISPATCH_EVENT = lookup.findStatic(StormEventDispatcher.class, "dispatchEvent",
+					MethodType.methodType(void.class, ZomboidEvent.class));
+			DISPATCH_EVENT_TO_HANDLERS = lookup.findStatic(StormEventDispatcher.class, "dispatchEvent",
+					MethodType.methodType(void.class, DispatchTarget[].class, ZomboidEvent.class));
+			DISPATCH_CANCELLABLE_EVENT_TO_HANDLERS = lookup.findStatic(StormEventDispatcher.class,
+					"dispatchCancellableEvent", MethodType.methodType(void.class, DispatchTarget[].class, ZomboidEvent.class));
+			INVOKE_DISPATCH_TARGET = lookup.findVirtual(DispatchTarget.class, "invoke",
+					MethodType.methodType(void.class, ZomboidEvent.class));
+			IS_EVENT_CANCELLED = lookup.findVirtual(CancellableEvent.class, "isCancelled",
+					MethodType.methodType(boolean.class)).asType(MethodType.methodType(boolean.class, ZomboidEvent.class));
+			ACQUIRE_POOLED_EVENT = lookup.findVirtual(EventPool.class, "acquire",
+					MethodType.methodType(ZomboidEvent.class));
+			RELEASE_POOLED_EVENT = lookup.findVirtual(EventPool.class, "release",
+					MethodType.methodType(void.class, ZomboidEvent.class));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
 	/**
 	 * Internally register given method for specified event handler.
@@ -80,14 +306,20 @@ public class StormEventDispatcher {
 	 * @param method {@code Method} to register with event handler.
 	 * @param handler event handler to register along with {@code Method}. It can be either an
 	 * 		instance of an object or a {@code Class} that represents the handler.
+	 * @param weak whether the method should only keep a weak reference to the handler.
+	 *
+	 * @return subscription of the registered method or {@code null} if the method is not subscribed.
 	 *
 	 * @throws IllegalArgumentException if the handler parameter is {@code null} and given method is
 	 * 		<i>not</i> declared as {@code static}, handler is <i>not</i> {@code null} and given method is
 	 * 		declared as {@code static}, if the given {@code Method} does not have exactly one argument
-	 * 		or the argument is not an instance of {@link ZomboidEvent}.
+	 * 		or the argument is not an instance of {@link ZomboidEvent} or {@link EventBatch}, or the method
+	 * 		is declared as {@link ExecutionMode#ASYNC} and subscribes to a {@link PooledEvent}, or the
+	 * 		method declares an invalid {@link DispatchRate}.
 	 */
 	@SuppressWarnings("unchecked")
-	private static void registerEventHandlerMethod(Method method, @Nullable Object handler) {
+	private static @Nullable EventSubscription registerEventHandlerMethod(Method method,
+																		  @Nullable Object handler, boolean weak) {
 
 		if (method.isAnnotationPresent(SubscribeEvent.class))
 		{
@@ -95,7 +327,7 @@ public class StormEventDispatcher {
 			if (parameters.length == 1)
 			{
 				Class<?> cEventClass = parameters[0];
-				if (ZomboidEvent.class.isAssignableFrom(cEventClass))
+				if (ZomboidEvent.class.isAssignableFrom(cEventClass) || cEventClass == EventBatch.class)
 				{
 					if (handler == null)
 					{
@@ -114,14 +346,39 @@ public class StormEventDispatcher {
 								"or use a different context to register the handler. See StormEventDispatcher " +
 								"class documentation for more information. Method: " + method.getName());
 					}
-					Class<? extends ZomboidEvent> eventClass = (Class<? extends ZomboidEvent>) cEventClass;
-					EventHandlerMethod eventHandlerMethod = new EventHandlerMethod(method, handler);
+					SubscribeEvent annotation = method.getAnnotation(SubscribeEvent.class);
+					DispatchRate rate = DispatchRate.of(annotation.interval(), annotation.period(), annotation.sampleRate());
+					AtomicReference<EventSubscription> subscription = new AtomicReference<>();
+					Consumer<?> invoker = weak && handler != null ?
+							createWeakInvoker(method, handler, subscription) : createInvoker(method, handler);
+
+					if (cEventClass == EventBatch.class)
+					{
+						java.lang.reflect.Type parameterType = method.getGenericParameterTypes()[0];
+						java.lang.reflect.Type batchedType = parameterType instanceof ParameterizedType ?
+								((ParameterizedType) parameterType).getActualTypeArguments()[0] : null;
 
-					Set<EventHandlerMethod> handlerMethods = DISPATCH_REGISTRY.get(eventClass);
-					if (handlerMethods == null) {
-						DISPATCH_REGISTRY.put(eventClass, Sets.newHashSet(eventHandlerMethod));
+						if (!(batchedType instanceof Class) ||
+								!ZomboidEvent.class.isAssignableFrom((Class<?>) batchedType))
+						{
+							String text = "Invalid arguments for method %s. " +
+									"Expected EventBatch of ZomboidEvent type but found %s";
+							throw new IllegalArgumentException(String.format(
+									text, method.getName(), parameterType.getTypeName()));
+						}
+						subscription.set(subscribeBatchHandlerMethod(method.getName(),
+								(Class<ZomboidEvent>) batchedType, annotation.flushOn(), annotation.batchCapacity(),
+								annotation.mode(), annotation.priority(), rate, annotation.key(),
+								(Consumer<EventBatch<ZomboidEvent>>) invoker
+						));
 					}
-					else handlerMethods.add(eventHandlerMethod);
+					else {
+						subscription.set(subscribeHandlerMethod(method.getName(),
+								(Class<ZomboidEvent>) cEventClass, annotation.mode(), annotation.overflow(),
+								annotation.priority(), rate, annotation.key(), (Consumer<ZomboidEvent>) invoker
+						));
+					}
+					return subscription.get();
 				}
 				else {
 					String className = handler instanceof Class ? ((Class<?>) handler).getName() :
@@ -140,6 +397,341 @@ public class StormEventDispatcher {
 				throw new IllegalArgumentException(String.format(text, method.getName(), className, parameters.length));
 			}
 		}
+		return null;
+	}
+
+	/**
+	 * Subscribe handler method represented by given invoker to events of given class. This is an internal method
+	 * <b>only</b> called by this class and by registration classes generated by {@code SubscribeEventProcessor},
+	 * which validates handler methods at compile time and creates invokers that call them directly.
+	 * The method is added to the handler group of the mod that is currently registering event handlers.
+	 *
+	 * @param name name of the handler method.
+	 * @param eventClass {@code Class} of events the method subscribes to.
+	 * @param mode value of {@link SubscribeEvent#mode()}.
+	 * @param overflow value of {@link SubscribeEvent#overflow()}.
+	 * @param priority value of {@link SubscribeEvent#priority()}.
+	 * @param rate rate at which the method receives events.
+	 * @param key value of {@link SubscribeEvent#key()}.
+	 * @param invoker invoker that calls the handler method.
+	 * @param <T> type of events the method subscribes to.
+	 *
+	 * @return subscription that can be used to unregister the method.
+	 *
+	 * @throws IllegalArgumentException if the method is declared as {@link ExecutionMode#ASYNC} and subscribes
+	 * 		to a {@link PooledEvent}, or the key is not valid for the event class.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends ZomboidEvent> EventSubscription subscribeHandlerMethod(String name, Class<T> eventClass,
+			ExecutionMode mode, OverflowPolicy overflow, EventPriority priority, DispatchRate rate,
+			String key, Consumer<T> invoker) {
+
+		if (eventClass.isAnnotationPresent(PooledEvent.class) && mode == ExecutionMode.ASYNC)
+		{
+			throw new IllegalArgumentException("Tried to register ASYNC event handler method " +
+					"that subscribes to pooled event. Pooled events are reused after dispatching " +
+					"so they can only be handled on the dispatching thread. Method: " + name);
+		}
+		Object eventKey = resolveEventKey(name, eventClass, key);
+		return addHandlerMethods(new EventHandlerMethod(name, eventClass, (Consumer<ZomboidEvent>) invoker,
+				mode, overflow, priority, rate, eventKey, false, false, REGISTERING_GROUP.get()));
+	}
+
+	/**
+	 * Subscribe bridge method represented by given invoker to events of given class. Bridge methods
+	 * dispatch events they receive as other events, and are not counted by {@link #hasSubscribedMethods(Class)},
+	 * so that hooks can skip dispatching events that would only be received by bridge methods. Otherwise
+	 * bridge methods receive events as {@link ExecutionMode#SYNC} methods with {@link EventPriority#NORMAL}
+	 * priority. This is an internal method <b>only</b> called by {@code StormEventHandler}.
+	 *
+	 * @param name name of the bridge method.
+	 * @param eventClass {@code Class} of events the method subscribes to.
+	 * @param invoker invoker that calls the bridge method.
+	 * @param <T> type of events the method subscribes to.
+	 *
+	 * @return subscription that can be used to unregister the method.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends ZomboidEvent> EventSubscription subscribeBridgeMethod(String name,
+			Class<T> eventClass, Consumer<T> invoker) {
+
+		return addHandlerMethods(new EventHandlerMethod(name, eventClass, (Consumer<ZomboidEvent>) invoker,
+				ExecutionMode.SYNC, OverflowPolicy.CALLER_RUNS, EventPriority.NORMAL,
+				DispatchRate.EVERY_EVENT, null, false, true, null));
+	}
+
+	/**
+	 * Subscribe handler method represented by given invoker to batches of events of given class. Events of
+	 * batched type are collected into a batch reserved for the method, which is delivered to the method and
+	 * cleared whenever the flush event is dispatched and the method is due to receive it, so declaring a dispatch
+	 * rate limits how often batches are delivered. This is an internal method <b>only</b> called by this
+	 * class and by registration classes generated by {@code SubscribeEventProcessor}.
+	 *
+	 * @param name name of the handler method.
+	 * @param eventClass {@code Class} of batched events.
+	 * @param flushOn value of {@link SubscribeEvent#flushOn()}.
+	 * @param capacity value of {@link SubscribeEvent#batchCapacity()}.
+	 * @param mode value of {@link SubscribeEvent#mode()}.
+	 * @param priority value of {@link SubscribeEvent#priority()}.
+	 * @param rate rate at which the method receives batches.
+	 * @param key value of {@link SubscribeEvent#key()}.
+	 * @param invoker invoker that calls the handler method.
+	 * @param <T> type of batched events.
+	 *
+	 * @return subscription that can be used to unregister the method.
+	 *
+	 * @throws IllegalArgumentException if the batched event type is a {@link PooledEvent}, the method
+	 * 		is declared as {@link ExecutionMode#ASYNC} or the key is not valid for the event class.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends ZomboidEvent> EventSubscription subscribeBatchHandlerMethod(String name,
+			Class<T> eventClass, Class<? extends ZomboidEvent> flushOn, int capacity, ExecutionMode mode,
+			EventPriority priority, DispatchRate rate, String key, Consumer<EventBatch<T>> invoker) {
+
+		if (eventClass.isAnnotationPresent(PooledEvent.class))
+		{
+			throw new IllegalArgumentException("Tried to register event handler method that subscribes to " +
+					"EventBatch of pooled event. Pooled events are reused after dispatching so they " +
+					"cannot be collected into batches. Method: " + name);
+		}
+		if (mode == ExecutionMode.ASYNC)
+		{
+			throw new IllegalArgumentException("Tried to register ASYNC event handler method that " +
+					"subscribes to EventBatch. Batches are reused after delivery so they can only be " +
+					"handled on the dispatching thread. Method: " + name);
+		}
+		Object eventKey = resolveEventKey(name, eventClass, key);
+		EventBatch<T> batch = new EventBatch<>(capacity);
+
+		EventHandlerGroup group = REGISTERING_GROUP.get();
+		return addHandlerMethods(
+				new EventHandlerMethod(name, eventClass, batch::add,
+						ExecutionMode.SYNC, OverflowPolicy.CALLER_RUNS, priority, DispatchRate.EVERY_EVENT, eventKey, true, false, group),
+				new EventHandlerMethod(name, flushOn, e -> batch.flush(invoker),
+						mode, OverflowPolicy.CALLER_RUNS, priority, rate, null, false, false, group)
+		);
+	}
+
+	/**
+	 * Resolve key declared by {@link SubscribeEvent#key()} of handler method with given name. The key
+	 * is converted to the key type declared by {@link KeyedEvent#getKey()} of event class.
+	 *
+	 * @param name name of the handler method.
+	 * @param eventClass {@code Class} of event the method subscribes to.
+	 * @param key value of {@link SubscribeEvent#key()}.
+	 *
+	 * @return key of the subscribed method or {@code null} if the method does not declare a key.
+	 *
+	 * @throws IllegalArgumentException if the event class does not implement {@link KeyedEvent}
+	 * 		or the key cannot be converted to the key type of the event.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static @Nullable Object resolveEventKey(String name, Class<?> eventClass, String key) {
+
+		if (key.isEmpty()) {
+			return null;
+		}
+		if (!KeyedEvent.class.isAssignableFrom(eventClass))
+		{
+			String text = "Tried to register event handler method %s with key '%s' for event %s that does not " +
+					"implement KeyedEvent. Either remove the key or subscribe to a different event.";
+			throw new IllegalArgumentException(String.format(text, name, key, eventClass.getName()));
+		}
+		try {
+			Class<?> keyType = eventClass.getMethod("getKey").getReturnType();
+			if (keyType == Integer.class) {
+				return Integer.valueOf(key);
+			}
+			else if (keyType.isEnum()) {
+				return Enum.valueOf((Class<? extends Enum>) keyType, key);
+			}
+			else return key;
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (IllegalArgumentException e)
+		{
+			String text = "Unable to convert key '%s' of event handler method %s to key type of event %s";
+			throw new IllegalArgumentException(String.format(text, key, name, eventClass.getName()), e);
+		}
+	}
+
+	/**
+	 * Add given handler methods to dispatch registry as subscribed to their event classes.
+	 *
+	 * @return subscription that removes the handler methods from dispatch registry when unregistered.
+	 */
+	private static EventSubscription addHandlerMethods(EventHandlerMethod... handlerMethods) {
+
+		synchronized (DISPATCH_REGISTRY)
+		{
+			for (EventHandlerMethod handlerMethod : handlerMethods)
+			{
+				DISPATCH_REGISTRY.computeIfAbsent(handlerMethod.eventClass,
+						c -> ConcurrentHashMap.newKeySet()).add(handlerMethod);
+
+				invalidateDispatchCache(handlerMethod.eventClass);
+			}
+		}
+		return new EventSubscription(handlerMethods[0].group, () -> removeHandlerMethods(handlerMethods));
+	}
+
+	/**
+	 * Subscribe given recorder to all dispatched events. Recorders are not handler methods, and receive
+	 * each event before it is dispatched to any dispatch target, which means they observe events exactly
+	 * as they were constructed, before handlers with any priority or key can modify or cancel them.
+	 * While a recorder is subscribed all events are treated as subscribed by {@link #hasSubscribedMethods(Class)},
+	 * so that hooks construct and dispatch events even when no handler method receives them.
+	 * This is an internal method <b>only</b> called by {@code EventTraceRecorder}.
+	 *
+	 * @param recorder consumer that records dispatched events.
+	 *
+	 * @return subscription that can be used to unsubscribe the recorder.
+	 */
+	public static EventSubscription subscribeEventRecorder(Consumer<ZomboidEvent> recorder) {
+
+		synchronized (DISPATCH_REGISTRY)
+		{
+			EVENT_RECORDERS.add(recorder);
+			invalidateDispatchCache(ZomboidEvent.class);
+		}
+		return new EventSubscription(null, () -> {
+			synchronized (DISPATCH_REGISTRY)
+			{
+				EVENT_RECORDERS.remove(recorder);
+				invalidateDispatchCache(ZomboidEvent.class);
+			}
+		});
+	}
+
+	/**
+	 * Remove given handler methods from dispatch registry. Each handler method is removed from the set of
+	 * methods subscribed to its event class directly, so the cost of removing a handler method does not depend
+	 * on the number of registered methods, apart from rebuilding dispatch targets of affected events.
+	 */
+	private static void removeHandlerMethods(EventHandlerMethod[] handlerMethods) {
+
+		synchronized (DISPATCH_REGISTRY)
+		{
+			for (EventHandlerMethod handlerMethod : handlerMethods)
+			{
+				Set<EventHandlerMethod> subscribed = DISPATCH_REGISTRY.get(handlerMethod.eventClass);
+				if (subscribed != null && subscribed.remove(handlerMethod))
+				{
+					if (subscribed.isEmpty()) {
+						DISPATCH_REGISTRY.remove(handlerMethod.eventClass);
+					}
+					invalidateDispatchCache(handlerMethod.eventClass);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Enable or disable handler methods in given group and relink dispatch call sites of all events
+	 * the methods are subscribed to. This is done while holding a lock on dispatch registry so that
+	 * changing the state of a group never interleaves with registering or unregistering handler methods.
+	 *
+	 * @see EventHandlerGroup#setEnabled(boolean)
+	 */
+	static void setHandlerGroupEnabled(EventHandlerGroup group, boolean enabled) {
+
+		synchronized (DISPATCH_REGISTRY)
+		{
+			if (group.enabled != enabled)
+			{
+				group.enabled = enabled;
+				Set<Class<?>> eventClasses = new HashSet<>();
+				for (Map.Entry<Class<? extends ZomboidEvent>, Set<EventHandlerMethod>> entry : DISPATCH_REGISTRY.entrySet())
+				{
+					for (EventHandlerMethod handlerMethod : entry.getValue())
+					{
+						if (handlerMethod.group == group) {
+							eventClasses.add(entry.getKey());
+						}
+					}
+				}
+				eventClasses.forEach(StormEventDispatcher::invalidateDispatchCache);
+			}
+		}
+	}
+
+	/**
+	 * Returns handler group of given mod, creating the group if it does not exist yet. Handler methods
+	 * are added to the group when registered by the mod in {@link ZomboidMod#registerEventHandlers()}.
+	 *
+	 * @param mod {@code ZomboidMod} to get the handler group for.
+	 *
+	 * @see #registerModEventHandlers(ZomboidMod)
+	 */
+	public static EventHandlerGroup getHandlerGroup(ZomboidMod mod) {
+		return HANDLER_GROUPS.computeIfAbsent(mod, m -> new EventHandlerGroup(m.getClass().getName()));
+	}
+
+	/**
+	 * Call {@link ZomboidMod#registerEventHandlers()} for given mod and add all handler methods registered
+	 * by the mod on current thread to the handler group of the mod. This allows handler methods registered
+	 * by the mod to be enabled, disabled or unregistered together at runtime.
+	 *
+	 * @param mod {@code ZomboidMod} whose event handlers to register.
+	 *
+	 * @return handler group of the given mod.
+	 */
+	public static EventHandlerGroup registerModEventHandlers(ZomboidMod mod) {
+
+		EventHandlerGroup group = getHandlerGroup(mod);
+		EventHandlerGroup previous = REGISTERING_GROUP.get();
+
+		REGISTERING_GROUP.set(group);
+		try {
+			mod.registerEventHandlers();
+		}
+		finally {
+			REGISTERING_GROUP.set(previous);
+		}
+		return group;
+	}
+
+	/**
+	 * Register given event handler with registration class generated by {@code SubscribeEventProcessor}
+	 * when the handler class was compiled. Generated registration classes subscribe handler methods
+	 * without scanning the handler class with reflection or validating the methods at runtime.
+	 *
+	 * @param handlerClass {@code Class} of the event handler to register.
+	 * @param handler instance of the event handler or {@code null} if registering static methods.
+	 *
+	 * @return subscription of the registered event handler, or {@code null} if there is no generated
+	 * 		registration class for the event handler class or it does not support given context.
+	 */
+	private static @Nullable EventSubscription registerGeneratedEventHandler(Class<?> handlerClass, @Nullable Object handler) {
+
+		String registrationClassName = handlerClass.getName().replace('$', '_') + GENERATED_REGISTRATION_SUFFIX;
+		try {
+			Class<?> registrationClass = Class.forName(registrationClassName, true, handlerClass.getClassLoader());
+			Object subscription;
+			if (handler != null) {
+				subscription = registrationClass.getMethod("registerEventHandler", handlerClass).invoke(null, handler);
+			}
+			else subscription = registrationClass.getMethod("registerEventHandler").invoke(null);
+
+			StormLogger.debug("Registered event handler with generated class " + registrationClassName);
+			return (EventSubscription) subscription;
+		}
+		catch (ClassNotFoundException | NoSuchMethodException e) {
+			return null;
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to access generated class " + registrationClassName, e);
+		}
+		catch (InvocationTargetException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException("Unable to register event handler " + handlerClass.getName(), cause);
+		}
 	}
 
 	/**
@@ -147,20 +739,25 @@ public class StormEventDispatcher {
 	 * {@code Class} to dispatch registry. The registered methods will then be called by dispatched whenever
 	 * an event they are subscribed to fires. Note that the methods have to be properly defined see
 	 * {@link StormEventDispatcher} class documentation for more information.
+	 * <p>
+	 * When the handler class was compiled with {@code SubscribeEventProcessor} the methods are registered
+	 * with the generated registration class, otherwise they are found and validated with reflection.
+	 * </p>
 	 *
 	 * @param handlerClass {@code Class} of the event handler to register.
 	 *
+	 * @return subscription that can be used to unregister all methods of the event handler.
+	 *
 	 * @throws IllegalArgumentException if any subscribing method declared in handler is <i>not</i> declared as
 	 *        {@code static}, if the any subscribing method does not have exactly one argument
 	 * 		or the argument is not an instance of {@link ZomboidEvent}.
 	 * @see #registerEventHandler(Object)
 	 */
-	public static void registerEventHandler(Class<?> handlerClass) {
+	public static EventSubscription registerEventHandler(Class<?> handlerClass) {
 
 		StormLogger.debug("Registering event handler for class " + handlerClass.getName());
-		for (Method method : handlerClass.getMethods()) {
-			registerEventHandlerMethod(method, null);
-		}
+		EventSubscription subscription = registerGeneratedEventHandler(handlerClass, null);
+		return subscription != null ? subscription : registerEventHandlerMethods(handlerClass, null, false);
 	}
 
 	/**
@@ -168,26 +765,81 @@ public class StormEventDispatcher {
 	 * object instance to dispatch registry. The registered methods will then be called by dispatched whenever
 	 * an event they are subscribed to fires. Note that the methods have to be properly defined see
 	 * {@link StormEventDispatcher} class documentation for more information.
+	 * <p>
+	 * When the handler class was compiled with {@code SubscribeEventProcessor} the methods are registered
+	 * with the generated registration class, otherwise they are found and validated with reflection.
+	 * </p>
 	 *
 	 * @param handler instance of the event handler to register.
 	 *
+	 * @return subscription that can be used to unregister all methods of the event handler.
+	 *
 	 * @throws IllegalArgumentException if any subscribing method declared in handler is declared as
 	 *        {@code static}, if the any subscribing method does not have exactly one argument
 	 * 		or the argument is not an instance of {@link ZomboidEvent}.
 	 * @see #registerEventHandler(Class)
+	 * @see #registerWeakEventHandler(Object)
 	 */
-	public static void registerEventHandler(Object handler) {
+	public static EventSubscription registerEventHandler(Object handler) {
 
 		StormLogger.debug("Registering event handler for instance of class " + handler.getClass().getName());
-		for (Method method : handler.getClass().getMethods()) {
-			registerEventHandlerMethod(method, handler);
+		EventSubscription subscription = registerGeneratedEventHandler(handler.getClass(), handler);
+		return subscription != null ? subscription : registerEventHandlerMethods(handler.getClass(), handler, false);
+	}
+
+	/**
+	 * Register all <b>instance</b> methods subscribed with {@link SubscribeEvent} annotation in the given
+	 * object instance to dispatch registry, keeping only a weak reference to the instance. This works the same
+	 * as {@link #registerEventHandler(Object)} except that registered methods do not prevent the handler
+	 * from being garbage collected. Once the handler is collected its methods are unregistered
+	 * the next time an event they are subscribed to is dispatched.
+	 *
+	 * @param handler instance of the event handler to register.
+	 *
+	 * @return subscription that can be used to unregister all methods of the event handler.
+	 *
+	 * @throws IllegalArgumentException if any subscribing method declared in handler is declared as
+	 *        {@code static}, if the any subscribing method does not have exactly one argument
+	 * 		or the argument is not an instance of {@link ZomboidEvent}.
+	 */
+	public static EventSubscription registerWeakEventHandler(Object handler) {
+
+		StormLogger.debug("Registering weak event handler for instance of class " + handler.getClass().getName());
+		return registerEventHandlerMethods(handler.getClass(), handler, true);
+	}
+
+	/**
+	 * Find and register all subscribed methods declared in given event handler class with reflection.
+	 *
+	 * @return subscription that represents all registered methods.
+	 */
+	private static EventSubscription registerEventHandlerMethods(Class<?> handlerClass,
+																 @Nullable Object handler, boolean weak) {
+
+		List<EventSubscription> subscriptions = new ArrayList<>();
+		for (Method method : handlerClass.getMethods())
+		{
+			EventSubscription subscription = registerEventHandlerMethod(method, handler, weak);
+			if (subscription != null) {
+				subscriptions.add(subscription);
+			}
 		}
+		return EventSubscription.of(subscriptions.toArray(new EventSubscription[0]));
 	}
 
 	/**
 	 * Create and return a list of instructions that calls {@link #dispatchEvent(ZomboidEvent)} method.
 	 * This is a convenience method intended to be used <b>only</b> by {@code StormHook} implementations to
 	 * get a list of instructions that represents a dispatch call for given event.
+	 * <p>
+	 * When given instructions follow the usual {@code NEW}, {@code DUP}, <i>arguments</i>, {@code INVOKESPECIAL}
+	 * pattern only the instructions that load constructor arguments are kept, and construction is moved
+	 * to an {@code invokedynamic} call site linked by {@link #bootstrapDispatch(MethodHandles.Lookup, String,
+	 * MethodType, Class)}. The call site is bound directly to handler methods subscribed to the event and
+	 * does nothing when there are no subscribers, so events nobody subscribes to are never allocated.
+	 * Doing this in the call site instead of with a conditional jump means that no stack map frames have
+	 * to be added to the hooked method.
+	 * </p>
 	 *
 	 * @param eventConstructorInsn list of instructions that represent constructing a new
 	 *        {@link ZomboidEvent} instance and adding the result to the stack. These instructions
@@ -196,58 +848,1327 @@ public class StormEventDispatcher {
 	 * @see #dispatchEvent(ZomboidEvent)
 	 */
 	public static InsnList callDispatchEvent(List<AbstractInsnNode> eventConstructorInsn) {
-
-		InsnList result = new InsnList();
-		if (!LabelNode.class.isAssignableFrom(eventConstructorInsn.get(0).getClass())) {
-			result.add(new LabelNode());
-		}
-		for (AbstractInsnNode constructorInsn : eventConstructorInsn) {
-			result.add(constructorInsn);
-		}
-		result.add(new MethodInsnNode(
-				Opcodes.INVOKESTATIC, "io/pzstorm/storm/event/StormEventDispatcher",
-				"dispatchEvent", "(Lio/pzstorm/storm/event/ZomboidEvent;)V"
-		));
-		return result;
+		return callDispatchEvent(eventConstructorInsn, false, null);
 	}
 
 	/**
-	 * Dispatch the given event to all methods registered in dispatch registry. This is an internal
-	 * method <b>only</b> called by {@code StormHook} implementations installed in game code.
+	 * Create and return a list of instructions that calls {@link #dispatchEvent(ZomboidEvent)} method
+	 * only when given dispatch guard returns {@code true}. The guard is a {@code static} method that
+	 * returns {@code boolean} and accepts the leading parameters of the event constructor. It is called
+	 * with constructor arguments before the event is constructed, which lets hooks skip constructing
+	 * and dispatching events without adding conditional jumps to the hooked method. Note that
+	 * the guard is never called when there are no methods subscribed to the event.
 	 *
-	 * @param event {@link ZomboidEvent} to dispatch.
-	 * @see #callDispatchEvent(List)
-	 */
-	public static void dispatchEvent(ZomboidEvent event) {
-
-		Set<EventHandlerMethod> handlerMethods = DISPATCH_REGISTRY.get(event.getClass());
-		if (handlerMethods != null)
+	 * @param eventConstructorInsn list of instructions that represent constructing a new
+	 *        {@link ZomboidEvent} instance and adding the result to the stack. These instructions
+	 * 		will be <i>transferred</i> to the start of the resulting instruction list.
+	 * @param dispatchGuard handle of the {@code static} method that decides whether to dispatch the event.
+	 *
+	 * @throws IllegalArgumentException if given instructions do not follow the {@code NEW}, {@code DUP},
+	 * 		<i>arguments</i>, {@code INVOKESPECIAL} pattern described in {@link #callDispatchEvent(List)}.
+	 */
+	public static InsnList callDispatchEvent(List<AbstractInsnNode> eventConstructorInsn, Handle dispatchGuard) {
+		return callDispatchEvent(eventConstructorInsn, false, dispatchGuard);
+	}
+
+	/**
+	 * Create and return a list of instructions that calls {@link #dispatchCancellableEvent(CancellableEvent)}
+	 * method and leaves a {@code boolean} on the stack, which is {@code true} if the event was cancelled.
+	 * Hooks can use the result to skip the game code that triggered the event. Instructions are created
+	 * the same way as described in {@link #callDispatchEvent(List)}.
+	 *
+	 * @param eventConstructorInsn list of instructions that represent constructing a new
+	 *        {@link CancellableEvent} instance and adding the result to the stack. These instructions
+	 * 		will be <i>transferred</i> to the start of the resulting instruction list.
+	 *
+	 * @see #dispatchCancellableEvent(CancellableEvent)
+	 */
+	public static InsnList callDispatchCancellableEvent(List<AbstractInsnNode> eventConstructorInsn) {
+		return callDispatchEvent(eventConstructorInsn, true, null);
+	}
+
+	/**
+	 * Create and return a list of instructions that calls {@link #dispatchCancellableEvent(CancellableEvent)}
+	 * method only when given dispatch guard returns {@code true}, and leaves a {@code boolean} on the stack
+	 * which is {@code true} if the event was dispatched and cancelled. Instructions are created the same
+	 * way as described in {@link #callDispatchEvent(List, Handle)}.
+	 *
+	 * @param eventConstructorInsn list of instructions that represent constructing a new
+	 *        {@link CancellableEvent} instance and adding the result to the stack. These instructions
+	 * 		will be <i>transferred</i> to the start of the resulting instruction list.
+	 * @param dispatchGuard handle of the {@code static} method that decides whether to dispatch the event.
+	 *
+	 * @throws IllegalArgumentException if given instructions do not follow the {@code NEW}, {@code DUP},
+	 * 		<i>arguments</i>, {@code INVOKESPECIAL} pattern described in {@link #callDispatchEvent(List)}.
+	 */
+	public static InsnList callDispatchCancellableEvent(List<AbstractInsnNode> eventConstructorInsn,
+														Handle dispatchGuard) {
+		return callDispatchEvent(eventConstructorInsn, true, dispatchGuard);
+	}
+
+	private static InsnList callDispatchEvent(List<AbstractInsnNode> eventConstructorInsn,
+											  boolean cancellable, @Nullable Handle dispatchGuard) {
+
+		InsnList result = new InsnList();
+		if (!LabelNode.class.isAssignableFrom(eventConstructorInsn.get(0).getClass())) {
+			result.add(new LabelNode());
+		}
+		int first = 0, last = eventConstructorInsn.size() - 1;
+		while (first < last && eventConstructorInsn.get(first) instanceof LabelNode) {
+			result.add(eventConstructorInsn.get(first++));
+		}
+		AbstractInsnNode newInsn = eventConstructorInsn.get(first);
+		AbstractInsnNode dupInsn = eventConstructorInsn.get(Math.min(first + 1, last));
+		AbstractInsnNode initInsn = eventConstructorInsn.get(last);
+
+		if (newInsn.getOpcode() == Opcodes.NEW && dupInsn.getOpcode() == Opcodes.DUP &&
+				initInsn.getOpcode() == Opcodes.INVOKESPECIAL && ((MethodInsnNode) initInsn).name.equals("<init>"))
 		{
-			for (EventHandlerMethod method : handlerMethods) {
-				method.invoke(event);
+			for (AbstractInsnNode argumentInsn : eventConstructorInsn.subList(first + 2, last)) {
+				result.add(argumentInsn);
 			}
+			// constructor descriptor returns void which matches dispatch call site descriptor
+			String descriptor = ((MethodInsnNode) initInsn).desc;
+			if (cancellable) {
+				descriptor = Type.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.getArgumentTypes(descriptor));
+			}
+			Type eventType = Type.getObjectType(((TypeInsnNode) newInsn).desc);
+			if (dispatchGuard != null)
+			{
+				result.add(new InvokeDynamicInsnNode("dispatchEvent", descriptor,
+						GUARDED_DISPATCH_BOOTSTRAP, eventType, dispatchGuard));
+			}
+			else result.add(new InvokeDynamicInsnNode("dispatchEvent", descriptor, DISPATCH_BOOTSTRAP, eventType));
+		}
+		else if (dispatchGuard != null) {
+			throw new IllegalArgumentException("Dispatch guard can only be used when constructing events with " +
+					"NEW, DUP, arguments and INVOKESPECIAL instructions");
+		}
+		else {
+			for (AbstractInsnNode constructorInsn : eventConstructorInsn.subList(first, last + 1)) {
+				result.add(constructorInsn);
+			}
+			if (cancellable)
+			{
+				result.add(new MethodInsnNode(
+						Opcodes.INVOKESTATIC, "io/pzstorm/storm/event/StormEventDispatcher",
+						"dispatchCancellableEvent", "(Lio/pzstorm/storm/event/CancellableEvent;)Z"
+				));
+			}
+			else result.add(new MethodInsnNode(
+					Opcodes.INVOKESTATIC, "io/pzstorm/storm/event/StormEventDispatcher",
+					"dispatchEvent", "(Lio/pzstorm/storm/event/ZomboidEvent;)V"
+			));
 		}
+		return result;
 	}
 
-	private static class EventHandlerMethod {
+	/**
+	 * Bootstrap method for {@code invokedynamic} dispatch call sites created with {@link #callDispatchEvent(List)}.
+	 * This is an internal method <b>only</b> called by the JVM when linking call sites in hooked game code.
+	 * The linked call site takes event constructor arguments, constructs the event and passes it directly
+	 * to a chain of handler methods subscribed to the event class. When there are no subscribers the call
+	 * site does nothing. Call sites are relinked each time a new handler method subscribes to the event.
+	 * Call sites for {@link PooledEvent} types reset a pooled event instance instead of constructing one.
+	 * Call sites that return {@code boolean} dispatch a {@link CancellableEvent} and return whether
+	 * it was cancelled, or {@code false} when there are no subscribers.
+	 *
+	 * @param lookup lookup of the class that contains the call site.
+	 * @param name name of the call site.
+	 * @param type type of the call site, which matches the event constructor parameters and returns
+	 * 		either {@code void} or {@code boolean} if the event is cancellable.
+	 * @param eventClass {@code Class} of the event to construct and dispatch.
+	 *
+	 * @return {@code CallSite} that dispatches events of given class.
+	 *
+	 * @throws ReflectiveOperationException if unable to find event constructor or {@code reset} method
+	 * 		that matches call site type.
+	 * @throws IllegalArgumentException if call site returns {@code boolean} and event class
+	 * 		does not implement {@link CancellableEvent}.
+	 */
+	public static CallSite bootstrapDispatch(MethodHandles.Lookup lookup, String name,
+											 MethodType type, Class<?> eventClass) throws ReflectiveOperationException {
+		return linkDispatchCallSite(type, eventClass, null);
+	}
 
-		private final Method method;
-		private final @Nullable Object handler;
+	/**
+	 * Bootstrap method for guarded {@code invokedynamic} dispatch call sites created with
+	 * {@link #callDispatchEvent(List, Handle)}. This is an internal method <b>only</b> called by the JVM
+	 * when linking call sites in hooked game code. The call site is linked the same way as described in
+	 * {@link #bootstrapDispatch(MethodHandles.Lookup, String, MethodType, Class)}, except that events are
+	 * only constructed and dispatched when the dispatch guard returns {@code true} for call site arguments.
+	 *
+	 * @param lookup lookup of the class that contains the call site.
+	 * @param name name of the call site.
+	 * @param type type of the call site, which matches the event constructor parameters and returns
+	 * 		either {@code void} or {@code boolean} if the event is cancellable.
+	 * @param eventClass {@code Class} of the event to construct and dispatch.
+	 * @param dispatchGuard method that returns {@code boolean} and accepts the leading
+	 * 		parameters of call site type, which decides whether to dispatch the event.
+	 *
+	 * @return {@code CallSite} that dispatches events of given class.
+	 *
+	 * @throws ReflectiveOperationException if unable to find event constructor or {@code reset} method
+	 * 		that matches call site type.
+	 * @throws IllegalArgumentException if dispatch guard does not return {@code boolean} or its
+	 * 		parameters do not match the leading parameters of call site type.
+	 */
+	public static CallSite bootstrapDispatch(MethodHandles.Lookup lookup, String name, MethodType type,
+											 Class<?> eventClass, MethodHandle dispatchGuard) throws ReflectiveOperationException {
+
+		MethodType guardType = dispatchGuard.type();
+		int guardParameters = guardType.parameterCount();
+		if (guardType.returnType() != boolean.class || guardParameters > type.parameterCount() ||
+				!guardType.parameterList().equals(type.parameterList().subList(0, guardParameters)))
+		{
+			throw new IllegalArgumentException(String.format("Dispatch guard of type %s does not match " +
+					"dispatch call site of type %s for event %s", guardType, type, eventClass.getName()));
+		}
+		// (args...) -> whether to dispatch event constructed with args
+		MethodHandle guard = MethodHandles.dropArguments(dispatchGuard, guardParameters,
+				type.parameterList().subList(guardParameters, type.parameterCount()));
+
+		return linkDispatchCallSite(type, eventClass, guard);
+	}
 
-		private EventHandlerMethod(Method method, @Nullable Object handler) {
+	private static CallSite linkDispatchCallSite(MethodType type, Class<?> eventClass,
+												 @Nullable MethodHandle dispatchGuard) throws ReflectiveOperationException {
 
-			this.method = method;
-			this.handler = handler;
+		boolean cancellable = CancellableEvent.class.isAssignableFrom(eventClass);
+		if (type.returnType() == boolean.class && !cancellable)
+		{
+			throw new IllegalArgumentException("Tried to link dispatch call site that returns cancelled " +
+					"state for event " + eventClass.getName() + " that does not implement CancellableEvent");
 		}
+		DispatchCallSite callSite;
+		if (eventClass.isAnnotationPresent(PooledEvent.class))
+		{
+			EventPool<?> pool = getEventPool(eventClass);
+			MethodHandle reset = MethodHandles.publicLookup().findVirtual(
+					eventClass, "reset", type.changeReturnType(void.class)).asFixedArity();
 
-		private void invoke(ZomboidEvent event) {
+			// (event, args...) -> reset event with args and return it
+			MethodHandle resetEvent = MethodHandles.foldArguments(MethodHandles.dropArguments(
+					MethodHandles.identity(eventClass), 1, type.parameterList()), reset
+			);
+			MethodHandle acquire = ACQUIRE_POOLED_EVENT.bindTo(pool).asType(MethodType.methodType(eventClass));
+			callSite = new DispatchCallSite(type,
+					MethodHandles.foldArguments(resetEvent, acquire).asType(type.changeReturnType(ZomboidEvent.class)),
+					RELEASE_POOLED_EVENT.bindTo(pool), dispatchGuard, cancellable
+			);
+		}
+		else {
+			MethodHandle constructor = MethodHandles.publicLookup()
+					.findConstructor(eventClass, type.changeReturnType(void.class)).asFixedArity();
 
+			callSite = new DispatchCallSite(type,
+					constructor.asType(type.changeReturnType(ZomboidEvent.class)), null, dispatchGuard, cancellable);
+		}
+		synchronized (DISPATCH_REGISTRY)
+		{
+			DISPATCH_CALL_SITES.computeIfAbsent(eventClass, c -> new CopyOnWriteArrayList<>()).add(callSite);
+			callSite.relink(getDispatchTargets(eventClass));
+		}
+		return callSite;
+	}
+
+	/**
+	 * Returns event pool for given {@link PooledEvent} class, creating the pool if it does not exist yet.
+	 *
+	 * @throws NoSuchMethodException if event class does not declare {@code public} constructor without parameters.
+	 */
+	@SuppressWarnings("unchecked")
+	private static EventPool<?> getEventPool(Class<?> eventClass) throws NoSuchMethodException {
+
+		synchronized (EVENT_POOLS)
+		{
+			EventPool<?> pool = EVENT_POOLS.get(eventClass);
+			if (pool == null)
+			{
+				pool = new EventPool<>((Class<? extends ZomboidEvent>) eventClass);
+				EVENT_POOLS.put(eventClass, pool);
+			}
+			return pool;
+		}
+	}
+
+	/**
+	 * Returns dispatch targets for all handler methods subscribed to given event class or any of its supertypes.
+	 * The result is read from dispatch cache, or collected from dispatch registry and cached if not yet cached.
+	 *
+	 * @param eventClass concrete {@code Class} of dispatched event.
+	 *
+	 * @return array of dispatch targets in invocation order. The array should not be modified.
+	 */
+	private static DispatchTarget[] getDispatchTargets(Class<?> eventClass) {
+
+		DispatchTarget[] targets = DISPATCH_CACHE.get(eventClass);
+		if (targets == null)
+		{
+			// compute while holding the lock so that stale entries never get cached
+			synchronized (DISPATCH_REGISTRY) {
+				targets = DISPATCH_CACHE.computeIfAbsent(eventClass, StormEventDispatcher::collectDispatchTargets);
+			}
+		}
+		return targets;
+	}
+
+	/**
+	 * Collect dispatch targets for given event class. When event recorders are subscribed the first
+	 * target passes events to the recorders, followed by targets of handler methods, which are
+	 * collected as described in {@link #collectHandlerTargets(Class)}.
+	 */
+	private static DispatchTarget[] collectDispatchTargets(Class<?> eventClass) {
+
+		DispatchTarget[] targets = collectHandlerTargets(eventClass);
+		if (EVENT_RECORDERS.isEmpty()) {
+			return targets;
+		}
+		DispatchTarget[] recordedTargets = new DispatchTarget[targets.length + 1];
+		recordedTargets[0] = new RecorderDispatchTarget(EVENT_RECORDERS);
+		System.arraycopy(targets, 0, recordedTargets, 1, targets.length);
+		return recordedTargets;
+	}
+
+	/**
+	 * Collect all enabled handler methods in dispatch registry that are subscribed to given event class or
+	 * any of its supertypes and sort them by priority and then registration order. When some of the methods
+	 * declare a {@link DispatchRate} they are moved to a {@link ScheduledDispatchTarget}, which dispatches
+	 * events only to the other methods until one of the scheduled methods is due.
+	 */
+	private static DispatchTarget[] collectHandlerTargets(Class<?> eventClass) {
+
+		List<EventHandlerMethod> handlerMethods = collectHandlerMethods(eventClass);
+		if (handlerMethods.isEmpty()) {
+			return NO_DISPATCH_TARGETS;
+		}
+		handlerMethods.sort(INVOCATION_ORDER);
+
+		boolean cancellable = CancellableEvent.class.isAssignableFrom(eventClass);
+		List<EventHandlerMethod> scheduledMethods = new ArrayList<>();
+		for (EventHandlerMethod handlerMethod : handlerMethods)
+		{
+			if (handlerMethod.schedule != null) {
+				scheduledMethods.add(handlerMethod);
+			}
+		}
+		if (scheduledMethods.isEmpty()) {
+			return groupDispatchTargets(handlerMethods, cancellable);
+		}
+		handlerMethods.removeAll(scheduledMethods);
+		return new DispatchTarget[] { new ScheduledDispatchTarget(handlerMethods, scheduledMethods, cancellable) };
+	}
+
+	/**
+	 * Group given handler methods sorted in invocation order. Handler methods with the same priority are
+	 * grouped as described in {@link #groupHandlerMethods(List, boolean)}, so that grouping never changes
+	 * the order in which methods with different priorities are invoked.
+	 *
+	 * @param handlerMethods handler methods sorted by priority and then registration order.
+	 * @param cancellable whether dispatched event is a {@link CancellableEvent}.
+	 *
+	 * @return array of dispatch targets in invocation order.
+	 */
+	private static DispatchTarget[] groupDispatchTargets(List<EventHandlerMethod> handlerMethods, boolean cancellable) {
+
+		List<DispatchTarget> targets = new ArrayList<>();
+		for (int from = 0, to = 1; to <= handlerMethods.size(); to++)
+		{
+			if (to == handlerMethods.size() || handlerMethods.get(to).priority != handlerMethods.get(from).priority)
+			{
+				Collections.addAll(targets, groupHandlerMethods(handlerMethods.subList(from, to), cancellable));
+				from = to;
+			}
+		}
+		return targets.toArray(new DispatchTarget[0]);
+	}
+
+	/**
+	 * Collect all enabled handler methods in dispatch registry that are subscribed to given
+	 * event class or any of its supertypes. This has to be called while holding a lock on dispatch registry.
+	 * <p>
+	 * When the event class is a {@link PooledEvent}, {@link ExecutionMode#ASYNC} methods and methods that
+	 * collect events into an {@link EventBatch} are excluded, because pooled events are reset and reused
+	 * after dispatching. Registering such methods is rejected when they subscribe to the pooled event class
+	 * directly, but methods subscribed to a supertype of the pooled event can only be excluded here.
+	 * </p>
+	 */
+	private static List<EventHandlerMethod> collectHandlerMethods(Class<?> eventClass) {
+
+		boolean pooled = eventClass.isAnnotationPresent(PooledEvent.class);
+		List<EventHandlerMethod> handlerMethods = new ArrayList<>();
+		for (Map.Entry<Class<? extends ZomboidEvent>, Set<EventHandlerMethod>> entry : DISPATCH_REGISTRY.entrySet())
+		{
+			if (entry.getKey().isAssignableFrom(eventClass))
+			{
+				for (EventHandlerMethod handlerMethod : entry.getValue())
+				{
+					// methods in disabled groups are excluded until the group is enabled
+					if (handlerMethod.group != null && !handlerMethod.group.enabled) {
+						continue;
+					}
+					if (pooled && (handlerMethod.mode == ExecutionMode.ASYNC || handlerMethod.batched))
+					{
+						if (handlerMethod.excludedEvents.add(eventClass))
+						{
+							StormLogger.warn("Event handler method %s subscribed to %s will not receive pooled " +
+									"event %s because pooled events are reused after dispatching", handlerMethod.name,
+									handlerMethod.eventClass.getName(), eventClass.getName());
+						}
+						continue;
+					}
+					handlerMethods.add(handlerMethod);
+				}
+			}
+		}
+		return handlerMethods;
+	}
+
+	/**
+	 * Returns {@code true} if any enabled handler method other than
+	 * {@link #subscribeBridgeMethod(String, Class, Consumer) bridge methods} receives events of given class,
+	 * which includes methods subscribed to the event class and methods subscribed to its supertypes,
+	 * or if an {@link #subscribeEventRecorder(Consumer) event recorder} is subscribed. The result is cached
+	 * until handler methods that receive events of given class change, so checking it costs a single map lookup.
+	 *
+	 * @param eventClass {@code Class} of event to check subscribed methods for.
+	 */
+	public static boolean hasSubscribedMethods(Class<? extends ZomboidEvent> eventClass) {
+
+		Boolean subscribed = SUBSCRIBED_CACHE.get(eventClass);
+		if (subscribed == null)
+		{
+			// compute while holding the lock so that stale entries never get cached
+			synchronized (DISPATCH_REGISTRY)
+			{
+				subscribed = SUBSCRIBED_CACHE.computeIfAbsent(eventClass, c -> !EVENT_RECORDERS.isEmpty() ||
+						collectHandlerMethods(c).stream().anyMatch(m -> !m.bridge));
+			}
+		}
+		return subscribed;
+	}
+
+	/**
+	 * Returns a number that changes every time a handler method is subscribed, unsubscribed, enabled or
+	 * disabled. Reading the version is cheap, which makes it suitable for validating cached results
+	 * of {@link #hasSubscribedMethods(Class)} every time an event is about to be dispatched.
+	 */
+	public static int getRegistryVersion() {
+		return REGISTRY_VERSION.get();
+	}
+
+	/**
+	 * Group given handler methods with the same priority. Methods that subscribe to a key are grouped into
+	 * a single dispatch target that indexes them by key, which is placed before methods without a key,
+	 * so methods with a matching key are invoked first, followed by methods without a key, each in
+	 * registration order. Parallel methods are then grouped as described in {@link #groupParallelMethods(List)}.
+	 *
+	 * @param handlerMethods handler methods with the same priority in registration order.
+	 * @param cancellable whether dispatched event is a {@link CancellableEvent}.
+	 *
+	 * @return array of dispatch targets in invocation order.
+	 */
+	private static DispatchTarget[] groupHandlerMethods(List<EventHandlerMethod> handlerMethods, boolean cancellable) {
+
+		List<EventHandlerMethod> keyedMethods = new ArrayList<>();
+		Map<Object, List<DispatchTarget>> keyedTargets = new HashMap<>();
+		for (EventHandlerMethod handlerMethod : handlerMethods)
+		{
+			if (handlerMethod.key != null)
+			{
+				keyedMethods.add(handlerMethod);
+				keyedTargets.computeIfAbsent(handlerMethod.key, k -> new ArrayList<>()).add(handlerMethod);
+			}
+		}
+		List<DispatchTarget> targets = new ArrayList<>(handlerMethods);
+		if (!keyedMethods.isEmpty())
+		{
+			Map<Object, DispatchTarget[]> index = new HashMap<>();
+			keyedTargets.forEach((key, methods) -> index.put(key, groupParallelMethods(methods)));
+			targets.removeAll(keyedMethods);
+			targets.add(0, new KeyedDispatchTarget(index, cancellable));
+		}
+		return groupParallelMethods(targets);
+	}
+
+	/**
+	 * Group {@link ExecutionMode#PARALLEL} handler methods in given list of dispatch targets. When there
+	 * is more than one parallel method they are grouped into a single dispatch target placed in the
+	 * position of the first parallel method.
+	 *
+	 * @return array of dispatch targets in invocation order.
+	 */
+	private static DispatchTarget[] groupParallelMethods(List<DispatchTarget> targets) {
+
+		List<EventHandlerMethod> parallelMethods = new ArrayList<>();
+		for (DispatchTarget target : targets)
+		{
+			if (target instanceof EventHandlerMethod && ((EventHandlerMethod) target).mode == ExecutionMode.PARALLEL) {
+				parallelMethods.add((EventHandlerMethod) target);
+			}
+		}
+		if (parallelMethods.size() > 1)
+		{
+			groupDispatchTargets(targets, parallelMethods,
+					new ParallelDispatchTarget(parallelMethods.toArray(new EventHandlerMethod[0])));
+		}
+		return targets.toArray(new DispatchTarget[0]);
+	}
+
+	/**
+	 * Replace given handler methods in list of dispatch targets with a group that
+	 * represents them, placed in the position of the first grouped method.
+	 */
+	private static void groupDispatchTargets(List<DispatchTarget> targets,
+											 List<EventHandlerMethod> grouped, DispatchTarget group) {
+
+		targets.set(targets.indexOf(grouped.get(0)), group);
+		targets.removeAll(grouped);
+	}
+
+	/**
+	 * Remove cached handler methods and relink dispatch call sites for given event class and all
+	 * its subtypes. This has to be called every time the set of subscribed methods changes,
+	 * while holding a lock on dispatch registry.
+	 *
+	 * @param eventClass {@code Class} of event whose subscribed methods changed.
+	 */
+	private static void invalidateDispatchCache(Class<?> eventClass) {
+
+		REGISTRY_VERSION.incrementAndGet();
+		DISPATCH_CACHE.keySet().removeIf(eventClass::isAssignableFrom);
+		SUBSCRIBED_CACHE.keySet().removeIf(eventClass::isAssignableFrom);
+		for (Map.Entry<Class<?>, List<DispatchCallSite>> entry : DISPATCH_CALL_SITES.entrySet())
+		{
+			if (eventClass.isAssignableFrom(entry.getKey()))
+			{
+				List<DispatchCallSite> callSites = entry.getValue();
+				DispatchTarget[] targets = getDispatchTargets(entry.getKey());
+				for (DispatchCallSite callSite : callSites) {
+					callSite.relink(targets);
+				}
+				MutableCallSite.syncAll(callSites.toArray(new MutableCallSite[0]));
+			}
+		}
+	}
+
+	/**
+	 * Create a method handle that invokes the given dispatch targets in order. Dispatch targets are bound
+	 * as constants so that each invocation in the chain can be inlined by the JIT compiler. When the event
+	 * is cancellable the chain checks whether the event was cancelled after invoking each dispatch target
+	 * and skips the remaining targets if it was.
+	 *
+	 * @param targets array of dispatch targets to chain.
+	 * @param cancellable whether dispatched event is a {@link CancellableEvent}.
+	 *
+	 * @return {@code MethodHandle} of type {@code (ZomboidEvent)void}.
+	 */
+	private static MethodHandle createDispatchChain(DispatchTarget[] targets, boolean cancellable) {
+
+		if (targets.length > MAX_CHAINED_HANDLERS)
+		{
+			MethodHandle dispatch = cancellable ? DISPATCH_CANCELLABLE_EVENT_TO_HANDLERS : DISPATCH_EVENT_TO_HANDLERS;
+			return MethodHandles.insertArguments(dispatch, 0, (Object) targets);
+		}
+		MethodHandle empty = MethodHandles.empty(MethodType.methodType(void.class, ZomboidEvent.class));
+		MethodHandle chain = empty;
+		for (int i = targets.length - 1; i >= 0; i--)
+		{
+			if (cancellable && chain != empty) {
+				chain = MethodHandles.guardWithTest(IS_EVENT_CANCELLED, empty, chain);
+			}
+			chain = MethodHandles.foldArguments(chain, INVOKE_DISPATCH_TARGET.bindTo(targets[i]));
+		}
+		return chain;
+	}
+
+	/**
+	 * Dispatch the given event to all methods registered in dispatch registry. This is an internal
+	 * method <b>only</b> called by {@code StormHook} implementations installed in game code.
+	 * The event is dispatched to methods subscribed to the event class and all of its supertypes, which
+	 * are invoked in the order in which they were registered. This method can be safely called from
+	 * any thread, including while other threads are registering event handlers.
+	 *
+	 * @param event {@link ZomboidEvent} to dispatch.
+	 * @see #callDispatchEvent(List)
+	 */
+	public static void dispatchEvent(ZomboidEvent event) {
+
+		DispatchTarget[] targets = getDispatchTargets(event.getClass());
+		if (event instanceof CancellableEvent) {
+			dispatchCancellableEvent(targets, event);
+		}
+		else dispatchEvent(targets, event);
+	}
+
+	/**
+	 * Dispatch the given cancellable event to all methods registered in dispatch registry and return
+	 * whether the event was cancelled. This is an internal method <b>only</b> called by {@code StormHook}
+	 * implementations installed in game code, which can skip the game code that triggered the event when
+	 * it was cancelled. Dispatching stops as soon as one of the subscribed methods cancels the event.
+	 *
+	 * @param event {@link CancellableEvent} to dispatch.
+	 *
+	 * @return {@code true} if the event was cancelled by one of the subscribed methods.
+	 *
+	 * @see #callDispatchCancellableEvent(List)
+	 */
+	public static boolean dispatchCancellableEvent(CancellableEvent event) {
+
+		dispatchCancellableEvent(getDispatchTargets(event.getClass()), event);
+		return event.isCancelled();
+	}
+
+	/**
+	 * Dispatch the given event to each target in the given array of dispatch targets.
+	 */
+	private static void dispatchEvent(DispatchTarget[] targets, ZomboidEvent event) {
+
+		for (DispatchTarget target : targets) {
+			target.invoke(event);
+		}
+	}
+
+	/**
+	 * Dispatch the given {@link CancellableEvent} to each target in the given array
+	 * of dispatch targets until one of the targets cancels the event.
+	 */
+	private static void dispatchCancellableEvent(DispatchTarget[] targets, ZomboidEvent event) {
+
+		CancellableEvent cancellableEvent = (CancellableEvent) event;
+		for (int i = 0; i < targets.length && !cancellableEvent.isCancelled(); i++) {
+			targets[i].invoke(event);
+		}
+	}
+
+	/**
+	 * Post the given event to be dispatched on the game thread at the start of the next game logic
+	 * update. This method can be called from any thread and never blocks, which makes it the safe way
+	 * for work done on background threads to report back to the game. Posted events are dispatched
+	 * in the order in which they were posted by each thread. The time spent dispatching posted events
+	 * is limited by a per-frame budget, and events that do not fit in the budget are dispatched
+	 * in the following frames.
+	 * <p>
+	 * Posted events are dispatched from the game client logic update in {@code GameWindow}, which is
+	 * the only game loop running in processes launched by Storm. Dedicated servers are not launched
+	 * by Storm and have no drain point, so events posted in a dedicated server are never dispatched.
+	 * </p>
+	 *
+	 * @param event {@link ZomboidEvent} to dispatch on the game thread.
+	 */
+	public static void post(ZomboidEvent event) {
+		POSTED_EVENTS.offer(event);
+	}
+
+	/**
+	 * Dispatch events posted with {@link #post(ZomboidEvent)} until there are no more posted events or
+	 * the per-frame budget is exhausted. This is an internal method <b>only</b> called once per frame
+	 * by the game client thread from {@code GameWindowPatch}.
+	 *
+	 * @return number of dispatched events.
+	 */
+	public static int dispatchPostedEvents() {
+
+		return POSTED_EVENTS.drain(event -> {
+			try {
+				dispatchEvent(event);
+			}
+			catch (RuntimeException e) {
+				StormLogger.error("Failed to dispatch posted event " + event.getName(), e);
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of posted events waiting to be dispatched on the game thread.
+	 */
+	public static int getPostedQueueDepth() {
+		return POSTED_EVENTS.size();
+	}
+
+	/**
+	 * Returns the number of events currently waiting to be handled by
+	 * {@link ExecutionMode#ASYNC} methods on Storm event worker threads.
+	 */
+	public static int getAsyncQueueDepth() {
+		return AsyncExecutorHolder.EXECUTOR.getQueueDepth();
+	}
+
+	/**
+	 * Returns the total number of events that were not handled by {@link ExecutionMode#ASYNC}
+	 * methods with {@link OverflowPolicy#DROP} policy because the event worker queue was full.
+	 */
+	public static long getDroppedAsyncEventCount() {
+		return AsyncExecutorHolder.EXECUTOR.getDroppedEventCount();
+	}
+
+	/**
+	 * Lazily creates the executor so that worker threads are started only when needed.
+	 */
+	private static class AsyncExecutorHolder {
+		private static final AsyncEventExecutor EXECUTOR = AsyncEventExecutor.create();
+	}
+
+	/**
+	 * Call site for hooks that dispatch events. The call site takes the same arguments as the event constructor
+	 * and its target is relinked whenever handler methods subscribed to the event class change.
+	 */
+	private static class DispatchCallSite extends MutableCallSite {
+
+		/**
+		 * Represents event constructor with return type adapted to {@link ZomboidEvent}.
+		 */
+		private final MethodHandle eventConstructor;
+
+		/**
+		 * Releases pooled event after dispatching or {@code null} if event is not pooled.
+		 */
+		private final @Nullable MethodHandle eventRelease;
+
+		/**
+		 * Decides whether to construct and dispatch the event, with the same
+		 * type as call site except for {@code boolean} return type.
+		 * This is {@code null} if the event is always dispatched.
+		 */
+		private final @Nullable MethodHandle dispatchGuard;
+
+		/**
+		 * Whether dispatched event is a {@link CancellableEvent}.
+		 */
+		private final boolean cancellable;
+
+		private DispatchCallSite(MethodType type, MethodHandle eventConstructor, @Nullable MethodHandle eventRelease,
+								 @Nullable MethodHandle dispatchGuard, boolean cancellable) {
+
+			super(type);
+			this.eventConstructor = eventConstructor;
+			this.eventRelease = eventRelease;
+			this.dispatchGuard = dispatchGuard;
+			this.cancellable = cancellable;
+		}
+
+		/**
+		 * Link this call site to given array of dispatch targets.
+		 *
+		 * @param targets array of dispatch targets for the event class.
+		 */
+		private void relink(DispatchTarget[] targets) {
+
+			if (targets.length == 0) {
+				setTarget(MethodHandles.empty(type()));
+				return;
+			}
+			MethodHandle dispatchChain = createDispatchChain(targets, cancellable);
+			boolean returnsCancelled = type().returnType() == boolean.class;
+			if (returnsCancelled)
+			{
+				// (event) -> dispatch event and return whether it was cancelled
+				dispatchChain = MethodHandles.foldArguments(IS_EVENT_CANCELLED, dispatchChain);
+			}
+			if (eventRelease != null)
+			{
+				// release pooled event even if one of the handler methods throws an exception
+				MethodHandle cleanup = eventRelease;
+				if (returnsCancelled)
+				{
+					// (cancelled, event) -> release event and return cancelled
+					cleanup = MethodHandles.foldArguments(MethodHandles.dropArguments(
+							MethodHandles.identity(boolean.class), 1, ZomboidEvent.class), 1, eventRelease);
+				}
+				dispatchChain = MethodHandles.tryFinally(dispatchChain,
+						MethodHandles.dropArguments(cleanup, 0, Throwable.class));
+			}
+			MethodHandle dispatch = MethodHandles.filterReturnValue(eventConstructor, dispatchChain);
+			if (dispatchGuard != null) {
+				dispatch = MethodHandles.guardWithTest(dispatchGuard, dispatch, MethodHandles.empty(type()));
+			}
+			setTarget(dispatch);
+		}
+	}
+
+	/**
+	 * Represents a single step in dispatching an event, which is
+	 * either a handler method or a group of handler methods.
+	 */
+	private interface DispatchTarget {
+		void invoke(ZomboidEvent event);
+	}
+
+	/**
+	 * Passes dispatched events to event recorders. This target is always the first dispatch target.
+	 */
+	private static class RecorderDispatchTarget implements DispatchTarget {
+
+		private final Consumer<ZomboidEvent>[] recorders;
+
+		@SuppressWarnings("unchecked")
+		private RecorderDispatchTarget(List<Consumer<ZomboidEvent>> recorders) {
+			this.recorders = recorders.toArray(new Consumer[0]);
+		}
+
+		@Override
+		public void invoke(ZomboidEvent event) {
+
+			for (Consumer<ZomboidEvent> recorder : recorders) {
+				recorder.accept(event);
+			}
+		}
+	}
+
+	/**
+	 * Group of handler methods subscribed to {@link KeyedEvent} keys. Invoking the group invokes
+	 * only the dispatch targets indexed by the key of the dispatched event, in registration order.
+	 */
+	private static class KeyedDispatchTarget implements DispatchTarget {
+
+		private final Map<Object, DispatchTarget[]> index;
+		private final boolean cancellable;
+
+		private KeyedDispatchTarget(Map<Object, DispatchTarget[]> index, boolean cancellable) {
+
+			this.index = index;
+			this.cancellable = cancellable;
+		}
+
+		@Override
+		public void invoke(ZomboidEvent event) {
+
+			DispatchTarget[] targets = index.get(((KeyedEvent) event).getKey());
+			if (targets != null)
+			{
+				if (cancellable) {
+					dispatchCancellableEvent(targets, event);
+				}
+				else dispatchEvent(targets, event);
+			}
+		}
+	}
+
+	/**
+	 * Dispatch target of an event class that has handler methods which declare a {@link DispatchRate}.
+	 * Scheduled methods are kept out of the dispatch targets the event is dispatched to while none of them
+	 * is due, so that idle methods are never invoked or checked one by one. Instead, each event ticks the
+	 * clocks shared by the scheduled methods, and is compared against the earliest event count and time at
+	 * which any of the methods can become due. Only when that happens is each scheduled method checked,
+	 * and the event is dispatched to a list of targets rebuilt with the methods that are due.
+	 * <p>
+	 * The earliest due event count and time are recomputed after checking scheduled methods. Schedules only
+	 * ever move forward, so a value computed while other threads update the schedules can only be earlier
+	 * than the actual one, which results in checking the methods again, but never in skipping a due method.
+	 * </p>
+	 */
+	private static class ScheduledDispatchTarget implements DispatchTarget {
+
+		/**
+		 * Handler methods without a schedule, sorted in invocation order.
+		 */
+		private final List<EventHandlerMethod> handlerMethods;
+
+		/**
+		 * Handler methods with a schedule, sorted in invocation order.
+		 */
+		private final EventHandlerMethod[] scheduledMethods;
+
+		/**
+		 * Distinct clocks of scheduled methods, which are ticked once per dispatched event.
+		 */
+		private final ScheduleClock[] clocks;
+
+		/**
+		 * Dispatch targets of handler methods without a schedule.
+		 */
+		private final DispatchTarget[] idleTargets;
+
+		private final boolean cancellable;
+
+		private volatile DueState dueState;
+
+		private ScheduledDispatchTarget(List<EventHandlerMethod> handlerMethods,
+										List<EventHandlerMethod> scheduledMethods, boolean cancellable) {
+
+			this.handlerMethods = handlerMethods;
+			this.scheduledMethods = scheduledMethods.toArray(new EventHandlerMethod[0]);
+			this.cancellable = cancellable;
+			this.idleTargets = groupDispatchTargets(handlerMethods, cancellable);
+
+			Set<ScheduleClock> clocks = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (EventHandlerMethod handlerMethod : scheduledMethods)
+			{
+				ScheduleClock clock = Objects.requireNonNull(handlerMethod.schedule).clock;
+				if (clock != null) {
+					clocks.add(clock);
+				}
+			}
+			this.clocks = clocks.toArray(new ScheduleClock[0]);
+			this.dueState = computeDueState();
+		}
+
+		@Override
+		public void invoke(ZomboidEvent event) {
+
+			DueState state = dueState;
+			Object key = event instanceof KeyedEvent ? ((KeyedEvent) event).getKey() : null;
+			boolean due = false;
+			for (int i = 0; i < clocks.length; i++)
+			{
+				ScheduleClock clock = clocks[i];
+				if (clock.key == null || clock.key.equals(key)) {
+					due |= clock.events.incrementAndGet() >= state.dueEvents[i];
+				}
+			}
+			if (!due && state.timed) {
+				due = System.nanoTime() - state.dueTime >= 0;
+			}
+			DispatchTarget[] targets = due ? claimDueTargets(key) : idleTargets;
+			if (cancellable) {
+				dispatchCancellableEvent(targets, event);
+			}
+			else dispatchEvent(targets, event);
+		}
+
+		/**
+		 * Claim scheduled methods that are due to receive an event with given key and
+		 * return dispatch targets of the claimed methods and methods without a schedule.
+		 */
+		private DispatchTarget[] claimDueTargets(@Nullable Object key) {
+
+			long now = System.nanoTime();
+			List<EventHandlerMethod> dueMethods = new ArrayList<>();
+			for (EventHandlerMethod handlerMethod : scheduledMethods)
+			{
+				if (handlerMethod.key != null && !handlerMethod.key.equals(key)) {
+					continue;
+				}
+				if (Objects.requireNonNull(handlerMethod.schedule).claim(now)) {
+					dueMethods.add(handlerMethod);
+				}
+			}
+			dueState = computeDueState();
+			if (dueMethods.isEmpty()) {
+				return idleTargets;
+			}
+			dueMethods.addAll(handlerMethods);
+			dueMethods.sort(INVOCATION_ORDER);
+			return groupDispatchTargets(dueMethods, cancellable);
+		}
+
+		/**
+		 * Compute the earliest clock values and time at which any of the scheduled methods can be due.
+		 * Methods that count events wait for their clock, unless they already received enough events
+		 * and are only waiting for their period to pass, which is when they wait for time instead.
+		 */
+		private DueState computeDueState() {
+
+			long[] dueEvents = new long[clocks.length];
+			Arrays.fill(dueEvents, Long.MAX_VALUE);
+			boolean timed = false;
+			long dueTime = 0;
+			for (EventHandlerMethod handlerMethod : scheduledMethods)
+			{
+				Schedule schedule = Objects.requireNonNull(handlerMethod.schedule);
+				long events = schedule.dueEvents.get();
+				if (schedule.clock != null && (schedule.rate.periodNanos == 0 || schedule.clock.events.get() < events))
+				{
+					int index = Arrays.asList(clocks).indexOf(schedule.clock);
+					dueEvents[index] = Math.min(dueEvents[index], events);
+				}
+				else {
+					long time = schedule.lastInvocation.get() + schedule.rate.periodNanos;
+					dueTime = !timed || time - dueTime < 0 ? time : dueTime;
+					timed = true;
+				}
+			}
+			return new DueState(dueEvents, timed, dueTime);
+		}
+	}
+
+	/**
+	 * Earliest clock values and time at which any method of a {@link ScheduledDispatchTarget} can be due.
+	 */
+	private static class DueState {
+
+		/**
+		 * Clock values indexed the same way as clocks of the dispatch target.
+		 */
+		private final long[] dueEvents;
+
+		/**
+		 * Whether any method is waiting for its period to pass.
+		 */
+		private final boolean timed;
+
+		/**
+		 * Value of {@link System#nanoTime()} when the period of a waiting method passes.
+		 */
+		private final long dueTime;
+
+		private DueState(long[] dueEvents, boolean timed, long dueTime) {
+
+			this.dueEvents = dueEvents;
+			this.timed = timed;
+			this.dueTime = dueTime;
+		}
+	}
+
+	/**
+	 * Counts events received by scheduled handler methods subscribed to the same event class with the same key.
+	 */
+	private static class ScheduleClock {
+
+		/**
+		 * Key of events counted by this clock or {@code null} if the clock counts all events.
+		 */
+		private final @Nullable Object key;
+
+		private final AtomicLong events = new AtomicLong();
+
+		private ScheduleClock(@Nullable Object key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Schedule of a handler method that declares a {@link DispatchRate}. The schedule belongs to the handler
+	 * method, so it is shared by dispatch targets of all event classes the method receives and is not reset
+	 * when dispatch targets are rebuilt. Schedule state is updated atomically because events can be dispatched
+	 * from any thread, and each due event is claimed by exactly one of the threads that dispatch it.
+	 * <p>
+	 * Events are counted by a {@link ScheduleClock} only when the method declares an interval, or a sample
+	 * rate without a period, in which case the number of events until the next sampled event is drawn
+	 * in advance, so that sampled methods are not checked with every event.
+	 * </p>
+	 */
+	private static class Schedule {
+
+		private final DispatchRate rate;
+
+		/**
+		 * Clock that counts events received by the method or {@code null} if the method does not count events.
+		 */
+		private final @Nullable ScheduleClock clock;
+
+		/**
+		 * Clock value at which the method is due.
+		 */
+		private final AtomicLong dueEvents;
+
+		/**
+		 * Value of {@link System#nanoTime()} when the method was last due.
+		 */
+		private final AtomicLong lastInvocation;
+
+		private Schedule(DispatchRate rate, @Nullable ScheduleClock clock) {
+
+			this.rate = rate;
+			this.clock = clock;
+			this.dueEvents = new AtomicLong(clock != null ? clock.events.get() + nextInterval() : 0);
+			this.lastInvocation = new AtomicLong(System.nanoTime() - rate.periodNanos);
+		}
+
+		/**
+		 * Create schedule for handler method subscribed to given event class and key with given rate.
+		 */
+		private static Schedule create(Class<?> eventClass, @Nullable Object key, DispatchRate rate) {
+
+			ScheduleClock clock = null;
+			if (rate.interval > 1 || (rate.periodNanos == 0 && rate.sampleRate < 1))
+			{
+				clock = key != null ? new ScheduleClock(key) :
+						SCHEDULE_CLOCKS.computeIfAbsent(eventClass, c -> new ScheduleClock(null));
+			}
+			return new Schedule(rate, clock);
+		}
+
+		/**
+		 * Returns number of events until the method is due again, which for methods sampled without
+		 * a period follows the geometric distribution of due events until one of them is sampled.
+		 */
+		private long nextInterval() {
+
+			if (rate.periodNanos > 0 || rate.sampleRate >= 1) {
+				return rate.interval;
+			}
+			double random = ThreadLocalRandom.current().nextDouble();
+			return rate.interval * (1 + (long) (Math.log(1 - random) / Math.log(1 - rate.sampleRate)));
+		}
+
+		/**
+		 * Claim the current event for the method if the method is due and return whether it was claimed.
+		 *
+		 * @param now value of {@link System#nanoTime()} when the event is dispatched.
+		 */
+		private boolean claim(long now) {
+
+			long due = dueEvents.get();
+			long events = clock != null ? clock.events.get() : due;
+			if (events < due) {
+				return false;
+			}
+			if (rate.periodNanos == 0) {
+				return dueEvents.compareAndSet(due, events + nextInterval());
+			}
+			long last = lastInvocation.get();
+			if (now - last < rate.periodNanos || !lastInvocation.compareAndSet(last, now)) {
+				return false;
+			}
+			dueEvents.set(events + rate.interval);
+			return rate.sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < rate.sampleRate;
+		}
+	}
+
+	/**
+	 * Group of {@link ExecutionMode#PARALLEL} handler methods that are invoked as {@link ForkJoinTask}
+	 * instances. Invoking the group returns only after all handler methods in the group complete.
+	 * Handler methods in the group are not stopped when one of them cancels the event, which is instead
+	 * checked by the dispatcher after the group returns, the same way as after any other dispatch target.
+	 * Joining the tasks guarantees that a cancelled state set on a worker thread is visible at that point.
+	 */
+	private static class ParallelDispatchTarget implements DispatchTarget {
+
+		private final EventHandlerMethod[] handlerMethods;
+
+		private ParallelDispatchTarget(EventHandlerMethod[] handlerMethods) {
+			this.handlerMethods = handlerMethods;
+		}
+
+		@Override
+		public void invoke(ZomboidEvent event) {
+
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[handlerMethods.length];
+			for (int i = 0; i < tasks.length; i++)
+			{
+				EventHandlerMethod handlerMethod = handlerMethods[i];
+				tasks[i] = ForkJoinTask.adapt(() -> handlerMethod.invoke(event));
+			}
+			// first task is invoked on current thread and the rest are forked
+			ForkJoinTask.invokeAll(tasks);
+		}
+	}
+
+	/**
+	 * Create a strongly typed invoker for the given event handler method. The invoker is generated with
+	 * {@link LambdaMetafactory} as a hidden class nested in the class that declares the method, so calling
+	 * the invoker results in a direct call to the subscribed method that can be inlined by the JIT compiler.
+	 * If the declaring class cannot be accessed with full privilege, for example when it belongs to a module
+	 * defined by a different class loader, this method falls back to creating a {@link MethodHandle} invoker.
+	 *
+	 * @param method {@code Method} to create the invoker for.
+	 * @param handler instance of the event handler or {@code null} if the method is {@code static}.
+	 *
+	 * @throws IllegalStateException if unable to access the given method.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Consumer<T> createInvoker(Method method, @Nullable Object handler) {
+
+		Class<?> declaringClass = method.getDeclaringClass();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+			if (lookup.hasFullPrivilegeAccess())
+			{
+				MethodType factoryType = handler != null ? MethodType.methodType(Consumer.class, declaringClass)
+						: MethodType.methodType(Consumer.class);
+
+				CallSite callSite = LambdaMetafactory.metafactory(lookup, "accept", factoryType,
+						MethodType.methodType(void.class, Object.class), lookup.unreflect(method),
+						MethodType.methodType(void.class, method.getParameterTypes()[0])
+				);
+				MethodHandle factory = callSite.getTarget();
+				return (Consumer<T>) (handler != null ? factory.invoke(handler) : factory.invoke());
+			}
+		}
+		catch (Throwable e) {
+			StormLogger.debug("Unable to generate invoker for method %s, using method handle instead", method);
+		}
+		try {
+			method.setAccessible(true);
+			MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
+			MethodHandle target = (handler != null ? methodHandle.bindTo(handler) : methodHandle)
+					.asType(MethodType.methodType(void.class, Object.class));
+
+			return event -> {
+				try {
+					target.invokeExact(event);
+				}
+				catch (RuntimeException | Error e) {
+					throw e;
+				}
+				catch (Throwable e) {
+					throw new RuntimeException(e);
+				}
+			};
+		}
+		catch (IllegalAccessException | RuntimeException e) {
+			throw new IllegalStateException("Unable to access event handler method " + method, e);
+		}
+	}
+
+	/**
+	 * Create an invoker for the given instance event handler method that only keeps a weak reference
+	 * to the handler. The subscribed method is called through an invoker generated with {@link LambdaMetafactory}
+	 * that takes the handler as an argument. Once the handler is garbage collected the invoker unregisters
+	 * the given subscription instead of calling the method.
+	 *
+	 * @param method {@code Method} to create the invoker for.
+	 * @param handler instance of the event handler.
+	 * @param subscription reference to subscription of the method, set after the method is registered.
+	 *
+	 * @throws IllegalStateException if unable to access the given method.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Consumer<T> createWeakInvoker(Method method, Object handler,
+													 AtomicReference<EventSubscription> subscription) {
+
+		WeakReference<Object> reference = new WeakReference<>(handler);
+		BiConsumer<Object, T> invoker = null;
+
+		Class<?> declaringClass = method.getDeclaringClass();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+			if (lookup.hasFullPrivilegeAccess())
+			{
+				CallSite callSite = LambdaMetafactory.metafactory(lookup, "accept",
+						MethodType.methodType(BiConsumer.class),
+						MethodType.methodType(void.class, Object.class, Object.class), lookup.unreflect(method),
+						MethodType.methodType(void.class, declaringClass, method.getParameterTypes()[0])
+				);
+				invoker = (BiConsumer<Object, T>) callSite.getTarget().invoke();
+			}
+		}
+		catch (Throwable e) {
+			StormLogger.debug("Unable to generate invoker for method %s, using method handle instead", method);
+		}
+		if (invoker == null)
+		{
 			try {
-				method.invoke(handler, event);
+				method.setAccessible(true);
+				MethodHandle target = MethodHandles.lookup().unreflect(method)
+						.asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+				invoker = (h, event) -> {
+					try {
+						target.invokeExact(h, (Object) event);
+					}
+					catch (RuntimeException | Error e) {
+						throw e;
+					}
+					catch (Throwable e) {
+						throw new RuntimeException(e);
+					}
+				};
 			}
-			catch (ReflectiveOperationException e) {
-				throw new RuntimeException(e);
+			catch (IllegalAccessException | RuntimeException e) {
+				throw new IllegalStateException("Unable to access event handler method " + method, e);
 			}
 		}
+		BiConsumer<Object, T> weakInvoker = invoker;
+		return event -> {
+			Object referent = reference.get();
+			if (referent != null) {
+				weakInvoker.accept(referent, event);
+			}
+			else {
+				EventSubscription eventSubscription = subscription.get();
+				if (eventSubscription != null) {
+					eventSubscription.unregister();
+				}
+			}
+		};
+	}
+
+	private static class EventHandlerMethod implements DispatchTarget {
+
+		/**
+		 * Name of the subscribed method.
+		 */
+		private final String name;
+
+		/**
+		 * {@code Class} of event this method is subscribed to.
+		 */
+		private final Class<? extends ZomboidEvent> eventClass;
+
+		/**
+		 * Group this method belongs to or {@code null} if the method was not registered by a mod.
+		 */
+		private final @Nullable EventHandlerGroup group;
+
+		/**
+		 * Number that marks the order in which this method was registered.
+		 */
+		private final int order;
+
+		private final ExecutionMode mode;
+		private final EventPriority priority;
+
+		/**
+		 * Key of {@link KeyedEvent} this method subscribes to or {@code null} if the method subscribes to all events.
+		 */
+		private final @Nullable Object key;
+
+		/**
+		 * Whether this method collects events into an {@link EventBatch} instead of handling them.
+		 */
+		private final boolean batched;
+
+		/**
+		 * Whether this method only dispatches events it receives as other events.
+		 *
+		 * @see #subscribeBridgeMethod(String, Class, Consumer)
+		 */
+		private final boolean bridge;
+
+		/**
+		 * Pooled event classes this method was excluded from, used to report each exclusion only once.
+		 *
+		 * @see #collectHandlerMethods(Class)
+		 */
+		private final Set<Class<?>> excludedEvents = ConcurrentHashMap.newKeySet();
+
+		/**
+		 * Generated invoker that directly calls the subscribed method, or queues
+		 * the event to be handled by event workers if the method is asynchronous.
+		 *
+		 * @see #createInvoker(Method, Object)
+		 * @see #subscribeHandlerMethod(String, Class, ExecutionMode, OverflowPolicy,
+		 * 		EventPriority, DispatchRate, String, Consumer)
+		 */
+		private final Consumer<ZomboidEvent> invoker;
+
+		/**
+		 * Schedule of this method or {@code null} if the method receives every event.
+		 */
+		private final @Nullable Schedule schedule;
+
+		/**
+		 * Create handler method that handles events with given invoker. If the method is asynchronous
+		 * the invoker is wrapped so that events are queued to be handled by event workers instead.
+		 */
+		private EventHandlerMethod(String name, Class<? extends ZomboidEvent> eventClass,
+								   Consumer<ZomboidEvent> invoker, ExecutionMode mode, OverflowPolicy overflow,
+								   EventPriority priority, DispatchRate rate, @Nullable Object key,
+								   boolean batched, boolean bridge, @Nullable EventHandlerGroup group) {
+
+			this.name = name;
+			this.eventClass = eventClass;
+			this.group = group;
+			this.mode = mode;
+			this.priority = priority;
+			this.key = key;
+			this.batched = batched;
+			this.bridge = bridge;
+
+			if (mode == ExecutionMode.ASYNC) {
+				this.invoker = e -> AsyncExecutorHolder.EXECUTOR.execute(invoker, e, overflow);
+			}
+			else this.invoker = invoker;
+
+			this.schedule = rate.isEveryEvent() ? null : Schedule.create(eventClass, key, rate);
+			this.order = REGISTERED_HANDLER_METHODS.getAndIncrement();
+		}
+
+		@Override
+		public void invoke(ZomboidEvent event) {
+			invoker.accept(event);
+		}
 	}
 }
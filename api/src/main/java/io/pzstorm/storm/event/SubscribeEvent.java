@@ -23,16 +23,87 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import io.pzstorm.storm.event.lua.OnTickEvent;
+
 /**
  * This annotation is used to subscribe methods to {@link ZomboidEvent} types. Methods are registered
  * in bulk via event handler classes. To register an event handler call an appropriate class in
  * {@link StormEventDispatcher}. Once the event handler has been registered all methods belonging to
  * the event handler annotated with {@link SubscribeEvent} will be subscribed to events they specify
  * as method parameters. Read more about this process in {@link StormEventDispatcher} class documentation.
+ * <p>
+ * By default subscribed methods are invoked on the thread that dispatched the event. Methods that perform
+ * expensive work can instead be invoked on a Storm event worker thread by setting {@link #mode()}
+ * to {@link ExecutionMode#ASYNC}, or invoked concurrently with other parallel-safe methods by setting
+ * {@link #mode()} to {@link ExecutionMode#PARALLEL}.
+ * </p><p>
+ * Methods can also subscribe to an {@link EventBatch} of events instead of individual events,
+ * in which case collected events are delivered in bulk once per {@link #flushOn()} event.
+ * </p><p>
+ * Methods subscribed to the same event are invoked in order of their {@link #priority()}, which allows
+ * methods with higher priority to cancel a {@link CancellableEvent} before other methods receive it.
+ * </p><p>
+ * Methods that do not need to handle every event, for example methods subscribed to {@link OnTickEvent}
+ * that only have work to do a few times per second, can declare an {@link #interval()}, a minimum
+ * {@link #period()} or a {@link #sampleRate()}. Methods that are not due are skipped by the dispatcher.
+ * </p>
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 @SuppressWarnings("WeakerAccess")
 public @interface SubscribeEvent {
 
+	/**
+	 * Returns on which thread the annotated method should be invoked.
+	 */
+	ExecutionMode mode() default ExecutionMode.SYNC;
+
+	/**
+	 * Returns the priority of the annotated method, which decides when the method is invoked
+	 * relative to other methods subscribed to the same event.
+	 */
+	EventPriority priority() default EventPriority.NORMAL;
+
+	/**
+	 * Returns what should happen when the annotated method is invoked asynchronously and the event
+	 * worker queue is full. This has no effect unless {@link #mode()} is {@link ExecutionMode#ASYNC}.
+	 */
+	OverflowPolicy overflow() default OverflowPolicy.CALLER_RUNS;
+
+	/**
+	 * Returns the key of {@link KeyedEvent} events the annotated method should receive, or an empty
+	 * string if the method should receive all events. For example a method that declares {@code "MyMod"}
+	 * key and subscribes to {@code OnClientCommandEvent} will only receive commands sent by that module.
+	 */
+	String key() default "";
+
+	/**
+	 * Returns the event on which collected {@link EventBatch} is delivered to the annotated method.
+	 * This has no effect unless the annotated method subscribes to an {@code EventBatch}.
+	 */
+	Class<? extends ZomboidEvent> flushOn() default OnTickEvent.class;
+
+	/**
+	 * Returns the initial capacity of {@link EventBatch} collected for the annotated method.
+	 * This has no effect unless the annotated method subscribes to an {@code EventBatch}.
+	 */
+	int batchCapacity() default 1024;
+
+	/**
+	 * Returns the number of dispatched events per invocation of the annotated method. For example
+	 * a method that declares an interval of {@code 10} is invoked with every tenth event.
+	 */
+	int interval() default 1;
+
+	/**
+	 * Returns the minimum number of milliseconds that have to pass between two invocations
+	 * of the annotated method. Events dispatched before the period has passed are skipped.
+	 */
+	long period() default 0;
+
+	/**
+	 * Returns the probability with which the annotated method is invoked with an event that is
+	 * otherwise due. The value has to be greater than {@code 0} and less than or equal to {@code 1}.
+	 */
+	double sampleRate() default 1;
 }
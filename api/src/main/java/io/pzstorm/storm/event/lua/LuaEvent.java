@@ -32,10 +32,14 @@ import zombie.Lua.LuaManager;
  * implementation instances. Subscribing to events being defined as Java classes offers much
  * easier and safer interaction to subscribers then when subscribing from Lua.</p>
  * <h3>Note for developers</h3>
- * <p>When writing new event implementation classes do not forget to add the class
- * references to {@code LuaEventFactory} static block so that the references are
- * properly mapped and recognized by factory. If the references are not added the
- * factory will not be able create new instances of those event.</p>
+ * <p>New event implementation classes have to be declared in this package and named after
+ * the Lua event they represent with {@code Event} suffix. {@code LuaEventRegistry} is generated
+ * from all event classes in this package when building Storm API, which is how the factory
+ * maps Lua event names to event classes. Event classes declared anywhere else will not
+ * be recognized by the factory.</p>
+ * <p>Lua events are not cancellable, because they are dispatched to Java handler methods while the
+ * Lua event is being triggered. To prevent a Lua event from being triggered, cancel
+ * {@link io.pzstorm.storm.event.OnTriggerLuaEvent OnTriggerLuaEvent} of the Lua event instead.</p>
  */
 public interface LuaEvent extends ZomboidEvent {
 
@@ -44,11 +48,19 @@ public interface LuaEvent extends ZomboidEvent {
 
 		String className = getClass().getSimpleName();
 		if (className.endsWith("Event")) {
-			return className.substring(className.length() - 4);
+			return className.substring(0, className.length() - 5);
 		}
 		else return className;
 	}
 
+	/**
+	 * Add an empty Lua callback to the Lua event this class represents, unless the event already has callbacks.
+	 *
+	 * @deprecated Lua events are delivered to Java handler methods by {@code OnTriggerLuaEventHook} before
+	 * 		they are triggered in Lua, whether or not they have any Lua callbacks. An empty callback only adds
+	 * 		a Kahlua call to every trigger of the event, so this method should not be called anymore.
+	 */
+	@Deprecated
 	default void registerCallback() {
 
 		Event event = LuaEventManager.AddEvent(getName());
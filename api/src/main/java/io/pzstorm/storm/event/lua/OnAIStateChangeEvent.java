@@ -18,6 +18,9 @@
 
 package io.pzstorm.storm.event.lua;
 
+import org.jetbrains.annotations.Nullable;
+
+import io.pzstorm.storm.event.KeyedEvent;
 import zombie.ai.State;
 import zombie.characters.IsoGameCharacter;
 
@@ -25,7 +28,7 @@ import zombie.characters.IsoGameCharacter;
  * Triggered before an AI state changes.
  */
 @SuppressWarnings({ "WeakerAccess", "unused" })
-public class OnAIStateChangeEvent implements LuaEvent {
+public class OnAIStateChangeEvent implements LuaEvent, KeyedEvent {
 
 	/**
 	 * Character that owns the state machine.
@@ -48,4 +51,12 @@ public class OnAIStateChangeEvent implements LuaEvent {
 		this.newState = newState;
 		this.prevState = prevState;
 	}
+
+	/**
+	 * Returns simple class name of the new AI state.
+	 */
+	@Override
+	public @Nullable String getKey() {
+		return newState != null ? newState.getClass().getSimpleName() : null;
+	}
 }
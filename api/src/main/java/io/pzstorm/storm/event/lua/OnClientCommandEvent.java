@@ -18,6 +18,7 @@
 
 package io.pzstorm.storm.event.lua;
 
+import io.pzstorm.storm.event.KeyedEvent;
 import se.krka.kahlua.vm.KahluaTable;
 import zombie.characters.IsoPlayer;
 
@@ -25,7 +26,7 @@ import zombie.characters.IsoPlayer;
  * Triggered when server receives a command from client.
  */
 @SuppressWarnings({ "WeakerAccess", "unused" })
-public class OnClientCommandEvent implements LuaEvent {
+public class OnClientCommandEvent implements LuaEvent, KeyedEvent {
 
 	public final String var1;
 	public final String var2;
@@ -39,4 +40,12 @@ public class OnClientCommandEvent implements LuaEvent {
 		this.player = player;
 		this.table = table;
 	}
+
+	/**
+	 * Returns the name of the module that sent this command.
+	 */
+	@Override
+	public String getKey() {
+		return var1;
+	}
 }
@@ -18,13 +18,15 @@
 
 package io.pzstorm.storm.event.lua;
 
+import io.pzstorm.storm.event.KeyedEvent;
+
 /**
  * Called when key is held down.
  *
  * @see OnKeyPressedEvent
  */
 @SuppressWarnings({ "WeakerAccess", "unused" })
-public class OnKeyKeepPressedEvent implements LuaEvent {
+public class OnKeyKeepPressedEvent implements LuaEvent, KeyedEvent {
 
 	/**
 	 * <p>Integer denoting the key being held down.</p>
@@ -35,4 +37,9 @@ public class OnKeyKeepPressedEvent implements LuaEvent {
 	public OnKeyKeepPressedEvent(Integer key) {
 		this.key = key;
 	}
+
+	@Override
+	public Integer getKey() {
+		return key;
+	}
 }
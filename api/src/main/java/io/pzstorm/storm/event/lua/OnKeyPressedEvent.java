@@ -18,13 +18,15 @@
 
 package io.pzstorm.storm.event.lua;
 
+import io.pzstorm.storm.event.KeyedEvent;
+
 /**
  * Called when key is pressed.
  *
  * @see OnKeyStartPressedEvent
  */
 @SuppressWarnings({ "WeakerAccess", "unused" })
-public class OnKeyPressedEvent implements LuaEvent {
+public class OnKeyPressedEvent implements LuaEvent, KeyedEvent {
 
 	/**
 	 * <p>Integer denoting the key being pressed.</p>
@@ -35,4 +37,9 @@ public class OnKeyPressedEvent implements LuaEvent {
 	public OnKeyPressedEvent(Integer key) {
 		this.key = key;
 	}
+
+	@Override
+	public Integer getKey() {
+		return key;
+	}
 }
@@ -18,13 +18,15 @@
 
 package io.pzstorm.storm.event.lua;
 
+import io.pzstorm.storm.event.KeyedEvent;
+
 /**
  * Called when key is initially pressed.
  *
  * @see OnKeyPressedEvent
  */
 @SuppressWarnings({ "WeakerAccess", "unused" })
-public class OnKeyStartPressedEvent implements LuaEvent {
+public class OnKeyStartPressedEvent implements LuaEvent, KeyedEvent {
 
 	/**
 	 * <p>Integer denoting the key being pressed.</p>
@@ -35,4 +37,9 @@ public class OnKeyStartPressedEvent implements LuaEvent {
 	public OnKeyStartPressedEvent(Integer key) {
 		this.key = key;
 	}
+
+	@Override
+	public Integer getKey() {
+		return key;
+	}
 }
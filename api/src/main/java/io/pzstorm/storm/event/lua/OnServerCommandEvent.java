@@ -18,13 +18,14 @@
 
 package io.pzstorm.storm.event.lua;
 
+import io.pzstorm.storm.event.KeyedEvent;
 import se.krka.kahlua.vm.KahluaTable;
 
 /**
  * Triggered when client receives server command.
  */
 @SuppressWarnings({ "WeakerAccess", "unused" })
-public class OnServerCommandEvent implements LuaEvent {
+public class OnServerCommandEvent implements LuaEvent, KeyedEvent {
 
 	// TODO: finish documenting this event
 	public final String var1, var2;
@@ -36,4 +37,12 @@ public class OnServerCommandEvent implements LuaEvent {
 		this.var2 = var2;
 		this.var3 = var3;
 	}
+
+	/**
+	 * Returns the name of the module that sent this command.
+	 */
+	@Override
+	public String getKey() {
+		return var1;
+	}
 }
@@ -0,0 +1,469 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.pzstorm.storm.event.StormEventDispatcher;
+
+/**
+ * Annotation processor that validates methods annotated with {@code SubscribeEvent} at compile time
+ * and generates a registration class for every event handler class that declares them. Generated
+ * registration classes subscribe handler methods to {@link StormEventDispatcher} with method references,
+ * which means that registering the event handler requires no reflection and dispatching events results
+ * in direct calls to handler methods.
+ * <p>
+ * Registration classes are generated in the same package as the event handler class and are named after
+ * the binary name of the handler class with {@code $} replaced by {@code _} and
+ * {@link StormEventDispatcher#GENERATED_REGISTRATION_SUFFIX} appended to it. Event handlers that are
+ * not accessible from their package, such as private nested classes, are not given a registration
+ * class and will be registered with reflection instead.
+ * </p>
+ */
+@SupportedAnnotationTypes(SubscribeEventProcessor.SUBSCRIBE_EVENT)
+public class SubscribeEventProcessor extends AbstractProcessor {
+
+	static final String SUBSCRIBE_EVENT = "io.pzstorm.storm.event.SubscribeEvent";
+
+	private static final String ZOMBOID_EVENT = "io.pzstorm.storm.event.ZomboidEvent";
+	private static final String EVENT_BATCH = "io.pzstorm.storm.event.EventBatch";
+	private static final String KEYED_EVENT = "io.pzstorm.storm.event.KeyedEvent";
+	private static final String POOLED_EVENT = "io.pzstorm.storm.event.PooledEvent";
+	private static final String EXECUTION_MODE = "io.pzstorm.storm.event.ExecutionMode";
+	private static final String OVERFLOW_POLICY = "io.pzstorm.storm.event.OverflowPolicy";
+	private static final String EVENT_PRIORITY = "io.pzstorm.storm.event.EventPriority";
+	private static final String DISPATCH_RATE = "io.pzstorm.storm.event.DispatchRate";
+	private static final String DISPATCHER = "io.pzstorm.storm.event.StormEventDispatcher";
+	private static final String EVENT_SUBSCRIPTION = "io.pzstorm.storm.event.EventSubscription";
+
+	private Elements elements;
+	private Types types;
+	private Messager messager;
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+
+		super.init(processingEnv);
+		elements = processingEnv.getElementUtils();
+		types = processingEnv.getTypeUtils();
+		messager = processingEnv.getMessager();
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+		TypeElement subscribeEvent = elements.getTypeElement(SUBSCRIBE_EVENT);
+		if (subscribeEvent == null) {
+			return false;
+		}
+		// group annotated methods by the class that declares them
+		Set<TypeElement> handlerTypes = new LinkedHashSet<>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(subscribeEvent))
+		{
+			if (element.getKind() == ElementKind.METHOD) {
+				handlerTypes.add((TypeElement) element.getEnclosingElement());
+			}
+		}
+		for (TypeElement handlerType : handlerTypes) {
+			processHandlerType(handlerType, subscribeEvent);
+		}
+		return true;
+	}
+
+	/**
+	 * Validate all methods subscribed with {@code SubscribeEvent} annotation in given event handler
+	 * class, including inherited methods, and generate registration class for the event handler.
+	 * The registration class is not generated if any of the methods is not valid.
+	 */
+	private void processHandlerType(TypeElement handlerType, TypeElement subscribeEvent) {
+
+		List<SubscribedMethod> subscribedMethods = new ArrayList<>();
+		boolean valid = true;
+
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(handlerType)))
+		{
+			AnnotationMirror annotation = getAnnotationMirror(method, subscribeEvent);
+			if (annotation != null)
+			{
+				SubscribedMethod subscribedMethod = validateMethod(method, annotation);
+				if (subscribedMethod != null) {
+					subscribedMethods.add(subscribedMethod);
+				}
+				else valid = false;
+			}
+		}
+		long staticMethods = subscribedMethods.stream().filter(m -> m.isStatic).count();
+		if (staticMethods != 0 && staticMethods != subscribedMethods.size())
+		{
+			error(handlerType, "Event handler %s declares both STATIC and INSTANCE subscribed methods. " +
+					"Event handlers are registered either by class or by instance so all subscribed " +
+					"methods have to be declared in the same context.", handlerType.getQualifiedName());
+			valid = false;
+		}
+		if (valid && !subscribedMethods.isEmpty() && isAccessibleFromPackage(handlerType))
+		{
+			try {
+				writeRegistrationClass(handlerType, subscribedMethods, staticMethods != 0);
+			}
+			catch (IOException e) {
+				error(handlerType, "Unable to generate registration class: %s", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Validate given subscribed method the same way {@link StormEventDispatcher} does when
+	 * registering event handlers with reflection, reporting any problems as compile errors.
+	 *
+	 * @return {@code SubscribedMethod} representing the method or {@code null} if the method is not valid.
+	 */
+	private @Nullable SubscribedMethod validateMethod(ExecutableElement method, AnnotationMirror annotation) {
+
+		if (!method.getModifiers().contains(Modifier.PUBLIC))
+		{
+			error(method, "Subscribed method %s has to be declared as public", method.getSimpleName());
+			return null;
+		}
+		List<? extends VariableElement> parameters = method.getParameters();
+		if (parameters.size() != 1)
+		{
+			error(method, "Invalid arguments for method %s. Expected exactly one argument but found %d",
+					method.getSimpleName(), parameters.size());
+			return null;
+		}
+		TypeMirror zomboidEvent = types.erasure(elements.getTypeElement(ZOMBOID_EVENT).asType());
+		TypeMirror eventBatch = types.erasure(elements.getTypeElement(EVENT_BATCH).asType());
+		TypeMirror parameterType = parameters.get(0).asType();
+
+		String mode = getEnumValue(annotation, "mode");
+		String priority = getEnumValue(annotation, "priority");
+		String key = (String) getAnnotationValue(annotation, "key").getValue();
+
+		int interval = (Integer) getAnnotationValue(annotation, "interval").getValue();
+		long period = (Long) getAnnotationValue(annotation, "period").getValue();
+		double sampleRate = (Double) getAnnotationValue(annotation, "sampleRate").getValue();
+		if (interval < 1 || period < 0 || !(sampleRate > 0 && sampleRate <= 1))
+		{
+			error(method, "Subscribed method %s declares invalid dispatch rate. Interval has to be positive, " +
+					"period cannot be negative and sample rate has to be in range (0, 1]", method.getSimpleName());
+			return null;
+		}
+		SubscribedMethod subscribedMethod;
+		if (types.isSameType(types.erasure(parameterType), eventBatch))
+		{
+			List<? extends TypeMirror> typeArguments = ((DeclaredType) parameterType).getTypeArguments();
+			if (typeArguments.size() != 1 || typeArguments.get(0).getKind() != TypeKind.DECLARED ||
+					!types.isAssignable(typeArguments.get(0), zomboidEvent))
+			{
+				error(method, "Invalid arguments for method %s. Expected EventBatch of ZomboidEvent type " +
+						"but found %s", method.getSimpleName(), parameterType);
+				return null;
+			}
+			TypeElement eventType = (TypeElement) types.asElement(typeArguments.get(0));
+			if (isPooledEvent(eventType))
+			{
+				error(method, "Subscribed method %s cannot collect EventBatch of pooled event %s " +
+						"because pooled events are reused after dispatching", method.getSimpleName(), eventType);
+				return null;
+			}
+			if (mode.equals("ASYNC"))
+			{
+				error(method, "Subscribed method %s cannot be ASYNC because it subscribes to EventBatch " +
+						"and batches are reused after delivery", method.getSimpleName());
+				return null;
+			}
+			TypeMirror flushOn = (TypeMirror) getAnnotationValue(annotation, "flushOn").getValue();
+			int capacity = (Integer) getAnnotationValue(annotation, "batchCapacity").getValue();
+
+			subscribedMethod = new SubscribedMethod(method, eventType, mode, priority, key);
+			subscribedMethod.flushOn = types.erasure(flushOn).toString();
+			subscribedMethod.batchCapacity = capacity;
+		}
+		else if (parameterType.getKind() == TypeKind.DECLARED && types.isAssignable(parameterType, zomboidEvent))
+		{
+			TypeElement eventType = (TypeElement) types.asElement(parameterType);
+			if (isPooledEvent(eventType) && mode.equals("ASYNC"))
+			{
+				error(method, "Subscribed method %s cannot be ASYNC because it subscribes to pooled " +
+						"event %s that is reused after dispatching", method.getSimpleName(), eventType);
+				return null;
+			}
+			subscribedMethod = new SubscribedMethod(method, eventType, mode, priority, key);
+			subscribedMethod.overflow = getEnumValue(annotation, "overflow");
+		}
+		else {
+			error(method, "Invalid arguments for method %s. Expected ZomboidEvent but found %s",
+					method.getSimpleName(), parameterType);
+			return null;
+		}
+		if (interval != 1 || period != 0 || sampleRate != 1)
+		{
+			subscribedMethod.rate = String.format("%s.of(%s, %s, %s)", DISPATCH_RATE,
+					elements.getConstantExpression(interval), elements.getConstantExpression(period),
+					elements.getConstantExpression(sampleRate));
+		}
+		return validateKey(subscribedMethod) ? subscribedMethod : null;
+	}
+
+	/**
+	 * Validate that key declared by given subscribed method can be converted
+	 * to the key type declared by {@code KeyedEvent#getKey()} of subscribed event.
+	 */
+	private boolean validateKey(SubscribedMethod subscribedMethod) {
+
+		String key = subscribedMethod.key;
+		if (key.isEmpty()) {
+			return true;
+		}
+		ExecutableElement method = subscribedMethod.method;
+		TypeElement eventType = subscribedMethod.eventType;
+
+		TypeMirror keyedEvent = elements.getTypeElement(KEYED_EVENT).asType();
+		if (!types.isAssignable(types.erasure(eventType.asType()), keyedEvent))
+		{
+			error(method, "Subscribed method %s declares key '%s' for event %s that does not implement KeyedEvent",
+					method.getSimpleName(), key, eventType.getQualifiedName());
+			return false;
+		}
+		for (ExecutableElement member : ElementFilter.methodsIn(elements.getAllMembers(eventType)))
+		{
+			if (member.getSimpleName().contentEquals("getKey") && member.getParameters().isEmpty())
+			{
+				TypeMirror keyType = member.getReturnType();
+				Element keyElement = types.asElement(keyType);
+				if (keyType.toString().equals(Integer.class.getName()))
+				{
+					try {
+						Integer.valueOf(key);
+					}
+					catch (NumberFormatException e)
+					{
+						error(method, "Key '%s' of subscribed method %s is not a valid Integer key of event %s",
+								key, method.getSimpleName(), eventType.getQualifiedName());
+						return false;
+					}
+				}
+				else if (keyElement != null && keyElement.getKind() == ElementKind.ENUM)
+				{
+					boolean isConstant = keyElement.getEnclosedElements().stream().anyMatch(e ->
+							e.getKind() == ElementKind.ENUM_CONSTANT && e.getSimpleName().contentEquals(key));
+
+					if (!isConstant)
+					{
+						error(method, "Key '%s' of subscribed method %s is not a constant of enum %s",
+								key, method.getSimpleName(), keyElement);
+						return false;
+					}
+				}
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Generate registration class for given event handler class.
+	 *
+	 * @param handlerType event handler class to generate registration class for.
+	 * @param subscribedMethods validated methods subscribed in event handler class.
+	 * @param isStatic {@code true} if event handler declares static methods.
+	 */
+	private void writeRegistrationClass(TypeElement handlerType, List<SubscribedMethod> subscribedMethods,
+										boolean isStatic) throws IOException {
+
+		String packageName = elements.getPackageOf(handlerType).getQualifiedName().toString();
+		String binaryName = elements.getBinaryName(handlerType).toString();
+		String simpleBinaryName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+
+		String className = simpleBinaryName.replace('$', '_') + StormEventDispatcher.GENERATED_REGISTRATION_SUFFIX;
+		String handlerName = types.erasure(handlerType.asType()).toString();
+		String qualifiedName = packageName.isEmpty() ? className : packageName + '.' + className;
+
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n * Registers subscribed methods of {@link ").append(handlerName)
+				.append("} with event dispatcher.\n */\n");
+		source.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+		source.append("public final class ").append(className).append(" {\n\n");
+		source.append("\tprivate ").append(className).append("() {\n\t\tthrow new UnsupportedOperationException();\n\t}\n\n");
+
+		source.append("\tpublic static ").append(EVENT_SUBSCRIPTION).append(" registerEventHandler(");
+		if (!isStatic) {
+			source.append(handlerName).append(" handler");
+		}
+		source.append(") {\n\t\treturn ").append(EVENT_SUBSCRIPTION).append(".of(");
+
+		String receiver = isStatic ? handlerName : "handler";
+		for (Iterator<SubscribedMethod> iter = subscribedMethods.iterator(); iter.hasNext();)
+		{
+			SubscribedMethod subscribedMethod = iter.next();
+			String methodName = subscribedMethod.method.getSimpleName().toString();
+			String eventClass = types.erasure(subscribedMethod.eventType.asType()).toString();
+
+			source.append("\n\t\t\t\t").append(DISPATCHER);
+			if (subscribedMethod.flushOn != null)
+			{
+				source.append(".subscribeBatchHandlerMethod(\"")
+						.append(methodName).append("\", ").append(eventClass).append(".class, ")
+						.append(subscribedMethod.flushOn).append(".class, ")
+						.append(subscribedMethod.batchCapacity).append(", ")
+						.append(EXECUTION_MODE).append('.').append(subscribedMethod.mode).append(", ");
+			}
+			else {
+				source.append(".subscribeHandlerMethod(\"")
+						.append(methodName).append("\", ").append(eventClass).append(".class, ")
+						.append(EXECUTION_MODE).append('.').append(subscribedMethod.mode).append(", ")
+						.append(OVERFLOW_POLICY).append('.').append(subscribedMethod.overflow).append(", ");
+			}
+			source.append(EVENT_PRIORITY).append('.').append(subscribedMethod.priority).append(", ")
+					.append(subscribedMethod.rate).append(", ")
+					.append(elements.getConstantExpression(subscribedMethod.key)).append(", ")
+					.append(receiver).append("::").append(methodName).append(iter.hasNext() ? ")," : ")");
+		}
+		source.append("\n\t\t);\n\t}\n}\n");
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, handlerType).openWriter()) {
+			writer.write(source.toString());
+		}
+	}
+
+	/**
+	 * Returns {@code true} if given type can be accessed from other classes in the same package.
+	 */
+	private static boolean isAccessibleFromPackage(TypeElement type) {
+
+		for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement())
+		{
+			if (element.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+			NestingKind nesting = ((TypeElement) element).getNestingKind();
+			if (nesting == NestingKind.ANONYMOUS || nesting == NestingKind.LOCAL) {
+				return false;
+			}
+		}
+		return !type.getKind().isInterface();
+	}
+
+	private boolean isPooledEvent(TypeElement eventType) {
+
+		TypeElement pooledEvent = elements.getTypeElement(POOLED_EVENT);
+		return pooledEvent != null && getAnnotationMirror(eventType, pooledEvent) != null;
+	}
+
+	private static @Nullable AnnotationMirror getAnnotationMirror(Element element, TypeElement annotationType) {
+
+		for (AnnotationMirror mirror : element.getAnnotationMirrors())
+		{
+			if (mirror.getAnnotationType().asElement().equals(annotationType)) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns value of annotation element with given name or its default value if the
+	 * element is not explicitly declared. Annotation elements are read from annotation mirror
+	 * because reading {@code Class} values from annotation instances is not possible at compile time.
+	 */
+	private AnnotationValue getAnnotationValue(AnnotationMirror annotation, String name) {
+
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+				elements.getElementValuesWithDefaults(annotation).entrySet())
+		{
+			if (entry.getKey().getSimpleName().contentEquals(name)) {
+				return entry.getValue();
+			}
+		}
+		throw new IllegalStateException("Annotation element " + name + " not found in " + annotation);
+	}
+
+	private String getEnumValue(AnnotationMirror annotation, String name) {
+		return ((VariableElement) getAnnotationValue(annotation, name).getValue()).getSimpleName().toString();
+	}
+
+	private void error(Element element, String format, Object... args) {
+		messager.printMessage(Diagnostic.Kind.ERROR, String.format(format, args), element);
+	}
+
+	/**
+	 * Represents a validated method subscribed with {@code SubscribeEvent} annotation.
+	 */
+	private static class SubscribedMethod {
+
+		private final ExecutableElement method;
+		private final boolean isStatic;
+
+		/**
+		 * Class of event the method subscribes to, or class of batched events if the method subscribes to
+		 * {@code EventBatch}.
+		 */
+		private final TypeElement eventType;
+		private final String mode;
+		private final String priority;
+		private final String key;
+
+		private String overflow = "CALLER_RUNS";
+
+		/**
+		 * Expression that evaluates to the {@code DispatchRate} declared by the method.
+		 */
+		private String rate = DISPATCH_RATE + ".EVERY_EVENT";
+
+		/**
+		 * Qualified name of the flush event class or {@code null} if the method does not subscribe to batches.
+		 */
+		private @Nullable String flushOn;
+		private int batchCapacity;
+
+		private SubscribedMethod(ExecutableElement method, TypeElement eventType,
+								 String mode, String priority, String key) {
+
+			this.method = method;
+			this.isStatic = method.getModifiers().contains(Modifier.STATIC);
+			this.eventType = eventType;
+			this.mode = mode;
+			this.priority = priority;
+			this.key = key;
+		}
+	}
+}
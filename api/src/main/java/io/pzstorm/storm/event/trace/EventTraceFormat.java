@@ -0,0 +1,291 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event.trace;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.pzstorm.storm.event.ZomboidEvent;
+
+/**
+ * This class describes the binary format of event traces. A trace file is divided into chunks of
+ * fixed size that are mapped into memory one at a time, and records never span two chunks.
+ * The first chunk starts with a header followed by records, which are one of:
+ * <ul>
+ * <li>{@link #CLASS_RECORD} that assigns an identifier to an event class and lists its recorded fields.</li>
+ * <li>{@link #EVENT_RECORD} that contains class identifier, timestamp and values of recorded fields.</li>
+ * <li>{@link #END_OF_TRACE} that marks the end of recorded trace.</li>
+ * </ul>
+ * The remainder of a chunk that cannot fit the next record is left filled with zeroes.
+ * <p>
+ * Only fields that can be written without referencing game objects are recorded. These are
+ * fields of primitive types, their wrappers, {@code String} and enum types. Static and transient
+ * fields are never recorded.
+ * </p>
+ */
+final class EventTraceFormat {
+
+	static final int MAGIC = 0x53545243;
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 10;
+
+	static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	static final byte END_OF_CHUNK = 0;
+	static final byte CLASS_RECORD = 1;
+	static final byte EVENT_RECORD = 2;
+	static final byte END_OF_TRACE = 3;
+
+	private EventTraceFormat() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns recorded fields declared by given event class and its superclasses.
+	 */
+	static List<Field> getRecordedFields(Class<?> eventClass) {
+
+		List<Field> fields = new ArrayList<>();
+		for (Class<?> type = eventClass; type != Object.class; type = type.getSuperclass())
+		{
+			for (Field field : type.getDeclaredFields())
+			{
+				int modifiers = field.getModifiers();
+				if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) &&
+						FieldType.of(field.getType()) != null)
+				{
+					field.setAccessible(true);
+					fields.add(field);
+				}
+			}
+		}
+		return fields;
+	}
+
+	static void putString(ByteBuffer buffer, @Nullable String value) {
+
+		if (value != null)
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			buffer.putInt(bytes.length).put(bytes);
+		}
+		else buffer.putInt(-1);
+	}
+
+	static @Nullable String getString(ByteBuffer buffer) {
+
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Type of recorded field, written to trace as its ordinal. Values of reference types
+	 * are preceded by a byte that marks whether the value is {@code null}.
+	 */
+	enum FieldType {
+
+		BOOLEAN(boolean.class, Boolean.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.put((byte) ((Boolean) value ? 1 : 0));
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.get() != 0;
+			}
+		},
+		BYTE(byte.class, Byte.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.put((Byte) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.get();
+			}
+		},
+		SHORT(short.class, Short.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.putShort((Short) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.getShort();
+			}
+		},
+		CHAR(char.class, Character.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.putChar((Character) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.getChar();
+			}
+		},
+		INT(int.class, Integer.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.putInt((Integer) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.getInt();
+			}
+		},
+		LONG(long.class, Long.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.putLong((Long) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.getLong();
+			}
+		},
+		FLOAT(float.class, Float.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.putFloat((Float) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.getFloat();
+			}
+		},
+		DOUBLE(double.class, Double.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				buffer.putDouble((Double) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return buffer.getDouble();
+			}
+		},
+		STRING(String.class, String.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				putString(buffer, (String) value);
+			}
+
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return getString(buffer);
+			}
+		},
+		ENUM(Enum.class, Enum.class) {
+			@Override
+			void putValue(ByteBuffer buffer, Object value) {
+				putString(buffer, ((Enum<?>) value).name());
+			}
+
+			/**
+			 * Returns the name of enum constant, which is resolved by the reader.
+			 */
+			@Override
+			Object getValue(ByteBuffer buffer) {
+				return Objects.requireNonNull(getString(buffer));
+			}
+		};
+
+		private static final FieldType[] VALUES = values();
+
+		private final Class<?> primitiveType;
+		private final Class<?> referenceType;
+
+		FieldType(Class<?> primitiveType, Class<?> referenceType) {
+
+			this.primitiveType = primitiveType;
+			this.referenceType = referenceType;
+		}
+
+		/**
+		 * Returns field type of values of given class or {@code null} if the values cannot be recorded.
+		 */
+		static @Nullable FieldType of(Class<?> type) {
+
+			for (FieldType fieldType : VALUES)
+			{
+				if (type == fieldType.primitiveType || type == fieldType.referenceType) {
+					return fieldType;
+				}
+			}
+			return type.isEnum() ? ENUM : null;
+		}
+
+		static FieldType get(byte ordinal) {
+			return VALUES[ordinal];
+		}
+
+		/**
+		 * Write value of given field declared by given event.
+		 */
+		void write(ByteBuffer buffer, Field field, ZomboidEvent event) throws IllegalAccessException {
+
+			Object value = field.get(event);
+			if (!field.getType().isPrimitive())
+			{
+				buffer.put((byte) (value != null ? 1 : 0));
+				if (value == null) {
+					return;
+				}
+			}
+			putValue(buffer, value);
+		}
+
+		/**
+		 * Read value written by {@link #write(ByteBuffer, Field, ZomboidEvent)}.
+		 *
+		 * @param isPrimitive whether the value was written from a field of primitive type.
+		 */
+		@Nullable Object read(ByteBuffer buffer, boolean isPrimitive) {
+
+			if (!isPrimitive && buffer.get() == 0) {
+				return null;
+			}
+			return getValue(buffer);
+		}
+
+		abstract void putValue(ByteBuffer buffer, Object value);
+
+		abstract Object getValue(ByteBuffer buffer);
+	}
+}
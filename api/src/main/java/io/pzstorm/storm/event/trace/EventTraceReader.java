@@ -0,0 +1,323 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.base.Defaults;
+
+import io.pzstorm.storm.event.ZomboidEvent;
+import io.pzstorm.storm.event.trace.EventTraceFormat.FieldType;
+import io.pzstorm.storm.logging.StormLogger;
+
+/**
+ * This class reads events from a trace written by {@link EventTraceRecorder}. Events are
+ * reconstructed by calling the event class constructor with the fewest parameters with default
+ * parameter values, which are {@code null}, zero and {@code false}, and then setting recorded fields
+ * to recorded values. All other fields are left as set by the constructor, so events can be
+ * replayed only if their classes declare a constructor that accepts default values, and events of
+ * other classes are skipped. Call {@link #next()} to advance to the next event in trace and
+ * {@link #getEvent()} and {@link #getTimestamp()} to read it.
+ */
+public final class EventTraceReader implements Closeable {
+
+	private final FileChannel channel;
+	private final ClassLoader classLoader;
+	private final long fileSize;
+	private final int chunkSize;
+
+	private final List<@Nullable TracedClass> tracedClasses = new ArrayList<>();
+
+	private ByteBuffer chunk;
+	private long chunkStart;
+
+	private @Nullable ZomboidEvent event;
+	private long timestamp;
+
+	/**
+	 * Open given trace file for reading.
+	 *
+	 * @param file path to trace file.
+	 * @param classLoader {@code ClassLoader} used to load recorded event classes.
+	 *
+	 * @throws IOException if an I/O error occurred while reading the file or the file is not a valid trace.
+	 */
+	public EventTraceReader(Path file, ClassLoader classLoader) throws IOException {
+
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.classLoader = classLoader;
+		this.fileSize = channel.size();
+
+		ByteBuffer header = ByteBuffer.allocate(EventTraceFormat.HEADER_SIZE);
+		channel.read(header, 0);
+		header.flip();
+		if (header.remaining() < EventTraceFormat.HEADER_SIZE || header.getInt() != EventTraceFormat.MAGIC)
+		{
+			channel.close();
+			throw new IOException("File " + file + " is not an event trace");
+		}
+		short version = header.getShort();
+		if (version != EventTraceFormat.VERSION)
+		{
+			channel.close();
+			throw new IOException("Unsupported event trace version " + version);
+		}
+		this.chunkSize = header.getInt();
+		this.chunk = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, chunkSize));
+		chunk.position(EventTraceFormat.HEADER_SIZE);
+	}
+
+	/**
+	 * Advance to the next event in trace.
+	 *
+	 * @return {@code true} if there was another event in trace, {@code false} if the end of trace was reached.
+	 *
+	 * @throws IOException if an I/O error occurred while reading the file.
+	 */
+	public boolean next() throws IOException {
+
+		while (true)
+		{
+			byte recordType = chunk.hasRemaining() ? chunk.get() : EventTraceFormat.END_OF_CHUNK;
+			switch (recordType)
+			{
+				case EventTraceFormat.CLASS_RECORD:
+					readClass();
+					break;
+				case EventTraceFormat.EVENT_RECORD:
+					if (readEvent()) {
+						return true;
+					}
+					break;
+				case EventTraceFormat.END_OF_CHUNK:
+					chunkStart += chunkSize;
+					if (chunkStart >= fileSize)
+					{
+						event = null;
+						return false;
+					}
+					chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+							chunkStart, Math.min(fileSize - chunkStart, chunkSize));
+					break;
+				case EventTraceFormat.END_OF_TRACE:
+					event = null;
+					return false;
+				default:
+					throw new IOException("Unknown record type " + recordType + " at " +
+							(chunkStart + chunk.position() - 1));
+			}
+		}
+	}
+
+	/**
+	 * Returns event read by the last call to {@link #next()}.
+	 *
+	 * @throws IllegalStateException if there is no current event.
+	 */
+	public ZomboidEvent getEvent() {
+
+		if (event == null) {
+			throw new IllegalStateException("No event was read from trace");
+		}
+		return event;
+	}
+
+	/**
+	 * Returns the number of nanoseconds between the start of recording
+	 * and recording of the event read by the last call to {@link #next()}.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	private void readClass() {
+
+		short id = chunk.getShort();
+		String className = EventTraceFormat.getString(chunk);
+		int fieldCount = chunk.getShort();
+
+		String[] fieldNames = new String[fieldCount];
+		FieldType[] types = new FieldType[fieldCount];
+		boolean[] primitive = new boolean[fieldCount];
+		for (int i = 0; i < fieldCount; i++)
+		{
+			fieldNames[i] = EventTraceFormat.getString(chunk);
+			types[i] = FieldType.get(chunk.get());
+			primitive[i] = chunk.get() != 0;
+		}
+		while (tracedClasses.size() <= id) {
+			tracedClasses.add(null);
+		}
+		tracedClasses.set(id, new TracedClass(String.valueOf(className), fieldNames, types, primitive));
+	}
+
+	/**
+	 * Read event record and reconstruct the recorded event.
+	 *
+	 * @return {@code true} if the event was reconstructed or {@code false} if the
+	 * 		event class could not be loaded or constructed and the event was skipped.
+	 *
+	 * @throws IOException if the record references a class that was not defined in trace.
+	 */
+	private boolean readEvent() throws IOException {
+
+		short id = chunk.getShort();
+		TracedClass tracedClass = id < tracedClasses.size() ? tracedClasses.get(id) : null;
+		if (tracedClass == null) {
+			throw new IOException("Event record references undefined class " + id);
+		}
+		timestamp = chunk.getLong();
+
+		Object[] values = new Object[tracedClass.types.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = tracedClass.types[i].read(chunk, tracedClass.primitive[i]);
+		}
+		event = tracedClass.newEvent(values);
+		return event != null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Event class defined in trace along with fields that are set to values recorded for each event.
+	 */
+	private class TracedClass {
+
+		private final String className;
+		private final FieldType[] types;
+		private final boolean[] primitive;
+
+		/**
+		 * Constructor that creates instances of event class, or {@code null} if the event
+		 * class could not be loaded or constructed and events of this class are skipped.
+		 */
+		private @Nullable Constructor<?> constructor;
+
+		/**
+		 * Default values of constructor parameters.
+		 */
+		private final Object[] arguments;
+
+		/**
+		 * Fields of event class that match recorded fields. Recorded fields that are not declared by
+		 * event class or whose type has changed since the trace was recorded are represented with {@code null}.
+		 */
+		private final @Nullable Field[] fields;
+
+		private TracedClass(String className, String[] fieldNames, FieldType[] types, boolean[] primitive) {
+
+			this.className = className;
+			this.types = types;
+			this.primitive = primitive;
+			this.fields = new Field[fieldNames.length];
+
+			Constructor<?> eventConstructor = null;
+			Object[] eventArguments = new Object[0];
+			try {
+				Class<?> eventClass = Class.forName(className, false, classLoader);
+				List<Field> declaredFields = EventTraceFormat.getRecordedFields(eventClass);
+				for (int i = 0; i < fieldNames.length; i++)
+				{
+					for (Field field : declaredFields)
+					{
+						if (field.getName().equals(fieldNames[i]) && FieldType.of(field.getType()) == types[i]
+								&& field.getType().isPrimitive() == primitive[i])
+						{
+							fields[i] = field;
+							break;
+						}
+					}
+				}
+				eventConstructor = Arrays.stream(eventClass.getDeclaredConstructors())
+						.min(Comparator.comparingInt(Constructor::getParameterCount))
+						.orElseThrow(() -> new NoSuchMethodException("No constructor declared by " + className));
+
+				eventConstructor.setAccessible(true);
+				eventArguments = Arrays.stream(eventConstructor.getParameterTypes())
+						.map(Defaults::defaultValue).toArray();
+			}
+			catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+				StormLogger.warn("Events of class " + className + " will be skipped: " + e);
+			}
+			this.constructor = eventConstructor;
+			this.arguments = eventArguments;
+		}
+
+		/**
+		 * Create an instance of event class with given recorded field values.
+		 *
+		 * @return created event or {@code null} if the event class could not be loaded or constructed.
+		 */
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private @Nullable ZomboidEvent newEvent(Object[] values) {
+
+			if (constructor == null) {
+				return null;
+			}
+			try {
+				ZomboidEvent tracedEvent = (ZomboidEvent) constructor.newInstance(arguments);
+				for (int i = 0; i < values.length; i++)
+				{
+					Field field = fields[i];
+					Object value = values[i];
+					if (field != null && value != null)
+					{
+						if (types[i] == FieldType.ENUM)
+						{
+							try {
+								value = Enum.valueOf((Class<Enum>) field.getType(), (String) value);
+							}
+							catch (IllegalArgumentException e) {
+								// constant was removed since the trace was recorded
+								continue;
+							}
+						}
+						field.set(tracedEvent, value);
+					}
+				}
+				return tracedEvent;
+			}
+			catch (ReflectiveOperationException | IllegalArgumentException e)
+			{
+				// constructor is called with the same arguments so reconstructing other events would fail as well
+				constructor = null;
+				Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+				StormLogger.warn("Events of class " + className + " will be skipped: " + cause);
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.pzstorm.storm.event.*;
+import io.pzstorm.storm.event.trace.EventTraceFormat.FieldType;
+import io.pzstorm.storm.logging.StormLogger;
+
+/**
+ * This class records every event dispatched by {@link StormEventDispatcher} to a binary trace file that
+ * can be replayed with {@link EventTraceReplayer}. The recorder is invoked by the dispatcher before any
+ * dispatch target, so events are recorded before handlers with any priority or key can modify or cancel
+ * them, regardless of whether they are dispatched by hooks installed in game code or posted by mods.
+ * <p>
+ * The trace is written directly to the memory-mapped file, so recording an event does not perform
+ * any I/O on the dispatching thread. Read more about the trace format in {@link EventTraceFormat}.
+ * </p>
+ */
+public final class EventTraceRecorder implements Closeable {
+
+	/**
+	 * Events larger than this number of bytes are not recorded.
+	 */
+	private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final int chunkSize;
+	private final long startTime;
+
+	private final Map<Class<?>, RecordedClass> recordedClasses = new HashMap<>();
+	private final ByteBuffer record;
+
+	private MappedByteBuffer chunk;
+	private long chunkStart;
+	private long recordedEvents, droppedEvents;
+
+	private final EventSubscription subscription;
+	private boolean closed;
+
+	EventTraceRecorder(Path file, int chunkSize) throws IOException {
+
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		this.chunkSize = chunkSize;
+		// every record has to fit in an empty chunk along with end of trace marker
+		this.record = ByteBuffer.allocate(Math.min(MAX_RECORD_SIZE, chunkSize - EventTraceFormat.HEADER_SIZE - 1));
+		this.chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSize);
+		chunk.putInt(EventTraceFormat.MAGIC).putShort(EventTraceFormat.VERSION).putInt(chunkSize);
+
+		this.startTime = System.nanoTime();
+		this.subscription = StormEventDispatcher.subscribeEventRecorder(this::recordEvent);
+	}
+
+	/**
+	 * Start recording dispatched events to given file. Existing file is overwritten.
+	 *
+	 * @param file path to trace file.
+	 *
+	 * @return recorder that records events until it is closed.
+	 *
+	 * @throws IOException if an I/O error occurred while creating the file.
+	 */
+	public static EventTraceRecorder start(Path file) throws IOException {
+
+		StormLogger.info("Recording event trace to " + file);
+		return new EventTraceRecorder(file, EventTraceFormat.DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Write given event to trace. Events are recorded one at a time so that records
+	 * of events dispatched concurrently from different threads are not interleaved.
+	 */
+	private synchronized void recordEvent(ZomboidEvent event) {
+
+		if (closed) {
+			return;
+		}
+		try {
+			RecordedClass recordedClass = recordedClasses.get(event.getClass());
+			if (recordedClass == null)
+			{
+				recordedClass = new RecordedClass(event.getClass(), recordedClasses.size());
+				record.clear();
+				recordedClass.writeDefinition(record);
+				writeRecord();
+
+				// register the class only when its definition was written to trace
+				recordedClasses.put(event.getClass(), recordedClass);
+			}
+			record.clear();
+			record.put(EventTraceFormat.EVENT_RECORD).putShort(recordedClass.id)
+					.putLong(System.nanoTime() - startTime);
+
+			for (int i = 0; i < recordedClass.fields.length; i++) {
+				recordedClass.types[i].write(record, recordedClass.fields[i], event);
+			}
+			writeRecord();
+			recordedEvents++;
+		}
+		catch (BufferOverflowException e) {
+			droppedEvents++;
+		}
+		catch (IllegalAccessException | IOException e)
+		{
+			droppedEvents++;
+			StormLogger.error("Unable to record event " + event.getName(), e);
+		}
+	}
+
+	/**
+	 * Copy record written to record buffer into the mapped chunk. When the record
+	 * does not fit in the current chunk the next chunk of the file is mapped.
+	 */
+	private void writeRecord() throws IOException {
+
+		record.flip();
+		// leave room for end of trace marker
+		if (record.remaining() >= chunk.remaining())
+		{
+			chunkStart += chunkSize;
+			chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, chunkSize);
+		}
+		chunk.put(record);
+	}
+
+	/**
+	 * Returns the number of events written to trace.
+	 */
+	public synchronized long getRecordedEventCount() {
+		return recordedEvents;
+	}
+
+	/**
+	 * Returns the number of events that were not written to trace
+	 * because they were too large or could not be read.
+	 */
+	public synchronized long getDroppedEventCount() {
+		return droppedEvents;
+	}
+
+	/**
+	 * Stop recording events and mark the end of trace. The trace file is left at the size of mapped
+	 * chunks, since a file that is still mapped into memory cannot be truncated on every platform.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+
+		if (!closed)
+		{
+			closed = true;
+			subscription.unregister();
+
+			chunk.put(EventTraceFormat.END_OF_TRACE);
+			chunk.force();
+			channel.close();
+			StormLogger.info("Recorded %d events to trace, %d events were dropped", recordedEvents, droppedEvents);
+		}
+	}
+
+	/**
+	 * Event class recorded to trace along with the fields whose values are recorded.
+	 */
+	private static class RecordedClass {
+
+		private final Class<?> eventClass;
+		private final short id;
+		private final Field[] fields;
+		private final FieldType[] types;
+
+		private RecordedClass(Class<?> eventClass, int id) {
+
+			List<Field> recordedFields = EventTraceFormat.getRecordedFields(eventClass);
+			this.eventClass = eventClass;
+			this.id = (short) id;
+			this.fields = recordedFields.toArray(new Field[0]);
+			this.types = new FieldType[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				types[i] = Objects.requireNonNull(FieldType.of(fields[i].getType()));
+			}
+		}
+
+		private void writeDefinition(ByteBuffer buffer) {
+
+			buffer.put(EventTraceFormat.CLASS_RECORD).putShort(id);
+			EventTraceFormat.putString(buffer, eventClass.getName());
+			buffer.putShort((short) fields.length);
+			for (int i = 0; i < fields.length; i++)
+			{
+				EventTraceFormat.putString(buffer, fields[i].getName());
+				buffer.put((byte) types[i].ordinal()).put((byte) (fields[i].getType().isPrimitive() ? 1 : 0));
+			}
+		}
+	}
+}
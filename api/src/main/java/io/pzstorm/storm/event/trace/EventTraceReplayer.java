@@ -0,0 +1,77 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event.trace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import io.pzstorm.storm.event.StormEventDispatcher;
+import io.pzstorm.storm.event.ZomboidEvent;
+
+/**
+ * This class replays event traces recorded by {@link EventTraceRecorder} through event handlers
+ * registered with {@link StormEventDispatcher}. Events are dispatched one after another as fast as
+ * the handlers can handle them, ignoring the time between recorded events, which makes it possible
+ * to measure how handlers perform under the load of a long play session without running the game.
+ */
+public final class EventTraceReplayer {
+
+	private EventTraceReplayer() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Dispatch all events recorded in given trace file to registered event handlers.
+	 *
+	 * @param file path to trace file.
+	 *
+	 * @return number of dispatched events.
+	 *
+	 * @throws IOException if an I/O error occurred while reading the file or the file is not a valid trace.
+	 */
+	public static long replay(Path file) throws IOException {
+		return replay(file, StormEventDispatcher::dispatchEvent);
+	}
+
+	/**
+	 * Pass all events recorded in given trace file to given consumer. Event classes are loaded
+	 * with the class loader that loaded {@link StormEventDispatcher}.
+	 *
+	 * @param file path to trace file.
+	 * @param consumer {@code Consumer} that accepts replayed events.
+	 *
+	 * @return number of replayed events.
+	 *
+	 * @throws IOException if an I/O error occurred while reading the file or the file is not a valid trace.
+	 */
+	public static long replay(Path file, Consumer<ZomboidEvent> consumer) throws IOException {
+
+		long replayedEvents = 0;
+		try (EventTraceReader reader = new EventTraceReader(file, StormEventDispatcher.class.getClassLoader()))
+		{
+			while (reader.next())
+			{
+				consumer.accept(reader.getEvent());
+				replayedEvents++;
+			}
+		}
+		return replayedEvents;
+	}
+}
@@ -22,6 +22,11 @@ package io.pzstorm.storm.mod;
  * This class represents a Project Zomboid Java mod entry point. Every mod is expected to have
  * a single class that implements this class. Mods that do not implement this class will not be
  * registered and will not be eligible to subscribe to events.
+ * <p>
+ * Event handlers registered in {@link #registerEventHandlers()} are added to the handler group of the mod,
+ * which can be retrieved with {@code StormEventDispatcher#getHandlerGroup(ZomboidMod)} to enable, disable
+ * or unregister all handlers of the mod at runtime.
+ * </p>
  */
 public interface ZomboidMod {
 	void registerEventHandlers();
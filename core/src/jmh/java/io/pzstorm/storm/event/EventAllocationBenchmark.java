@@ -0,0 +1,122 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures memory allocated by dispatching an event from a hook call site. Run with the {@code gc}
+ * profiler and compare {@code gc.alloc.rate.norm} values: the {@code allocated} benchmark creates a new
+ * event for every dispatch while the {@code pooled} benchmark should report zero bytes per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventAllocationBenchmark {
+
+	private static final MethodHandle DISPATCH_ALLOCATED_EVENT = createCallSite(AllocatedBenchmarkEvent.class);
+	private static final MethodHandle DISPATCH_POOLED_EVENT = createCallSite(PooledBenchmarkEvent.class);
+
+	/**
+	 * Handlers store the last event they receive so that allocated events
+	 * escape and cannot be eliminated by the JIT compiler.
+	 */
+	private static ZomboidEvent lastEvent;
+
+	private final Object value = new Object();
+
+	/**
+	 * Create a dispatch call site the same way the JVM does when linking hooks installed in game code.
+	 */
+	private static MethodHandle createCallSite(Class<?> eventClass) {
+
+		try {
+			return StormEventDispatcher.bootstrapDispatch(MethodHandles.lookup(), "dispatchEvent",
+					MethodType.methodType(void.class, Object.class), eventClass).dynamicInvoker();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Setup
+	public void registerHandlers() {
+		StormEventDispatcher.registerEventHandler(BenchmarkHandler.class);
+	}
+
+	@Benchmark
+	public void allocated() throws Throwable {
+		DISPATCH_ALLOCATED_EVENT.invokeExact(value);
+	}
+
+	@Benchmark
+	public void pooled() throws Throwable {
+		DISPATCH_POOLED_EVENT.invokeExact(value);
+	}
+
+	public static class AllocatedBenchmarkEvent implements ZomboidEvent {
+
+		public final Object value;
+
+		public AllocatedBenchmarkEvent(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public String getName() {
+			return "allocatedBenchmarkEvent";
+		}
+	}
+
+	@PooledEvent
+	public static class PooledBenchmarkEvent implements ZomboidEvent {
+
+		public Object value;
+
+		public PooledBenchmarkEvent() {
+		}
+
+		public void reset(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public String getName() {
+			return "pooledBenchmarkEvent";
+		}
+	}
+
+	public static class BenchmarkHandler {
+
+		@SubscribeEvent
+		public static void handleEvent(AllocatedBenchmarkEvent event) {
+			lastEvent = event;
+		}
+
+		@SubscribeEvent
+		public static void handleEvent(PooledBenchmarkEvent event) {
+			lastEvent = event;
+		}
+	}
+}
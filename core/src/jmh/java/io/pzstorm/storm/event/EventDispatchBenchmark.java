@@ -0,0 +1,89 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of delivering a single event to a subscribed method. The {@code reflective}
+ * benchmark represents the previous dispatch path which called {@link Method#invoke(Object, Object...)}
+ * for every handler, while {@code dispatch} benchmarks go through {@link StormEventDispatcher}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDispatchBenchmark {
+
+	private final BenchmarkEvent event = new BenchmarkEvent();
+	private final InstanceBenchmarkHandler instanceHandler = new InstanceBenchmarkHandler();
+
+	private Method staticHandlerMethod;
+	private Method instanceHandlerMethod;
+
+	@Setup
+	public void registerHandlers() throws NoSuchMethodException {
+
+		StormEventDispatcher.registerEventHandler(StaticBenchmarkHandler.class);
+		StormEventDispatcher.registerEventHandler(instanceHandler);
+
+		staticHandlerMethod = StaticBenchmarkHandler.class.getMethod("handleEvent", BenchmarkEvent.class);
+		instanceHandlerMethod = InstanceBenchmarkHandler.class.getMethod("handleEvent", BenchmarkEvent.class);
+	}
+
+	@Benchmark
+	public void reflective() throws ReflectiveOperationException {
+
+		staticHandlerMethod.invoke(null, event);
+		instanceHandlerMethod.invoke(instanceHandler, event);
+	}
+
+	@Benchmark
+	public void dispatch() {
+		StormEventDispatcher.dispatchEvent(event);
+	}
+
+	public static class BenchmarkEvent implements ZomboidEvent {
+
+		private int counter;
+
+		@Override
+		public String getName() {
+			return "benchmarkEvent";
+		}
+	}
+
+	public static class StaticBenchmarkHandler {
+
+		@SubscribeEvent
+		public static void handleEvent(BenchmarkEvent event) {
+			event.counter++;
+		}
+	}
+
+	public static class InstanceBenchmarkHandler {
+
+		@SubscribeEvent
+		public void handleEvent(BenchmarkEvent event) {
+			event.counter--;
+		}
+	}
+}
@@ -158,8 +158,12 @@ public class StormBootstrap {
 		// this class should have already been initialized, so just get the reference
 		Class<?> zomboidModClass = Class.forName("io.pzstorm.storm.mod.ZomboidMod", false, CLASS_LOADER);
 
+		// register event handlers of each mod in the handler group of that mod
+		Class<?> eventDispatcher = Class.forName("io.pzstorm.storm.event.StormEventDispatcher", true, CLASS_LOADER);
+		Method registerModEventHandlers = eventDispatcher.getDeclaredMethod("registerModEventHandlers", zomboidModClass);
+
 		for (Object mod : (Set<Object>) modRegistry.getDeclaredMethod("getRegisteredMods").invoke(null)) {
-			zomboidModClass.getDeclaredMethod("registerEventHandlers").invoke(mod);
+			registerModEventHandlers.invoke(null, mod);
 		}
 	}
 }
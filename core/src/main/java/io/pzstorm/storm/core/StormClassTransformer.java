@@ -18,6 +18,8 @@
 
 package io.pzstorm.storm.core;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import org.jetbrains.annotations.Contract;
@@ -26,6 +28,7 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.MethodNode;
 
@@ -83,6 +86,32 @@ public abstract class StormClassTransformer {
 		return new InsnList();
 	}
 
+	/**
+	 * Returns list of all methods declared by the visited class. Hooks that need to
+	 * transform every method that matches some criteria, rather than a single method
+	 * with known name and descriptor, use this to iterate over class methods.
+	 *
+	 * @return list of visited class methods or an empty list if no class was read.
+	 */
+	@Contract(pure = true)
+	public final List<MethodNode> getMethods() {
+		return classReader != null ? visitor.methods : Collections.emptyList();
+	}
+
+	/**
+	 * Add a new field without initial value to the visited class.
+	 *
+	 * @param access access flags of the field.
+	 * @param name name of the field.
+	 * @param descriptor descriptor of the field type.
+	 *
+	 * @see <a href="https://asm.ow2.io/asm4-guide.pdf#subsection.2.2.5">
+	 * 		ASM User Guide - Generating classes</a>
+	 */
+	public final void addField(int access, String name, String descriptor) {
+		visitor.fields.add(new FieldNode(access, name, descriptor, null, null));
+	}
+
 	/**
 	 * Read or parse class byte array using {@link ClassReader}.
 	 *
@@ -31,9 +31,15 @@ import org.objectweb.asm.tree.MethodNode;
 import com.google.common.collect.ImmutableMap;
 
 import io.pzstorm.storm.hook.*;
+import io.pzstorm.storm.lua.LuaCallbackProfiler;
+import io.pzstorm.storm.lua.LuaCompileCache;
+import io.pzstorm.storm.lua.LuaParallelLoader;
+import io.pzstorm.storm.lua.LuaSamplingProfiler;
 import io.pzstorm.storm.patch.DebugLogPatch;
 import io.pzstorm.storm.patch.DebugLogStreamPatch;
 import io.pzstorm.storm.patch.GameWindowPatch;
+import io.pzstorm.storm.patch.LuaEventPatch;
+import io.pzstorm.storm.patch.LuaParallelLoadPatch;
 import io.pzstorm.storm.patch.ZomboidPatch;
 
 /**
@@ -93,12 +99,25 @@ public class StormClassTransformers {
 						.build()
 		);
 		registerTransformer("fmod.fmod.FMODManager", new OnLoadSoundBanksHook());
+		if (LuaSamplingProfiler.isEnabled()) {
+			registerTransformer("se.krka.kahlua.vm.KahluaThread", new LuaSamplingProfilerHook());
+		}
+		if (LuaCompileCache.isEnabled() && !LuaParallelLoader.isEnabled()) {
+			registerTransformer("zombie.Lua.LuaManager", new LuaCompileCacheHook());
+		}
 
 		///////////////////////
 		// REGISTER PATCHES //
 		/////////////////////
 
 		registerTransformer("zombie.debug.DebugLog", new DebugLogPatch());
+		if (LuaCallbackProfiler.isEnabled()) {
+			registerTransformer("zombie.Lua.Event", new LuaEventPatch(), new LuaCallbackProfilerHook());
+		}
+		else registerTransformer("zombie.Lua.Event", new LuaEventPatch());
+		if (LuaParallelLoader.isEnabled()) {
+			registerTransformer("zombie.Lua.LuaManager", new LuaParallelLoadPatch(), new LuaCompileCacheHook());
+		}
 		registerTransformer("zombie.debug.DebugLogStream", new DebugLogStreamPatch(),
 				ImmutableMap.<MethodData, MethodMaxs>builder()
 						.put(new MethodData("printException",
@@ -139,6 +158,30 @@ public class StormClassTransformers {
 		});
 	}
 
+	/**
+	 * Create and register a new {@link StormClassTransformer} with given name that applies a
+	 * {@link ZomboidPatch} and then installs a {@link StormHook} designated by method parameters.
+	 * This is used when a class is both patched and hooked, as only one transformer can be
+	 * registered for each class.
+	 *
+	 * @param className name of the target class to transform.
+	 * @param patch {@code ZomboidPatch} to apply with transformation.
+	 * @param hook {@link StormHook} to install with transformation.
+	 */
+	private static void registerTransformer(String className, ZomboidPatch patch, StormHook hook) {
+
+		TRANSFORMERS.put(className, new StormClassTransformer(className) {
+
+			@Override
+			StormClassTransformer transform() {
+
+				patch.applyPatch(this);
+				hook.installHook(this);
+				return this;
+			}
+		});
+	}
+
 	/**
 	 * Create and register a new {@link StormClassTransformer} with given name that applies
 	 * a {@link ZomboidPatch} designated by method parameter. Additionally this method
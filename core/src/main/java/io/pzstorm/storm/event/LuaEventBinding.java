@@ -0,0 +1,342 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.event;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.primitives.Primitives;
+
+import io.pzstorm.storm.event.lua.LuaEvent;
+import zombie.Lua.Event;
+
+/**
+ * This class binds a Lua event to the {@link LuaEvent} class that represents it. Bindings hold
+ * {@link MethodHandle} factories for every constructor of the event class grouped by arity, so
+ * constructing an event does not search for a matching constructor or use reflection. When there is
+ * more than one constructor with the same arity, the factory that matches argument classes of the last
+ * constructed event is cached, and constructors are matched again only when argument classes change.
+ * <p>
+ * Each Lua event stores its binding in a field injected into {@link Event} by {@code LuaEventPatch},
+ * which means that bindings are resolved by event name only the first time a Lua event is triggered.
+ * </p><p>
+ * Bindings also track whether any Java handler method would receive the Lua event, which lets
+ * {@code OnTriggerLuaEventHook} skip dispatching {@link OnTriggerLuaEvent} for Lua events
+ * that are only handled by Lua callbacks. See {@link #isBridged(Event)} for more information.
+ * </p>
+ */
+public final class LuaEventBinding {
+
+	/**
+	 * Name of the field injected into {@link Event} that stores binding of the event.
+	 */
+	public static final String BINDING_FIELD = "stormLuaEventBinding";
+
+	/**
+	 * Binding of Lua events that are not represented by any {@link LuaEvent} class.
+	 */
+	static final LuaEventBinding UNBOUND = new LuaEventBinding();
+
+	/**
+	 * Handle to the field injected into {@link Event} or {@code null} if the
+	 * field was not injected, in which case bindings are resolved by name.
+	 */
+	private static final @Nullable VarHandle EVENT_BINDING;
+
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(LuaEvent.class, Object[].class);
+
+	static
+	{
+		VarHandle eventBinding;
+		try {
+			eventBinding = MethodHandles.lookup().findVarHandle(Event.class, BINDING_FIELD, Object.class);
+		}
+		catch (NoSuchFieldException | IllegalAccessException e) {
+			eventBinding = null;
+		}
+		EVENT_BINDING = eventBinding;
+	}
+
+	private final @Nullable Class<? extends LuaEvent> eventClass;
+
+	/**
+	 * Factories of event instances indexed by the number of arguments they accept.
+	 */
+	private final Factories[] factories;
+
+	/**
+	 * Whether the bound Lua event is bridged in the lowest bit, and the dispatch registry version
+	 * it was computed for in the remaining bits. These are stored in a single field so that reading
+	 * the state never observes a result that was computed for a different registry version.
+	 */
+	private int bridgedState = -1;
+
+	private LuaEventBinding() {
+
+		this.eventClass = null;
+		this.factories = new Factories[0];
+	}
+
+	/**
+	 * Create binding for given event class from its public constructors.
+	 *
+	 * @throws IllegalStateException if a constructor of event class cannot be accessed.
+	 */
+	LuaEventBinding(Class<? extends LuaEvent> eventClass) {
+
+		this.eventClass = eventClass;
+
+		List<List<Factory>> factoriesByArity = new ArrayList<>();
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		for (Constructor<?> constructor : eventClass.getConstructors())
+		{
+			int arity = constructor.getParameterCount();
+			while (factoriesByArity.size() <= arity) {
+				factoriesByArity.add(new ArrayList<>());
+			}
+			try {
+				MethodHandle handle = lookup.unreflectConstructor(constructor)
+						.asSpreader(Object[].class, arity).asType(FACTORY_TYPE);
+
+				factoriesByArity.get(arity).add(new Factory(constructor.getParameterTypes(), handle));
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException("Found inaccessible constructor for class '" + eventClass + '\'', e);
+			}
+		}
+		this.factories = new Factories[factoriesByArity.size()];
+		for (int i = 0; i < factories.length; i++)
+		{
+			List<Factory> arityFactories = factoriesByArity.get(i);
+			if (!arityFactories.isEmpty()) {
+				factories[i] = new Factories(arityFactories.toArray(new Factory[0]));
+			}
+		}
+	}
+
+	/**
+	 * Returns binding stored in given Lua event, resolving and storing the binding if the event
+	 * was not bound yet. If the binding field was not injected into {@link Event} the binding
+	 * is resolved by event name every time.
+	 *
+	 * @param luaEvent Lua event to get binding for.
+	 */
+	static LuaEventBinding of(Event luaEvent) {
+
+		if (EVENT_BINDING == null) {
+			return LuaEventFactory.getBinding(luaEvent.name);
+		}
+		Object binding = EVENT_BINDING.get(luaEvent);
+		if (binding == null)
+		{
+			binding = LuaEventFactory.getBinding(luaEvent.name);
+			EVENT_BINDING.set(luaEvent, binding);
+		}
+		return (LuaEventBinding) binding;
+	}
+
+	/**
+	 * Returns {@code true} if given Lua event should be dispatched to Java handler methods, which is
+	 * when there are methods subscribed to the {@link LuaEvent} class that represents it or when there
+	 * are methods other than the {@link StormEventHandler#handleLuaEventTrigger bridge method}
+	 * subscribed to {@link OnTriggerLuaEvent}.
+	 * This is an internal method <b>only</b> called by {@code OnTriggerLuaEventHook} as a
+	 * dispatch guard, so that Lua events nobody subscribes to in Java are only handled in Lua.
+	 * <p>
+	 * The result is cached in the binding of the Lua event and computed again only when
+	 * {@link StormEventDispatcher#getRegistryVersion() dispatch registry version} changes,
+	 * which means that checking the state costs about as much as testing a bit in a bitset.
+	 * </p>
+	 *
+	 * @param luaEvent Lua event that is about to be triggered.
+	 */
+	public static boolean isBridged(Event luaEvent) {
+		return of(luaEvent).isBridged();
+	}
+
+	private boolean isBridged() {
+
+		int version = StormEventDispatcher.getRegistryVersion() & Integer.MAX_VALUE;
+		int state = bridgedState;
+		if (state >>> 1 != version)
+		{
+			// registry version is read first so that concurrent changes are never missed
+			boolean bridged = (eventClass != null && StormEventDispatcher.hasSubscribedMethods(eventClass)) ||
+					StormEventDispatcher.hasSubscribedMethods(OnTriggerLuaEvent.class);
+
+			state = version << 1 | (bridged ? 1 : 0);
+			bridgedState = state;
+		}
+		return (state & 1) != 0;
+	}
+
+	/**
+	 * Returns {@link LuaEvent} class bound by this binding or {@code null} if the
+	 * Lua event is not represented by any {@code LuaEvent} class.
+	 */
+	@Nullable Class<? extends LuaEvent> getEventClass() {
+		return eventClass;
+	}
+
+	/**
+	 * Construct a new instance of bound {@link LuaEvent} with given array of arguments.
+	 *
+	 * @param args array of arguments to use when instantiating {@code LuaEvent}.
+	 *
+	 * @return new instance of {@code LuaEvent} or {@code null} if this binding is {@link #UNBOUND}.
+	 *
+	 * @throws IllegalArgumentException if no constructor with parameters matching specified
+	 * 		array of arguments was found for bound {@code LuaEvent} class.
+	 * @throws IllegalStateException if an error occurred while instantiating {@code LuaEvent}.
+	 */
+	@Nullable LuaEvent construct(Object[] args) {
+
+		if (eventClass == null) {
+			return null;
+		}
+		Factories arityFactories = args.length < factories.length ? factories[args.length] : null;
+		Factory factory = arityFactories != null ? arityFactories.get(args) : null;
+		if (factory == null)
+		{
+			String message = "Unable to find constructor for class '%s' that matches arguments %s";
+			throw new IllegalArgumentException(String.format(message, eventClass, Arrays.toString(args)));
+		}
+		try {
+			return (LuaEvent) factory.handle.invokeExact(args);
+		}
+		catch (RuntimeException | Error e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+	 * Factories of constructors with the same arity.
+	 */
+	private static class Factories {
+
+		private final Factory[] factories;
+
+		/**
+		 * Factory that matched argument classes of the last constructed event. This is not used
+		 * when there is only one factory with this arity, which is the case for most events.
+		 */
+		private volatile @Nullable CachedFactory cached;
+
+		private Factories(Factory[] factories) {
+			this.factories = factories;
+		}
+
+		/**
+		 * Returns factory that accepts given arguments or {@code null} if none of the factories accept them.
+		 */
+		private @Nullable Factory get(Object[] args) {
+
+			if (factories.length == 1) {
+				return factories[0].matches(args) ? factories[0] : null;
+			}
+			CachedFactory cachedFactory = cached;
+			if (cachedFactory != null && cachedFactory.matches(args)) {
+				return cachedFactory.factory;
+			}
+			for (Factory factory : factories)
+			{
+				if (factory.matches(args))
+				{
+					cached = new CachedFactory(args, factory);
+					return factory;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static class Factory {
+
+		private final Class<?>[] parameterTypes;
+		private final MethodHandle handle;
+
+		private Factory(Class<?>[] parameterTypes, MethodHandle handle) {
+
+			this.parameterTypes = parameterTypes;
+			this.handle = handle;
+		}
+
+		/**
+		 * Returns {@code true} if all non-null arguments can be assigned to constructor parameters.
+		 */
+		private boolean matches(Object[] args) {
+
+			for (int i = 0; i < parameterTypes.length; i++)
+			{
+				Object arg = args[i];
+				if (arg == null)
+				{
+					if (parameterTypes[i].isPrimitive()) {
+						return false;
+					}
+				}
+				else if (!Primitives.wrap(parameterTypes[i]).isInstance(arg)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Factory that matched arguments of given classes, where {@code null}
+	 * represents class of {@code null} arguments.
+	 */
+	private static class CachedFactory {
+
+		private final Class<?>[] argClasses;
+		private final Factory factory;
+
+		private CachedFactory(Object[] args, Factory factory) {
+
+			this.argClasses = new Class<?>[args.length];
+			for (int i = 0; i < args.length; i++) {
+				argClasses[i] = args[i] != null ? args[i].getClass() : null;
+			}
+			this.factory = factory;
+		}
+
+		private boolean matches(Object[] args) {
+
+			for (int i = 0; i < args.length; i++)
+			{
+				if ((args[i] != null ? args[i].getClass() : null) != argClasses[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
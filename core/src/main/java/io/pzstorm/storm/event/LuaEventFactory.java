@@ -18,256 +18,41 @@
 
 package io.pzstorm.storm.event;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Modifier;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.annotations.Unmodifiable;
 
-import io.pzstorm.storm.event.lua.*;
+import io.pzstorm.storm.event.lua.LuaEvent;
+import io.pzstorm.storm.event.lua.LuaEventRegistry;
+import zombie.Lua.Event;
 
 /**
  * This class is used to creates new {@link LuaEvent} instances on demand.
- * The factory uses reflection to invoke the event class constructor to instantiate events.
- * Note that class and constructor instances are statically mapped and ready for access
- * which reduces overhead when using reflection to instantiate event objects.
+ * The factory invokes event class constructors through {@link LuaEventBinding} instances
+ * that are created once for every event class, and Lua events triggered by the game
+ * store their binding so that it does not have to be resolved by name again.
+ * <p>
+ * Event classes are resolved by name with {@link LuaEventRegistry}, which is generated when
+ * building Storm API from all {@code LuaEvent} classes in its package. Event classes are loaded
+ * and bindings are created only when an event is constructed for the first time, so events that
+ * are never triggered or never constructed do not cost anything at startup.
+ * </p>
  */
-@SuppressWarnings("unchecked")
 public class LuaEventFactory {
 
 	/**
-	 * This map contains {@link LuaEvent} constructors mapped to implementation classes.
-	 * Constructors are mapped in this way to increase performance when instantiating {@code LuaEvent}s.
+	 * This map contains {@link LuaEvent} bindings mapped to implementation classes.
+	 * Bindings are created the first time an event of the class is constructed.
 	 */
-	@Unmodifiable
-	private static final Map<Class<? extends LuaEvent>, Constructor<? extends LuaEvent>[]> EVENT_CONSTRUCTORS;
+	private static final Map<Class<? extends LuaEvent>, LuaEventBinding> EVENT_BINDINGS = new ConcurrentHashMap<>();
 
 	/**
-	 * This map contains {@link LuaEvent} classes mapped to their respected names.
-	 * Classes are mapped in this way to increase performance when instantiating {@code LuaEvent}s.
+	 * This map contains {@link LuaEvent} bindings mapped to names of Lua events, including
+	 * {@link LuaEventBinding#UNBOUND} for names that are not represented by any event class.
 	 */
-	@Unmodifiable
-	private static final Map<String, Class<? extends LuaEvent>> EVENT_CLASSES;
-
-	static
-	{
-		Map<Class<? extends LuaEvent>, Constructor<LuaEvent>[]> eventConstructors = new HashMap<>();
-		Map<String, Class<? extends LuaEvent>> eventClassesMap = new HashMap<>();
-		/*
-		 * this is a complete list of all event classes,
-		 * if a class is not listed here it will NOT be possible
-		 * to instantiate the related event instance with this factory
-		 */
-		Class<? extends LuaEvent>[] eventClasses = (Class<? extends LuaEvent>[]) new Class[] {
-				OnGameBootEvent.class,
-				OnPreGameStartEvent.class,
-				OnTickEvent.class,
-				OnTickEvenPausedEvent.class,
-				OnRenderUpdateEvent.class,
-				OnFETickEvent.class,
-				OnGameStartEvent.class,
-				OnPreUIDrawEvent.class,
-				OnPostUIDrawEvent.class,
-				OnCharacterCollideEvent.class,
-				OnKeyStartPressedEvent.class,
-				OnKeyPressedEvent.class,
-				OnObjectCollideEvent.class,
-				OnNPCSurvivorUpdateEvent.class,
-				OnPlayerUpdateEvent.class,
-				OnZombieUpdateEvent.class,
-				OnTriggerNPCEvent.class,
-				OnMultiTriggerNPCEvent.class,
-				OnLoadMapZonesEvent.class,
-				OnAddBuildingEvent.class,
-				OnCreateLivingCharacterEvent.class,
-				OnChallengeQueryEvent.class,
-				OnFillInventoryObjectContextMenuEvent.class,
-				OnPreFillInventoryObjectContextMenuEvent.class,
-				OnFillWorldObjectContextMenuEvent.class,
-				OnPreFillWorldObjectContextMenuEvent.class,
-				OnRefreshInventoryWindowContainersEvent.class,
-				OnMakeItemEvent.class,
-				OnJoypadActivateEvent.class,
-				OnWeaponHitCharacterEvent.class,
-				OnWeaponSwingEvent.class,
-				OnWeaponHitTreeEvent.class,
-				OnWeaponHitXpEvent.class,
-				OnWeaponSwingHitPointEvent.class,
-				OnPlayerAttackFinishedEvent.class,
-				OnLoginStateEvent.class,
-				OnLoginStateSuccessEvent.class,
-				OnCharacterCreateStatsEvent.class,
-				OnObjectLeftMouseButtonDownEvent.class,
-				OnObjectLeftMouseButtonUpEvent.class,
-				OnObjectRightMouseButtonDownEvent.class,
-				OnObjectRightMouseButtonUpEvent.class,
-				OnDoTileBuildingEvent.class,
-				OnDoTileBuilding2Event.class,
-				OnDoTileBuilding3Event.class,
-				OnConnectFailedEvent.class,
-				OnConnectedEvent.class,
-				OnDisconnectEvent.class,
-				OnConnectionStateChangedEvent.class,
-				OnScoreboardUpdateEvent.class,
-				OnMouseMoveEvent.class,
-				OnMouseDownEvent.class,
-				OnMouseUpEvent.class,
-				OnRightMouseDownEvent.class,
-				OnRightMouseUpEvent.class,
-				OnNewSurvivorGroupEvent.class,
-				OnPlayerSetSafehouseEvent.class,
-				OnLoadEvent.class,
-				AddXPEvent.class,
-				LevelPerkEvent.class,
-				OnSaveEvent.class,
-				OnMainMenuEnterEvent.class,
-				OnPreMapLoadEvent.class,
-				OnPostFloorSquareDrawEvent.class,
-				OnPostFloorLayerDrawEvent.class,
-				OnPostTilesSquareDrawEvent.class,
-				OnPostTileDrawEvent.class,
-				OnPostWallSquareDrawEvent.class,
-				OnPostCharactersSquareDrawEvent.class,
-				OnCreateUIEvent.class,
-				OnMapLoadCreateIsoObjectEvent.class,
-				OnCreateSurvivorEvent.class,
-				OnCreatePlayerEvent.class,
-				OnPlayerDeathEvent.class,
-				OnZombieDeadEvent.class,
-				OnCharacterDeathEvent.class,
-				OnCharacterMeetEvent.class,
-				OnSpawnRegionsLoadedEvent.class,
-				OnPostMapLoadEvent.class,
-				OnAIStateExecuteEvent.class,
-				OnAIStateEnterEvent.class,
-				OnAIStateExitEvent.class,
-				OnAIStateChangeEvent.class,
-				OnPlayerMoveEvent.class,
-				OnInitWorldEvent.class,
-				OnNewGameEvent.class,
-				OnIsoThumpableLoadEvent.class,
-				OnIsoThumpableSaveEvent.class,
-				ReuseGridsquareEvent.class,
-				LoadGridsquareEvent.class,
-				EveryOneMinuteEvent.class,
-				EveryTenMinutesEvent.class,
-				EveryDaysEvent.class,
-				EveryHoursEvent.class,
-				OnDuskEvent.class,
-				OnDawnEvent.class,
-				OnEquipPrimaryEvent.class,
-				OnEquipSecondaryEvent.class,
-				OnClothingUpdatedEvent.class,
-				OnRainStartEvent.class,
-				OnRainStopEvent.class,
-				OnAmbientSoundEvent.class,
-				OnResetLuaEvent.class,
-				OnModsModifiedEvent.class,
-				OnSeeNewRoomEvent.class,
-				OnNewFireEvent.class,
-				OnFillContainerEvent.class,
-				OnChangeWeatherEvent.class,
-				OnRenderTickEvent.class,
-				OnJoypadActivateUIEvent.class,
-				OnDestroyIsoThumpableEvent.class,
-				OnPostSaveEvent.class,
-				OnResolutionChangeEvent.class,
-				OnWaterAmountChangeEvent.class,
-				OnClientCommandEvent.class,
-				OnServerCommandEvent.class,
-				OnContainerUpdateEvent.class,
-				OnObjectAddedEvent.class,
-				OnObjectAboutToBeRemovedEvent.class,
-				onLoadModDataFromServerEvent.class,
-				OnGameTimeLoadedEvent.class,
-				OnGameWindowInitEvent.class,
-				OnCGlobalObjectSystemInitEvent.class,
-				OnSGlobalObjectSystemInitEvent.class,
-				OnWorldMessageEvent.class,
-				OnKeyKeepPressedEvent.class,
-				SendCustomModDataEvent.class,
-				ServerPingedEvent.class,
-				OnServerStartedEvent.class,
-				OnLoadedTileDefinitionsEvent.class,
-				OnPostRenderEvent.class,
-				DoSpecialTooltipEvent.class,
-				OnCoopJoinFailedEvent.class,
-				OnServerWorkshopItemsEvent.class,
-				OnVehicleDamageTextureEvent.class,
-				OnCustomUIKeyEvent.class,
-				OnCustomUIKeyPressedEvent.class,
-				OnCustomUIKeyReleasedEvent.class,
-				OnDeviceTextEvent.class,
-				OnRadioInteractionEvent.class,
-				OnLoadRadioScriptsEvent.class,
-				OnAcceptInviteEvent.class,
-				OnCoopServerMessageEvent.class,
-				OnReceiveUserlogEvent.class,
-				OnAdminMessageEvent.class,
-				OnGetDBSchemaEvent.class,
-				OnGetTableResultEvent.class,
-				ReceiveFactionInviteEvent.class,
-				AcceptedFactionInviteEvent.class,
-				ViewTicketsEvent.class,
-				SyncFactionEvent.class,
-				OnReceiveItemListNetEvent.class,
-				OnMiniScoreboardUpdateEvent.class,
-				OnSafehousesChangedEvent.class,
-				RequestTradeEvent.class,
-				AcceptedTradeEvent.class,
-				TradingUIAddItemEvent.class,
-				TradingUIRemoveItemEvent.class,
-				TradingUIUpdateStateEvent.class,
-				OnGridBurntEvent.class,
-				OnPreDistributionMergeEvent.class,
-				OnDistributionMergeEvent.class,
-				OnPostDistributionMergeEvent.class,
-				MngInvReceiveItemsEvent.class,
-				OnTileRemovedEvent.class,
-				OnServerStartSavingEvent.class,
-				OnServerFinishSavingEvent.class,
-				OnMechanicActionDoneEvent.class,
-				OnClimateTickEvent.class,
-				OnThunderEvent.class,
-				OnEnterVehicleEvent.class,
-				OnSteamGameJoinEvent.class,
-				OnTabAddedEvent.class,
-				OnSetDefaultTabEvent.class,
-				OnTabRemovedEvent.class,
-				OnAddMessageEvent.class,
-				SwitchChatStreamEvent.class,
-				OnChatWindowInitEvent.class,
-				OnInitSeasonsEvent.class,
-				OnClimateTickDebugEvent.class,
-				OnInitModdedWeatherStageEvent.class,
-				OnUpdateModdedWeatherStageEvent.class,
-				OnClimateManagerInitEvent.class,
-				OnPressReloadButtonEvent.class,
-				OnPressRackButtonEvent.class,
-				OnHitZombieEvent.class,
-				OnBeingHitByZombieEvent.class
-		};
-		for (Class<? extends LuaEvent> eventClass : eventClasses)
-		{
-			Constructor<?>[] constructors = eventClass.getConstructors();
-			for (Constructor<?> constructor : constructors)
-			{
-				if (!Modifier.isPublic(constructor.getModifiers())) {
-					throw new IllegalStateException("Found inaccessible constructor for class '" + eventClass + '\'');
-				}
-			}
-			eventConstructors.put(eventClass, (Constructor<LuaEvent>[]) constructors);
-
-			String className = getEventName(eventClass);
-			eventClassesMap.put(className, eventClass);
-		}
-		EVENT_CONSTRUCTORS = Collections.unmodifiableMap(eventConstructors);
-		EVENT_CLASSES = Collections.unmodifiableMap(eventClassesMap);
-	}
+	private static final Map<String, LuaEventBinding> NAMED_BINDINGS = new ConcurrentHashMap<>();
 
 	/**
 	 * Construct a new instance of {@link LuaEvent} with given array of arguments.
@@ -283,55 +68,10 @@ public class LuaEventFactory {
 	 */
 	public static LuaEvent constructLuaEvent(Class<? extends LuaEvent> eventClass, Object... args) {
 
-		Constructor<?>[] constructors = EVENT_CONSTRUCTORS.get(eventClass);
-		if (constructors != null)
-		{
-			Class<?>[] argTypes = new Class<?>[args.length];
-			for (int i = 0; i < args.length; i++) {
-				argTypes[i] = args[i] != null ? args[i].getClass() : null;
-			}
-			for (Constructor<?> constructor : constructors)
-			{
-				if (constructor.getParameterCount() == args.length)
-				{
-					// on parameter type mismatch skip to next constructor
-					if (!doesConstructorMatchArgTypes(constructor, argTypes)) {
-						continue;
-					}
-					try {
-						// if all parameter types match return this constructor
-						return (LuaEvent) constructor.newInstance(args);
-					}
-					catch (ReflectiveOperationException | IllegalArgumentException e) {
-						throw new IllegalStateException(e);
-					}
-				}
-			}
-			String message = "Unable to find constructor for class '%s' that matches arguments %s";
-			throw new IllegalArgumentException(String.format(message, eventClass, Arrays.toString(args)));
-		}
-		throw new IllegalStateException("No registered constructors found for event '" + eventClass + '\'');
-	}
-
-	/**
-	 * Returns {@code true} if given constructor parameter types match specified
-	 * array of classes exactly, or {@code false} otherwise.
-	 *
-	 * @param constructor {@code Constructor} to match types for.
-	 * @param argTypes array of classes to match against constructor parameters.
-	 */
-	private static boolean doesConstructorMatchArgTypes(Constructor<?> constructor, Class<?>[] argTypes) {
-
-		Class<?>[] paramTypes = constructor.getParameterTypes();
-		for (int i = 0; i < paramTypes.length; i++)
-		{
-			Class<?> argType = argTypes[i];
-			// on parameter type mismatch skip to next constructor
-			if (argType != null && !paramTypes[i].isAssignableFrom(argType)) {
-				return false;
-			}
+		if (LuaEventRegistry.getEventClass(getEventName(eventClass)) != eventClass) {
+			throw new IllegalStateException("No registered constructors found for event '" + eventClass + '\'');
 		}
-		return true;
+		return Objects.requireNonNull(getBinding(eventClass).construct(args));
 	}
 
 	/**
@@ -349,9 +89,48 @@ public class LuaEventFactory {
 	 * 		for event class resolved from given name.
 	 */
 	public static @Nullable LuaEvent constructLuaEvent(String eventName, Object... args) {
+		return getBinding(eventName).construct(args);
+	}
 
-		Class<? extends LuaEvent> eventClass = EVENT_CLASSES.get(eventName);
-		return eventClass != null ? constructLuaEvent(eventClass, args) : null;
+	/**
+	 * Construct a new instance of {@link LuaEvent} that represents given Lua event with given array
+	 * of arguments. The binding of Lua event to {@code LuaEvent} class is resolved only the first
+	 * time this method is called for the Lua event.
+	 *
+	 * @param luaEvent Lua event that was triggered.
+	 * @param args array of arguments the Lua event was triggered with.
+	 *
+	 * @return new instance of {@code LuaEvent} that represents given Lua event or {@code null}
+	 * 		if no registered {@code LuaEvent} class represents the Lua event.
+	 *
+	 * @throws IllegalArgumentException if no constructor with parameters matching specified array
+	 * 		of arguments was found for {@code LuaEvent} class that represents the Lua event.
+	 */
+	public static @Nullable LuaEvent constructLuaEvent(Event luaEvent, Object[] args) {
+		return LuaEventBinding.of(luaEvent).construct(args);
+	}
+
+	/**
+	 * Returns binding of {@link LuaEvent} class registered with given event name
+	 * or {@link LuaEventBinding#UNBOUND} if no class was registered with the name.
+	 */
+	static LuaEventBinding getBinding(String eventName) {
+
+		LuaEventBinding binding = NAMED_BINDINGS.get(eventName);
+		if (binding == null)
+		{
+			Class<? extends LuaEvent> eventClass = LuaEventRegistry.getEventClass(eventName);
+			binding = eventClass != null ? getBinding(eventClass) : LuaEventBinding.UNBOUND;
+			NAMED_BINDINGS.put(eventName, binding);
+		}
+		return binding;
+	}
+
+	/**
+	 * Returns binding of given {@link LuaEvent} class, creating the binding if it does not exist yet.
+	 */
+	private static LuaEventBinding getBinding(Class<? extends LuaEvent> eventClass) {
+		return EVENT_BINDINGS.computeIfAbsent(eventClass, LuaEventBinding::new);
 	}
 
 	/**
@@ -66,17 +66,25 @@ public class StormEventHandler {
 		}
 	}
 
-	@SubscribeEvent
+	/**
+	 * Subscribe methods that dispatch events they receive as other events. These are subscribed
+	 * as bridge methods, so that hooks can skip dispatching events nobody else handles.
+	 * This is an internal method <b>only</b> called by {@code StormLauncher}.
+	 */
+	public static void registerBridgeMethods() {
+
+		StormEventDispatcher.subscribeBridgeMethod("handleLuaEventTrigger",
+				OnTriggerLuaEvent.class, StormEventHandler::handleLuaEventTrigger);
+	}
+
 	public static void handleLuaEventTrigger(OnTriggerLuaEvent event) {
 
-		LuaEvent luaEvent = LuaEventFactory.constructLuaEvent(
-				event.luaEvent.name, event.args.toArray(new Object[0])
-		);
+		// Lua event is delivered here whether or not it has Lua callbacks
+		LuaEvent luaEvent = LuaEventFactory.constructLuaEvent(event.luaEvent, event.getArgumentArray());
 		if (luaEvent != null) {
-			luaEvent.registerCallback();
 			StormEventDispatcher.dispatchEvent(luaEvent);
 		}
-		else StormLogger.debug("Skip handling non-registered event '%s'", event.getName());
+		else StormLogger.debug("Skip handling non-registered event '%s'", event.luaEvent.name);
 	}
 
 	@SubscribeEvent
@@ -0,0 +1,98 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.hook;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import io.pzstorm.storm.core.StormClassTransformer;
+import io.pzstorm.storm.logging.StormLogger;
+import io.pzstorm.storm.lua.LuaCallbackProfiler;
+import io.pzstorm.storm.util.StormUtils;
+
+/**
+ * Times every Lua callback called by {@code zombie.Lua.Event#trigger} with {@link LuaCallbackProfiler}.
+ * The Lua event is passed to the profiler at the start of the method and the profiler is notified
+ * before the method returns. Every call to {@code LuaCaller#protectedCallVoid} is replaced with a call
+ * to the profiler method with the same arguments and the caller as the first argument. None of these
+ * changes alter the stack depth at the point of the call, so no stack map frames or maximum stack
+ * sizes need to be changed.
+ * <p>
+ * This hook is only installed when {@link LuaCallbackProfiler#isEnabled() the profiler is enabled}.
+ * </p>
+ */
+public class LuaCallbackProfilerHook implements StormHook {
+
+	private static final String LUA_CALLER = "se/krka/kahlua/integration/LuaCaller";
+	private static final String PROTECTED_CALL_DESCRIPTOR =
+			"(Lse/krka/kahlua/vm/KahluaThread;Ljava/lang/Object;[Ljava/lang/Object;)V";
+
+	@Override
+	public void installHook(StormClassTransformer transformer) {
+
+		String profiler = StormUtils.getClassAsPath(LuaCallbackProfiler.class);
+
+		// public boolean trigger(KahluaTable, LuaCaller, Object[])
+		InsnList instructions = transformer.getInstructionsForMethod("trigger",
+				"(Lse/krka/kahlua/vm/KahluaTable;Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"
+		);
+		if (instructions.size() == 0)
+		{
+			StormLogger.warn("Unable to find Lua event trigger method, Lua callbacks will not be profiled");
+			return;
+		}
+		int replacedCalls = 0;
+		for (AbstractInsnNode node : instructions.toArray())
+		{
+			if (node.getOpcode() == Opcodes.IRETURN)
+			{
+				// LuaCallbackProfiler.exitEvent()
+				instructions.insertBefore(node, new MethodInsnNode(Opcodes.INVOKESTATIC,
+						profiler, "exitEvent", "()V", false));
+			}
+			else if (node.getOpcode() == Opcodes.INVOKEVIRTUAL)
+			{
+				MethodInsnNode call = (MethodInsnNode) node;
+				if (call.owner.equals(LUA_CALLER) && call.name.equals("protectedCallVoid") &&
+						call.desc.equals(PROTECTED_CALL_DESCRIPTOR))
+				{
+					// caller.protectedCallVoid(thread, callback, args)
+					// -> LuaCallbackProfiler.protectedCallVoid(caller, thread, callback, args)
+					instructions.set(call, new MethodInsnNode(Opcodes.INVOKESTATIC, profiler, "protectedCallVoid",
+							"(L" + LUA_CALLER + ';' + PROTECTED_CALL_DESCRIPTOR.substring(1), false));
+					replacedCalls++;
+				}
+			}
+		}
+		if (replacedCalls == 0)
+		{
+			StormLogger.warn("Unable to find Lua callback calls in Lua event trigger method, " +
+					"Lua callbacks will not be profiled");
+			return;
+		}
+		// LuaCallbackProfiler.enterEvent(this)
+		InsnList enterEvent = new InsnList();
+		enterEvent.add(new VarInsnNode(Opcodes.ALOAD, 0));
+		enterEvent.add(new MethodInsnNode(Opcodes.INVOKESTATIC, profiler,
+				"enterEvent", "(Lzombie/Lua/Event;)V", false));
+		instructions.insert(enterEvent);
+
+		StormLogger.debug("Profiling %d Lua callback call sites in Lua event trigger method", replacedCalls);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.hook;
+
+import java.util.Set;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.pzstorm.storm.core.StormClassTransformer;
+import io.pzstorm.storm.logging.StormLogger;
+import io.pzstorm.storm.lua.LuaCompileCache;
+import io.pzstorm.storm.util.StormUtils;
+
+/**
+ * Loads Lua files compiled by {@code zombie.Lua.LuaManager} through {@link LuaCompileCache}.
+ * Every call to {@code LuaCompiler#loadis} in the class is replaced with a call to the cache
+ * method with the same descriptor, which does not change the stack depth, so no stack map
+ * frames or maximum stack sizes need to be changed.
+ * <p>
+ * This hook is only installed when {@link LuaCompileCache#isEnabled() the cache} or
+ * {@link io.pzstorm.storm.lua.LuaParallelLoader#isEnabled() the parallel loader} is enabled.
+ * </p>
+ */
+public class LuaCompileCacheHook implements StormHook {
+
+	private static final String LUA_COMPILER = "org/luaj/kahluafork/compiler/LuaCompiler";
+
+	/**
+	 * Descriptors of {@code LuaCompiler#loadis} methods that have a matching cache method.
+	 */
+	private static final Set<String> LOAD_DESCRIPTORS = ImmutableSet.of(
+			"(Ljava/io/Reader;Ljava/lang/String;Lse/krka/kahlua/vm/KahluaTable;)Lse/krka/kahlua/vm/LuaClosure;",
+			"(Ljava/io/InputStream;Ljava/lang/String;Lse/krka/kahlua/vm/KahluaTable;)Lse/krka/kahlua/vm/LuaClosure;"
+	);
+
+	@Override
+	public void installHook(StormClassTransformer transformer) {
+
+		String cache = StormUtils.getClassAsPath(LuaCompileCache.class);
+
+		int replacedCalls = 0;
+		for (MethodNode method : transformer.getMethods())
+		{
+			for (AbstractInsnNode node : method.instructions.toArray())
+			{
+				if (node.getOpcode() == Opcodes.INVOKESTATIC)
+				{
+					MethodInsnNode call = (MethodInsnNode) node;
+					if (call.owner.equals(LUA_COMPILER) && call.name.equals("loadis") &&
+							LOAD_DESCRIPTORS.contains(call.desc))
+					{
+						// LuaCompiler.loadis(source, name, environment)
+						// -> LuaCompileCache.loadis(source, name, environment)
+						method.instructions.set(call, new MethodInsnNode(
+								Opcodes.INVOKESTATIC, cache, "loadis", call.desc, false));
+						replacedCalls++;
+					}
+				}
+			}
+		}
+		if (replacedCalls == 0) {
+			StormLogger.warn("Unable to find Lua compiler calls in Lua manager, Lua files will not be cached");
+		}
+		else StormLogger.debug("Caching Lua files compiled by %d Lua manager call sites", replacedCalls);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.hook;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import io.pzstorm.storm.core.StormClassTransformer;
+import io.pzstorm.storm.logging.StormLogger;
+import io.pzstorm.storm.lua.LuaSamplingProfiler;
+import io.pzstorm.storm.util.StormUtils;
+
+/**
+ * Maintains shadow stacks of Lua call frames for {@link LuaSamplingProfiler} by instrumenting
+ * every method of {@code se.krka.kahlua.vm.KahluaThread} that pushes or pops coroutine call frames.
+ * <ul>
+ * <li>Frames returned by {@code Coroutine#pushNewCallFrame} are passed through the profiler,
+ * which takes and returns the frame and so does not change the stack depth.</li>
+ * <li>Calls to {@code Coroutine#popCallFrame} and {@code Coroutine#setCallFrameStackTop} are
+ * followed by a call to the profiler with the Kahlua thread, which requires one more stack slot
+ * so maximum stack size of the method is increased.</li>
+ * </ul>
+ * Neither change adds branches, so no stack map frames need to be changed.
+ * <p>
+ * This hook is only installed when {@link LuaSamplingProfiler#isEnabled() the profiler is enabled}.
+ * </p>
+ */
+public class LuaSamplingProfilerHook implements StormHook {
+
+	private static final String COROUTINE = "se/krka/kahlua/vm/Coroutine";
+	private static final String LUA_CALL_FRAME = "Lse/krka/kahlua/vm/LuaCallFrame;";
+
+	@Override
+	public void installHook(StormClassTransformer transformer) {
+
+		Map<MethodNode, List<MethodInsnNode>> enterSites = new HashMap<>();
+		Map<MethodNode, List<MethodInsnNode>> exitSites = new HashMap<>();
+		for (MethodNode method : transformer.getMethods())
+		{
+			// frames are synchronized with the Kahlua thread that owns the method
+			if ((method.access & Opcodes.ACC_STATIC) != 0) {
+				continue;
+			}
+			for (AbstractInsnNode node : method.instructions)
+			{
+				if (node.getOpcode() != Opcodes.INVOKEVIRTUAL) {
+					continue;
+				}
+				MethodInsnNode call = (MethodInsnNode) node;
+				if (!call.owner.equals(COROUTINE)) {
+					continue;
+				}
+				if (call.name.equals("pushNewCallFrame") && call.desc.endsWith(')' + LUA_CALL_FRAME)) {
+					enterSites.computeIfAbsent(method, m -> new ArrayList<>()).add(call);
+				}
+				else if ((call.name.equals("popCallFrame") && call.desc.equals("()V")) ||
+						(call.name.equals("setCallFrameStackTop") && call.desc.equals("(I)V"))) {
+					exitSites.computeIfAbsent(method, m -> new ArrayList<>()).add(call);
+				}
+			}
+		}
+		// shadow stacks would grow indefinitely if frames were only pushed
+		if (enterSites.isEmpty() || exitSites.isEmpty())
+		{
+			StormLogger.warn("Unable to find Kahlua call frame push and pop sites, " +
+					"Lua call stacks will not be sampled");
+			return;
+		}
+		String profiler = StormUtils.getClassAsPath(LuaSamplingProfiler.class);
+		enterSites.forEach((method, calls) -> calls.forEach(call ->
+				// LuaSamplingProfiler.enterFrame(coroutine.pushNewCallFrame(...))
+				method.instructions.insert(call, new MethodInsnNode(Opcodes.INVOKESTATIC, profiler,
+						"enterFrame", '(' + LUA_CALL_FRAME + ')' + LUA_CALL_FRAME, false))
+		));
+		exitSites.forEach((method, calls) -> {
+
+			for (MethodInsnNode call : calls)
+			{
+				// LuaSamplingProfiler.exitFrame(this)
+				InsnList exitFrame = new InsnList();
+				exitFrame.add(new VarInsnNode(Opcodes.ALOAD, 0));
+				exitFrame.add(new MethodInsnNode(Opcodes.INVOKESTATIC, profiler,
+						"exitFrame", "(Lse/krka/kahlua/vm/KahluaThread;)V", false));
+				method.instructions.insert(call, exitFrame);
+			}
+			method.maxStack++;
+		});
+		StormLogger.debug("Sampling Lua call stacks from %d push and %d pop sites in Kahlua thread",
+				enterSites.values().stream().mapToInt(List::size).sum(),
+				exitSites.values().stream().mapToInt(List::size).sum());
+	}
+}
@@ -18,38 +18,59 @@
 
 package io.pzstorm.storm.hook;
 
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
 import com.google.common.collect.ImmutableList;
 
 import io.pzstorm.storm.core.StormClassTransformer;
+import io.pzstorm.storm.event.LuaEventBinding;
 import io.pzstorm.storm.event.OnTriggerLuaEvent;
 import io.pzstorm.storm.event.StormEventDispatcher;
 import io.pzstorm.storm.util.AsmUtils;
 import io.pzstorm.storm.util.StormUtils;
+import zombie.Lua.Event;
 
+/**
+ * Dispatches {@link OnTriggerLuaEvent} whenever {@code LuaEventManager} is about to trigger
+ * a Lua event. The dispatch is inserted before the Lua event is loaded as the receiver of
+ * {@code Event.trigger}, and the hooked method skips triggering the Lua event when the
+ * dispatched event was cancelled. Because the dispatch happens before the Lua event
+ * is triggered, Java handler methods receive the event whether or not it has any Lua callbacks.
+ * <p>
+ * Events are dispatched only when {@link LuaEventBinding#isBridged(Event)} returns {@code true},
+ * so Lua events that no Java handler method subscribes to are triggered without constructing
+ * or dispatching any events. Lua events triggered with up to two arguments are dispatched without
+ * allocating an array of arguments, so the check is done before anything is allocated.
+ * </p>
+ */
 public class OnTriggerLuaEventHook implements StormHook {
 
+	/**
+	 * Dispatch guard that decides whether to dispatch {@link OnTriggerLuaEvent} for a Lua event.
+	 */
+	private static final Handle BRIDGE_GUARD = new Handle(Opcodes.H_INVOKESTATIC,
+			StormUtils.getClassAsPath(LuaEventBinding.class), "isBridged", "(Lzombie/Lua/Event;)Z", false
+	);
+
 	@Override
 	public void installHook(StormClassTransformer transformer) {
 		String eventDescriptor = StormUtils.getClassAsPath(OnTriggerLuaEvent.class);
 
 		// new OnTriggerLuaEvent(Event)
-		InsnList onTriggerLuaEvent1 = StormEventDispatcher.callDispatchEvent(ImmutableList.of(
+		InsnList onTriggerLuaEvent1 = StormEventDispatcher.callDispatchCancellableEvent(ImmutableList.of(
 				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
 				new InsnNode(Opcodes.DUP),
 				new VarInsnNode(Opcodes.ALOAD, 2),
-				new InsnNode(Opcodes.ICONST_0),
-				new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"),
 				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>",
-						"(Lzombie/Lua/Event;[Ljava/lang/Object;)V")
-		));
+						"(Lzombie/Lua/Event;)V")
+		), BRIDGE_GUARD);
 		// public static void triggerEvent(String)
-		InsnList triggerEvent1 = transformer.getInstructionsForMethod("triggerEvent",
+		MethodNode triggerEvent1 = getMethod(transformer, "triggerEvent",
 				"(Ljava/lang/String;)V"
 		);
-		AbstractInsnNode target1 = AsmUtils.getFirstNode(triggerEvent1, ImmutableList.of(
+		AbstractInsnNode target1 = AsmUtils.getFirstNode(triggerEvent1.instructions, ImmutableList.of(
 				new VarInsnNode(Opcodes.ALOAD, 2),
 				new FieldInsnNode(Opcodes.GETSTATIC, "zombie/Lua/LuaManager", "env",
 						"Lse/krka/kahlua/vm/KahluaTable;"),
@@ -60,27 +81,22 @@ public class OnTriggerLuaEventHook implements StormHook {
 						"(Lse/krka/kahlua/vm/KahluaTable;" +
 								"Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"))
 		);
-		triggerEvent1.insertBefore(target1, onTriggerLuaEvent1);
+		insertDispatch(triggerEvent1, target1, onTriggerLuaEvent1);
 
 		// new OnTriggerLuaEvent(Event,Object)
-		InsnList onTriggerLuaEvent2 = StormEventDispatcher.callDispatchEvent(ImmutableList.of(
+		InsnList onTriggerLuaEvent2 = StormEventDispatcher.callDispatchCancellableEvent(ImmutableList.of(
 				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
 				new InsnNode(Opcodes.DUP),
 				new VarInsnNode(Opcodes.ALOAD, 3),
-				new InsnNode(Opcodes.ICONST_1),
-				new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"),
-				new InsnNode(Opcodes.DUP),
-				new InsnNode(Opcodes.ICONST_0),
 				new VarInsnNode(Opcodes.ALOAD, 1),
-				new InsnNode(Opcodes.AASTORE),
 				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>",
-						"(Lzombie/Lua/Event;[Ljava/lang/Object;)V")
-		));
+						"(Lzombie/Lua/Event;Ljava/lang/Object;)V")
+		), BRIDGE_GUARD);
 		// public static void triggerEvent(String,Object)
-		InsnList triggerEvent2 = transformer.getInstructionsForMethod("triggerEvent",
+		MethodNode triggerEvent2 = getMethod(transformer, "triggerEvent",
 				"(Ljava/lang/String;Ljava/lang/Object;)V"
 		);
-		LabelNode trigger2 = AsmUtils.getFirstMatchingLabelNode(triggerEvent2, ImmutableList.of(
+		LabelNode trigger2 = AsmUtils.getFirstMatchingLabelNode(triggerEvent2.instructions, ImmutableList.of(
 				new VarInsnNode(Opcodes.ALOAD, 3),
 				new FieldInsnNode(Opcodes.GETSTATIC, "zombie/Lua/LuaManager", "env",
 						"Lse/krka/kahlua/vm/KahluaTable;"),
@@ -91,32 +107,23 @@ public class OnTriggerLuaEventHook implements StormHook {
 						"(Lse/krka/kahlua/vm/KahluaTable;" +
 								"Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"))
 		);
-		// this operation will expand MAXSTACK by 3
-		triggerEvent2.insertBefore(trigger2, onTriggerLuaEvent2);
+		insertDispatch(triggerEvent2, AsmUtils.nextNonLabelLineNumberNode(trigger2), onTriggerLuaEvent2);
 
 		// new OnTriggerLuaEvent(Event,Object,Object)
-		InsnList onTriggerLuaEvent3 = StormEventDispatcher.callDispatchEvent(ImmutableList.of(
+		InsnList onTriggerLuaEvent3 = StormEventDispatcher.callDispatchCancellableEvent(ImmutableList.of(
 				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
 				new InsnNode(Opcodes.DUP),
 				new VarInsnNode(Opcodes.ALOAD, 4),
-				new InsnNode(Opcodes.ICONST_2),
-				new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"),
-				new InsnNode(Opcodes.DUP),
-				new InsnNode(Opcodes.ICONST_0),
 				new VarInsnNode(Opcodes.ALOAD, 1),
-				new InsnNode(Opcodes.AASTORE),
-				new InsnNode(Opcodes.DUP),
-				new InsnNode(Opcodes.ICONST_1),
 				new VarInsnNode(Opcodes.ALOAD, 2),
-				new InsnNode(Opcodes.AASTORE),
 				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>",
-						"(Lzombie/Lua/Event;[Ljava/lang/Object;)V")
-		));
+						"(Lzombie/Lua/Event;Ljava/lang/Object;Ljava/lang/Object;)V")
+		), BRIDGE_GUARD);
 		// public static void triggerEvent(String,Object,Object)
-		InsnList triggerEvent3 = transformer.getInstructionsForMethod("triggerEvent",
+		MethodNode triggerEvent3 = getMethod(transformer, "triggerEvent",
 				"(Ljava/lang/String;Ljava/lang/Object;Ljava/lang/Object;)V"
 		);
-		LabelNode trigger3 = AsmUtils.getFirstMatchingLabelNode(triggerEvent3, ImmutableList.of(
+		LabelNode trigger3 = AsmUtils.getFirstMatchingLabelNode(triggerEvent3.instructions, ImmutableList.of(
 				new VarInsnNode(Opcodes.ALOAD, 4),
 				new FieldInsnNode(Opcodes.GETSTATIC, "zombie/Lua/LuaManager", "env",
 						"Lse/krka/kahlua/vm/KahluaTable;"),
@@ -127,23 +134,22 @@ public class OnTriggerLuaEventHook implements StormHook {
 						"(Lse/krka/kahlua/vm/KahluaTable;" +
 								"Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"))
 		);
-		// this operation will expand MAXSTACK by 3
-		triggerEvent3.insertBefore(trigger3, onTriggerLuaEvent3);
+		insertDispatch(triggerEvent3, AsmUtils.nextNonLabelLineNumberNode(trigger3), onTriggerLuaEvent3);
 
 		// new OnTriggerLuaEvent(Event,Object,Object,Object)
-		InsnList onTriggerLuaEvent4 = StormEventDispatcher.callDispatchEvent(ImmutableList.of(
+		InsnList onTriggerLuaEvent4 = StormEventDispatcher.callDispatchCancellableEvent(ImmutableList.of(
 				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
 				new InsnNode(Opcodes.DUP),
 				new VarInsnNode(Opcodes.ALOAD, 5),
 				new VarInsnNode(Opcodes.ALOAD, 6),
 				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>",
 						"(Lzombie/Lua/Event;[Ljava/lang/Object;)V")
-		));
+		), BRIDGE_GUARD);
 		// public static void triggerEvent(String,Object,Object,Object)
-		InsnList triggerEvent4 = transformer.getInstructionsForMethod("triggerEvent",
+		MethodNode triggerEvent4 = getMethod(transformer, "triggerEvent",
 				"(Ljava/lang/String;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)V"
 		);
-		LabelNode trigger4 = AsmUtils.getFirstMatchingLabelNode(triggerEvent4, ImmutableList.of(
+		LabelNode trigger4 = AsmUtils.getFirstMatchingLabelNode(triggerEvent4.instructions, ImmutableList.of(
 				new VarInsnNode(Opcodes.ALOAD, 5),
 				new FieldInsnNode(Opcodes.GETSTATIC, "zombie/Lua/LuaManager", "env",
 						"Lse/krka/kahlua/vm/KahluaTable;"),
@@ -154,24 +160,23 @@ public class OnTriggerLuaEventHook implements StormHook {
 						"(Lse/krka/kahlua/vm/KahluaTable;" +
 								"Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"))
 		);
-		// this operation will expand MAXSTACK by 3
-		triggerEvent4.insertBefore(trigger4, onTriggerLuaEvent4);
+		insertDispatch(triggerEvent4, AsmUtils.nextNonLabelLineNumberNode(trigger4), onTriggerLuaEvent4);
 
 		// new OnTriggerLuaEvent(Event,Object,Object,Object,Object)
-		InsnList onTriggerLuaEvent5 = StormEventDispatcher.callDispatchEvent(ImmutableList.of(
+		InsnList onTriggerLuaEvent5 = StormEventDispatcher.callDispatchCancellableEvent(ImmutableList.of(
 				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
 				new InsnNode(Opcodes.DUP),
 				new VarInsnNode(Opcodes.ALOAD, 6),
 				new VarInsnNode(Opcodes.ALOAD, 7),
 				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>",
 						"(Lzombie/Lua/Event;[Ljava/lang/Object;)V")
-		));
+		), BRIDGE_GUARD);
 		// public static void triggerEvent(String,Object,Object,Object,Object)
-		InsnList triggerEvent5 = transformer.getInstructionsForMethod("triggerEvent",
+		MethodNode triggerEvent5 = getMethod(transformer, "triggerEvent",
 				"(Ljava/lang/String;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;" +
 						"Ljava/lang/Object;)V"
 		);
-		LabelNode trigger5 = AsmUtils.getFirstMatchingLabelNode(triggerEvent5, ImmutableList.of(
+		LabelNode trigger5 = AsmUtils.getFirstMatchingLabelNode(triggerEvent5.instructions, ImmutableList.of(
 				new VarInsnNode(Opcodes.ALOAD, 6),
 				new FieldInsnNode(Opcodes.GETSTATIC, "zombie/Lua/LuaManager", "env",
 						"Lse/krka/kahlua/vm/KahluaTable;"),
@@ -182,24 +187,23 @@ public class OnTriggerLuaEventHook implements StormHook {
 						"(Lse/krka/kahlua/vm/KahluaTable;" +
 								"Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"))
 		);
-		// this operation will expand MAXSTACK by 3
-		triggerEvent5.insertBefore(trigger5, onTriggerLuaEvent5);
+		insertDispatch(triggerEvent5, AsmUtils.nextNonLabelLineNumberNode(trigger5), onTriggerLuaEvent5);
 
 		// new OnTriggerLuaEvent(Event,Object,Object,Object,Object,Object)
-		InsnList onTriggerLuaEvent6 = StormEventDispatcher.callDispatchEvent(ImmutableList.of(
+		InsnList onTriggerLuaEvent6 = StormEventDispatcher.callDispatchCancellableEvent(ImmutableList.of(
 				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
 				new InsnNode(Opcodes.DUP),
 				new VarInsnNode(Opcodes.ALOAD, 7),
 				new VarInsnNode(Opcodes.ALOAD, 8),
 				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>",
 						"(Lzombie/Lua/Event;[Ljava/lang/Object;)V")
-		));
+		), BRIDGE_GUARD);
 		// public static void triggerEvent(String,Object,Object,Object,Object,Object)
-		InsnList triggerEvent6 = transformer.getInstructionsForMethod("triggerEvent",
+		MethodNode triggerEvent6 = getMethod(transformer, "triggerEvent",
 				"(Ljava/lang/String;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;" +
 						"Ljava/lang/Object;Ljava/lang/Object;)V"
 		);
-		LabelNode trigger6 = AsmUtils.getFirstMatchingLabelNode(triggerEvent6, ImmutableList.of(
+		LabelNode trigger6 = AsmUtils.getFirstMatchingLabelNode(triggerEvent6.instructions, ImmutableList.of(
 				new VarInsnNode(Opcodes.ALOAD, 7),
 				new FieldInsnNode(Opcodes.GETSTATIC, "zombie/Lua/LuaManager", "env",
 						"Lse/krka/kahlua/vm/KahluaTable;"),
@@ -210,24 +214,23 @@ public class OnTriggerLuaEventHook implements StormHook {
 						"(Lse/krka/kahlua/vm/KahluaTable;" +
 								"Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"))
 		);
-		// this operation will expand MAXSTACK by 3
-		triggerEvent6.insertBefore(trigger6, onTriggerLuaEvent6);
+		insertDispatch(triggerEvent6, AsmUtils.nextNonLabelLineNumberNode(trigger6), onTriggerLuaEvent6);
 
 		// new OnTriggerLuaEvent(Event,Object,Object,Object,Object,Object,Object)
-		InsnList onTriggerLuaEvent7 = StormEventDispatcher.callDispatchEvent(ImmutableList.of(
+		InsnList onTriggerLuaEvent7 = StormEventDispatcher.callDispatchCancellableEvent(ImmutableList.of(
 				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
 				new InsnNode(Opcodes.DUP),
 				new VarInsnNode(Opcodes.ALOAD, 8),
 				new VarInsnNode(Opcodes.ALOAD, 9),
 				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>",
 						"(Lzombie/Lua/Event;[Ljava/lang/Object;)V")
-		));
+		), BRIDGE_GUARD);
 		// public static void triggerEvent(String,Object,Object,Object,Object,Object,Object)
-		InsnList triggerEvent7 = transformer.getInstructionsForMethod("triggerEvent",
+		MethodNode triggerEvent7 = getMethod(transformer, "triggerEvent",
 				"(Ljava/lang/String;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;" +
 						"Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)V"
 		);
-		LabelNode trigger7 = AsmUtils.getFirstMatchingLabelNode(triggerEvent7, ImmutableList.of(
+		LabelNode trigger7 = AsmUtils.getFirstMatchingLabelNode(triggerEvent7.instructions, ImmutableList.of(
 				new VarInsnNode(Opcodes.ALOAD, 8),
 				new FieldInsnNode(Opcodes.GETSTATIC, "zombie/Lua/LuaManager", "env",
 						"Lse/krka/kahlua/vm/KahluaTable;"),
@@ -238,7 +241,63 @@ public class OnTriggerLuaEventHook implements StormHook {
 						"(Lse/krka/kahlua/vm/KahluaTable;" +
 								"Lse/krka/kahlua/integration/LuaCaller;[Ljava/lang/Object;)Z"))
 		);
-		// this operation will expand MAXSTACK by 3
-		triggerEvent7.insertBefore(trigger7, onTriggerLuaEvent7);
+		insertDispatch(triggerEvent7, AsmUtils.nextNonLabelLineNumberNode(trigger7), onTriggerLuaEvent7);
+	}
+
+	/**
+	 * Returns method of transformed class that matches given name and descriptor.
+	 *
+	 * @throws IllegalStateException if the class does not declare a matching method.
+	 */
+	private static MethodNode getMethod(StormClassTransformer transformer, String name, String descriptor) {
+
+		for (MethodNode method : transformer.getMethods())
+		{
+			if (method.name.equals(name) && method.desc.equals(descriptor)) {
+				return method;
+			}
+		}
+		throw new IllegalStateException("Unable to find method " + name + descriptor + " in LuaEventManager");
+	}
+
+	/**
+	 * Insert instructions that dispatch {@link OnTriggerLuaEvent} before the instruction that loads the Lua
+	 * event about to be triggered, followed by a branch that is taken when the event was cancelled and jumps
+	 * past the {@code Event.trigger} call and the {@code pop} that discards its result. The branch lands in the
+	 * existing control flow, so a cancelled trigger still leaves any {@code synchronized} block the same way.
+	 * <p>
+	 * The stack is empty and no locals are stored between the dispatch and the branch target, so the frame
+	 * at the target is the same as where the dispatch is inserted. Hooked methods trigger the Lua event as
+	 * the last statement of a conditional block, which means a stack map frame is already declared after
+	 * the {@code pop} and the branch target reuses that frame.
+	 * </p>
+	 *
+	 * @param method hooked {@code triggerEvent} method.
+	 * @param loadLuaEvent instruction that loads the Lua event as the receiver of {@code Event.trigger}.
+	 * @param dispatchEvent instructions that dispatch cancellable event and leave cancelled state on stack.
+	 *
+	 * @throws IllegalStateException if the result of {@code Event.trigger} is not discarded by
+	 * 		a {@code pop} followed by a stack map frame.
+	 */
+	private static void insertDispatch(MethodNode method, AbstractInsnNode loadLuaEvent, InsnList dispatchEvent) {
+
+		AbstractInsnNode trigger = loadLuaEvent;
+		while (!(trigger instanceof MethodInsnNode) || !((MethodInsnNode) trigger).name.equals("trigger")) {
+			trigger = trigger.getNext();
+		}
+		AbstractInsnNode pop = AsmUtils.nextNonLabelLineNumberNode(trigger);
+		boolean hasFrame = false;
+		for (AbstractInsnNode node = pop.getNext(); node != null && node.getOpcode() < 0; node = node.getNext()) {
+			hasFrame |= node instanceof FrameNode;
+		}
+		if (pop.getOpcode() != Opcodes.POP || !hasFrame) {
+			throw new IllegalStateException("Unable to find stack map frame after Event.trigger call in " +
+					"LuaEventManager." + method.name + method.desc);
+		}
+		LabelNode cancelled = new LabelNode();
+		method.instructions.insert(pop, cancelled);
+
+		dispatchEvent.add(new JumpInsnNode(Opcodes.IFNE, cancelled));
+		method.instructions.insertBefore(loadLuaEvent, dispatchEvent);
 	}
 }
@@ -0,0 +1,100 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a lock-free histogram of durations in nanoseconds. Durations are counted in buckets
+ * with power of two upper bounds, which means that recording a duration costs a few atomic increments
+ * regardless of how many durations were recorded, and percentiles are reported as upper bounds that
+ * are at most twice the actual duration.
+ */
+final class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	/**
+	 * Number of recorded durations in each bucket. Bucket at index {@code i} counts durations
+	 * shorter than {@code 2^i} nanoseconds that are not counted by the previous bucket.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Record given duration in this histogram. This method can be called from any thread.
+	 *
+	 * @param nanos duration in nanoseconds, negative durations are recorded as zero.
+	 */
+	void record(long nanos) {
+
+		long duration = Math.max(0L, nanos);
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(duration));
+		count.incrementAndGet();
+		totalNanos.addAndGet(duration);
+		maxNanos.accumulateAndGet(duration, Math::max);
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	long getMeanNanos() {
+
+		long recorded = count.get();
+		return recorded != 0 ? totalNanos.get() / recorded : 0L;
+	}
+
+	/**
+	 * Returns upper bound of the duration that given fraction of recorded durations did not exceed.
+	 *
+	 * @param fraction fraction of recorded durations between {@code 0} and {@code 1}.
+	 *
+	 * @return upper bound in nanoseconds, or {@code 0} if no durations were recorded.
+	 */
+	long getPercentileNanos(double fraction) {
+
+		long recorded = count.get();
+		if (recorded == 0) {
+			return 0L;
+		}
+		long threshold = (long) Math.ceil(recorded * fraction);
+		long counted = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counted += buckets.get(i);
+			if (counted >= threshold) {
+				return Math.min((1L << i) - 1, maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+}
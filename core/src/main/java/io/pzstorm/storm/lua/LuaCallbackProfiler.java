@@ -0,0 +1,285 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.pzstorm.storm.logging.StormLogger;
+import se.krka.kahlua.integration.LuaCaller;
+import se.krka.kahlua.vm.KahluaThread;
+import se.krka.kahlua.vm.LuaClosure;
+import se.krka.kahlua.vm.Prototype;
+import zombie.Lua.Event;
+
+/**
+ * This class measures how long each Lua callback takes to handle Lua events and attributes callbacks
+ * to the mod and file that defined them. Callbacks are timed by {@code LuaCallbackProfilerHook}, which
+ * is installed in {@code zombie.Lua.Event} only when the profiler is enabled with {@code storm.lua.profiler}
+ * system property, so the profiler costs nothing when it is disabled.
+ * <p>
+ * Durations are recorded in a lock-free {@link LatencyHistogram} for every callback of every Lua event.
+ * A report of callbacks that took the most time in total is logged periodically, and a report of all
+ * callbacks can be logged at any time with {@link #dumpReport()}. The report interval and the number of
+ * reported callbacks can be configured with {@code storm.lua.profiler.interval} system property in
+ * seconds and {@code storm.lua.profiler.top} system property respectively. Note that the time of
+ * a callback includes the time of callbacks of Lua events it triggered.
+ * </p>
+ */
+public final class LuaCallbackProfiler {
+
+	static final String ENABLED_PROPERTY = "storm.lua.profiler";
+	static final String INTERVAL_PROPERTY = "storm.lua.profiler.interval";
+	static final String TOP_PROPERTY = "storm.lua.profiler.top";
+
+	/**
+	 * Name used to attribute callbacks that were not defined by a mod.
+	 */
+	static final String GAME_SOURCE = "game";
+
+	private static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	/**
+	 * Profiles of Lua callbacks mapped to {@link #getSourceName(Object) source names} of callbacks
+	 * and names of Lua events they handle. Profiles are not mapped to callback objects, so that
+	 * closures created again when Lua files are reloaded share a profile and are not kept alive.
+	 */
+	private static final Map<String, Map<String, CallbackProfile>> PROFILES = new ConcurrentHashMap<>();
+
+	/**
+	 * Lua event that is being triggered on current thread, or {@code null} if no Lua event is triggered.
+	 */
+	private static final ThreadLocal<Event> TRIGGERED_EVENT = new ThreadLocal<>();
+
+	static
+	{
+		long interval = Long.getLong(INTERVAL_PROPERTY, 60L);
+		if (ENABLED && interval > 0)
+		{
+			int limit = Integer.getInteger(TOP_PROPERTY, 10);
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat("Storm-Lua-Profiler").setDaemon(true).build());
+
+			executor.scheduleAtFixedRate(() -> {
+				// an exception would cancel all subsequent reports
+				try {
+					logReport(limit);
+				}
+				catch (RuntimeException e) {
+					StormLogger.error("Unable to report Lua callback profile", e);
+				}
+			}, interval, interval, TimeUnit.SECONDS);
+		}
+	}
+
+	/* Make the constructor private to disable instantiation */
+	private LuaCallbackProfiler() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns {@code true} if the profiler was enabled with {@code storm.lua.profiler} system property.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Mark given Lua event as the event being triggered on current thread. This is an internal method
+	 * <b>only</b> called by {@code LuaCallbackProfilerHook} when a Lua event starts triggering callbacks.
+	 *
+	 * @param luaEvent Lua event that is being triggered.
+	 */
+	public static void enterEvent(Event luaEvent) {
+		TRIGGERED_EVENT.set(luaEvent);
+	}
+
+	/**
+	 * Mark that no Lua event is being triggered on current thread anymore. This is an internal method
+	 * <b>only</b> called by {@code LuaCallbackProfilerHook} when a Lua event returns from triggering
+	 * callbacks. Lua events triggered by callbacks exit before the callback returns, and
+	 * {@link #protectedCallVoid(LuaCaller, KahluaThread, Object, Object[])} marks the event that
+	 * triggered the callback as being triggered again when the callback returns.
+	 */
+	public static void exitEvent() {
+		TRIGGERED_EVENT.remove();
+	}
+
+	/**
+	 * Call given Lua callback with {@link LuaCaller#protectedCallVoid(KahluaThread, Object, Object...)}
+	 * and record how long the call took. This is an internal method <b>only</b> called by
+	 * {@code LuaCallbackProfilerHook} in place of calls that trigger Lua event callbacks.
+	 *
+	 * @param caller caller that calls the callback.
+	 * @param thread Kahlua thread to call the callback on.
+	 * @param callback Lua callback to call.
+	 * @param args arguments of the triggered Lua event.
+	 */
+	public static void protectedCallVoid(LuaCaller caller, KahluaThread thread, Object callback, Object[] args) {
+
+		Event luaEvent = TRIGGERED_EVENT.get();
+		long start = System.nanoTime();
+		try {
+			caller.protectedCallVoid(thread, callback, args);
+		}
+		finally {
+			long elapsed = System.nanoTime() - start;
+
+			// Lua events triggered by the callback replace the triggered event
+			TRIGGERED_EVENT.set(luaEvent);
+			record(luaEvent != null ? luaEvent.name : "?", callback, elapsed);
+		}
+	}
+
+	/**
+	 * Record that given callback took given number of nanoseconds to handle Lua event with given name.
+	 */
+	static void record(String eventName, Object callback, long nanos) {
+
+		Map<String, CallbackProfile> eventProfiles = PROFILES.get(eventName);
+		if (eventProfiles == null) {
+			eventProfiles = PROFILES.computeIfAbsent(eventName, n -> new ConcurrentHashMap<>());
+		}
+		String sourceName = getSourceName(callback);
+		CallbackProfile profile = eventProfiles.get(sourceName);
+		if (profile == null) {
+			profile = eventProfiles.computeIfAbsent(sourceName, n -> new CallbackProfile(eventName, n));
+		}
+		profile.histogram.record(nanos);
+	}
+
+	/**
+	 * Returns name of the source that defined given Lua callback, which is the name of the file that
+	 * defined Lua closures followed by the line on which the closure was defined. Callbacks that
+	 * are not Lua closures are named by their string representation.
+	 */
+	static String getSourceName(Object callback) {
+
+		if (callback instanceof LuaClosure)
+		{
+			Prototype prototype = ((LuaClosure) callback).prototype;
+			String file = prototype.filename != null ? prototype.filename : prototype.name;
+			int line = prototype.lines != null && prototype.lines.length > 0 ? prototype.lines[0] : 0;
+			return file + ':' + line;
+		}
+		return String.valueOf(callback);
+	}
+
+	/**
+	 * Returns name of the mod that declares Lua file with given name, which is the name of the
+	 * directory inside a {@code mods} directory that contains the file, or {@link #GAME_SOURCE}
+	 * if the file is not contained in a mod directory.
+	 */
+	static String getModName(String sourceName) {
+
+		String path = sourceName.replace('\\', '/');
+		int modsIndex = path.lastIndexOf("/mods/");
+		if (modsIndex < 0) {
+			return GAME_SOURCE;
+		}
+		int modStart = modsIndex + "/mods/".length();
+		int modEnd = path.indexOf('/', modStart);
+		return modEnd > modStart ? path.substring(modStart, modEnd) : GAME_SOURCE;
+	}
+
+	/**
+	 * Create a report of profiled callbacks sorted by total time spent in callbacks.
+	 *
+	 * @param limit maximum number of callbacks to include in the report.
+	 *
+	 * @return list of report lines, starting with a header line.
+	 */
+	static List<String> createReport(int limit) {
+
+		List<CallbackProfile> profiles = new ArrayList<>();
+		PROFILES.values().forEach(p -> profiles.addAll(p.values()));
+		profiles.sort(Comparator.comparingLong((CallbackProfile p) -> p.histogram.getTotalNanos()).reversed());
+
+		List<String> report = new ArrayList<>();
+		int reported = Math.min(limit, profiles.size());
+		report.add(String.format("Lua callback profile, %d of %d callbacks by total time:", reported, profiles.size()));
+		for (int i = 0; i < reported; i++)
+		{
+			CallbackProfile profile = profiles.get(i);
+			LatencyHistogram histogram = profile.histogram;
+			report.add(String.format("%3d. [%s] %s %s - %d calls, %.1f ms total, %.1f us mean, " +
+							"p99 <= %.1f us, max %.1f us", i + 1, profile.modName, profile.eventName,
+					profile.fileName, histogram.getCount(), histogram.getTotalNanos() / 1e6,
+					histogram.getMeanNanos() / 1e3, histogram.getPercentileNanos(0.99) / 1e3,
+					histogram.getMaxNanos() / 1e3)
+			);
+		}
+		return report;
+	}
+
+	/**
+	 * Log a report of profiled callbacks that took the most time in total.
+	 *
+	 * @param limit maximum number of callbacks to include in the report.
+	 */
+	public static void logReport(int limit) {
+		createReport(limit).forEach(StormLogger::info);
+	}
+
+	/**
+	 * Log a report of all profiled callbacks.
+	 */
+	public static void dumpReport() {
+		logReport(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Discard all recorded callback durations.
+	 */
+	public static void reset() {
+		PROFILES.clear();
+	}
+
+	private static class CallbackProfile {
+
+		private final String eventName;
+		private final String modName;
+
+		/**
+		 * Name of the source that defined the callback, relative to
+		 * {@code media} directory if the source is a Lua file.
+		 */
+		private final String fileName;
+
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		private CallbackProfile(String eventName, String sourceName) {
+
+			this.eventName = eventName;
+			this.modName = getModName(sourceName);
+
+			String path = sourceName.replace('\\', '/');
+			int mediaIndex = path.lastIndexOf("media/");
+			this.fileName = mediaIndex >= 0 ? path.substring(mediaIndex + "media/".length()) : sourceName;
+		}
+	}
+}
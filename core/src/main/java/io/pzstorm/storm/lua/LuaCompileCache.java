@@ -0,0 +1,514 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jetbrains.annotations.Nullable;
+import org.luaj.kahluafork.compiler.LuaCompiler;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+
+import io.pzstorm.storm.logging.StormLogger;
+import se.krka.kahlua.vm.KahluaTable;
+import se.krka.kahlua.vm.LuaClosure;
+import se.krka.kahlua.vm.Prototype;
+
+/**
+ * This class keeps an on-disk cache of Lua chunks compiled by {@link LuaCompiler}, so that Lua files
+ * which did not change since they were last compiled are loaded without lexing and parsing. Calls to
+ * {@code LuaCompiler#loadis} in {@code zombie.Lua.LuaManager} are replaced with calls to this class
+ * by {@code LuaCompileCacheHook}. The cache is enabled by default and can be disabled by setting
+ * {@code storm.lua.cache} system property to {@code false}. Chunks compiled ahead of time by
+ * {@link LuaParallelLoader} are loaded through this class whether the cache is enabled or not.
+ * <p>
+ * Compiled prototypes are serialized with {@link Prototype#dump(OutputStream)} to files named after
+ * a hash of the chunk source, chunk name, compiler options and compiler version. The only compiler
+ * option is whether events are rewritten, which {@code LuaManager#RunLua} sets before compiling each
+ * file. The compiler version is a hash of the compiler and prototype class files, so entries are
+ * invalidated when the game updates the Lua compiler. Cache files are read into memory when loaded, written atomically, and never modified,
+ * so the cache can be used by multiple threads and game instances at the same time. Entries that
+ * cannot be loaded are deleted and the chunk is compiled again.
+ * </p><p>
+ * Cache files are stored in {@code Zomboid/Storm/lua-cache} directory in user home directory,
+ * which can be changed with {@code storm.lua.cache.dir} system property. Last modified time of
+ * cache files is updated when they are used, and when the cache is first used in a game instance
+ * the least recently used entries are deleted in background until the cache is smaller than
+ * {@code storm.lua.cache.size} system property in megabytes, which is {@code 256} by default.
+ * Entries of Lua files that were changed or removed are never used again, so they are evicted.
+ * </p>
+ */
+public final class LuaCompileCache {
+
+	static final String ENABLED_PROPERTY = "storm.lua.cache";
+	static final String DIRECTORY_PROPERTY = "storm.lua.cache.dir";
+	static final String SIZE_PROPERTY = "storm.lua.cache.size";
+
+	/**
+	 * Version of cache file format, increment when the format changes.
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String FILE_EXTENSION = ".luac";
+
+	/**
+	 * Cache files are not marked as used more often than this to avoid writing file
+	 * metadata every time a file is loaded.
+	 */
+	private static final long USE_RESOLUTION = TimeUnit.DAYS.toMillis(1);
+
+	/**
+	 * Temporary files older than this are left behind by interrupted writes.
+	 */
+	private static final long TEMP_FILE_EXPIRATION = TimeUnit.HOURS.toMillis(1);
+
+	private static final boolean ENABLED = !"false".equals(System.getProperty(ENABLED_PROPERTY));
+
+	private static final Path CACHE_DIRECTORY = Paths.get(System.getProperty(DIRECTORY_PROPERTY,
+			Paths.get(System.getProperty("user.home"), "Zomboid", "Storm", "lua-cache").toString()));
+
+	private static final long MAX_SIZE = Long.getLong(SIZE_PROPERTY, 256) * 1024 * 1024;
+
+	private static final AtomicBoolean EVICTION_STARTED = new AtomicBoolean();
+
+	/**
+	 * Handle to the static field of {@link LuaCompiler} that makes the compiler rewrite events
+	 * in compiled chunks, or {@code null} if the compiler does not declare the field.
+	 */
+	private static final @Nullable VarHandle REWRITE_EVENTS;
+
+	static
+	{
+		VarHandle rewriteEvents;
+		try {
+			rewriteEvents = MethodHandles.publicLookup().findStaticVarHandle(
+					LuaCompiler.class, "rewriteEvents", boolean.class);
+		}
+		catch (NoSuchFieldException | IllegalAccessException e) {
+			rewriteEvents = null;
+		}
+		REWRITE_EVENTS = rewriteEvents;
+	}
+
+	/* Make the constructor private to disable instantiation */
+	private LuaCompileCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns {@code true} if the cache is enabled with {@code storm.lua.cache} system property.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Returns {@code true} if {@link LuaCompiler} currently rewrites events in compiled chunks.
+	 * The option is set by {@code LuaManager#RunLua} before each Lua file is compiled.
+	 */
+	static boolean isRewritingEvents() {
+		return REWRITE_EVENTS != null && (boolean) REWRITE_EVENTS.get();
+	}
+
+	/**
+	 * Set whether {@link LuaCompiler} rewrites events in compiled chunks.
+	 * Does nothing if the compiler does not support rewriting events.
+	 */
+	static void setRewritingEvents(boolean rewriteEvents) {
+
+		if (REWRITE_EVENTS != null) {
+			REWRITE_EVENTS.set(rewriteEvents);
+		}
+	}
+
+	/**
+	 * Load Lua chunk read from given reader from cache or compile it with {@link LuaCompiler}
+	 * if it is not cached. This is an internal method <b>only</b> called by
+	 * {@code LuaCompileCacheHook} in place of {@code LuaCompiler#loadis} calls.
+	 *
+	 * @param reader reader to read Lua chunk source from.
+	 * @param name name of the Lua chunk.
+	 * @param environment environment of the loaded closure.
+	 *
+	 * @return closure of loaded Lua chunk.
+	 * @throws IOException if an I/O error occurred while reading the chunk source.
+	 */
+	public static LuaClosure loadis(Reader reader, String name, KahluaTable environment) throws IOException {
+		return load(CharStreams.toString(reader).getBytes(StandardCharsets.UTF_8), name, environment, true);
+	}
+
+	/**
+	 * Load Lua chunk read from given input stream from cache or compile it with {@link LuaCompiler}
+	 * if it is not cached. This is an internal method <b>only</b> called by
+	 * {@code LuaCompileCacheHook} in place of {@code LuaCompiler#loadis} calls.
+	 *
+	 * @param stream stream to read Lua chunk source from.
+	 * @param name name of the Lua chunk.
+	 * @param environment environment of the loaded closure.
+	 *
+	 * @return closure of loaded Lua chunk.
+	 * @throws IOException if an I/O error occurred while reading the chunk source.
+	 */
+	public static LuaClosure loadis(InputStream stream, String name, KahluaTable environment) throws IOException {
+		return load(ByteStreams.toByteArray(stream), name, environment, false);
+	}
+
+	/**
+	 * Load Lua chunk with given source that was compiled ahead of time by {@link LuaParallelLoader},
+	 * or from cache, or compile it and store it in cache.
+	 *
+	 * @param source source of the Lua chunk.
+	 * @param name name of the Lua chunk.
+	 * @param environment environment of the loaded closure.
+	 * @param isCharacterSource whether the source was read from a character stream.
+	 *
+	 * @return closure of loaded Lua chunk.
+	 * @throws IOException if an I/O error occurred while compiling the chunk.
+	 */
+	private static LuaClosure load(byte[] source, String name, KahluaTable environment,
+								   boolean isCharacterSource) throws IOException {
+
+		Prototype prototype = LuaParallelLoader.takePrototype(source, name, isRewritingEvents());
+		if (prototype != null) {
+			return new LuaClosure(prototype, environment);
+		}
+		return loadOrCompile(source, name, environment, isCharacterSource);
+	}
+
+	/**
+	 * Load prototype of Lua chunk with given source from cache or compile it and store it
+	 * in cache if the cache is enabled. This method can be called by multiple threads.
+	 *
+	 * @param source source of the Lua chunk read from a character stream.
+	 * @param name name of the Lua chunk.
+	 *
+	 * @return prototype of loaded Lua chunk.
+	 * @throws IOException if an I/O error occurred while compiling the chunk.
+	 */
+	static Prototype loadPrototype(byte[] source, String name) throws IOException {
+		return loadOrCompile(source, name, null, true).prototype;
+	}
+
+	private static LuaClosure loadOrCompile(byte[] source, String name, @Nullable KahluaTable environment,
+											boolean isCharacterSource) throws IOException {
+
+		if (!ENABLED) {
+			return compile(source, name, environment, isCharacterSource);
+		}
+		if (EVICTION_STARTED.compareAndSet(false, true))
+		{
+			Thread thread = new Thread(() -> evict(CACHE_DIRECTORY, MAX_SIZE), "Storm Lua cache eviction");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+		String cacheKey = getCacheKey(source, name, isRewritingEvents());
+		Path cacheFile = CACHE_DIRECTORY.resolve(cacheKey + FILE_EXTENSION);
+		LuaClosure closure = readCacheFile(cacheFile, environment);
+		if (closure != null) {
+			return closure;
+		}
+		closure = compile(source, name, environment, isCharacterSource);
+		writeCacheFile(cacheFile, closure.prototype);
+		return closure;
+	}
+
+	private static LuaClosure compile(byte[] source, String name, @Nullable KahluaTable environment,
+									  boolean isCharacterSource) throws IOException {
+
+		return isCharacterSource ? LuaCompiler.loadis(new InputStreamReader(
+				new ByteArrayInputStream(source), StandardCharsets.UTF_8), name, environment) :
+				LuaCompiler.loadis(new ByteArrayInputStream(source), name, environment);
+	}
+
+	/**
+	 * Returns key of cache entry for Lua chunk with given source and name compiled with given
+	 * options, which is a hexadecimal hash of the source, name, options and version of the compiler.
+	 *
+	 * @param source source of the Lua chunk.
+	 * @param name name of the Lua chunk.
+	 * @param rewriteEvents whether the compiler rewrites events in the chunk.
+	 */
+	static String getCacheKey(byte[] source, String name, boolean rewriteEvents) {
+
+		MessageDigest digest = createDigest();
+		digest.update(CompilerVersion.HASH);
+		digest.update(name.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update((byte) (rewriteEvents ? 1 : 0));
+		digest.update(source);
+		return BaseEncoding.base16().lowerCase().encode(digest.digest());
+	}
+
+	/**
+	 * Read Lua closure from given cache file and mark the file as used.
+	 * Cache files that cannot be read are deleted.
+	 * <p>
+	 * Cache files are read into a heap buffer and not memory-mapped, because mapped
+	 * files cannot be deleted or replaced on Windows until their buffer is garbage collected.
+	 * </p>
+	 *
+	 * @param cacheFile path to the cache file to read.
+	 * @param environment environment of the loaded closure.
+	 *
+	 * @return closure read from cache file or {@code null} if the file does not exist or cannot be read.
+	 */
+	static @Nullable LuaClosure readCacheFile(Path cacheFile, @Nullable KahluaTable environment) {
+
+		try {
+			DataInputStream stream = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(cacheFile)));
+			if (stream.readInt() != FORMAT_VERSION) {
+				throw new IOException("Unsupported cache file format");
+			}
+			String filename = stream.readBoolean() ? stream.readUTF() : null;
+			LuaClosure closure = Prototype.loadByteCode(stream, environment);
+
+			// file names are not serialized by prototype dumps
+			setFilename(closure.prototype, filename);
+			markUsed(cacheFile);
+			return closure;
+		}
+		catch (NoSuchFileException e) {
+			return null;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			StormLogger.warn("Discarding unreadable Lua cache file '%s': %s", cacheFile, e);
+			try {
+				Files.deleteIfExists(cacheFile);
+			}
+			catch (IOException e1) {
+				StormLogger.error("Unable to delete Lua cache file " + cacheFile, e1);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Write given prototype to given cache file. The prototype is written to a temporary file
+	 * first and then moved to the cache file, so that other threads and processes never read
+	 * partially written cache files. Failing to write a cache file is not considered an error.
+	 *
+	 * @param cacheFile path to the cache file to write.
+	 * @param prototype prototype to write to the cache file.
+	 */
+	static void writeCacheFile(Path cacheFile, Prototype prototype) {
+
+		Path tempFile = null;
+		try {
+			Path directory = cacheFile.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			tempFile = Files.createTempFile(directory, "lua", ".tmp");
+			try (DataOutputStream stream = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempFile))))
+			{
+				stream.writeInt(FORMAT_VERSION);
+				stream.writeBoolean(prototype.filename != null);
+				if (prototype.filename != null) {
+					stream.writeUTF(prototype.filename);
+				}
+				prototype.dump(stream);
+			}
+			Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			StormLogger.warn("Unable to write Lua cache file '%s': %s", cacheFile, e);
+			if (tempFile != null)
+			{
+				try {
+					Files.deleteIfExists(tempFile);
+				}
+				catch (IOException e1) {
+					StormLogger.error("Unable to delete temporary Lua cache file " + tempFile, e1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Update last modified time of given cache file unless it was updated recently, so that
+	 * the file is not evicted before cache files that were not used for a longer time.
+	 * Failing to update the time is not considered an error.
+	 */
+	private static void markUsed(Path cacheFile) {
+
+		try {
+			long now = System.currentTimeMillis();
+			if (now - Files.getLastModifiedTime(cacheFile).toMillis() > USE_RESOLUTION) {
+				Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(now));
+			}
+		}
+		catch (IOException e) {
+			StormLogger.debug("Unable to mark Lua cache file '%s' as used: %s", cacheFile, e);
+		}
+	}
+
+	/**
+	 * Delete least recently used cache files in given directory until the total size of cache
+	 * files is not larger than given size, and delete temporary files left behind by interrupted
+	 * writes. Files that cannot be deleted, for example because another game instance is reading
+	 * them, are skipped. This method is called in background when the cache is first used.
+	 *
+	 * @param directory cache directory to evict files from.
+	 * @param maxSize maximum size of cache files in bytes.
+	 */
+	static void evict(Path directory, long maxSize) {
+
+		if (!Files.isDirectory(directory)) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long totalSize = 0;
+		List<CacheFile> cacheFiles = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+		{
+			for (Path file : stream)
+			{
+				String filename = file.getFileName().toString();
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				long lastModified = attributes.lastModifiedTime().toMillis();
+				if (filename.endsWith(FILE_EXTENSION))
+				{
+					cacheFiles.add(new CacheFile(file, lastModified, attributes.size()));
+					totalSize += attributes.size();
+				}
+				else if (filename.endsWith(".tmp") && now - lastModified > TEMP_FILE_EXPIRATION) {
+					deleteEvicted(file);
+				}
+			}
+		}
+		catch (IOException | DirectoryIteratorException e)
+		{
+			StormLogger.warn("Unable to list Lua cache directory '%s': %s", directory, e);
+			return;
+		}
+		cacheFiles.sort(Comparator.comparingLong(f -> f.lastModified));
+		for (int i = 0; i < cacheFiles.size() && totalSize > maxSize; i++)
+		{
+			CacheFile cacheFile = cacheFiles.get(i);
+			if (deleteEvicted(cacheFile.path)) {
+				totalSize -= cacheFile.size;
+			}
+		}
+	}
+
+	private static boolean deleteEvicted(Path file) {
+
+		try {
+			Files.deleteIfExists(file);
+			return true;
+		}
+		catch (IOException e)
+		{
+			StormLogger.debug("Unable to evict Lua cache file '%s': %s", file, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Set file name of given prototype and all prototypes it declares.
+	 */
+	private static void setFilename(Prototype prototype, @Nullable String filename) {
+
+		prototype.filename = filename;
+		if (prototype.prototypes != null)
+		{
+			for (Prototype child : prototype.prototypes) {
+				setFilename(child, filename);
+			}
+		}
+	}
+
+	private static MessageDigest createDigest() {
+
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Holds the version of the compiler, which is a hash of class files that compile and
+	 * serialize prototypes. Class files are read as resources and hashed only when the cache
+	 * is first used, so that game classes are not loaded before the game class loader is ready.
+	 */
+	private static class CompilerVersion {
+
+		private static final byte[] HASH = hashClassFiles(
+				"org/luaj/kahluafork/compiler/LuaCompiler.class", "se/krka/kahlua/vm/Prototype.class"
+		);
+
+		private static byte[] hashClassFiles(String... resources) {
+
+			MessageDigest digest = createDigest();
+			digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(FORMAT_VERSION).array());
+			for (String resource : resources)
+			{
+				try (InputStream stream = LuaCompileCache.class.getClassLoader().getResourceAsStream(resource))
+				{
+					if (stream == null) {
+						throw new IllegalStateException("Unable to find class file " + resource);
+					}
+					digest.update(ByteStreams.toByteArray(stream));
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException("Unable to read class file " + resource, e);
+				}
+			}
+			return digest.digest();
+		}
+	}
+
+	/**
+	 * Cache file listed for eviction.
+	 */
+	private static class CacheFile {
+
+		private final Path path;
+		private final long lastModified;
+		private final long size;
+
+		private CacheFile(Path path, long lastModified, long size) {
+
+			this.path = path;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Type;
+
+import io.pzstorm.storm.logging.StormLogger;
+import se.krka.kahlua.integration.annotations.LuaMethod;
+import se.krka.kahlua.integration.expose.ReturnValues;
+import se.krka.kahlua.vm.*;
+
+/**
+ * This class exposes Java methods of mod classes to Lua through generated invokers instead of
+ * Kahlua {@code LuaJavaClassExposer}, which calls every exposed method reflectively and boxes
+ * all arguments. Methods are exposed when annotated with Kahlua {@link LuaMethod} annotation:
+ * <ul>
+ * <li>{@link #exposeGlobalFunctions(KahluaTable, Object)} exposes methods annotated with
+ * {@code global = true} as global Lua functions.</li>
+ * <li>{@link #exposeClass(Platform, KahluaTable, Class)} exposes instance methods annotated with
+ * {@code global = false} as methods that Lua calls on class instances with colon syntax.</li>
+ * </ul>
+ * Classes written for {@code LuaJavaClassExposer} can be exposed with this class only if their
+ * methods fit the following rules, which are checked before any method is exposed:
+ * <ul>
+ * <li>Methods exposed under the same name are selected by the number of Lua arguments, so they must
+ * not have the same number of parameters and only one of them can have variable arity. Lua calls
+ * must pass exactly as many arguments as the selected method has parameters, while functions that
+ * are not overloaded are called with missing arguments converted to {@code nil}.</li>
+ * <li>Methods with variable arity receive remaining Lua arguments as an array.</li>
+ * <li>Methods that push multiple results with Kahlua {@link ReturnValues} are not supported.</li>
+ * <li>Arguments are converted by {@link LuaInvokerSupport} and not by Kahlua converters, so for
+ * example Lua tables are not converted to Java collections.</li>
+ * </ul>
+ * Each method is invoked by a {@link JavaFunction} class generated with ASM when the method is
+ * exposed and defined as a hidden class nested in the class that declares the method, so the
+ * invoker calls the method directly and reads primitive arguments without boxing them. If the
+ * declaring class cannot be accessed with full privilege this class falls back to invoking the
+ * method with a {@link MethodHandle}.
+ */
+public final class LuaExposer {
+
+	/* Make the constructor private to disable instantiation */
+	private LuaExposer() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Expose methods of given object annotated with {@link LuaMethod} that are declared
+	 * global as functions in given Lua environment. Instance methods are called on given object.
+	 * To expose only {@code static} methods pass the declaring {@code Class} object instead.
+	 *
+	 * @param environment Lua environment to expose functions in.
+	 * @param owner object on which exposed instance methods are called,
+	 * 		or the {@code Class} that declares exposed {@code static} methods.
+	 *
+	 * @throws IllegalArgumentException if methods cannot be exposed as described in class documentation.
+	 */
+	public static void exposeGlobalFunctions(KahluaTable environment, Object owner) {
+
+		boolean isStaticOwner = owner instanceof Class;
+		Class<?> ownerClass = isStaticOwner ? (Class<?>) owner : owner.getClass();
+		Map<String, JavaFunction> functions = createFunctions(ownerClass, true,
+				m -> !isStaticOwner || Modifier.isStatic(m.getModifiers()), isStaticOwner ? null : owner);
+
+		functions.forEach(environment::rawset);
+	}
+
+	/**
+	 * Expose instance methods of given class annotated with {@link LuaMethod} that are not
+	 * declared global, so that Lua can call them on instances of given class with colon syntax.
+	 * The methods are exposed through the metatable Kahlua uses for instances of given class.
+	 * If the class already has a metatable, for example because it was exposed before,
+	 * the methods are added to the existing {@code __index} table of the metatable.
+	 *
+	 * @param platform platform that creates Lua tables.
+	 * @param environment Lua environment that holds class metatables.
+	 * @param type class whose instances should have methods exposed.
+	 *
+	 * @throws IllegalArgumentException if methods cannot be exposed as described in class documentation.
+	 * @throws IllegalStateException if existing metatable of given class has an {@code __index}
+	 * 		value that is not a table.
+	 */
+	public static void exposeClass(Platform platform, KahluaTable environment, Class<?> type) {
+
+		Map<String, JavaFunction> functions = createFunctions(
+				type, false, m -> !Modifier.isStatic(m.getModifiers()), null);
+
+		KahluaTable classMetatables = KahluaUtil.getClassMetatables(platform, environment);
+		KahluaTable metatable = (KahluaTable) classMetatables.rawget(type);
+		if (metatable == null)
+		{
+			metatable = platform.newTable();
+			classMetatables.rawset(type, metatable);
+		}
+		Object index = metatable.rawget("__index");
+		if (index == null)
+		{
+			index = platform.newTable();
+			metatable.rawset("__index", index);
+		}
+		else if (!(index instanceof KahluaTable)) {
+			throw new IllegalStateException("Unable to expose methods of " + type.getName() +
+					" because its metatable has __index value that is not a table: " + index);
+		}
+		functions.forEach(((KahluaTable) index)::rawset);
+	}
+
+	/**
+	 * Create Lua functions for methods of given class annotated with {@link LuaMethod} that are
+	 * global or not as requested and match given filter, mapped to names under which they are
+	 * exposed. Methods exposed under the same name are invoked by a single overloaded function.
+	 *
+	 * @throws IllegalArgumentException if methods exposed under the same name cannot be told apart.
+	 */
+	private static Map<String, JavaFunction> createFunctions(Class<?> type, boolean global,
+															 Predicate<Method> filter, @Nullable Object target) {
+
+		Map<String, List<Method>> methods = new LinkedHashMap<>();
+		for (Method method : type.getMethods())
+		{
+			LuaMethod annotation = method.getAnnotation(LuaMethod.class);
+			if (annotation != null && annotation.global() == global && filter.test(method))
+			{
+				String name = annotation.name().isEmpty() ? method.getName() : annotation.name();
+				methods.computeIfAbsent(name, k -> new ArrayList<>()).add(method);
+			}
+		}
+		Map<String, JavaFunction> functions = new LinkedHashMap<>();
+		for (Map.Entry<String, List<Method>> entry : methods.entrySet())
+		{
+			List<Method> overloads = entry.getValue();
+			functions.put(entry.getKey(), overloads.size() == 1 ? createFunction(overloads.get(0), target) :
+					OverloadedFunction.create(entry.getKey(), overloads, target));
+		}
+		return functions;
+	}
+
+	/**
+	 * Create a Lua function that invokes given method. Static methods are invoked with Lua arguments,
+	 * and instance methods are invoked on given target or on the first Lua argument if the target is
+	 * {@code null}, which is the object on which the method was called with Lua colon syntax.
+	 *
+	 * @param method method to invoke.
+	 * @param target object to invoke instance method on or {@code null}.
+	 *
+	 * @throws IllegalArgumentException if the method has a {@link ReturnValues} parameter.
+	 * @throws IllegalStateException if unable to access the given method.
+	 */
+	public static JavaFunction createFunction(Method method, @Nullable Object target) {
+
+		if (Arrays.asList(method.getParameterTypes()).contains(ReturnValues.class)) {
+			throw new IllegalArgumentException("Lua method " + method + " has unsupported ReturnValues parameter");
+		}
+		Class<?> declaringClass = method.getDeclaringClass();
+		boolean isBound = target != null && !Modifier.isStatic(method.getModifiers());
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+			if (lookup.hasFullPrivilegeAccess())
+			{
+				byte[] invokerClass = LuaInvokerGenerator.generate(
+						Type.getInternalName(declaringClass) + "$StormLuaInvoker", method, isBound);
+
+				MethodHandles.Lookup invokerLookup = lookup.defineHiddenClass(
+						invokerClass, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+
+				Class<?> invoker = invokerLookup.lookupClass();
+				if (isBound)
+				{
+					return (JavaFunction) invokerLookup.findConstructor(invoker,
+							MethodType.methodType(void.class, Object.class)).invoke(target);
+				}
+				return (JavaFunction) invokerLookup.findConstructor(invoker,
+						MethodType.methodType(void.class)).invoke();
+			}
+		}
+		catch (Throwable e) {
+			StormLogger.debug("Unable to generate Lua invoker for method %s, using method handle instead", method);
+		}
+		try {
+			method.setAccessible(true);
+			MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
+			return new MethodHandleFunction(method, isBound ? methodHandle.bindTo(target) : methodHandle);
+		}
+		catch (IllegalAccessException | RuntimeException e) {
+			throw new IllegalStateException("Unable to access Lua method " + method, e);
+		}
+	}
+
+	/**
+	 * Returns the number of Lua arguments passed to given method when invoked by a function
+	 * created for it with given target, which includes the object on which instance method
+	 * is called with Lua colon syntax.
+	 */
+	private static int getArgumentCount(Method method, @Nullable Object target) {
+		return method.getParameterCount() + (target == null && !Modifier.isStatic(method.getModifiers()) ? 1 : 0);
+	}
+
+	/**
+	 * Lua function that invokes a method with a {@link MethodHandle},
+	 * used when an invoker class cannot be generated for the method.
+	 */
+	private static class MethodHandleFunction implements JavaFunction {
+
+		private final Method method;
+		private final MethodHandle methodHandle;
+		private final Class<?>[] parameterTypes;
+
+		private MethodHandleFunction(Method method, MethodHandle methodHandle) {
+
+			this.method = method;
+			this.methodHandle = methodHandle.asFixedArity();
+			this.parameterTypes = methodHandle.type().parameterArray();
+		}
+
+		@Override
+		public int call(LuaCallFrame callFrame, int nArguments) {
+
+			Object[] arguments = new Object[parameterTypes.length];
+			for (int i = 0; i < arguments.length; i++)
+			{
+				if (method.isVarArgs() && i == arguments.length - 1)
+				{
+					arguments[i] = LuaInvokerSupport.getVarargs(
+							callFrame, nArguments, i, parameterTypes[i].getComponentType());
+				}
+				else arguments[i] = LuaInvokerSupport.getArgument(callFrame, nArguments, i, parameterTypes[i]);
+			}
+			Object result;
+			try {
+				result = methodHandle.invokeWithArguments(arguments);
+			}
+			catch (RuntimeException | Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+			return method.getReturnType() != void.class ? LuaInvokerSupport.pushObject(callFrame, result) : 0;
+		}
+
+		@Override
+		public String toString() {
+			return method.getDeclaringClass().getName() + '.' + method.getName();
+		}
+	}
+
+	/**
+	 * Lua function that invokes one of methods exposed under the same name,
+	 * selected by the number of arguments the function was called with.
+	 */
+	private static class OverloadedFunction implements JavaFunction {
+
+		private final String name;
+
+		/**
+		 * Functions of methods with fixed arity indexed by the number of arguments they take.
+		 */
+		private final JavaFunction[] functions;
+
+		private final @Nullable JavaFunction varargsFunction;
+		private final int varargsArgumentCount;
+
+		private OverloadedFunction(String name, JavaFunction[] functions,
+								   @Nullable JavaFunction varargsFunction, int varargsArgumentCount) {
+
+			this.name = name;
+			this.functions = functions;
+			this.varargsFunction = varargsFunction;
+			this.varargsArgumentCount = varargsArgumentCount;
+		}
+
+		/**
+		 * Create a function that invokes one of given methods exposed under given name.
+		 *
+		 * @throws IllegalArgumentException if two methods take the same number of arguments
+		 * 		or more than one method has variable arity.
+		 */
+		private static OverloadedFunction create(String name, List<Method> methods, @Nullable Object target) {
+
+			int maxArgumentCount = methods.stream().mapToInt(m -> getArgumentCount(m, target)).max().orElse(0);
+			JavaFunction[] functions = new JavaFunction[maxArgumentCount + 1];
+			Method varargsMethod = null;
+			for (Method method : methods)
+			{
+				if (method.isVarArgs())
+				{
+					if (varargsMethod != null)
+					{
+						throw new IllegalArgumentException(String.format("Lua methods %s and %s " +
+								"exposed as '%s' both have variable arity", varargsMethod, method, name));
+					}
+					varargsMethod = method;
+					continue;
+				}
+				int argumentCount = getArgumentCount(method, target);
+				if (functions[argumentCount] != null)
+				{
+					throw new IllegalArgumentException(String.format("Lua methods exposed as '%s' have the " +
+							"same number of parameters and cannot be told apart: %s", name, methods));
+				}
+				functions[argumentCount] = createFunction(method, target);
+			}
+			if (varargsMethod != null)
+			{
+				return new OverloadedFunction(name, functions, createFunction(varargsMethod, target),
+						getArgumentCount(varargsMethod, target) - 1);
+			}
+			return new OverloadedFunction(name, functions, null, 0);
+		}
+
+		@Override
+		public int call(LuaCallFrame callFrame, int nArguments) {
+
+			if (nArguments < functions.length && functions[nArguments] != null) {
+				return functions[nArguments].call(callFrame, nArguments);
+			}
+			if (varargsFunction != null && nArguments >= varargsArgumentCount) {
+				return varargsFunction.call(callFrame, nArguments);
+			}
+			throw new IllegalArgumentException(String.format(
+					"no overload of '%s' takes %d arguments", name, nArguments));
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.google.common.primitives.Primitives;
+
+import se.krka.kahlua.vm.JavaFunction;
+import se.krka.kahlua.vm.LuaCallFrame;
+
+/**
+ * This class generates bytecode of {@link JavaFunction} classes that invoke a single Java method
+ * with arguments read from Lua call frame. Each argument is read with a {@link LuaInvokerSupport}
+ * method specialized for the parameter type and the method is invoked directly, so arguments of
+ * primitive types are never boxed and no reflection is involved. Argument validation is delegated
+ * to support methods, so generated code has no branches and needs no stack map frames.
+ */
+final class LuaInvokerGenerator {
+
+	private static final String SUPPORT = Type.getInternalName(LuaInvokerSupport.class);
+	private static final String CALL_FRAME = Type.getDescriptor(LuaCallFrame.class);
+
+	/**
+	 * Name of the field that holds the object on which bound instance methods are invoked.
+	 */
+	private static final String TARGET_FIELD = "target";
+
+	/* Make the constructor private to disable instantiation */
+	private LuaInvokerGenerator() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Generate bytecode of a class that invokes given method when called from Lua. Static methods
+	 * are invoked with Lua arguments. Instance methods are invoked either on the object passed to
+	 * the constructor of a <i>bound</i> invoker, or on the first Lua argument, which is the object
+	 * on which the method was called with Lua colon syntax.
+	 *
+	 * @param className internal name of the class to generate.
+	 * @param method method to invoke.
+	 * @param isBound whether the instance method is invoked on the object passed to the constructor.
+	 *
+	 * @return bytecode of the generated class.
+	 */
+	static byte[] generate(String className, Method method, boolean isBound) {
+
+		Class<?> declaringClass = method.getDeclaringClass();
+		String declaringType = Type.getInternalName(declaringClass);
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		isBound = isBound && !isStatic;
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null,
+				"java/lang/Object", new String[] { Type.getInternalName(JavaFunction.class) });
+
+		if (isBound)
+		{
+			writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, TARGET_FIELD,
+					Type.getDescriptor(declaringClass), null, null).visitEnd();
+		}
+		// public <init>() or public <init>(Object target)
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>",
+				isBound ? "(Ljava/lang/Object;)V" : "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		if (isBound)
+		{
+			init.visitVarInsn(Opcodes.ALOAD, 0);
+			init.visitVarInsn(Opcodes.ALOAD, 1);
+			init.visitTypeInsn(Opcodes.CHECKCAST, declaringType);
+			init.visitFieldInsn(Opcodes.PUTFIELD, className, TARGET_FIELD, Type.getDescriptor(declaringClass));
+		}
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+
+		// public int call(LuaCallFrame callFrame, int nArguments)
+		MethodVisitor call = writer.visitMethod(Opcodes.ACC_PUBLIC, "call", '(' + CALL_FRAME + "I)I", null, null);
+		call.visitCode();
+
+		Class<?> returnType = method.getReturnType();
+		if (returnType != void.class)
+		{
+			// call frame to push the result to
+			call.visitVarInsn(Opcodes.ALOAD, 1);
+		}
+		int argumentIndex = 0;
+		if (isBound)
+		{
+			call.visitVarInsn(Opcodes.ALOAD, 0);
+			call.visitFieldInsn(Opcodes.GETFIELD, className, TARGET_FIELD, Type.getDescriptor(declaringClass));
+		}
+		else if (!isStatic) {
+			loadArgument(call, declaringClass, argumentIndex++);
+		}
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++)
+		{
+			if (method.isVarArgs() && i == parameterTypes.length - 1) {
+				loadVarargs(call, parameterTypes[i], argumentIndex++);
+			}
+			else loadArgument(call, parameterTypes[i], argumentIndex++);
+		}
+		boolean isInterface = declaringClass.isInterface();
+		int invokeOpcode = isStatic ? Opcodes.INVOKESTATIC :
+				isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL;
+		call.visitMethodInsn(invokeOpcode, declaringType, method.getName(),
+				Type.getMethodDescriptor(method), isInterface);
+
+		pushResult(call, returnType);
+		call.visitInsn(Opcodes.IRETURN);
+		call.visitMaxs(0, 0);
+		call.visitEnd();
+
+		// public String toString()
+		MethodVisitor toString = writer.visitMethod(Opcodes.ACC_PUBLIC,
+				"toString", "()Ljava/lang/String;", null, null);
+		toString.visitCode();
+		toString.visitLdcInsn(declaringClass.getName() + '.' + method.getName());
+		toString.visitInsn(Opcodes.ARETURN);
+		toString.visitMaxs(0, 0);
+		toString.visitEnd();
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Load Lua argument with given index converted to given type onto the stack.
+	 */
+	private static void loadArgument(MethodVisitor mv, Class<?> type, int index) {
+
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitLdcInsn(index);
+
+		String getter = '(' + CALL_FRAME + "II)";
+		if (type == boolean.class) {
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "getBoolean", getter + 'Z', false);
+		}
+		else if (type == char.class) {
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "getChar", getter + 'C', false);
+		}
+		else if (type.isPrimitive())
+		{
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "getNumber", getter + 'D', false);
+			if (type == int.class) {
+				mv.visitInsn(Opcodes.D2I);
+			}
+			else if (type == long.class) {
+				mv.visitInsn(Opcodes.D2L);
+			}
+			else if (type == float.class) {
+				mv.visitInsn(Opcodes.D2F);
+			}
+			else if (type == short.class)
+			{
+				mv.visitInsn(Opcodes.D2I);
+				mv.visitInsn(Opcodes.I2S);
+			}
+			else if (type == byte.class)
+			{
+				mv.visitInsn(Opcodes.D2I);
+				mv.visitInsn(Opcodes.I2B);
+			}
+		}
+		else if (type == Object.class) {
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT,
+					"getArgument", getter + "Ljava/lang/Object;", false);
+		}
+		else {
+			mv.visitLdcInsn(Type.getType(type));
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "getObject",
+					'(' + CALL_FRAME + "IILjava/lang/Class;)Ljava/lang/Object;", false);
+			mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+		}
+	}
+
+	/**
+	 * Load Lua arguments from given index to the last argument onto the stack
+	 * as an array of given type, which is the type of variable arity parameter.
+	 */
+	private static void loadVarargs(MethodVisitor mv, Class<?> arrayType, int index) {
+
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitLdcInsn(index);
+
+		Class<?> componentType = arrayType.getComponentType();
+		if (componentType.isPrimitive())
+		{
+			// primitive class literals are loaded from wrapper TYPE field
+			mv.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(Primitives.wrap(componentType)),
+					"TYPE", "Ljava/lang/Class;");
+		}
+		else mv.visitLdcInsn(Type.getType(componentType));
+
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "getVarargs",
+				'(' + CALL_FRAME + "IILjava/lang/Class;)Ljava/lang/Object;", false);
+		mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(arrayType));
+	}
+
+	/**
+	 * Push the value returned by invoked method, which is on top of the stack above the call frame,
+	 * to the call frame, and leave the number of results on the stack.
+	 */
+	private static void pushResult(MethodVisitor mv, Class<?> type) {
+
+		if (type == void.class) {
+			mv.visitInsn(Opcodes.ICONST_0);
+			return;
+		}
+		String pusher = '(' + CALL_FRAME;
+		if (type == boolean.class) {
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "pushBoolean", pusher + "Z)I", false);
+		}
+		else if (type == char.class) {
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "pushChar", pusher + "C)I", false);
+		}
+		else if (type.isPrimitive())
+		{
+			if (type == long.class) {
+				mv.visitInsn(Opcodes.L2D);
+			}
+			else if (type == float.class) {
+				mv.visitInsn(Opcodes.F2D);
+			}
+			else if (type != double.class) {
+				mv.visitInsn(Opcodes.I2D);
+			}
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "pushNumber", pusher + "D)I", false);
+		}
+		else mv.visitMethodInsn(Opcodes.INVOKESTATIC, SUPPORT, "pushObject", pusher + "Ljava/lang/Object;)I", false);
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.lang.reflect.Array;
+
+import org.jetbrains.annotations.Nullable;
+
+import se.krka.kahlua.vm.LuaCallFrame;
+
+/**
+ * This class converts arguments and results of Java methods exposed to Lua by {@link LuaExposer}.
+ * Lua numbers are represented as {@link Double} objects and Lua {@code nil} as {@code null}.
+ * Methods of this class are internal methods <b>only</b> called by generated Lua function invokers,
+ * which keeps argument validation out of generated code so that the invokers have no branches.
+ */
+public final class LuaInvokerSupport {
+
+	/* Make the constructor private to disable instantiation */
+	private LuaInvokerSupport() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns argument with given index from given call frame or {@code null} if the
+	 * function was called with fewer arguments, which is equivalent to Lua {@code nil}.
+	 */
+	public static @Nullable Object getArgument(LuaCallFrame callFrame, int nArguments, int index) {
+		return index < nArguments ? callFrame.get(index) : null;
+	}
+
+	/**
+	 * Returns number argument with given index from given call frame.
+	 *
+	 * @throws IllegalArgumentException if the argument is not a number.
+	 */
+	public static double getNumber(LuaCallFrame callFrame, int nArguments, int index) {
+
+		Object argument = getArgument(callFrame, nArguments, index);
+		if (!(argument instanceof Number)) {
+			throw badArgument(index, "number", argument);
+		}
+		return ((Number) argument).doubleValue();
+	}
+
+	/**
+	 * Returns boolean argument with given index from given call frame. As in Lua,
+	 * every value except {@code nil} and {@code false} is considered {@code true}.
+	 */
+	public static boolean getBoolean(LuaCallFrame callFrame, int nArguments, int index) {
+
+		Object argument = getArgument(callFrame, nArguments, index);
+		return argument != null && argument != Boolean.FALSE;
+	}
+
+	/**
+	 * Returns character argument with given index from given call frame. Characters are
+	 * passed from Lua as strings of length one, but numeric character codes are accepted too.
+	 *
+	 * @throws IllegalArgumentException if the argument is not a character.
+	 */
+	public static char getChar(LuaCallFrame callFrame, int nArguments, int index) {
+
+		Object argument = getArgument(callFrame, nArguments, index);
+		if (argument instanceof String && ((String) argument).length() == 1) {
+			return ((String) argument).charAt(0);
+		}
+		else if (argument instanceof Number) {
+			return (char) ((Number) argument).intValue();
+		}
+		throw badArgument(index, "character", argument);
+	}
+
+	/**
+	 * Returns argument with given index from given call frame as an instance of given type.
+	 * Numbers are converted to given numeric wrapper type and {@code nil} is converted
+	 * to {@code null} for every type.
+	 *
+	 * @throws IllegalArgumentException if the argument is not an instance of given type.
+	 */
+	public static @Nullable Object getObject(LuaCallFrame callFrame, int nArguments, int index, Class<?> type) {
+
+		Object argument = getArgument(callFrame, nArguments, index);
+		if (argument == null || type.isInstance(argument)) {
+			return argument;
+		}
+		if (argument instanceof Number)
+		{
+			Number number = (Number) argument;
+			if (type == Integer.class) {
+				return number.intValue();
+			}
+			else if (type == Long.class) {
+				return number.longValue();
+			}
+			else if (type == Float.class) {
+				return number.floatValue();
+			}
+			else if (type == Short.class) {
+				return number.shortValue();
+			}
+			else if (type == Byte.class) {
+				return number.byteValue();
+			}
+		}
+		throw badArgument(index, type.getSimpleName(), argument);
+	}
+
+	/**
+	 * Returns arguments from given index to the last argument in given call frame as an
+	 * array of given component type, which can be a primitive type. The array is empty
+	 * if the function was called with fewer arguments.
+	 *
+	 * @throws IllegalArgumentException if an argument cannot be converted to given type.
+	 */
+	public static Object getVarargs(LuaCallFrame callFrame, int nArguments, int index, Class<?> componentType) {
+
+		int length = Math.max(0, nArguments - index);
+		Object array = Array.newInstance(componentType, length);
+		for (int i = 0; i < length; i++) {
+			Array.set(array, i, getArgument(callFrame, nArguments, index + i, componentType));
+		}
+		return array;
+	}
+
+	/**
+	 * Returns argument with given index from given call frame converted to given type,
+	 * which can be a primitive type. This method is used by invokers which are not generated.
+	 *
+	 * @throws IllegalArgumentException if the argument cannot be converted to given type.
+	 */
+	static @Nullable Object getArgument(LuaCallFrame callFrame, int nArguments, int index, Class<?> type) {
+
+		if (!type.isPrimitive()) {
+			return getObject(callFrame, nArguments, index, type);
+		}
+		else if (type == boolean.class) {
+			return getBoolean(callFrame, nArguments, index);
+		}
+		else if (type == char.class) {
+			return getChar(callFrame, nArguments, index);
+		}
+		double number = getNumber(callFrame, nArguments, index);
+		if (type == int.class) {
+			return (int) number;
+		}
+		else if (type == long.class) {
+			return (long) number;
+		}
+		else if (type == float.class) {
+			return (float) number;
+		}
+		else if (type == short.class) {
+			return (short) number;
+		}
+		else if (type == byte.class) {
+			return (byte) number;
+		}
+		return number;
+	}
+
+	/**
+	 * Push given number result to given call frame.
+	 *
+	 * @return number of pushed results.
+	 */
+	public static int pushNumber(LuaCallFrame callFrame, double result) {
+
+		callFrame.push(result);
+		return 1;
+	}
+
+	/**
+	 * Push given boolean result to given call frame.
+	 *
+	 * @return number of pushed results.
+	 */
+	public static int pushBoolean(LuaCallFrame callFrame, boolean result) {
+
+		callFrame.push(result ? Boolean.TRUE : Boolean.FALSE);
+		return 1;
+	}
+
+	/**
+	 * Push given character result to given call frame as a string.
+	 *
+	 * @return number of pushed results.
+	 */
+	public static int pushChar(LuaCallFrame callFrame, char result) {
+
+		callFrame.push(String.valueOf(result));
+		return 1;
+	}
+
+	/**
+	 * Push given object result to given call frame. Numbers are converted to {@link Double}
+	 * and characters are converted to strings, as Lua has no other numeric or character type.
+	 *
+	 * @return number of pushed results.
+	 */
+	public static int pushObject(LuaCallFrame callFrame, @Nullable Object result) {
+
+		if (result instanceof Number && !(result instanceof Double)) {
+			result = ((Number) result).doubleValue();
+		}
+		else if (result instanceof Character) {
+			result = result.toString();
+		}
+		callFrame.push(result);
+		return 1;
+	}
+
+	private static IllegalArgumentException badArgument(int index, String expected, @Nullable Object argument) {
+
+		String actual = argument != null ? argument.getClass().getSimpleName() : "nil";
+		return new IllegalArgumentException(String.format(
+				"bad argument #%d (%s expected, got %s)", index + 1, expected, actual));
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.pzstorm.storm.logging.StormLogger;
+import se.krka.kahlua.vm.Prototype;
+import zombie.Lua.LuaManager;
+
+/**
+ * This class compiles Lua files loaded from a directory by {@code zombie.Lua.LuaManager} in parallel.
+ * Compiling a Lua file is independent of other files and only running the files has to follow the
+ * order in which they are loaded, so {@code LuaParallelLoadPatch} defers files that
+ * {@code LuaManager#LoadDirBase} loads with {@code LuaManager#RunLua} until the method returns.
+ * Deferred files are then compiled on the common {@link java.util.concurrent.ForkJoinPool ForkJoin pool}
+ * and run one by one in the original order, which loads compiled prototypes through
+ * {@link LuaCompileCache} instead of compiling the files again.
+ * <p>
+ * Because files are deferred, a file can run a file deferred after it, for example with {@code require},
+ * before the deferred file is run by the loader. Such files are not run again, as the patch reports every
+ * file run by {@code LuaManager#RunLua} to the loader. When a directory load fails its deferred files
+ * are not run and are discarded when the next directory load starts.
+ * </p><p>
+ * Files are compiled from their content read as UTF-8 and prototypes are matched to loaded chunks by
+ * their source and by whether the compiler rewrites events, so a file that is read or compiled differently
+ * when run, or that could not be compiled ahead of time, is compiled again when it is run which reports
+ * any compilation errors as before.
+ * The loader is enabled with {@code storm.lua.parallel} system property.
+ * </p>
+ */
+public final class LuaParallelLoader {
+
+	static final String ENABLED_PROPERTY = "storm.lua.parallel";
+
+	private static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	/**
+	 * Files deferred by {@code LuaManager#LoadDirBase} on current thread.
+	 */
+	private static final ThreadLocal<List<PendingFile>> PENDING_FILES = ThreadLocal.withInitial(ArrayList::new);
+
+	/**
+	 * Files deferred on current thread that were not run yet mapped to their normalized names.
+	 * This includes pending files and files that are about to be run by {@link #loadPendingFiles()}.
+	 */
+	private static final ThreadLocal<Map<String, PendingFile>> DEFERRED_FILES = ThreadLocal.withInitial(HashMap::new);
+
+	/**
+	 * Prototypes compiled ahead of time mapped to source of the Lua chunk they were compiled
+	 * from and whether the compiler rewrote events when compiling them.
+	 */
+	private static final Map<ChunkKey, CompiledChunk> COMPILED_CHUNKS = new ConcurrentHashMap<>();
+
+	/* Make the constructor private to disable instantiation */
+	private LuaParallelLoader() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns {@code true} if the loader was enabled with {@code storm.lua.parallel} system property.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Discard files deferred by a previous directory load which did not complete. This is
+	 * an internal method <b>only</b> called by {@code LuaParallelLoadPatch} when
+	 * {@code LuaManager#LoadDirBase} starts loading a directory.
+	 */
+	public static void beginLoad() {
+
+		List<PendingFile> pendingFiles = PENDING_FILES.get();
+		if (!pendingFiles.isEmpty())
+		{
+			StormLogger.warn("Discarding %d Lua files deferred by incomplete directory load", pendingFiles.size());
+			Map<String, PendingFile> deferredFiles = DEFERRED_FILES.get();
+			for (PendingFile file : pendingFiles) {
+				deferredFiles.remove(file.key, file);
+			}
+			pendingFiles.clear();
+		}
+	}
+
+	/**
+	 * Defer running Lua file with given name until {@link #loadPendingFiles()} is called.
+	 * This is an internal method <b>only</b> called by {@code LuaParallelLoadPatch} in place
+	 * of {@code LuaManager#RunLua} calls whose result is discarded.
+	 *
+	 * @param filename name of the Lua file to run.
+	 * @param rewriteEvents whether events in Lua file should be rewritten.
+	 *
+	 * @return always {@code null} as the file is not run yet.
+	 */
+	public static @Nullable Object runLua(String filename, boolean rewriteEvents) {
+
+		PendingFile file = new PendingFile(filename, rewriteEvents);
+		PENDING_FILES.get().add(file);
+		DEFERRED_FILES.get().putIfAbsent(file.key, file);
+		return null;
+	}
+
+	/**
+	 * Mark deferred Lua file with given name as run, so that it is not run again when deferred
+	 * files are loaded. This is an internal method <b>only</b> called by {@code LuaParallelLoadPatch}
+	 * at the start of {@code LuaManager#RunLua}, which includes files run with {@code require}.
+	 *
+	 * @param filename name of the Lua file that is about to run.
+	 */
+	public static void onRunLua(String filename) {
+
+		Map<String, PendingFile> deferredFiles = DEFERRED_FILES.get();
+		if (!deferredFiles.isEmpty())
+		{
+			PendingFile file = deferredFiles.remove(getFileKey(filename));
+			if (file != null) {
+				file.run = true;
+			}
+		}
+	}
+
+	/**
+	 * Compile all deferred Lua files in parallel and then run them in the order they were deferred.
+	 * This is an internal method <b>only</b> called by {@code LuaParallelLoadPatch} before
+	 * {@code LuaManager#LoadDirBase} returns.
+	 */
+	public static void loadPendingFiles() {
+		loadPendingFiles(file -> LuaManager.RunLua(file.filename, file.rewriteEvents));
+	}
+
+	/**
+	 * Compile all deferred Lua files in parallel and then run each file that was not run
+	 * yet with given function, in the order they were deferred.
+	 */
+	static void loadPendingFiles(Consumer<PendingFile> runLua) {
+
+		List<PendingFile> pendingFiles = PENDING_FILES.get();
+		if (pendingFiles.isEmpty()) {
+			return;
+		}
+		// files run by Lua code while running deferred files are not deferred
+		List<PendingFile> files = new ArrayList<>(pendingFiles);
+		pendingFiles.clear();
+
+		compileFiles(files);
+		try {
+			for (PendingFile file : files)
+			{
+				// files required by files that were run before them are already run
+				if (!file.run) {
+					runLua.accept(file);
+				}
+				else StormLogger.debug("Skipping Lua file '%s' which was already run", file.filename);
+			}
+		}
+		finally {
+			Map<String, PendingFile> deferredFiles = DEFERRED_FILES.get();
+			for (PendingFile file : files) {
+				deferredFiles.remove(file.key, file);
+			}
+			COMPILED_CHUNKS.clear();
+		}
+	}
+
+	/**
+	 * Compile given Lua files in parallel and keep the compiled prototypes until they are loaded.
+	 * Files that cannot be read or compiled are skipped.
+	 * <p>
+	 * Whether the compiler rewrites events is a compiler option shared by all threads, which
+	 * {@code LuaManager#RunLua} sets before compiling each file. Files that are run with events
+	 * rewritten and files that are not are compiled in separate groups with the option set
+	 * accordingly, and the option is restored when all files are compiled.
+	 * </p>
+	 */
+	static void compileFiles(List<PendingFile> files) {
+
+		long start = System.nanoTime();
+		boolean rewriteEvents = LuaCompileCache.isRewritingEvents();
+		try {
+			compileFiles(files, false);
+			compileFiles(files, true);
+		}
+		finally {
+			LuaCompileCache.setRewritingEvents(rewriteEvents);
+		}
+		StormLogger.debug("Compiled %d of %d Lua files in %d ms", COMPILED_CHUNKS.size(), files.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * Compile given Lua files that are run with given rewrite events option in parallel.
+	 */
+	private static void compileFiles(List<PendingFile> files, boolean rewriteEvents) {
+
+		LuaCompileCache.setRewritingEvents(rewriteEvents);
+		// the option cannot be set when the compiler does not support it
+		boolean rewritingEvents = LuaCompileCache.isRewritingEvents();
+		files.parallelStream().filter(file -> file.rewriteEvents == rewriteEvents).forEach(file -> {
+			try {
+				byte[] source = Files.readAllBytes(Paths.get(file.filename));
+				Prototype prototype = LuaCompileCache.loadPrototype(source, file.filename);
+				COMPILED_CHUNKS.put(new ChunkKey(source, rewritingEvents), new CompiledChunk(file.filename, prototype));
+			}
+			catch (IOException | RuntimeException e) {
+				// the file will be compiled again when it is run, which reports the error
+				StormLogger.debug("Unable to compile Lua file '%s' ahead of time: %s", file.filename, e);
+			}
+		});
+	}
+
+	/**
+	 * Take prototype compiled ahead of time from given source with given rewrite events
+	 * option and name it after given chunk name.
+	 *
+	 * @param source source of the Lua chunk to load.
+	 * @param name name of the Lua chunk to load.
+	 * @param rewriteEvents whether the compiler rewrites events in the loaded chunk.
+	 *
+	 * @return compiled prototype or {@code null} if the source was not compiled ahead of time with given option.
+	 */
+	static @Nullable Prototype takePrototype(byte[] source, String name, boolean rewriteEvents) {
+
+		if (COMPILED_CHUNKS.isEmpty()) {
+			return null;
+		}
+		CompiledChunk chunk = COMPILED_CHUNKS.remove(new ChunkKey(source, rewriteEvents));
+		if (chunk == null) {
+			return null;
+		}
+		// prototypes were compiled with file name as chunk name
+		if (!chunk.name.equals(name)) {
+			rename(chunk.prototype, chunk.name, name);
+		}
+		return chunk.prototype;
+	}
+
+	/**
+	 * Rename given prototype and all prototypes it declares from given chunk name to another.
+	 */
+	private static void rename(Prototype prototype, String oldName, String newName) {
+
+		if (Objects.equals(prototype.name, oldName)) {
+			prototype.name = newName;
+		}
+		if (Objects.equals(prototype.filename, oldName)) {
+			prototype.filename = newName;
+		}
+		if (prototype.prototypes != null)
+		{
+			for (Prototype child : prototype.prototypes) {
+				rename(child, oldName, newName);
+			}
+		}
+	}
+
+	/**
+	 * Returns name of given Lua file in the same form regardless of how the path was written.
+	 */
+	private static String getFileKey(String filename) {
+
+		try {
+			return Paths.get(filename).toAbsolutePath().normalize().toString();
+		}
+		catch (InvalidPathException e) {
+			return filename;
+		}
+	}
+
+	static class PendingFile {
+
+		final String filename;
+		private final boolean rewriteEvents;
+		private final String key;
+
+		/**
+		 * Whether the file was run after it was deferred and should not be run again.
+		 */
+		private boolean run;
+
+		PendingFile(String filename, boolean rewriteEvents) {
+
+			this.filename = filename;
+			this.rewriteEvents = rewriteEvents;
+			this.key = getFileKey(filename);
+		}
+	}
+
+	private static class ChunkKey {
+
+		private final ByteBuffer source;
+		private final boolean rewriteEvents;
+
+		private ChunkKey(byte[] source, boolean rewriteEvents) {
+
+			this.source = ByteBuffer.wrap(source);
+			this.rewriteEvents = rewriteEvents;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof ChunkKey)) {
+				return false;
+			}
+			ChunkKey key = (ChunkKey) o;
+			return rewriteEvents == key.rewriteEvents && source.equals(key.source);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(source, rewriteEvents);
+		}
+	}
+
+	private static class CompiledChunk {
+
+		private final String name;
+		private final Prototype prototype;
+
+		private CompiledChunk(String name, Prototype prototype) {
+
+			this.name = name;
+			this.prototype = prototype;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.lua;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.pzstorm.storm.logging.StormLogger;
+import se.krka.kahlua.vm.Coroutine;
+import se.krka.kahlua.vm.KahluaThread;
+import se.krka.kahlua.vm.LuaCallFrame;
+import se.krka.kahlua.vm.LuaClosure;
+import se.krka.kahlua.vm.Prototype;
+
+/**
+ * This class samples Lua call stacks of Kahlua threads to find Lua functions that take the most
+ * time to run. Java profilers only see Lua code as time spent in the Kahlua interpreter loop, so
+ * {@code LuaSamplingProfilerHook} instruments {@link KahluaThread} to maintain a shadow stack of
+ * Lua call frames for each thread that runs Lua code. The hook is installed only when the profiler
+ * is enabled with {@code storm.lua.sampler} system property, so the profiler costs nothing when
+ * it is disabled.
+ * <p>
+ * A sampler thread snapshots shadow stacks of all threads at a rate configured with
+ * {@code storm.lua.sampler.rate} system property in samples per second, and counts samples of
+ * each distinct stack. Samples are written in collapsed stack format, which can be rendered as a
+ * flame graph, to a file configured with {@code storm.lua.sampler.output} system property when
+ * the game exits, or at any time with {@link #dumpCollapsedStacks()}. Frames are named after the
+ * file and line that defined the Lua function, followed by the line the function was running
+ * unless {@code storm.lua.sampler.lines} system property is {@code false}.
+ * </p><p>
+ * Shadow stacks are read by the sampler thread without synchronization, so a sample taken while
+ * a frame is pushed or popped can be slightly inaccurate, which is acceptable for a profiler.
+ * </p>
+ */
+public final class LuaSamplingProfiler {
+
+	static final String ENABLED_PROPERTY = "storm.lua.sampler";
+	static final String RATE_PROPERTY = "storm.lua.sampler.rate";
+	static final String OUTPUT_PROPERTY = "storm.lua.sampler.output";
+	static final String LINES_PROPERTY = "storm.lua.sampler.lines";
+
+	private static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+	private static final boolean SAMPLE_LINES = !"false".equals(System.getProperty(LINES_PROPERTY));
+
+	/**
+	 * Shadow stacks of all threads that entered a Lua call frame.
+	 */
+	private static final Queue<ShadowStack> SHADOW_STACKS = new ConcurrentLinkedQueue<>();
+
+	private static final ThreadLocal<ShadowStack> SHADOW_STACK = ThreadLocal.withInitial(() -> {
+
+		ShadowStack stack = new ShadowStack(Thread.currentThread());
+		SHADOW_STACKS.add(stack);
+		return stack;
+	});
+
+	/**
+	 * Number of samples mapped to collapsed stacks. Access to this map has to be synchronized.
+	 */
+	private static final Map<String, long[]> SAMPLES = new HashMap<>();
+
+	static
+	{
+		if (ENABLED)
+		{
+			long rate = Math.max(1L, Long.getLong(RATE_PROPERTY, 100L));
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat("Storm-Lua-Sampler").setDaemon(true).build());
+
+			long period = TimeUnit.SECONDS.toNanos(1) / rate;
+			executor.scheduleAtFixedRate(() -> {
+				// an exception would cancel all subsequent samples
+				try {
+					sample();
+				}
+				catch (RuntimeException e) {
+					StormLogger.error("Unable to sample Lua call stacks", e);
+				}
+			}, period, period, TimeUnit.NANOSECONDS);
+
+			Runtime.getRuntime().addShutdownHook(new Thread(
+					LuaSamplingProfiler::dumpCollapsedStacks, "Storm-Lua-Sampler-Dump"));
+		}
+	}
+
+	/* Make the constructor private to disable instantiation */
+	private LuaSamplingProfiler() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns {@code true} if the profiler was enabled with {@code storm.lua.sampler} system property.
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Push given call frame to the shadow stack of current thread. This is an internal method
+	 * <b>only</b> called by {@code LuaSamplingProfilerHook} after {@link KahluaThread} pushes
+	 * a new call frame to a coroutine.
+	 *
+	 * @param frame call frame that was pushed to a coroutine.
+	 *
+	 * @return the given call frame.
+	 */
+	public static LuaCallFrame enterFrame(LuaCallFrame frame) {
+
+		SHADOW_STACK.get().push(frame);
+		return frame;
+	}
+
+	/**
+	 * Pop call frames that are no longer on the stack of current coroutine from the shadow
+	 * stack of current thread. This is an internal method <b>only</b> called by
+	 * {@code LuaSamplingProfilerHook} after {@link KahluaThread} pops call frames.
+	 *
+	 * @param thread Kahlua thread that popped call frames.
+	 */
+	public static void exitFrame(KahluaThread thread) {
+
+		Coroutine coroutine = thread.currentCoroutine;
+		int top = coroutine != null ? coroutine.getCallframeTop() : 0;
+		exitFrame(top > 0 ? coroutine.getCallFrame(top - 1) : null);
+	}
+
+	/**
+	 * Pop call frames above given frame from the shadow stack of current thread.
+	 *
+	 * @param topFrame frame on top of the current coroutine or {@code null} to pop all frames.
+	 */
+	static void exitFrame(@Nullable LuaCallFrame topFrame) {
+		SHADOW_STACK.get().popTo(topFrame);
+	}
+
+	/**
+	 * Take a sample of shadow stacks of all threads that are running Lua code.
+	 */
+	static void sample() {
+
+		for (Iterator<ShadowStack> iter = SHADOW_STACKS.iterator(); iter.hasNext(); )
+		{
+			ShadowStack stack = iter.next();
+			if (!stack.thread.isAlive())
+			{
+				iter.remove();
+				continue;
+			}
+			String collapsedStack = stack.collapse();
+			if (collapsedStack != null)
+			{
+				synchronized (SAMPLES) {
+					SAMPLES.computeIfAbsent(collapsedStack, s -> new long[1])[0]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns name of the Lua function running in given call frame, which is the name of the file
+	 * that defined the function followed by the line on which the function was defined, and the
+	 * line that the function is running when lines are sampled. Java functions called from Lua
+	 * are named by their string representation.
+	 */
+	static String getFrameName(LuaCallFrame frame) {
+
+		// read fields once as they can be changed by the thread running Lua
+		LuaClosure closure = frame.closure;
+		if (closure == null) {
+			return String.valueOf(frame.javaFunction);
+		}
+		int pc = frame.pc;
+		Prototype prototype = closure.prototype;
+		String file = prototype.filename != null ? prototype.filename : prototype.name;
+		String path = String.valueOf(file).replace('\\', '/');
+		int mediaIndex = path.lastIndexOf("media/");
+		if (mediaIndex >= 0) {
+			path = path.substring(mediaIndex + "media/".length());
+		}
+		int[] lines = prototype.lines;
+		int definedLine = lines != null && lines.length > 0 ? lines[0] : 0;
+		if (!SAMPLE_LINES || lines == null) {
+			return path + ':' + definedLine;
+		}
+		int line = pc > 0 && pc <= lines.length ? lines[pc - 1] : definedLine;
+		return path + ':' + definedLine + " (line " + line + ')';
+	}
+
+	/**
+	 * Create a list of sampled stacks in collapsed stack format. Each line contains frames of
+	 * a stack separated with semicolons starting with the thread name, followed by a space
+	 * and the number of times the stack was sampled.
+	 *
+	 * @return list of collapsed stacks sorted by stack.
+	 */
+	static List<String> createCollapsedStacks() {
+
+		List<String> collapsedStacks = new ArrayList<>();
+		synchronized (SAMPLES)
+		{
+			for (Map.Entry<String, long[]> entry : new TreeMap<>(SAMPLES).entrySet()) {
+				collapsedStacks.add(entry.getKey() + ' ' + entry.getValue()[0]);
+			}
+		}
+		return collapsedStacks;
+	}
+
+	/**
+	 * Write sampled stacks in collapsed stack format to given file.
+	 *
+	 * @param file path to the file to write.
+	 *
+	 * @throws IOException if an I/O error occurred while writing the file.
+	 */
+	public static void writeCollapsedStacks(Path file) throws IOException {
+		Files.write(file, createCollapsedStacks(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write sampled stacks in collapsed stack format to the file configured with
+	 * {@code storm.lua.sampler.output} system property or {@code lua-samples.collapsed}
+	 * file in working directory if the property is not defined.
+	 */
+	public static void dumpCollapsedStacks() {
+
+		Path file = Paths.get(System.getProperty(OUTPUT_PROPERTY, "lua-samples.collapsed"));
+		try {
+			writeCollapsedStacks(file);
+			StormLogger.info("Wrote sampled Lua call stacks to '%s'", file.toAbsolutePath());
+		}
+		catch (IOException e) {
+			StormLogger.error("Unable to write sampled Lua call stacks to " + file, e);
+		}
+	}
+
+	/**
+	 * Discard all samples taken so far.
+	 */
+	public static void reset() {
+
+		synchronized (SAMPLES) {
+			SAMPLES.clear();
+		}
+	}
+
+	/**
+	 * Stack of Lua call frames entered by a thread. The stack is written only by the thread that
+	 * owns it and read by the sampler thread, so the frames are published with a volatile depth.
+	 */
+	static class ShadowStack {
+
+		private final Thread thread;
+		private LuaCallFrame[] frames = new LuaCallFrame[64];
+		private volatile int depth;
+
+		ShadowStack(Thread thread) {
+			this.thread = thread;
+		}
+
+		void push(LuaCallFrame frame) {
+
+			int size = depth;
+			if (size == frames.length) {
+				frames = Arrays.copyOf(frames, size * 2);
+			}
+			frames[size] = frame;
+			depth = size + 1;
+		}
+
+		/**
+		 * Pop frames until given frame is on top of the stack. Frames are popped on top of
+		 * the current coroutine, which removes frames of coroutines that yielded as well.
+		 * Frames are compared by identity as coroutines reuse call frame objects.
+		 *
+		 * @param frame frame to pop to or {@code null} to pop all frames.
+		 */
+		void popTo(@Nullable LuaCallFrame frame) {
+
+			int size = depth;
+			while (size > 0 && frames[size - 1] != frame)
+			{
+				frames[size - 1] = null;
+				size--;
+			}
+			depth = size;
+		}
+
+		/**
+		 * Returns frames of this stack in collapsed stack format starting with
+		 * the thread name or {@code null} if the thread is not running Lua code.
+		 */
+		@Nullable String collapse() {
+
+			int size = depth;
+			LuaCallFrame[] snapshot = frames;
+			if (size == 0) {
+				return null;
+			}
+			StringBuilder sb = new StringBuilder(thread.getName());
+			for (int i = 0; i < Math.min(size, snapshot.length); i++)
+			{
+				LuaCallFrame frame = snapshot[i];
+				if (frame != null) {
+					sb.append(';').append(getFrameName(frame).replace(';', ','));
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
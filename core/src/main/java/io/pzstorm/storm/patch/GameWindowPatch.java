@@ -18,11 +18,12 @@
 
 package io.pzstorm.storm.patch;
 
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.InsnList;
-import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
 
 import io.pzstorm.storm.core.StormClassTransformer;
+import io.pzstorm.storm.event.StormEventDispatcher;
+import io.pzstorm.storm.util.StormUtils;
 
 public class GameWindowPatch implements ZomboidPatch {
 
@@ -41,5 +42,16 @@ public class GameWindowPatch implements ZomboidPatch {
 				}
 			}
 		}
+		// private static void logic()
+		InsnList logicMethodInsn = transformer.getInstructionsForMethod("logic", "()V");
+
+		/* dispatch events posted from other threads before game logic is updated,
+		 * this is the only drain point since Storm does not launch dedicated servers
+		 */
+		InsnList dispatchPostedEvents = new InsnList();
+		dispatchPostedEvents.add(new MethodInsnNode(Opcodes.INVOKESTATIC,
+				StormUtils.getClassAsPath(StormEventDispatcher.class), "dispatchPostedEvents", "()I"));
+		dispatchPostedEvents.add(new InsnNode(Opcodes.POP));
+		logicMethodInsn.insert(dispatchPostedEvents);
 	}
 }
@@ -0,0 +1,122 @@
+/*
+ * Zomboid Storm - Java modding toolchain for Project Zomboid
+ * Copyright (C) 2021 Matthew Cain
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.pzstorm.storm.patch;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import io.pzstorm.storm.core.StormClassTransformer;
+import io.pzstorm.storm.logging.StormLogger;
+import io.pzstorm.storm.lua.LuaParallelLoader;
+import io.pzstorm.storm.util.StormUtils;
+
+/**
+ * Defers Lua files run by {@code zombie.Lua.LuaManager#LoadDirBase} to {@link LuaParallelLoader}
+ * so they are compiled in parallel before they are run. Calls to {@code LuaManager#RunLua} whose
+ * result is discarded are replaced with calls to the loader method with the same descriptor, and
+ * the loader compiles and runs deferred files before the method returns. Pending files of a previous
+ * load that threw an exception are discarded when the method starts. {@code LuaManager#RunLua} reports
+ * each file it runs to the loader, so deferred files that were already run, for example with
+ * {@code require}, are not run again. None of the changes add branches, so no stack map frames
+ * need to be changed.
+ */
+public class LuaParallelLoadPatch implements ZomboidPatch {
+
+	private static final String LUA_MANAGER = "zombie/Lua/LuaManager";
+	private static final String RUN_LUA_DESCRIPTOR = "(Ljava/lang/String;Z)Ljava/lang/Object;";
+	private static final String RUN_LUA_PREFIX = "(Ljava/lang/String;";
+
+	@Override
+	public void applyPatch(StormClassTransformer transformer) {
+
+		String loader = StormUtils.getClassAsPath(LuaParallelLoader.class);
+
+		int replacedCalls = 0;
+		for (MethodNode method : transformer.getMethods())
+		{
+			if (method.name.equals("RunLua") && method.desc.startsWith(RUN_LUA_PREFIX) &&
+					(method.access & Opcodes.ACC_STATIC) != 0)
+			{
+				// LuaParallelLoader.onRunLua(filename)
+				InsnList onRunLua = new InsnList();
+				onRunLua.add(new VarInsnNode(Opcodes.ALOAD, 0));
+				onRunLua.add(new MethodInsnNode(Opcodes.INVOKESTATIC,
+						loader, "onRunLua", "(Ljava/lang/String;)V", false));
+				method.instructions.insert(onRunLua);
+				method.maxStack = Math.max(method.maxStack, 1);
+				continue;
+			}
+			if (!method.name.equals("LoadDirBase")) {
+				continue;
+			}
+			InsnList instructions = method.instructions;
+			int replacedMethodCalls = 0;
+			for (AbstractInsnNode node : instructions.toArray())
+			{
+				if (node.getOpcode() != Opcodes.INVOKESTATIC) {
+					continue;
+				}
+				MethodInsnNode call = (MethodInsnNode) node;
+				if (call.owner.equals(LUA_MANAGER) && call.name.equals("RunLua") &&
+						call.desc.equals(RUN_LUA_DESCRIPTOR) && isResultDiscarded(call))
+				{
+					// LuaManager.RunLua(filename, rewriteEvents)
+					// -> LuaParallelLoader.runLua(filename, rewriteEvents)
+					instructions.set(call, new MethodInsnNode(Opcodes.INVOKESTATIC,
+							loader, "runLua", RUN_LUA_DESCRIPTOR, false));
+					replacedMethodCalls++;
+				}
+			}
+			if (replacedMethodCalls == 0) {
+				continue;
+			}
+			for (AbstractInsnNode node : instructions.toArray())
+			{
+				// deferred files are not run when the method throws
+				if (node.getOpcode() == Opcodes.RETURN)
+				{
+					// LuaParallelLoader.loadPendingFiles()
+					instructions.insertBefore(node, new MethodInsnNode(Opcodes.INVOKESTATIC,
+							loader, "loadPendingFiles", "()V", false));
+				}
+			}
+			// LuaParallelLoader.beginLoad()
+			instructions.insert(new MethodInsnNode(Opcodes.INVOKESTATIC, loader, "beginLoad", "()V", false));
+			replacedCalls += replacedMethodCalls;
+		}
+		if (replacedCalls == 0) {
+			StormLogger.warn("Unable to find Lua file loading calls in Lua manager, " +
+					"Lua files will not be compiled in parallel");
+		}
+		else StormLogger.debug("Compiling Lua files loaded by %d Lua manager call sites in parallel", replacedCalls);
+	}
+
+	/**
+	 * Returns {@code true} if the value returned by given method call is popped from the stack.
+	 */
+	private static boolean isResultDiscarded(MethodInsnNode call) {
+
+		AbstractInsnNode next = call.getNext();
+		// skip labels, line numbers and frames
+		while (next != null && next.getOpcode() == -1) {
+			next = next.getNext();
+		}
+		return next != null && next.getOpcode() == Opcodes.POP;
+	}
+}
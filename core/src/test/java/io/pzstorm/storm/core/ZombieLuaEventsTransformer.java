@@ -0,0 +1,27 @@
+package io.pzstorm.storm.core;
+
+import org.objectweb.asm.tree.MethodNode;
+
+import io.pzstorm.storm.hook.OnTriggerLuaEventHook;
+
+@SuppressWarnings("unused")
+public class ZombieLuaEventsTransformer extends StormClassTestTransformer {
+
+	public ZombieLuaEventsTransformer() {
+		super("zombie.ZombieLuaEvents");
+	}
+
+	@Override
+	StormClassTransformer transform() {
+
+		new OnTriggerLuaEventHook().installHook(this);
+		for (MethodNode method : getMethods())
+		{
+			// same maximum stack size as registered for LuaEventManager methods
+			if (method.name.equals("triggerEvent")) {
+				method.maxStack = Math.max(method.maxStack, 7);
+			}
+		}
+		return this;
+	}
+}
@@ -13,6 +13,7 @@ import com.google.common.collect.ImmutableMap;
 import io.pzstorm.storm.UnitTest;
 import io.pzstorm.storm.event.lua.*;
 import se.krka.kahlua.vm.KahluaTable;
+import zombie.Lua.Event;
 import zombie.characters.IsoGameCharacter;
 import zombie.characters.IsoPlayer;
 import zombie.characters.IsoZombie;
@@ -118,6 +119,19 @@ class LuaEventFactoryTest implements UnitTest {
 		}
 	}
 
+	@Test
+	void shouldResolveEveryRegisteredLuaEventClassByName() {
+
+		Assertions.assertFalse(LuaEventRegistry.getEventNames().isEmpty());
+		for (String eventName : LuaEventRegistry.getEventNames())
+		{
+			Class<? extends LuaEvent> eventClass = LuaEventRegistry.getEventClass(eventName);
+			Assertions.assertNotNull(eventClass);
+			Assertions.assertEquals(eventName, LuaEventFactory.getEventName(eventClass));
+		}
+		Assertions.assertNull(LuaEventRegistry.getEventClass("nonExistingEvent"));
+	}
+
 	@Test
 	void shouldGetNullLuaEventWithNonExistingClassName() {
 
@@ -135,6 +149,93 @@ class LuaEventFactoryTest implements UnitTest {
 		Assertions.assertTrue(OnConnectFailedEvent.class.isAssignableFrom(event.getClass()));
 	}
 
+	@Test
+	void shouldConstructLuaEventFromTriggeredLuaEvent() {
+
+		LuaEvent event = LuaEventFactory.constructLuaEvent(new Event("OnTick", 0), new Object[] { 1.0D });
+		Assertions.assertTrue(event instanceof OnTickEvent);
+
+		Assertions.assertNull(LuaEventFactory.constructLuaEvent(new Event("nonExistingEvent", 0), new Object[0]));
+	}
+
+	@Test
+	void shouldConstructLuaEventWhenArgumentClassesChangeBetweenConstructorsWithSameArity() {
+
+		ArrayList<String> itemIDs = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+		{
+			OnServerWorkshopItemsEvent event = (OnServerWorkshopItemsEvent) LuaEventFactory.constructLuaEvent(
+					OnServerWorkshopItemsEvent.class, "state", "error");
+			Assertions.assertEquals("error", event.errorReason);
+
+			event = (OnServerWorkshopItemsEvent) LuaEventFactory.constructLuaEvent(
+					OnServerWorkshopItemsEvent.class, "state", itemIDs);
+			Assertions.assertSame(itemIDs, event.itemIDs);
+		}
+		// boxed argument matches primitive parameter
+		OnServerWorkshopItemsEvent event = (OnServerWorkshopItemsEvent) LuaEventFactory.constructLuaEvent(
+				OnServerWorkshopItemsEvent.class, "state", 5L, "error");
+		Assertions.assertEquals(Long.valueOf(5L), event.workshopItemID);
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> LuaEventFactory.constructLuaEvent(
+				OnServerWorkshopItemsEvent.class, "state", 5, "error"));
+	}
+
+	@Test
+	void shouldNameLuaEventAfterTriggeredLuaEvent() {
+
+		LuaEvent event = LuaEventFactory.constructLuaEvent(new Event("OnTick", 0), new Object[] { 1.0D });
+		Assertions.assertEquals("OnTick", Objects.requireNonNull(event).getName());
+
+		event = LuaEventFactory.constructLuaEvent(new Event("OnKeyPressed", 0), new Object[] { 1 });
+		Assertions.assertEquals("OnKeyPressed", Objects.requireNonNull(event).getName());
+	}
+
+	@Test
+	void shouldBridgeLuaEventOnlyWhenJavaHandlerSubscribesToIt() {
+
+		Event luaEvent = new Event("OnLoadMapZones", 0);
+		Event unboundLuaEvent = new Event("nonExistingEvent", 0);
+		Assertions.assertFalse(LuaEventBinding.isBridged(luaEvent));
+
+		EventSubscription subscription = StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(OnLoadMapZonesEvent event) {
+			}
+		});
+		Assertions.assertTrue(LuaEventBinding.isBridged(luaEvent));
+		Assertions.assertFalse(LuaEventBinding.isBridged(unboundLuaEvent));
+
+		subscription.unregister();
+		Assertions.assertFalse(LuaEventBinding.isBridged(luaEvent));
+	}
+
+	@Test
+	void shouldNotBridgeLuaEventSubscribedOnlyByBridgeMethod() {
+
+		Event luaEvent = new Event("OnLoadMapZones", 0);
+		EventSubscription bridge = StormEventDispatcher.subscribeBridgeMethod(
+				"handleLuaEventTrigger", OnTriggerLuaEvent.class, e -> {});
+		try {
+			Assertions.assertFalse(StormEventDispatcher.hasSubscribedMethods(OnTriggerLuaEvent.class));
+			Assertions.assertFalse(LuaEventBinding.isBridged(luaEvent));
+
+			EventSubscription subscription = StormEventDispatcher.registerEventHandler(new Object() {
+				@SubscribeEvent
+				public void handleEvent(OnTriggerLuaEvent event) {
+				}
+			});
+			Assertions.assertTrue(StormEventDispatcher.hasSubscribedMethods(OnTriggerLuaEvent.class));
+			Assertions.assertTrue(LuaEventBinding.isBridged(luaEvent));
+
+			subscription.unregister();
+			Assertions.assertFalse(LuaEventBinding.isBridged(luaEvent));
+		}
+		finally {
+			bridge.unregister();
+		}
+	}
+
 	private List<Object> getDummyConstructorArgList(Class<?>[] constructorArgTypes) {
 
 		List<Object> result = new ArrayList<>();
@@ -1,13 +1,40 @@
 package io.pzstorm.storm.event;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import com.google.common.collect.ImmutableList;
 
 import io.pzstorm.storm.IntegrationTest;
+import io.pzstorm.storm.mod.ZomboidMod;
 
 @SuppressWarnings({ "unused", "EmptyMethod" })
 class StormEventDispatcherIntegrationTest implements IntegrationTest {
 
+	/**
+	 * Used to give each class defined by {@link #defineDispatchHook(Class, boolean, Handle)} a unique name.
+	 */
+	private static final AtomicInteger DEFINED_HOOKS = new AtomicInteger();
+
 	@Test
 	void shouldRegisterEventHandlerWithInstanceContextAndDispatchEvents() {
 
@@ -52,7 +79,7 @@ class StormEventDispatcherIntegrationTest implements IntegrationTest {
 		Assertions.assertDoesNotThrow(() ->
 				StormEventDispatcher.registerEventHandler(new Object() {
 					@SubscribeEvent
-					public void handleEvent(ZomboidEvent event) {
+					public void handleEvent(TestZomboidEventA event) {
 					}
 				})
 		);
@@ -90,9 +117,1090 @@ class StormEventDispatcherIntegrationTest implements IntegrationTest {
 		Assertions.assertDoesNotThrow(() ->
 				StormEventDispatcher.registerEventHandler(new Object() {
 					@SubscribeEvent
-					public void handleEvent(ZomboidEvent event) {
+					public void handleEvent(TestZomboidEventA event) {
+					}
+				})
+		);
+	}
+
+	@Test
+	void shouldDispatchEventsWhileRegisteringHandlersConcurrently() throws InterruptedException {
+
+		AtomicBoolean dispatching = new AtomicBoolean(true);
+		AtomicReference<Throwable> dispatchError = new AtomicReference<>();
+
+		Thread dispatchThread = new Thread(() -> {
+			try {
+				while (dispatching.get()) {
+					StormEventDispatcher.dispatchEvent(new TestZomboidEventB());
+				}
+			}
+			catch (Throwable e) {
+				dispatchError.set(e);
+			}
+		});
+		dispatchThread.start();
+
+		AtomicInteger handlersCalled = new AtomicInteger();
+		for (int i = 0; i < 100; i++)
+		{
+			StormEventDispatcher.registerEventHandler(new Object() {
+				@SubscribeEvent
+				public void handleEvent(TestZomboidEventB event) {
+					handlersCalled.incrementAndGet();
+				}
+			});
+		}
+		dispatching.set(false);
+		dispatchThread.join();
+
+		Assertions.assertNull(dispatchError.get());
+		handlersCalled.set(0);
+
+		StormEventDispatcher.dispatchEvent(new TestZomboidEventB());
+		Assertions.assertEquals(100, handlersCalled.get());
+	}
+
+	@Test
+	void shouldConstructAndDispatchEventFromHookOnlyWhenSubscribed() throws Throwable {
+
+		MethodHandle hook = defineDispatchHook(TestZomboidEventC.class);
+		hook.invokeExact("unsubscribed");
+		Assertions.assertEquals(0, TestZomboidEventC.constructed.get());
+
+		AtomicReference<String> dispatchedValue = new AtomicReference<>();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestZomboidEventC event) {
+				dispatchedValue.set(event.value);
+			}
+		});
+		hook.invokeExact("subscribed");
+		Assertions.assertEquals(1, TestZomboidEventC.constructed.get());
+		Assertions.assertEquals("subscribed", dispatchedValue.get());
+
+		// hook should be relinked each time a new handler subscribes
+		AtomicInteger handlersCalled = new AtomicInteger();
+		for (int i = 0; i < 10; i++)
+		{
+			StormEventDispatcher.registerEventHandler(new Object() {
+				@SubscribeEvent
+				public void handleEvent(TestZomboidEventC event) {
+					handlersCalled.incrementAndGet();
+				}
+			});
+			handlersCalled.set(0);
+			hook.invokeExact("relinked");
+			Assertions.assertEquals(i + 1, handlersCalled.get());
+		}
+		Assertions.assertEquals("relinked", dispatchedValue.get());
+	}
+
+	@Test
+	void shouldDispatchEventsToHandlersSubscribedToEventSupertype() {
+
+		StringBuilder handlersCalled = new StringBuilder();
+		StormEventDispatcher.dispatchEvent(new TestHierarchyEvent());
+		Assertions.assertEquals("", handlersCalled.toString());
+
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestHierarchyEventType event) {
+				handlersCalled.append('A');
+			}
+		});
+		// cached handlers should be invalidated when supertype gets new subscriber
+		StormEventDispatcher.dispatchEvent(new TestHierarchyEvent());
+		Assertions.assertEquals("A", handlersCalled.toString());
+
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestHierarchyEvent event) {
+				handlersCalled.append('B');
+			}
+		});
+		handlersCalled.setLength(0);
+		StormEventDispatcher.dispatchEvent(new TestHierarchyEvent());
+		Assertions.assertEquals("AB", handlersCalled.toString());
+	}
+
+	@Test
+	void shouldInvokeAsynchronousHandlersOnEventWorkerThread() throws InterruptedException {
+
+		CountDownLatch handlerReleased = new CountDownLatch(1);
+		AtomicReference<Thread> handlerThread = new AtomicReference<>();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(mode = ExecutionMode.ASYNC)
+			public void handleEvent(TestAsyncEvent event) throws InterruptedException {
+
+				handlerReleased.await();
+				handlerThread.set(Thread.currentThread());
+				event.handled.countDown();
+			}
+		});
+		// dispatching should not wait for handler to complete
+		TestAsyncEvent event = new TestAsyncEvent();
+		StormEventDispatcher.dispatchEvent(event);
+		Assertions.assertEquals(1, event.handled.getCount());
+
+		handlerReleased.countDown();
+		Assertions.assertTrue(event.handled.await(10, TimeUnit.SECONDS));
+		Assertions.assertNotEquals(Thread.currentThread(), handlerThread.get());
+		Assertions.assertEquals(0, StormEventDispatcher.getAsyncQueueDepth());
+	}
+
+	@Test
+	void shouldInvokeParallelHandlersConcurrentlyAndJoinBeforeReturning() {
+
+		// calling thread also invokes one of the handlers
+		int parallelHandlers = Math.min(4, ForkJoinPool.getCommonPoolParallelism() + 1);
+		CyclicBarrier barrier = new CyclicBarrier(parallelHandlers);
+		AtomicInteger handlersCompleted = new AtomicInteger();
+		StringBuilder sequentialHandlers = new StringBuilder();
+
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestParallelEvent event) {
+				sequentialHandlers.append('A');
+			}
+		});
+		for (int i = 0; i < parallelHandlers; i++)
+		{
+			StormEventDispatcher.registerEventHandler(new Object() {
+				@SubscribeEvent(mode = ExecutionMode.PARALLEL)
+				public void handleEvent(TestParallelEvent event) throws Exception {
+
+					// handlers would time out here if they were not invoked concurrently
+					barrier.await(10, TimeUnit.SECONDS);
+					handlersCompleted.incrementAndGet();
+				}
+			});
+		}
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestParallelEvent event) {
+				sequentialHandlers.append('B');
+			}
+		});
+		StormEventDispatcher.dispatchEvent(new TestParallelEvent());
+		Assertions.assertEquals(parallelHandlers, handlersCompleted.get());
+		Assertions.assertEquals("AB", sequentialHandlers.toString());
+	}
+
+	@Test
+	void shouldDeliverBatchedEventsOncePerFlushEvent() {
+
+		List<Integer> deliveredBatch = new ArrayList<>();
+		AtomicInteger batchesDelivered = new AtomicInteger();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(flushOn = TestFlushEvent.class, batchCapacity = 2)
+			public void handleEvents(EventBatch<TestBatchEvent> batch) {
+
+				batchesDelivered.incrementAndGet();
+				for (TestBatchEvent event : batch) {
+					deliveredBatch.add(event.index);
+				}
+			}
+		});
+		for (int i = 0; i < 5; i++) {
+			StormEventDispatcher.dispatchEvent(new TestBatchEvent(i));
+		}
+		Assertions.assertEquals(0, batchesDelivered.get());
+
+		StormEventDispatcher.dispatchEvent(new TestFlushEvent());
+		Assertions.assertEquals(1, batchesDelivered.get());
+		Assertions.assertEquals(ImmutableList.of(0, 1, 2, 3, 4), deliveredBatch);
+
+		// empty batches should not be delivered
+		StormEventDispatcher.dispatchEvent(new TestFlushEvent());
+		Assertions.assertEquals(1, batchesDelivered.get());
+	}
+
+	@Test
+	void shouldAddEventsToNextBatchWhileBatchIsBeingDelivered() throws InterruptedException {
+
+		EventBatch<TestBatchEvent> batch = new EventBatch<>(2);
+		List<List<Integer>> deliveredBatches = new ArrayList<>();
+		Consumer<EventBatch<TestBatchEvent>> invoker = b -> {
+
+			List<Integer> delivered = new ArrayList<>();
+			for (TestBatchEvent event : b) {
+				delivered.add(event.index);
+			}
+			deliveredBatches.add(delivered);
+		};
+		batch.add(new TestBatchEvent(0));
+		AtomicBoolean added = new AtomicBoolean();
+		batch.flush(b -> {
+
+			// events dispatched on other threads should not wait for the handler
+			Thread producer = new Thread(() -> {
+				batch.add(new TestBatchEvent(1));
+				added.set(true);
+			});
+			producer.start();
+			try {
+				producer.join(TimeUnit.SECONDS.toMillis(10));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			invoker.accept(b);
+		});
+		Assertions.assertTrue(added.get());
+		batch.flush(invoker);
+		Assertions.assertEquals(ImmutableList.of(ImmutableList.of(0), ImmutableList.of(1)), deliveredBatches);
+	}
+
+	@Test
+	void shouldThrowExceptionWhenHandlerSubscribedToBatchWithoutEventType() {
+
+		Assertions.assertThrows(IllegalArgumentException.class, () ->
+				StormEventDispatcher.registerEventHandler(new Object() {
+					@SuppressWarnings("rawtypes")
+					@SubscribeEvent
+					public void handleEvents(EventBatch batch) {
+					}
+				})
+		);
+		Assertions.assertThrows(IllegalArgumentException.class, () ->
+				StormEventDispatcher.registerEventHandler(new Object() {
+					@SubscribeEvent(mode = ExecutionMode.ASYNC)
+					public void handleEvents(EventBatch<TestBatchEvent> batch) {
+					}
+				})
+		);
+	}
+
+	@Test
+	void shouldReusePooledEventInstancesWhenDispatchingFromHook() throws Throwable {
+
+		MethodHandle hook = defineDispatchHook(TestPooledEvent.class);
+		List<TestPooledEvent> dispatchedEvents = new ArrayList<>();
+		List<String> dispatchedValues = new ArrayList<>();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestPooledEvent event) throws Throwable {
+
+				dispatchedEvents.add(event);
+				if (event.value.equals("outer"))
+				{
+					// nested dispatch should not modify the event currently being dispatched
+					hook.invokeExact("nested");
+				}
+				dispatchedValues.add(event.value);
+			}
+		});
+		hook.invokeExact("first");
+		hook.invokeExact("second");
+		Assertions.assertSame(dispatchedEvents.get(0), dispatchedEvents.get(1));
+		Assertions.assertEquals(ImmutableList.of("first", "second"), dispatchedValues);
+
+		hook.invokeExact("outer");
+		Assertions.assertSame(dispatchedEvents.get(0), dispatchedEvents.get(2));
+		Assertions.assertNotSame(dispatchedEvents.get(2), dispatchedEvents.get(3));
+		Assertions.assertEquals(ImmutableList.of("first", "second", "nested", "outer"), dispatchedValues);
+
+		Assertions.assertThrows(IllegalArgumentException.class, () ->
+				StormEventDispatcher.registerEventHandler(new Object() {
+					@SubscribeEvent(mode = ExecutionMode.ASYNC)
+					public void handleEvent(TestPooledEvent event) {
+					}
+				})
+		);
+	}
+
+	@Test
+	void shouldCatchHandlerFailureWhenOverflowingAsyncEventRunsOnCallingThread() throws InterruptedException {
+
+		AsyncEventExecutor executor = new AsyncEventExecutor(1, 1);
+		CountDownLatch started = new CountDownLatch(1), released = new CountDownLatch(1);
+		try {
+			// occupy the only worker and fill the queue
+			executor.execute(e -> {
+				started.countDown();
+				try {
+					released.await();
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}, new TestAsyncEvent(), OverflowPolicy.DROP);
+			Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+			executor.execute(e -> {}, new TestAsyncEvent(), OverflowPolicy.DROP);
+
+			AtomicReference<Thread> handlingThread = new AtomicReference<>();
+			Assertions.assertDoesNotThrow(() -> executor.execute(e -> {
+				handlingThread.set(Thread.currentThread());
+				throw new IllegalStateException("handler failure");
+			}, new TestAsyncEvent(), OverflowPolicy.CALLER_RUNS));
+			Assertions.assertSame(Thread.currentThread(), handlingThread.get());
+		}
+		finally {
+			released.countDown();
+		}
+	}
+
+	@Test
+	void shouldNotDeliverPooledEventsToAsyncOrBatchHandlersSubscribedToSupertype() throws Throwable {
+
+		MethodHandle hook = defineDispatchHook(TestPooledEvent.class);
+		List<ZomboidEvent> asyncEvents = new ArrayList<>();
+		List<ZomboidEvent> batchedEvents = new ArrayList<>();
+		AtomicInteger syncEvents = new AtomicInteger();
+		CountDownLatch markerHandled = new CountDownLatch(1);
+		EventSubscription subscription = StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(mode = ExecutionMode.ASYNC)
+			public void handleEvent(ZomboidEvent event) {
+
+				synchronized (asyncEvents) {
+					asyncEvents.add(event);
+				}
+				if (event instanceof TestAsyncEvent) {
+					markerHandled.countDown();
+				}
+			}
+
+			@SubscribeEvent(flushOn = TestFlushEvent.class)
+			public void handleEvents(EventBatch<ZomboidEvent> batch) {
+
+				for (ZomboidEvent event : batch) {
+					batchedEvents.add(event);
+				}
+			}
+
+			@SubscribeEvent
+			public void handleSyncEvent(ZomboidEvent event) {
+
+				if (event instanceof TestPooledEvent) {
+					syncEvents.incrementAndGet();
+				}
+			}
+		});
+		try {
+			hook.invokeExact("pooled");
+			Assertions.assertEquals(1, syncEvents.get());
+
+			StormEventDispatcher.dispatchEvent(new TestAsyncEvent());
+			Assertions.assertTrue(markerHandled.await(10, TimeUnit.SECONDS));
+			StormEventDispatcher.dispatchEvent(new TestFlushEvent());
+		}
+		finally {
+			subscription.unregister();
+		}
+		synchronized (asyncEvents) {
+			Assertions.assertTrue(asyncEvents.stream().noneMatch(e -> e instanceof TestPooledEvent));
+		}
+		Assertions.assertFalse(batchedEvents.isEmpty());
+		Assertions.assertTrue(batchedEvents.stream().noneMatch(e -> e instanceof TestPooledEvent));
+	}
+
+	@Test
+	void shouldDispatchKeyedEventsOnlyToHandlersWithMatchingKey() {
+
+		StringBuilder handlersCalled = new StringBuilder();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(key = "1")
+			public void handleFirstKey(TestKeyedEvent event) {
+				handlersCalled.append('A');
+			}
+
+			@SubscribeEvent(key = "2")
+			public void handleSecondKey(TestKeyedEvent event) {
+				handlersCalled.append('B');
+			}
+
+			@SubscribeEvent
+			public void handleAllKeys(TestKeyedEvent event) {
+				handlersCalled.append('C');
+			}
+		});
+		StormEventDispatcher.dispatchEvent(new TestKeyedEvent(1));
+		Assertions.assertTrue(handlersCalled.indexOf("A") >= 0);
+		Assertions.assertTrue(handlersCalled.indexOf("B") < 0);
+		Assertions.assertTrue(handlersCalled.indexOf("C") >= 0);
+
+		handlersCalled.setLength(0);
+		StormEventDispatcher.dispatchEvent(new TestKeyedEvent(3));
+		Assertions.assertEquals("C", handlersCalled.toString());
+	}
+
+	@Test
+	void shouldInvokeHandlersWithMatchingKeyBeforeHandlersWithoutKey() {
+
+		List<String> invoked = new ArrayList<>();
+		subscribeOrderedHandler(invoked, "unkeyed-1", EventPriority.NORMAL, "");
+		subscribeOrderedHandler(invoked, "keyed-1", EventPriority.NORMAL, "1");
+		subscribeOrderedHandler(invoked, "unkeyed-2", EventPriority.NORMAL, "");
+		subscribeOrderedHandler(invoked, "keyed-2", EventPriority.NORMAL, "1");
+		subscribeOrderedHandler(invoked, "other-key", EventPriority.NORMAL, "2");
+		subscribeOrderedHandler(invoked, "keyed-low", EventPriority.LOW, "1");
+		subscribeOrderedHandler(invoked, "unkeyed-high", EventPriority.HIGH, "");
+
+		StormEventDispatcher.dispatchEvent(new TestOrderedKeyedEvent());
+		Assertions.assertEquals(ImmutableList.of("unkeyed-high", "keyed-1", "keyed-2",
+				"unkeyed-1", "unkeyed-2", "keyed-low"), invoked);
+	}
+
+	private static void subscribeOrderedHandler(List<String> invoked, String name, EventPriority priority, String key) {
+		StormEventDispatcher.subscribeHandlerMethod(name, TestOrderedKeyedEvent.class, ExecutionMode.SYNC,
+				OverflowPolicy.CALLER_RUNS, priority, DispatchRate.EVERY_EVENT, key, e -> invoked.add(name));
+	}
+
+	@Test
+	void shouldThrowExceptionWhenHandlerRegisteredWithInvalidKey() {
+
+		// event does not implement KeyedEvent
+		Assertions.assertThrows(IllegalArgumentException.class, () ->
+				StormEventDispatcher.registerEventHandler(new Object() {
+					@SubscribeEvent(key = "key")
+					public void handleEvent(TestZomboidEventA event) {
+					}
+				})
+		);
+		// key cannot be converted to Integer
+		Assertions.assertThrows(IllegalArgumentException.class, () ->
+				StormEventDispatcher.registerEventHandler(new Object() {
+					@SubscribeEvent(key = "key")
+					public void handleEvent(TestKeyedEvent event) {
 					}
 				})
 		);
 	}
+
+	@Test
+	void shouldNotDispatchEventsToUnregisteredHandlers() {
+
+		AtomicInteger eventsHandled = new AtomicInteger();
+		EventSubscription subscription = StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestUnregisterEvent event) {
+				eventsHandled.incrementAndGet();
+			}
+
+			@SubscribeEvent(flushOn = TestUnregisterEvent.class)
+			public void handleEvents(EventBatch<TestUnregisterEvent> batch) {
+				eventsHandled.addAndGet(batch.size());
+			}
+		});
+		StormEventDispatcher.dispatchEvent(new TestUnregisterEvent());
+		Assertions.assertEquals(2, eventsHandled.get());
+
+		Assertions.assertTrue(subscription.isRegistered());
+		subscription.unregister();
+		Assertions.assertFalse(subscription.isRegistered());
+
+		StormEventDispatcher.dispatchEvent(new TestUnregisterEvent());
+		Assertions.assertEquals(2, eventsHandled.get());
+
+		// unregistering again has no effect
+		Assertions.assertDoesNotThrow(subscription::unregister);
+	}
+
+	@Test
+	void shouldEnableDisableAndUnregisterHandlersRegisteredByMod() {
+
+		AtomicInteger eventsHandled = new AtomicInteger();
+		ZomboidMod mod = () -> StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestGroupEvent event) {
+				eventsHandled.incrementAndGet();
+			}
+		});
+		EventHandlerGroup group = StormEventDispatcher.registerModEventHandlers(mod);
+		Assertions.assertSame(group, StormEventDispatcher.getHandlerGroup(mod));
+
+		StormEventDispatcher.dispatchEvent(new TestGroupEvent());
+		Assertions.assertEquals(1, eventsHandled.get());
+
+		group.setEnabled(false);
+		Assertions.assertFalse(group.isEnabled());
+		StormEventDispatcher.dispatchEvent(new TestGroupEvent());
+		Assertions.assertEquals(1, eventsHandled.get());
+
+		group.setEnabled(true);
+		StormEventDispatcher.dispatchEvent(new TestGroupEvent());
+		Assertions.assertEquals(2, eventsHandled.get());
+
+		group.unregister();
+		StormEventDispatcher.dispatchEvent(new TestGroupEvent());
+		Assertions.assertEquals(2, eventsHandled.get());
+	}
+
+	@Test
+	void shouldUnregisterWeakHandlerAfterHandlerIsCollected() throws InterruptedException {
+
+		AtomicInteger eventsHandled = new AtomicInteger();
+		EventSubscription subscription = StormEventDispatcher.registerWeakEventHandler(
+				new TestWeakEventHandler(eventsHandled));
+
+		for (int i = 0; i < 50 && subscription.isRegistered(); i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+			StormEventDispatcher.dispatchEvent(new TestWeakEvent());
+		}
+		Assertions.assertFalse(subscription.isRegistered());
+		Assertions.assertEquals(0, eventsHandled.get());
+	}
+
+	@Test
+	void shouldInvokeHandlersInOrderOfPriority() {
+
+		List<EventPriority> invoked = new ArrayList<>();
+		for (EventPriority priority : ImmutableList.of(EventPriority.LOW, EventPriority.HIGHEST, EventPriority.NORMAL))
+		{
+			StormEventDispatcher.subscribeHandlerMethod("handleEvent", TestPriorityEvent.class, ExecutionMode.SYNC,
+					OverflowPolicy.CALLER_RUNS, priority, DispatchRate.EVERY_EVENT, "", e -> invoked.add(priority));
+		}
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(priority = EventPriority.HIGH)
+			public void handleEvent(TestPriorityEvent event) {
+				invoked.add(EventPriority.HIGH);
+			}
+		});
+		StormEventDispatcher.dispatchEvent(new TestPriorityEvent());
+		Assertions.assertEquals(ImmutableList.of(EventPriority.HIGHEST, EventPriority.HIGH,
+				EventPriority.NORMAL, EventPriority.LOW), invoked);
+	}
+
+	@Test
+	void shouldStopDispatchingAndReportCancelledEventToHook() throws Throwable {
+
+		MethodHandle hook = defineDispatchHook(TestCancellableEvent.class, true);
+		Assertions.assertFalse((boolean) hook.invokeExact("cancel"));
+
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(priority = EventPriority.HIGH)
+			public void handleEvent(TestCancellableEvent event) {
+				event.setCancelled(event.value.equals("cancel"));
+			}
+		});
+		AtomicInteger handlersCalled = new AtomicInteger();
+		for (int i = 0; i < 10; i++)
+		{
+			// handlers are chained up to a certain number and then invoked in a loop
+			StormEventDispatcher.registerEventHandler(new Object() {
+				@SubscribeEvent(priority = EventPriority.LOW)
+				public void handleEvent(TestCancellableEvent event) {
+					handlersCalled.incrementAndGet();
+				}
+			});
+			handlersCalled.set(0);
+			Assertions.assertTrue((boolean) hook.invokeExact("cancel"));
+			Assertions.assertEquals(0, handlersCalled.get());
+
+			Assertions.assertFalse((boolean) hook.invokeExact("dispatch"));
+			Assertions.assertEquals(i + 1, handlersCalled.get());
+		}
+		handlersCalled.set(0);
+		Assertions.assertTrue(StormEventDispatcher.dispatchCancellableEvent(new TestCancellableEvent("cancel")));
+		StormEventDispatcher.dispatchEvent(new TestCancellableEvent("cancel"));
+		Assertions.assertEquals(0, handlersCalled.get());
+	}
+
+	@Test
+	void shouldCompleteParallelGroupButSkipLowerPrioritiesWhenParallelHandlerCancels() {
+
+		AtomicInteger parallelHandlersCalled = new AtomicInteger();
+		AtomicInteger lowerHandlersCalled = new AtomicInteger();
+		for (int i = 0; i < 3; i++)
+		{
+			boolean cancels = i == 0;
+			StormEventDispatcher.registerEventHandler(new Object() {
+				@SubscribeEvent(mode = ExecutionMode.PARALLEL, priority = EventPriority.HIGH)
+				public void handleEvent(TestParallelCancellableEvent event) {
+
+					if (cancels) {
+						event.setCancelled(true);
+					}
+					parallelHandlersCalled.incrementAndGet();
+				}
+			});
+		}
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestParallelCancellableEvent event) {
+				lowerHandlersCalled.incrementAndGet();
+			}
+		});
+		Assertions.assertTrue(StormEventDispatcher.dispatchCancellableEvent(new TestParallelCancellableEvent()));
+		Assertions.assertEquals(3, parallelHandlersCalled.get());
+		Assertions.assertEquals(0, lowerHandlersCalled.get());
+	}
+
+	@Test
+	void shouldConstructAndDispatchEventFromGuardedHookOnlyWhenGuardPasses() throws Throwable {
+
+		Handle dispatchGuard = new Handle(Opcodes.H_INVOKESTATIC,
+				StormEventDispatcherIntegrationTest.class.getName().replace('.', '/'),
+				"isGuardedEventDispatched", "(Ljava/lang/String;)Z", false
+		);
+		MethodHandle hook = defineDispatchHook(TestGuardedEvent.class, false, dispatchGuard);
+
+		List<String> dispatchedValues = new ArrayList<>();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestGuardedEvent event) {
+				dispatchedValues.add(event.value);
+			}
+		});
+		hook.invokeExact("dispatch");
+		hook.invokeExact("skip");
+		hook.invokeExact("dispatch");
+
+		Assertions.assertEquals(ImmutableList.of("dispatch", "dispatch"), dispatchedValues);
+		Assertions.assertEquals(2, TestGuardedEvent.constructed.get());
+
+		// guard can only be used when event construction can be moved to call site
+		Assertions.assertThrows(IllegalArgumentException.class, () -> StormEventDispatcher.callDispatchEvent(
+				ImmutableList.of(new MethodInsnNode(Opcodes.INVOKESTATIC, "TestEventFactory",
+						"create", "()Lio/pzstorm/storm/event/ZomboidEvent;")), dispatchGuard)
+		);
+	}
+
+	static boolean isGuardedEventDispatched(String value) {
+		return !value.equals("skip");
+	}
+
+	private static MethodHandle defineDispatchHook(Class<?> eventClass) throws ReflectiveOperationException {
+		return defineDispatchHook(eventClass, false);
+	}
+
+	private static MethodHandle defineDispatchHook(Class<?> eventClass,
+												   boolean cancellable) throws ReflectiveOperationException {
+		return defineDispatchHook(eventClass, cancellable, null);
+	}
+
+	@Test
+	void shouldDispatchPostedEventsOnDispatchingThreadInOrderOfPosting() throws InterruptedException {
+
+		int producers = 4, eventsPerProducer = 1000;
+		int[] lastSequence = new int[producers];
+		AtomicInteger outOfOrderEvents = new AtomicInteger();
+		List<Thread> handlingThreads = new ArrayList<>();
+
+		StormEventDispatcher.subscribeHandlerMethod("handleEvent", TestPostedEvent.class, ExecutionMode.SYNC,
+				OverflowPolicy.CALLER_RUNS, EventPriority.NORMAL, DispatchRate.EVERY_EVENT, "", e -> {
+					if (e.sequence != lastSequence[e.producer] + 1) {
+						outOfOrderEvents.incrementAndGet();
+					}
+					lastSequence[e.producer] = e.sequence;
+					if (!handlingThreads.contains(Thread.currentThread())) {
+						handlingThreads.add(Thread.currentThread());
+					}
+				});
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < producers; i++)
+		{
+			int producer = i;
+			Thread thread = new Thread(() -> {
+				for (int j = 1; j <= eventsPerProducer; j++) {
+					StormEventDispatcher.post(new TestPostedEvent(producer, j));
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		// nothing is dispatched until posted events are drained
+		Assertions.assertTrue(handlingThreads.isEmpty());
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assertions.assertEquals(producers * eventsPerProducer, StormEventDispatcher.getPostedQueueDepth());
+
+		int dispatched = 0;
+		while (StormEventDispatcher.getPostedQueueDepth() > 0) {
+			dispatched += StormEventDispatcher.dispatchPostedEvents();
+		}
+		Assertions.assertEquals(producers * eventsPerProducer, dispatched);
+		Assertions.assertEquals(0, outOfOrderEvents.get());
+		Assertions.assertEquals(ImmutableList.of(Thread.currentThread()), handlingThreads);
+		for (int sequence : lastSequence) {
+			Assertions.assertEquals(eventsPerProducer, sequence);
+		}
+	}
+
+	@Test
+	void shouldDrainAtLeastOnePostedEventWhenFrameBudgetIsExhausted() {
+
+		PostedEventQueue queue = new PostedEventQueue(0);
+		List<ZomboidEvent> drained = new ArrayList<>();
+
+		Assertions.assertEquals(0, queue.drain(drained::add));
+		for (int i = 0; i < 3; i++) {
+			queue.offer(new TestPostedEvent(0, i));
+		}
+		Assertions.assertEquals(1, queue.drain(drained::add));
+		Assertions.assertEquals(2, queue.size());
+
+		PostedEventQueue unlimitedQueue = new PostedEventQueue(Long.MAX_VALUE / 2);
+		for (int i = 0; i < 3; i++) {
+			unlimitedQueue.offer(new TestPostedEvent(0, i));
+		}
+		Assertions.assertEquals(3, unlimitedQueue.drain(drained::add));
+		Assertions.assertEquals(0, unlimitedQueue.size());
+		Assertions.assertNull(unlimitedQueue.poll());
+	}
+
+	@Test
+	void shouldInvokeScheduledHandlersOnlyWhenTheyAreDue() {
+
+		AtomicInteger everyThirdEvent = new AtomicInteger();
+		AtomicInteger everyThirdKeyedEvent = new AtomicInteger();
+		AtomicInteger oncePerHour = new AtomicInteger();
+		AtomicInteger sampled = new AtomicInteger();
+		AtomicInteger everyEvent = new AtomicInteger();
+
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(interval = 3)
+			public void handleEveryThirdEvent(TestKeyedEvent event) {
+				everyThirdEvent.incrementAndGet();
+			}
+
+			@SubscribeEvent(interval = 3, key = "1")
+			public void handleEveryThirdKeyedEvent(TestKeyedEvent event) {
+				everyThirdKeyedEvent.incrementAndGet();
+			}
+
+			@SubscribeEvent(period = 3600000)
+			public void handleOncePerHour(TestKeyedEvent event) {
+				oncePerHour.incrementAndGet();
+			}
+
+			@SubscribeEvent(sampleRate = 0.5)
+			public void handleSampled(TestKeyedEvent event) {
+				sampled.incrementAndGet();
+			}
+
+			@SubscribeEvent
+			public void handleEveryEvent(TestKeyedEvent event) {
+				everyEvent.incrementAndGet();
+			}
+		});
+		for (int i = 0; i < 3000; i++) {
+			StormEventDispatcher.dispatchEvent(new TestKeyedEvent(i % 2));
+		}
+		Assertions.assertEquals(1000, everyThirdEvent.get());
+		Assertions.assertEquals(500, everyThirdKeyedEvent.get());
+		Assertions.assertEquals(1, oncePerHour.get());
+		Assertions.assertTrue(sampled.get() > 1200 && sampled.get() < 1800);
+		Assertions.assertEquals(3000, everyEvent.get());
+
+		Assertions.assertThrows(IllegalArgumentException.class, () ->
+				StormEventDispatcher.registerEventHandler(new Object() {
+					@SubscribeEvent(sampleRate = 0)
+					public void handleEvent(TestKeyedEvent event) {
+					}
+				})
+		);
+	}
+
+	@Test
+	void shouldKeepScheduleAcrossEventSubclassesAndRegistryChanges() {
+
+		AtomicInteger everyThirdEvent = new AtomicInteger();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(interval = 3)
+			public void handleEveryThirdEvent(TestScheduledEventType event) {
+				everyThirdEvent.incrementAndGet();
+			}
+		});
+		StormEventDispatcher.dispatchEvent(new TestScheduledEventA());
+		StormEventDispatcher.dispatchEvent(new TestScheduledEventB());
+		Assertions.assertEquals(0, everyThirdEvent.get());
+
+		// rebuilding dispatch targets should not restart the schedule
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestScheduledEventType event) {
+			}
+		});
+		StormEventDispatcher.dispatchEvent(new TestScheduledEventA());
+		Assertions.assertEquals(1, everyThirdEvent.get());
+	}
+
+	@Test
+	void shouldInvokeDueScheduledHandlersInOrderOfPriority() {
+
+		List<String> invoked = new ArrayList<>();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(priority = EventPriority.LOW)
+			public void handleEveryEvent(TestScheduledPriorityEvent event) {
+				invoked.add("every-low");
+			}
+
+			@SubscribeEvent(priority = EventPriority.HIGHEST, interval = 2)
+			public void handleEverySecondEvent(TestScheduledPriorityEvent event) {
+				invoked.add("second-highest");
+			}
+
+			@SubscribeEvent(priority = EventPriority.NORMAL, interval = 3)
+			public void handleEveryThirdEvent(TestScheduledPriorityEvent event) {
+				invoked.add("third-normal");
+			}
+		});
+		for (int i = 0; i < 6; i++) {
+			StormEventDispatcher.dispatchEvent(new TestScheduledPriorityEvent());
+		}
+		Assertions.assertEquals(ImmutableList.of("every-low", "second-highest", "every-low",
+				"third-normal", "every-low", "second-highest", "every-low", "every-low",
+				"second-highest", "third-normal", "every-low"), invoked);
+	}
+
+	/**
+	 * Define a class with a static method that dispatches event of given class the same way
+	 * hooks installed in game code do and return a handle to that method. The event is
+	 * constructed with the {@code String} parameter of the method. When the event is
+	 * cancellable the method returns whether the event was cancelled. When a dispatch guard
+	 * is given the event is dispatched only when the guard returns {@code true}.
+	 */
+	private static MethodHandle defineDispatchHook(Class<?> eventClass, boolean cancellable,
+												   @Nullable Handle dispatchGuard) throws ReflectiveOperationException {
+
+		String eventDescriptor = eventClass.getName().replace('.', '/');
+		MethodType methodType = MethodType.methodType(cancellable ? boolean.class : void.class, String.class);
+		MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+				"dispatch", methodType.toMethodDescriptorString(), null, null);
+
+		List<AbstractInsnNode> eventConstructorInsn = ImmutableList.of(
+				new TypeInsnNode(Opcodes.NEW, eventDescriptor),
+				new InsnNode(Opcodes.DUP), new VarInsnNode(Opcodes.ALOAD, 0),
+				new MethodInsnNode(Opcodes.INVOKESPECIAL, eventDescriptor, "<init>", "(Ljava/lang/String;)V")
+		);
+		if (cancellable)
+		{
+			method.instructions.add(dispatchGuard != null ?
+					StormEventDispatcher.callDispatchCancellableEvent(eventConstructorInsn, dispatchGuard) :
+					StormEventDispatcher.callDispatchCancellableEvent(eventConstructorInsn));
+			method.instructions.add(new InsnNode(Opcodes.IRETURN));
+		}
+		else {
+			method.instructions.add(dispatchGuard != null ?
+					StormEventDispatcher.callDispatchEvent(eventConstructorInsn, dispatchGuard) :
+					StormEventDispatcher.callDispatchEvent(eventConstructorInsn));
+			method.instructions.add(new InsnNode(Opcodes.RETURN));
+		}
+
+		ClassNode hookClass = new ClassNode();
+		hookClass.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, eventDescriptor + "DispatchHook" + DEFINED_HOOKS.incrementAndGet(),
+				null, "java/lang/Object", null);
+		hookClass.methods.add(method);
+
+		ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		hookClass.accept(classWriter);
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		Class<?> definedClass = lookup.defineClass(classWriter.toByteArray());
+		return lookup.findStatic(definedClass, "dispatch", methodType);
+	}
+
+	private interface TestHierarchyEventType extends ZomboidEvent {
+	}
+
+	private interface TestScheduledEventType extends ZomboidEvent {
+	}
+
+	private static class TestScheduledEventA implements TestScheduledEventType {
+
+		@Override
+		public String getName() {
+			return "testScheduledEventA";
+		}
+	}
+
+	private static class TestScheduledEventB implements TestScheduledEventType {
+
+		@Override
+		public String getName() {
+			return "testScheduledEventB";
+		}
+	}
+
+	public static class TestGuardedEvent implements ZomboidEvent {
+
+		private static final AtomicInteger constructed = new AtomicInteger();
+
+		private final String value;
+
+		public TestGuardedEvent(String value) {
+
+			this.value = value;
+			constructed.incrementAndGet();
+		}
+
+		@Override
+		public String getName() {
+			return "testGuardedEvent";
+		}
+	}
+
+	private static class TestHierarchyEvent implements TestHierarchyEventType {
+
+		@Override
+		public String getName() {
+			return "testHierarchyEvent";
+		}
+	}
+
+	private static class TestAsyncEvent implements ZomboidEvent {
+
+		private final CountDownLatch handled = new CountDownLatch(1);
+
+		@Override
+		public String getName() {
+			return "testAsyncEvent";
+		}
+	}
+
+	private static class TestParallelEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testParallelEvent";
+		}
+	}
+
+	private static class TestParallelCancellableEvent implements CancellableEvent {
+
+		private volatile boolean cancelled;
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public void setCancelled(boolean cancelled) {
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		public String getName() {
+			return "testParallelCancellableEvent";
+		}
+	}
+
+	private static class TestBatchEvent implements ZomboidEvent {
+
+		private final int index;
+
+		private TestBatchEvent(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public String getName() {
+			return "testBatchEvent";
+		}
+	}
+
+	private static class TestFlushEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testFlushEvent";
+		}
+	}
+
+	private static class TestKeyedEvent implements KeyedEvent {
+
+		private final Integer key;
+
+		private TestKeyedEvent(Integer key) {
+			this.key = key;
+		}
+
+		@Override
+		public Integer getKey() {
+			return key;
+		}
+
+		@Override
+		public String getName() {
+			return "testKeyedEvent";
+		}
+	}
+
+	private static class TestOrderedKeyedEvent implements KeyedEvent {
+
+		@Override
+		public Integer getKey() {
+			return 1;
+		}
+
+		@Override
+		public String getName() {
+			return "testOrderedKeyedEvent";
+		}
+	}
+
+	private static class TestUnregisterEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testUnregisterEvent";
+		}
+	}
+
+	private static class TestGroupEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testGroupEvent";
+		}
+	}
+
+	private static class TestWeakEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testWeakEvent";
+		}
+	}
+
+	public static class TestWeakEventHandler {
+
+		private final AtomicInteger eventsHandled;
+
+		private TestWeakEventHandler(AtomicInteger eventsHandled) {
+			this.eventsHandled = eventsHandled;
+		}
+
+		@SubscribeEvent
+		public void handleEvent(TestWeakEvent event) {
+			eventsHandled.incrementAndGet();
+		}
+	}
+
+	private static class TestPriorityEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testPriorityEvent";
+		}
+	}
+
+	private static class TestScheduledPriorityEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testScheduledPriorityEvent";
+		}
+	}
+
+	private static class TestPostedEvent implements ZomboidEvent {
+
+		private final int producer, sequence;
+
+		private TestPostedEvent(int producer, int sequence) {
+			this.producer = producer;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public String getName() {
+			return "testPostedEvent";
+		}
+	}
 }
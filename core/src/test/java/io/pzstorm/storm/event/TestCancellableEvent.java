@@ -0,0 +1,36 @@
+package io.pzstorm.storm.event;
+
+@PooledEvent
+public class TestCancellableEvent implements CancellableEvent {
+
+	String value;
+	private boolean cancelled;
+
+	public TestCancellableEvent(String value) {
+		this.value = value;
+	}
+
+	public TestCancellableEvent() {
+	}
+
+	public void reset(String value) {
+
+		this.value = value;
+		cancelled = false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public void setCancelled(boolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	@Override
+	public String getName() {
+		return "cancellableEvent";
+	}
+}
@@ -0,0 +1,23 @@
+package io.pzstorm.storm.event;
+
+@PooledEvent
+public class TestPooledEvent implements ZomboidEvent {
+
+	String value;
+
+	public TestPooledEvent(String value) {
+		this.value = value;
+	}
+
+	public TestPooledEvent() {
+	}
+
+	public void reset(String value) {
+		this.value = value;
+	}
+
+	@Override
+	public String getName() {
+		return "pooledEvent";
+	}
+}
@@ -0,0 +1,21 @@
+package io.pzstorm.storm.event;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestZomboidEventC implements ZomboidEvent {
+
+	static final AtomicInteger constructed = new AtomicInteger();
+
+	final String value;
+
+	public TestZomboidEventC(String value) {
+
+		this.value = value;
+		constructed.incrementAndGet();
+	}
+
+	@Override
+	public String getName() {
+		return "zomboidEventC";
+	}
+}
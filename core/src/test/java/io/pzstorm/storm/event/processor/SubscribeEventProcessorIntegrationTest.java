@@ -0,0 +1,158 @@
+package io.pzstorm.storm.event.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import javax.tools.*;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import io.pzstorm.storm.IntegrationTest;
+import io.pzstorm.storm.event.StormEventDispatcher;
+import io.pzstorm.storm.event.TestZomboidEventA;
+
+class SubscribeEventProcessorIntegrationTest implements IntegrationTest {
+
+	private static final File TEMP_DIR = IntegrationTest.getTemporaryBuildDir(SubscribeEventProcessorIntegrationTest.class);
+
+	@Test
+	void shouldGenerateRegistrationClassForValidEventHandler() throws ReflectiveOperationException, IOException {
+
+		String source = String.join("\n",
+				"package io.pzstorm.storm.event.processor;",
+				"import io.pzstorm.storm.event.*;",
+				"public class GeneratedStaticHandler {",
+				"	public static int eventsHandled;",
+				"	@SubscribeEvent",
+				"	public static void handleEvent(TestZomboidEventA event) {",
+				"		eventsHandled++;",
+				"	}",
+				"	@SubscribeEvent(flushOn = TestZomboidEventB.class)",
+				"	public static void handleEvents(EventBatch<TestZomboidEventA> batch) {",
+				"		eventsHandled += batch.size();",
+				"	}",
+				"	@SubscribeEvent(interval = 2)",
+				"	public static void handleEverySecondEvent(TestZomboidEventA event) {",
+				"		eventsHandled += 10;",
+				"	}",
+				"}"
+		);
+		File outputDir = new File(TEMP_DIR, "valid");
+		List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(outputDir, "GeneratedStaticHandler", source);
+
+		Assertions.assertEquals(ImmutableList.of(), diagnostics);
+		Assertions.assertTrue(new File(outputDir,
+				"io/pzstorm/storm/event/processor/GeneratedStaticHandler_EventRegistration.class").exists());
+
+		try (URLClassLoader classLoader = new URLClassLoader(
+				new URL[]{ outputDir.toURI().toURL() }, getClass().getClassLoader()))
+		{
+			Class<?> handlerClass = classLoader.loadClass("io.pzstorm.storm.event.processor.GeneratedStaticHandler");
+			StormEventDispatcher.registerEventHandler(handlerClass);
+
+			StormEventDispatcher.dispatchEvent(new TestZomboidEventA());
+			Assertions.assertEquals(1, handlerClass.getField("eventsHandled").getInt(null));
+
+			StormEventDispatcher.dispatchEvent(new TestZomboidEventA());
+			Assertions.assertEquals(12, handlerClass.getField("eventsHandled").getInt(null));
+
+			StormEventDispatcher.dispatchEvent(new io.pzstorm.storm.event.TestZomboidEventB());
+			Assertions.assertEquals(14, handlerClass.getField("eventsHandled").getInt(null));
+		}
+	}
+
+	@Test
+	void shouldReportErrorsForInvalidEventHandlerMethods() throws IOException {
+
+		String source = String.join("\n",
+				"package io.pzstorm.storm.event.processor;",
+				"import io.pzstorm.storm.event.*;",
+				"public class InvalidHandler {",
+				"	@SubscribeEvent",
+				"	void handleNonPublic(TestZomboidEventA event) {}",
+				"	@SubscribeEvent",
+				"	public void handleTwoArguments(TestZomboidEventA event, Object arg) {}",
+				"	@SubscribeEvent",
+				"	public void handleNonEvent(Object event) {}",
+				"	@SubscribeEvent(mode = ExecutionMode.ASYNC)",
+				"	public void handleAsyncBatch(EventBatch<TestZomboidEventA> batch) {}",
+				"	@SubscribeEvent(key = \"key\")",
+				"	public void handleKey(TestZomboidEventA event) {}",
+				"	@SubscribeEvent(mode = ExecutionMode.ASYNC)",
+				"	public void handlePooled(TestPooledEvent event) {}",
+				"	@SubscribeEvent(interval = 0)",
+				"	public void handleInvalidRate(TestZomboidEventA event) {}",
+				"}"
+		);
+		File outputDir = new File(TEMP_DIR, "invalid");
+		List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(outputDir, "InvalidHandler", source);
+
+		List<Long> errorLines = diagnostics.stream().filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+				.map(Diagnostic::getLineNumber).sorted().collect(Collectors.toList());
+
+		Assertions.assertEquals(ImmutableList.of(5L, 7L, 9L, 11L, 13L, 15L, 17L), errorLines);
+		Assertions.assertFalse(new File(outputDir,
+				"io/pzstorm/storm/event/processor/InvalidHandler_EventRegistration.java").exists());
+	}
+
+	@Test
+	void shouldReportErrorWhenHandlerMixesStaticAndInstanceMethods() throws IOException {
+
+		String source = String.join("\n",
+				"package io.pzstorm.storm.event.processor;",
+				"import io.pzstorm.storm.event.*;",
+				"public class MixedContextHandler {",
+				"	@SubscribeEvent",
+				"	public void handleInstance(TestZomboidEventA event) {}",
+				"	@SubscribeEvent",
+				"	public static void handleStatic(TestZomboidEventA event) {}",
+				"}"
+		);
+		File outputDir = new File(TEMP_DIR, "mixed");
+		List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(outputDir, "MixedContextHandler", source);
+
+		Assertions.assertEquals(1, diagnostics.stream().filter(d -> d.getKind() == Diagnostic.Kind.ERROR).count());
+	}
+
+	/**
+	 * Compile given source with {@link SubscribeEventProcessor} to given output directory.
+	 *
+	 * @return list of diagnostics reported by compiler.
+	 */
+	private static List<Diagnostic<? extends JavaFileObject>> compile(File outputDir, String className,
+																	  String source) throws IOException {
+
+		Assertions.assertTrue(outputDir.exists() || outputDir.mkdirs());
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+		JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///io/pzstorm/storm/event/processor/"
+				+ className + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, null))
+		{
+			List<String> options = ImmutableList.of("-d", outputDir.getPath(), "-s", outputDir.getPath(),
+					"-classpath", System.getProperty("java.class.path"));
+
+			JavaCompiler.CompilationTask task = compiler.getTask(
+					null, fileManager, diagnostics, options, null, ImmutableList.of(sourceFile));
+
+			task.setProcessors(ImmutableList.of(new SubscribeEventProcessor()));
+			task.call();
+		}
+		return diagnostics.getDiagnostics();
+	}
+}
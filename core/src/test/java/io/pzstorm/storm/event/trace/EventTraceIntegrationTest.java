@@ -0,0 +1,248 @@
+package io.pzstorm.storm.event.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.pzstorm.storm.IntegrationTest;
+import io.pzstorm.storm.event.*;
+
+class EventTraceIntegrationTest implements IntegrationTest {
+
+	private static final File TEMP_DIR = IntegrationTest.getTemporaryBuildDir(EventTraceIntegrationTest.class);
+
+	@Test
+	void shouldRecordDispatchedEventsAndReplayThemWithRecordedFields() throws IOException {
+
+		Path traceFile = createTraceFile("trace.bin");
+		List<TestTracedEvent> dispatched = new ArrayList<>();
+
+		// small chunks make records cross chunk boundaries
+		try (EventTraceRecorder recorder = new EventTraceRecorder(traceFile, 4096))
+		{
+			for (int i = 0; i < 1000; i++)
+			{
+				TestTracedEvent event = new TestTracedEvent(i, "event-" + "x".repeat(i % 50),
+						ExecutionMode.values()[i % ExecutionMode.values().length], i / 3.0, i % 2 == 0 ? i : null);
+
+				StormEventDispatcher.dispatchEvent(event);
+				dispatched.add(event);
+			}
+			Assertions.assertEquals(1000, recorder.getRecordedEventCount());
+			Assertions.assertEquals(0, recorder.getDroppedEventCount());
+		}
+		// events dispatched after recorder is closed are not recorded
+		StormEventDispatcher.dispatchEvent(new TestTracedEvent(-1, "", ExecutionMode.SYNC, 0, null));
+
+		List<TestTracedEvent> replayed = new ArrayList<>();
+		Assertions.assertEquals(1000, EventTraceReplayer.replay(traceFile, e -> replayed.add((TestTracedEvent) e)));
+
+		for (int i = 0; i < dispatched.size(); i++)
+		{
+			TestTracedEvent expected = dispatched.get(i), actual = replayed.get(i);
+			Assertions.assertEquals(expected.index, actual.index);
+			Assertions.assertEquals(expected.text, actual.text);
+			Assertions.assertEquals(expected.mode, actual.mode);
+			Assertions.assertEquals(expected.value, actual.value);
+			Assertions.assertEquals(expected.boxed, actual.boxed);
+			// fields that reference other objects are not recorded
+			Assertions.assertNotSame(expected.reference, actual.reference);
+		}
+		try (EventTraceReader reader = new EventTraceReader(traceFile, getClass().getClassLoader()))
+		{
+			long lastTimestamp = 0;
+			while (reader.next())
+			{
+				Assertions.assertTrue(reader.getTimestamp() >= lastTimestamp);
+				lastTimestamp = reader.getTimestamp();
+			}
+			Assertions.assertThrows(IllegalStateException.class, reader::getEvent);
+		}
+	}
+
+	@Test
+	void shouldReplayRecordedEventsThroughRegisteredHandlers() throws IOException {
+
+		Path traceFile = createTraceFile("handlers.bin");
+		try (EventTraceRecorder recorder = EventTraceRecorder.start(traceFile))
+		{
+			for (int i = 0; i < 10; i++) {
+				StormEventDispatcher.dispatchEvent(new TestReplayedEvent());
+			}
+		}
+		AtomicInteger handledEvents = new AtomicInteger();
+		StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(TestReplayedEvent event) {
+				handledEvents.incrementAndGet();
+			}
+		});
+		Assertions.assertEquals(10, EventTraceReplayer.replay(traceFile));
+		Assertions.assertEquals(10, handledEvents.get());
+	}
+
+	@Test
+	void shouldRecordEventsBeforeHandlersWithAnyPriorityOrKeyModifyThem() throws IOException {
+
+		EventSubscription subscription = StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent(priority = EventPriority.HIGHEST, key = "1")
+			public void handleKeyedEvent(TestModifiedEvent event) {
+				event.value = -1;
+			}
+
+			@SubscribeEvent(priority = EventPriority.HIGHEST)
+			public void handleEvent(TestModifiedEvent event) {
+				event.value *= 2;
+			}
+		});
+		Path traceFile = createTraceFile("modified.bin");
+		try (EventTraceRecorder recorder = new EventTraceRecorder(traceFile, EventTraceFormat.DEFAULT_CHUNK_SIZE))
+		{
+			for (int i = 0; i < 4; i++) {
+				StormEventDispatcher.dispatchEvent(new TestModifiedEvent(i % 2, i + 1));
+			}
+		}
+		finally {
+			subscription.unregister();
+		}
+		List<Integer> replayed = new ArrayList<>();
+		EventTraceReplayer.replay(traceFile, e -> replayed.add(((TestModifiedEvent) e).value));
+		Assertions.assertEquals(List.of(1, 2, 3, 4), replayed);
+	}
+
+	@Test
+	void shouldNotReferenceEventClassWhoseDefinitionWasDropped() throws IOException {
+
+		Path traceFile = createTraceFile("dropped.bin");
+
+		// records larger than 100 bytes are dropped
+		try (EventTraceRecorder recorder = new EventTraceRecorder(traceFile, EventTraceFormat.HEADER_SIZE + 101))
+		{
+			StormEventDispatcher.dispatchEvent(new TestOversizedDefinitionEvent());
+			StormEventDispatcher.dispatchEvent(new TestOversizedDefinitionEvent());
+			StormEventDispatcher.dispatchEvent(new TestReplayedEvent());
+
+			Assertions.assertEquals(1, recorder.getRecordedEventCount());
+			Assertions.assertEquals(2, recorder.getDroppedEventCount());
+		}
+		List<ZomboidEvent> replayed = new ArrayList<>();
+		Assertions.assertEquals(1, EventTraceReplayer.replay(traceFile, replayed::add));
+		Assertions.assertTrue(replayed.get(0) instanceof TestReplayedEvent);
+	}
+
+	@Test
+	void shouldSkipEventsWhoseConstructorRejectsDefaultValues() throws IOException {
+
+		Path traceFile = createTraceFile("rejected.bin");
+		try (EventTraceRecorder recorder = new EventTraceRecorder(traceFile, EventTraceFormat.DEFAULT_CHUNK_SIZE))
+		{
+			StormEventDispatcher.dispatchEvent(new TestRejectingEvent("first"));
+			StormEventDispatcher.dispatchEvent(new TestReplayedEvent());
+			StormEventDispatcher.dispatchEvent(new TestRejectingEvent("second"));
+		}
+		List<ZomboidEvent> replayed = new ArrayList<>();
+		Assertions.assertEquals(1, EventTraceReplayer.replay(traceFile, replayed::add));
+		Assertions.assertTrue(replayed.get(0) instanceof TestReplayedEvent);
+	}
+
+	@Test
+	void shouldThrowExceptionWhenReadingFileThatIsNotEventTrace() throws IOException {
+
+		Path file = createTraceFile("invalid.bin");
+		Files.write(file, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+		Assertions.assertThrows(IOException.class, () -> EventTraceReplayer.replay(file));
+	}
+
+	private static Path createTraceFile(String name) {
+
+		Assertions.assertTrue(TEMP_DIR.exists() || TEMP_DIR.mkdirs());
+		return new File(TEMP_DIR, name).toPath();
+	}
+
+	private static class TestTracedEvent implements ZomboidEvent {
+
+		private final int index;
+		private final String text;
+		private final ExecutionMode mode;
+		private final double value;
+		private final Integer boxed;
+		private final Object reference = new Object();
+
+		private TestTracedEvent(int index, String text, ExecutionMode mode, double value, Integer boxed) {
+			this.index = index;
+			this.text = text;
+			this.mode = mode;
+			this.value = value;
+			this.boxed = boxed;
+		}
+
+		@Override
+		public String getName() {
+			return "testTracedEvent";
+		}
+	}
+
+	private static class TestReplayedEvent implements ZomboidEvent {
+
+		@Override
+		public String getName() {
+			return "testReplayedEvent";
+		}
+	}
+
+	private static class TestModifiedEvent implements KeyedEvent {
+
+		private final int key;
+		private int value;
+
+		private TestModifiedEvent(int key, int value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public Integer getKey() {
+			return key;
+		}
+
+		@Override
+		public String getName() {
+			return "testModifiedEvent";
+		}
+	}
+
+	private static class TestRejectingEvent implements ZomboidEvent {
+
+		private final String text;
+
+		private TestRejectingEvent(String text) {
+			this.text = Objects.requireNonNull(text);
+		}
+
+		@Override
+		public String getName() {
+			return "testRejectingEvent";
+		}
+	}
+
+	/**
+	 * Event whose class definition record is larger than 100 bytes while its event record is not.
+	 */
+	private static class TestOversizedDefinitionEvent implements ZomboidEvent {
+
+		private final int first = 1, second = 2, third = 3, fourth = 4, fifth = 5, sixth = 6;
+
+		@Override
+		public String getName() {
+			return "testOversizedDefinitionEvent";
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package io.pzstorm.storm.hook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.pzstorm.storm.IntegrationTest;
+import io.pzstorm.storm.core.ZombieLuaEventsTransformer;
+import io.pzstorm.storm.event.EventSubscription;
+import io.pzstorm.storm.event.OnTriggerLuaEvent;
+import io.pzstorm.storm.event.StormEventDispatcher;
+import io.pzstorm.storm.event.SubscribeEvent;
+import zombie.Lua.Event;
+import zombie.ZombieLuaEvents;
+
+class OnTriggerLuaEventHookIntegrationTest implements IntegrationTest {
+
+	private static Class<?> defineHookedClass() throws IOException {
+
+		byte[] rawClass;
+		try (InputStream stream = ZombieLuaEvents.class.getResourceAsStream("ZombieLuaEvents.class")) {
+			rawClass = Objects.requireNonNull(stream).readAllBytes();
+		}
+		byte[] hookedClass = new ZombieLuaEventsTransformer().transform(rawClass);
+		return new ClassLoader(OnTriggerLuaEventHookIntegrationTest.class.getClassLoader()) {
+			Class<?> define() {
+				return defineClass(null, hookedClass, 0, hookedClass.length);
+			}
+		}.define();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void shouldLeaveSynchronizedBlockWhenTriggeredLuaEventIsCancelled() throws ReflectiveOperationException,
+			IOException, InterruptedException {
+
+		Class<?> hookedClass = defineHookedClass();
+		Map<String, Event> events = (Map<String, Event>) hookedClass.getField("EVENTS").get(null);
+		events.put("OnTestTrigger", new Event("OnTestTrigger", 0));
+
+		List<Integer> cancelled = new ArrayList<>();
+		EventSubscription subscription = StormEventDispatcher.registerEventHandler(new Object() {
+			@SubscribeEvent
+			public void handleEvent(OnTriggerLuaEvent event) {
+
+				cancelled.add(event.args.size());
+				event.setCancelled(true);
+			}
+		});
+		try {
+			for (int i = 0; i < 7; i++)
+			{
+				Class<?>[] parameterTypes = new Class<?>[i + 1];
+				Arrays.fill(parameterTypes, Object.class);
+				parameterTypes[0] = String.class;
+
+				Object[] args = new Object[i + 1];
+				Arrays.fill(args, "arg");
+				args[0] = "OnTestTrigger";
+
+				Method triggerEvent = hookedClass.getMethod("triggerEvent", parameterTypes);
+				Assertions.assertDoesNotThrow(() -> triggerEvent.invoke(null, args));
+				Assertions.assertFalse(Thread.holdsLock(events));
+			}
+		}
+		finally {
+			subscription.unregister();
+		}
+		Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6), cancelled);
+
+		// other threads can lock the events after cancelled triggers returned
+		Thread thread = new Thread(() -> {
+			synchronized (events) {
+				events.clear();
+			}
+		});
+		thread.start();
+		thread.join(5000);
+
+		Assertions.assertFalse(thread.isAlive());
+		Assertions.assertTrue(events.isEmpty());
+	}
+}
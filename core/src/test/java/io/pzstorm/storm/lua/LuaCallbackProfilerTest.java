@@ -0,0 +1,95 @@
+package io.pzstorm.storm.lua;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.pzstorm.storm.UnitTest;
+import se.krka.kahlua.vm.LuaClosure;
+import se.krka.kahlua.vm.Prototype;
+
+class LuaCallbackProfilerTest implements UnitTest {
+
+	@AfterEach
+	void resetProfiler() {
+		LuaCallbackProfiler.reset();
+	}
+
+	@Test
+	void shouldAttributeLuaFileToModDirectory() {
+
+		Assertions.assertEquals("ExampleMod", LuaCallbackProfiler.getModName(
+				"C:\\Users\\user\\Zomboid\\mods\\ExampleMod\\media\\lua\\client\\Example.lua:12"
+		));
+		Assertions.assertEquals("ExampleMod", LuaCallbackProfiler.getModName(
+				"/steam/workshop/content/108600/1234/mods/ExampleMod/media/lua/shared/Example.lua:1"
+		));
+		Assertions.assertEquals(LuaCallbackProfiler.GAME_SOURCE, LuaCallbackProfiler.getModName(
+				"/steam/ProjectZomboid/media/lua/client/ISUI/ISPanel.lua:5"
+		));
+	}
+
+	@Test
+	void shouldNameLuaClosureAfterDefiningFileAndLine() {
+
+		Prototype prototype = new Prototype();
+		prototype.filename = "mods/ExampleMod/media/lua/client/Example.lua";
+		prototype.lines = new int[] { 42, 43 };
+
+		Assertions.assertEquals("mods/ExampleMod/media/lua/client/Example.lua:42",
+				LuaCallbackProfiler.getSourceName(new LuaClosure(prototype, null)));
+	}
+
+	@Test
+	void shouldBoundPercentilesByPowerOfTwoBuckets() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(100);
+		}
+		histogram.record(5000);
+
+		Assertions.assertEquals(100, histogram.getCount());
+		Assertions.assertEquals(99 * 100 + 5000, histogram.getTotalNanos());
+		Assertions.assertEquals(5000, histogram.getMaxNanos());
+		Assertions.assertEquals(127, histogram.getPercentileNanos(0.5));
+		Assertions.assertEquals(127, histogram.getPercentileNanos(0.99));
+		Assertions.assertEquals(5000, histogram.getPercentileNanos(1.0));
+	}
+
+	@Test
+	void shouldReportCallbacksByTotalTime() {
+
+		LuaCallbackProfiler.record("OnTick", "fastCallback", 1000);
+		LuaCallbackProfiler.record("OnTick", "slowCallback", 1000);
+		LuaCallbackProfiler.record("OnTick", "slowCallback", 5000);
+		LuaCallbackProfiler.record("OnGameStart", "fastCallback", 500);
+
+		List<String> report = LuaCallbackProfiler.createReport(2);
+		Assertions.assertEquals(3, report.size());
+		Assertions.assertTrue(report.get(0).contains("2 of 3 callbacks"));
+		Assertions.assertTrue(report.get(1).contains("OnTick slowCallback - 2 calls"));
+		Assertions.assertTrue(report.get(2).contains("OnTick fastCallback - 1 calls"));
+	}
+
+	@Test
+	void shouldShareProfileOfClosuresDefinedBySameSource() {
+
+		Prototype prototype = new Prototype();
+		prototype.filename = "mods/ExampleMod/media/lua/client/Example.lua";
+		prototype.lines = new int[] { 42 };
+
+		Prototype reloadedPrototype = new Prototype();
+		reloadedPrototype.filename = prototype.filename;
+		reloadedPrototype.lines = new int[] { 42 };
+
+		LuaCallbackProfiler.record("OnTick", new LuaClosure(prototype, null), 1000);
+		LuaCallbackProfiler.record("OnTick", new LuaClosure(reloadedPrototype, null), 1000);
+
+		List<String> report = LuaCallbackProfiler.createReport(Integer.MAX_VALUE);
+		Assertions.assertEquals(2, report.size());
+		Assertions.assertTrue(report.get(1).contains("OnTick lua/client/Example.lua:42 - 2 calls"));
+	}
+}
@@ -0,0 +1,138 @@
+package io.pzstorm.storm.lua;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.pzstorm.storm.IntegrationTest;
+import se.krka.kahlua.vm.LuaClosure;
+import se.krka.kahlua.vm.Prototype;
+
+class LuaCompileCacheIntegrationTest implements IntegrationTest {
+
+	private static final Path CACHE_DIR =
+			IntegrationTest.getTemporaryBuildDir(LuaCompileCacheIntegrationTest.class).toPath();
+
+	@Test
+	void shouldKeyCacheEntriesBySourceNameAndOptions() {
+
+		byte[] source = "print('hello')".getBytes(StandardCharsets.UTF_8);
+		String key = LuaCompileCache.getCacheKey(source, "hello.lua", false);
+
+		Assertions.assertEquals(key, LuaCompileCache.getCacheKey(source.clone(), "hello.lua", false));
+		Assertions.assertNotEquals(key, LuaCompileCache.getCacheKey(source, "world.lua", false));
+		Assertions.assertNotEquals(key, LuaCompileCache.getCacheKey(
+				"print('world')".getBytes(StandardCharsets.UTF_8), "hello.lua", false)
+		);
+		// chunks compiled with events rewritten have different prototypes
+		Assertions.assertNotEquals(key, LuaCompileCache.getCacheKey(source, "hello.lua", true));
+	}
+
+	@Test
+	void shouldReadPrototypeWrittenToCacheFile() {
+
+		Prototype child = new Prototype();
+		child.lines = new int[] { 3 };
+
+		Prototype prototype = new Prototype();
+		prototype.name = "hello.lua";
+		prototype.filename = "media/lua/client/hello.lua";
+		prototype.lines = new int[] { 1, 2 };
+		prototype.prototypes = new Prototype[] { child };
+
+		Path cacheFile = CACHE_DIR.resolve("hello.luac");
+		LuaCompileCache.writeCacheFile(cacheFile, prototype);
+
+		LuaClosure closure = LuaCompileCache.readCacheFile(cacheFile, null);
+		Assertions.assertNotNull(closure);
+		Assertions.assertEquals("hello.lua", closure.prototype.name);
+		Assertions.assertEquals("media/lua/client/hello.lua", closure.prototype.filename);
+		Assertions.assertArrayEquals(new int[] { 1, 2 }, closure.prototype.lines);
+	}
+
+	@Test
+	void shouldDeleteUnreadableCacheFile() throws IOException {
+
+		Path cacheFile = CACHE_DIR.resolve("broken.luac");
+		Files.createDirectories(CACHE_DIR);
+		Files.write(cacheFile, new byte[] { 0, 0, 0 });
+
+		Assertions.assertNull(LuaCompileCache.readCacheFile(cacheFile, null));
+		Assertions.assertFalse(Files.exists(cacheFile));
+	}
+
+	@Test
+	void shouldNotReadMissingCacheFile() {
+		Assertions.assertNull(LuaCompileCache.readCacheFile(CACHE_DIR.resolve("missing.luac"), null));
+	}
+
+	@Test
+	void shouldReplaceCacheFileThatWasRead() {
+
+		Prototype prototype = new Prototype();
+		prototype.name = "replaced.lua";
+		prototype.lines = new int[0];
+
+		Path cacheFile = CACHE_DIR.resolve("replaced.luac");
+		LuaCompileCache.writeCacheFile(cacheFile, prototype);
+		Assertions.assertNotNull(LuaCompileCache.readCacheFile(cacheFile, null));
+
+		prototype.name = "replacement.lua";
+		LuaCompileCache.writeCacheFile(cacheFile, prototype);
+
+		LuaClosure closure = LuaCompileCache.readCacheFile(cacheFile, null);
+		Assertions.assertNotNull(closure);
+		Assertions.assertEquals("replacement.lua", closure.prototype.name);
+	}
+
+	@Test
+	void shouldEvictLeastRecentlyUsedCacheFiles() throws IOException {
+
+		Path directory = CACHE_DIR.resolve("eviction");
+		Files.createDirectories(directory);
+
+		long now = System.currentTimeMillis();
+		Path oldest = writeFile(directory.resolve("oldest.luac"), now - TimeUnit.DAYS.toMillis(30));
+		Path older = writeFile(directory.resolve("older.luac"), now - TimeUnit.DAYS.toMillis(20));
+		Path newest = writeFile(directory.resolve("newest.luac"), now);
+		Path staleTemp = writeFile(directory.resolve("lua1.tmp"), now - TimeUnit.DAYS.toMillis(1));
+		Path freshTemp = writeFile(directory.resolve("lua2.tmp"), now);
+
+		LuaCompileCache.evict(directory, 200);
+
+		Assertions.assertFalse(Files.exists(oldest));
+		Assertions.assertTrue(Files.exists(older));
+		Assertions.assertTrue(Files.exists(newest));
+		Assertions.assertFalse(Files.exists(staleTemp));
+		Assertions.assertTrue(Files.exists(freshTemp));
+	}
+
+	@Test
+	void shouldMarkCacheFileAsUsedWhenRead() throws IOException {
+
+		Prototype prototype = new Prototype();
+		prototype.lines = new int[0];
+
+		Path cacheFile = CACHE_DIR.resolve("used.luac");
+		LuaCompileCache.writeCacheFile(cacheFile, prototype);
+
+		FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30));
+		Files.setLastModifiedTime(cacheFile, lastModified);
+
+		Assertions.assertNotNull(LuaCompileCache.readCacheFile(cacheFile, null));
+		Assertions.assertTrue(Files.getLastModifiedTime(cacheFile).compareTo(lastModified) > 0);
+	}
+
+	private static Path writeFile(Path file, long lastModified) throws IOException {
+
+		Files.write(file, new byte[100]);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+		return file;
+	}
+}
@@ -0,0 +1,230 @@
+package io.pzstorm.storm.lua;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.luaj.kahluafork.compiler.LuaCompiler;
+
+import io.pzstorm.storm.UnitTest;
+import se.krka.kahlua.integration.annotations.LuaMethod;
+import se.krka.kahlua.integration.expose.ReturnValues;
+import se.krka.kahlua.j2se.J2SEPlatform;
+import se.krka.kahlua.vm.*;
+
+class LuaExposerTest implements UnitTest {
+
+	private final Platform platform = new J2SEPlatform();
+	private final KahluaTable environment = platform.newEnvironment();
+	private final KahluaThread thread = new KahluaThread(platform, environment);
+
+	@Test
+	void shouldCallExposedGlobalFunctionsFromLua() throws IOException {
+
+		LuaExposer.exposeGlobalFunctions(environment, new LuaFunctions("Hello"));
+
+		Assertions.assertEquals(5.0, callLua("return add(2, 3)"));
+		Assertions.assertEquals("Hello Storm", callLua("return greet('Storm')"));
+		Assertions.assertEquals(1003.5, callLua("return mix(1, 2.5, 'a', true, nil) - 97"));
+	}
+
+	@Test
+	void shouldExposeOnlyStaticFunctionsOfClass() {
+
+		LuaExposer.exposeGlobalFunctions(environment, LuaFunctions.class);
+
+		Assertions.assertNotNull(environment.rawget("add"));
+		Assertions.assertNull(environment.rawget("greet"));
+	}
+
+	@Test
+	void shouldCallExposedMethodsOnClassInstancesFromLua() throws IOException {
+
+		LuaExposer.exposeClass(platform, environment, Counter.class);
+		environment.rawset("counter", new Counter());
+
+		callLua("counter:increment(5)");
+		Assertions.assertEquals(5.0, callLua("return counter:getCount()"));
+	}
+
+	@Test
+	void shouldGenerateInvokerForExposedMethod() throws NoSuchMethodException {
+
+		JavaFunction function = LuaExposer.createFunction(
+				LuaFunctions.class.getMethod("add", int.class, int.class), null);
+
+		Assertions.assertTrue(function.getClass().isHidden());
+		Assertions.assertEquals(LuaFunctions.class.getName() + ".add", function.toString());
+	}
+
+	@Test
+	void shouldReportBadArgumentToLua() throws IOException {
+
+		LuaExposer.exposeGlobalFunctions(environment, LuaFunctions.class);
+
+		LuaClosure closure = LuaCompiler.loadstring("return add('two', 3)", "test", environment);
+		Object[] results = thread.pcall(closure);
+		Assertions.assertEquals(Boolean.FALSE, results[0]);
+		Assertions.assertTrue(String.valueOf(results[1]).contains("bad argument #1"));
+	}
+
+	@Test
+	void shouldSelectOverloadedFunctionByArgumentCount() throws IOException {
+
+		LuaExposer.exposeGlobalFunctions(environment, OverloadedFunctions.class);
+
+		Assertions.assertEquals("none", callLua("return describe()"));
+		Assertions.assertEquals("one 1", callLua("return describe(1)"));
+		Assertions.assertEquals("two 1 2", callLua("return describe(1, 2)"));
+		Assertions.assertEquals("many 4", callLua("return describe(1, 2, 3, 4)"));
+	}
+
+	@Test
+	void shouldPassRemainingArgumentsToVariableArityMethod() throws IOException {
+
+		LuaExposer.exposeGlobalFunctions(environment, LuaFunctions.class);
+
+		Assertions.assertEquals(6.0, callLua("return sum('sum', 1, 2, 3)"));
+		Assertions.assertEquals(0.0, callLua("return sum('sum')"));
+	}
+
+	@Test
+	void shouldRejectOverloadsWithSameNumberOfParameters() {
+
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> LuaExposer.exposeGlobalFunctions(environment, AmbiguousFunctions.class));
+
+		// no function should be exposed when exposing fails
+		Assertions.assertNull(environment.rawget("first"));
+	}
+
+	@Test
+	void shouldRejectMethodsWithReturnValuesParameter() {
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> LuaExposer.exposeGlobalFunctions(environment, MultipleResultFunctions.class));
+	}
+
+	@Test
+	void shouldExposeMethodsIntoExistingClassMetatable() throws IOException {
+
+		KahluaTable methods = platform.newTable();
+		methods.rawset("describe", (JavaFunction) (callFrame, nArguments) -> {
+			callFrame.push("counter");
+			return 1;
+		});
+		KahluaTable metatable = platform.newTable();
+		metatable.rawset("__index", methods);
+		KahluaUtil.getClassMetatables(platform, environment).rawset(Counter.class, metatable);
+
+		LuaExposer.exposeClass(platform, environment, Counter.class);
+		environment.rawset("counter", new Counter());
+
+		callLua("counter:increment(5)");
+		Assertions.assertEquals(5.0, callLua("return counter:getCount()"));
+		Assertions.assertEquals("counter", callLua("return counter:describe()"));
+		Assertions.assertSame(metatable, KahluaUtil.getClassMetatables(platform, environment).rawget(Counter.class));
+	}
+
+	private @Nullable Object callLua(String source) throws IOException {
+
+		LuaClosure closure = LuaCompiler.loadstring(source, "test", environment);
+		Object[] results = thread.pcall(closure);
+		Assertions.assertEquals(Boolean.TRUE, results[0], () -> String.valueOf(results[1]));
+		return results.length > 1 ? results[1] : null;
+	}
+
+	public static class LuaFunctions {
+
+		private final String greeting;
+
+		public LuaFunctions(String greeting) {
+			this.greeting = greeting;
+		}
+
+		@LuaMethod(name = "add", global = true)
+		public static int add(int a, int b) {
+			return a + b;
+		}
+
+		@LuaMethod(global = true)
+		public static double mix(long a, float b, char c, boolean d, @Nullable Integer e) {
+			return a + b + c + (d ? 1000 : 0) + (e != null ? e : 0);
+		}
+
+		@LuaMethod(global = true)
+		public String greet(String name) {
+			return greeting + ' ' + name;
+		}
+
+		@LuaMethod(global = true)
+		public static double sum(String name, int... values) {
+			return Arrays.stream(values).sum();
+		}
+	}
+
+	public static class OverloadedFunctions {
+
+		@LuaMethod(global = true)
+		public static String describe() {
+			return "none";
+		}
+
+		@LuaMethod(global = true)
+		public static String describe(int a) {
+			return "one " + a;
+		}
+
+		@LuaMethod(name = "describe", global = true)
+		public static String describeTwo(int a, int b) {
+			return "two " + a + ' ' + b;
+		}
+
+		@LuaMethod(global = true)
+		public static String describe(Object... values) {
+			return "many " + values.length;
+		}
+	}
+
+	public static class AmbiguousFunctions {
+
+		@LuaMethod(global = true)
+		public static int first() {
+			return 1;
+		}
+
+		@LuaMethod(global = true)
+		public static int overloaded(int a) {
+			return a;
+		}
+
+		@LuaMethod(global = true)
+		public static String overloaded(String a) {
+			return a;
+		}
+	}
+
+	public static class MultipleResultFunctions {
+
+		@LuaMethod(global = true)
+		public static void results(ReturnValues values) {
+			values.push(1.0).push(2.0);
+		}
+	}
+
+	public static class Counter {
+
+		private int count;
+
+		@LuaMethod
+		public void increment(int amount) {
+			count += amount;
+		}
+
+		@LuaMethod
+		public int getCount() {
+			return count;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package io.pzstorm.storm.lua;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import io.pzstorm.storm.IntegrationTest;
+import se.krka.kahlua.vm.Prototype;
+
+class LuaParallelLoaderIntegrationTest implements IntegrationTest {
+
+	private static final Path LUA_DIR =
+			IntegrationTest.getTemporaryBuildDir(LuaParallelLoaderIntegrationTest.class).toPath();
+
+	private static final byte[] SOURCE_A = "local a = 1\nreturn a\n".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] SOURCE_B = "local b = 2\nreturn b\n".getBytes(StandardCharsets.UTF_8);
+
+	@BeforeAll
+	static void writeLuaFiles() throws IOException {
+
+		Files.createDirectories(LUA_DIR);
+		Files.write(LUA_DIR.resolve("a.lua"), SOURCE_A);
+		Files.write(LUA_DIR.resolve("b.lua"), SOURCE_B);
+	}
+
+	@Test
+	void shouldTakePrototypeCompiledAheadOfTimeOnlyOnce() {
+
+		String filename = LUA_DIR.resolve("a.lua").toString();
+		LuaParallelLoader.compileFiles(List.of(
+				new LuaParallelLoader.PendingFile(filename, false),
+				new LuaParallelLoader.PendingFile(LUA_DIR.resolve("missing.lua").toString(), false)
+		));
+		Prototype prototype = LuaParallelLoader.takePrototype(SOURCE_A, "client/a.lua", false);
+		Assertions.assertNotNull(prototype);
+		Assertions.assertEquals("client/a.lua", prototype.name);
+
+		Assertions.assertNull(LuaParallelLoader.takePrototype(SOURCE_A, "client/a.lua", false));
+	}
+
+	@Test
+	void shouldNotTakePrototypeOfSourceNotCompiledAheadOfTime() {
+
+		LuaParallelLoader.compileFiles(List.of(
+				new LuaParallelLoader.PendingFile(LUA_DIR.resolve("b.lua").toString(), false)
+		));
+		Assertions.assertNull(LuaParallelLoader.takePrototype(SOURCE_A, "client/a.lua", false));
+		Assertions.assertNotNull(LuaParallelLoader.takePrototype(SOURCE_B, "client/b.lua", false));
+	}
+
+	@Test
+	void shouldTakePrototypeOnlyWhenCompiledWithSameRewriteEventsOption() {
+
+		LuaParallelLoader.compileFiles(List.of(
+				new LuaParallelLoader.PendingFile(LUA_DIR.resolve("b.lua").toString(), true)
+		));
+		// the option can only be set when the compiler supports it
+		Assertions.assertFalse(LuaCompileCache.isRewritingEvents());
+		LuaCompileCache.setRewritingEvents(true);
+		boolean rewriteEvents = LuaCompileCache.isRewritingEvents();
+		LuaCompileCache.setRewritingEvents(false);
+
+		Assertions.assertNull(LuaParallelLoader.takePrototype(SOURCE_B, "client/b.lua", !rewriteEvents));
+		Assertions.assertNotNull(LuaParallelLoader.takePrototype(SOURCE_B, "client/b.lua", rewriteEvents));
+	}
+
+	@Test
+	void shouldNotRunDeferredFileAgainWhenRequiredByPreviousFile() {
+
+		String fileA = LUA_DIR.resolve("a.lua").toString();
+		String fileB = LUA_DIR.resolve("b.lua").toString();
+		List<String> runFiles = new ArrayList<>();
+
+		// runs files the same way patched RunLua does, where a.lua requires b.lua
+		Consumer<String> runLua = new Consumer<>() {
+			@Override
+			public void accept(String filename) {
+
+				LuaParallelLoader.onRunLua(filename);
+				runFiles.add(filename);
+				if (filename.equals(fileA)) {
+					accept(fileB);
+				}
+			}
+		};
+		LuaParallelLoader.beginLoad();
+		LuaParallelLoader.runLua(fileA, false);
+		LuaParallelLoader.runLua(fileB, false);
+		Assertions.assertTrue(runFiles.isEmpty());
+
+		LuaParallelLoader.loadPendingFiles(file -> runLua.accept(file.filename));
+		Assertions.assertEquals(List.of(fileA, fileB), runFiles);
+
+		// files run after the load completed are no longer deferred
+		runFiles.clear();
+		LuaParallelLoader.loadPendingFiles(file -> runLua.accept(file.filename));
+		runLua.accept(fileA);
+		Assertions.assertEquals(List.of(fileA, fileB), runFiles);
+	}
+
+	@Test
+	void shouldDiscardFilesDeferredByIncompleteLoad() {
+
+		List<String> runFiles = new ArrayList<>();
+		LuaParallelLoader.beginLoad();
+		LuaParallelLoader.runLua(LUA_DIR.resolve("a.lua").toString(), false);
+
+		// previous load threw an exception before its deferred files were run
+		LuaParallelLoader.beginLoad();
+		LuaParallelLoader.runLua(LUA_DIR.resolve("b.lua").toString(), false);
+		LuaParallelLoader.loadPendingFiles(file -> runFiles.add(file.filename));
+		Assertions.assertEquals(List.of(LUA_DIR.resolve("b.lua").toString()), runFiles);
+	}
+}
@@ -0,0 +1,97 @@
+package io.pzstorm.storm.lua;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.pzstorm.storm.UnitTest;
+import se.krka.kahlua.j2se.J2SEPlatform;
+import se.krka.kahlua.vm.Coroutine;
+import se.krka.kahlua.vm.LuaCallFrame;
+import se.krka.kahlua.vm.LuaClosure;
+import se.krka.kahlua.vm.Prototype;
+
+class LuaSamplingProfilerTest implements UnitTest {
+
+	private static final J2SEPlatform PLATFORM = new J2SEPlatform();
+	private static final Coroutine COROUTINE = new Coroutine(PLATFORM, PLATFORM.newEnvironment(), null);
+
+	private final Deque<LuaCallFrame> coroutineFrames = new ArrayDeque<>();
+
+	@AfterEach
+	void resetProfiler() {
+
+		LuaSamplingProfiler.exitFrame((LuaCallFrame) null);
+		LuaSamplingProfiler.reset();
+	}
+
+	@Test
+	void shouldNameFrameAfterDefiningFileAndRunningLine() {
+
+		LuaCallFrame frame = createFrame("mods/ExampleMod/media/lua/client/Example.lua", 3, 10, 11, 12);
+		Assertions.assertEquals("lua/client/Example.lua:10 (line 12)", LuaSamplingProfiler.getFrameName(frame));
+	}
+
+	@Test
+	void shouldSampleShadowStackOfThreadRunningLua() {
+
+		String threadName = Thread.currentThread().getName();
+		pushFrame(createFrame("media/lua/client/A.lua", 2, 1, 2, 3));
+		pushFrame(createFrame("media/lua/client/B.lua", 1, 10, 11));
+
+		LuaSamplingProfiler.sample();
+		LuaSamplingProfiler.sample();
+
+		popFrame();
+		LuaSamplingProfiler.sample();
+
+		List<String> collapsedStacks = LuaSamplingProfiler.createCollapsedStacks();
+		Assertions.assertTrue(collapsedStacks.contains(threadName + ";lua/client/A.lua:1 (line 2) 1"));
+		Assertions.assertTrue(collapsedStacks.contains(
+				threadName + ";lua/client/A.lua:1 (line 2);lua/client/B.lua:10 (line 10) 2"));
+	}
+
+	@Test
+	void shouldPopFramesOfYieldedCoroutine() {
+
+		LuaSamplingProfiler.ShadowStack stack = new LuaSamplingProfiler.ShadowStack(Thread.currentThread());
+		LuaCallFrame parent = createFrame("Parent.lua", 1, 1);
+		stack.push(parent);
+		stack.push(createFrame("Child.lua", 1, 5));
+		stack.push(createFrame("Child.lua", 1, 7));
+
+		stack.popTo(parent);
+		Assertions.assertEquals(Thread.currentThread().getName() + ";Parent.lua:1 (line 1)", stack.collapse());
+
+		stack.popTo(null);
+		Assertions.assertNull(stack.collapse());
+	}
+
+	private void pushFrame(LuaCallFrame frame) {
+
+		coroutineFrames.push(frame);
+		LuaSamplingProfiler.enterFrame(frame);
+	}
+
+	private void popFrame() {
+
+		coroutineFrames.pop();
+		LuaSamplingProfiler.exitFrame(coroutineFrames.peek());
+	}
+
+	private static LuaCallFrame createFrame(String file, int pc, int... lines) {
+
+		Prototype prototype = new Prototype();
+		prototype.filename = file;
+		prototype.lines = lines;
+
+		LuaCallFrame frame = new LuaCallFrame(COROUTINE);
+		frame.closure = new LuaClosure(prototype, null);
+		frame.pc = pc;
+		return frame;
+	}
+}
@@ -0,0 +1,108 @@
+package zombie;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import zombie.Lua.Event;
+import zombie.Lua.LuaManager;
+
+/**
+ * Triggers Lua events the same way {@code LuaEventManager} does, from inside a block
+ * that is synchronized on the map of events, so that hooks can be tested without game code.
+ */
+@SuppressWarnings({ "WeakerAccess", "unused" })
+public class ZombieLuaEvents {
+
+	public static final Map<String, Event> EVENTS = new HashMap<>();
+
+	public static void triggerEvent(String name) {
+
+		synchronized (EVENTS)
+		{
+			Event event = EVENTS.get(name);
+			if (event != null) {
+				event.trigger(LuaManager.env, LuaManager.caller, null);
+			}
+		}
+	}
+
+	public static void triggerEvent(String name, Object arg1) {
+
+		synchronized (EVENTS)
+		{
+			Event event = EVENTS.get(name);
+			if (event != null)
+			{
+				Object[] args = new Object[] { arg1 };
+				event.trigger(LuaManager.env, LuaManager.caller, args);
+			}
+		}
+	}
+
+	public static void triggerEvent(String name, Object arg1, Object arg2) {
+
+		synchronized (EVENTS)
+		{
+			Event event = EVENTS.get(name);
+			if (event != null)
+			{
+				Object[] args = new Object[] { arg1, arg2 };
+				event.trigger(LuaManager.env, LuaManager.caller, args);
+			}
+		}
+	}
+
+	public static void triggerEvent(String name, Object arg1, Object arg2, Object arg3) {
+
+		synchronized (EVENTS)
+		{
+			Event event = EVENTS.get(name);
+			if (event != null)
+			{
+				Object[] args = new Object[] { arg1, arg2, arg3 };
+				event.trigger(LuaManager.env, LuaManager.caller, args);
+			}
+		}
+	}
+
+	public static void triggerEvent(String name, Object arg1, Object arg2, Object arg3, Object arg4) {
+
+		synchronized (EVENTS)
+		{
+			Event event = EVENTS.get(name);
+			if (event != null)
+			{
+				Object[] args = new Object[] { arg1, arg2, arg3, arg4 };
+				event.trigger(LuaManager.env, LuaManager.caller, args);
+			}
+		}
+	}
+
+	public static void triggerEvent(String name, Object arg1, Object arg2,
+									Object arg3, Object arg4, Object arg5) {
+
+		synchronized (EVENTS)
+		{
+			Event event = EVENTS.get(name);
+			if (event != null)
+			{
+				Object[] args = new Object[] { arg1, arg2, arg3, arg4, arg5 };
+				event.trigger(LuaManager.env, LuaManager.caller, args);
+			}
+		}
+	}
+
+	public static void triggerEvent(String name, Object arg1, Object arg2,
+									Object arg3, Object arg4, Object arg5, Object arg6) {
+
+		synchronized (EVENTS)
+		{
+			Event event = EVENTS.get(name);
+			if (event != null)
+			{
+				Object[] args = new Object[] { arg1, arg2, arg3, arg4, arg5, arg6 };
+				event.trigger(LuaManager.env, LuaManager.caller, args);
+			}
+		}
+	}
+}